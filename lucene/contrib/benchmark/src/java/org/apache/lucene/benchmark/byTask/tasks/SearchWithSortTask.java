@@ -107,6 +107,8 @@ public class SearchWithSortTask extends ReadTask {
       type = SortField.STRING;
     } else if (typeString.equals("string_val")) {
       type = SortField.STRING_VAL;
+    } else if (typeString.equals("string_packed")) {
+      type = SortField.STRING_PACKED;
     } else {
       throw new RuntimeException("Unrecognized sort field type " + typeString);
     }
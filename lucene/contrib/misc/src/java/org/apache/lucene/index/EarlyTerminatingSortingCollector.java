@@ -0,0 +1,104 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopFieldCollector;
+
+/**
+ * A {@link Collector} that early terminates collection of the
+ * segments that {@link SortingMergePolicy} sorted by the same
+ * {@link Sort} as the wrapped collector, once it has
+ * collected <code>numDocsToCollect</code> documents of them:
+ * the documents that follow cannot compete anymore. Other
+ * segments are collected entirely.
+ *
+ * <p>This is typically used to wrap a {@link TopFieldCollector}
+ * of the top <code>numDocsToCollect</code> documents by
+ * <code>sort</code>. The top documents are the same as without
+ * early termination, but the total hit count of the wrapped
+ * collector is only a lower bound once a segment was
+ * terminated early, see {@link #terminatedEarly()}.
+ *
+ * @lucene.experimental
+ */
+public class EarlyTerminatingSortingCollector extends Collector {
+
+  protected final Collector in;
+  protected final Sort sort;
+  protected final int numDocsToCollect;
+
+  protected int segmentTotalCollect;
+  protected boolean segmentSorted;
+  private boolean terminatedEarly;
+
+  /**
+   * Create a new {@link EarlyTerminatingSortingCollector}.
+   *
+   * @param in the collector to wrap
+   * @param sort the sort of the wrapped collector
+   * @param numDocsToCollect the number of documents to collect
+   *        on each sorted segment
+   */
+  public EarlyTerminatingSortingCollector(Collector in, Sort sort, int numDocsToCollect) {
+    if (numDocsToCollect <= 0) {
+      throw new IllegalArgumentException("numDocsToCollect must always be > 0, got " + numDocsToCollect);
+    }
+    this.in = in;
+    this.sort = sort;
+    this.numDocsToCollect = numDocsToCollect;
+  }
+
+  @Override
+  public void setScorer(Scorer scorer) throws IOException {
+    in.setScorer(scorer);
+  }
+
+  @Override
+  public void collect(int doc) throws IOException {
+    in.collect(doc);
+    if (++segmentTotalCollect >= numDocsToCollect && segmentSorted) {
+      terminatedEarly = true;
+      throw new CollectionTerminatedException();
+    }
+  }
+
+  @Override
+  public void setNextReader(IndexReader reader, int docBase) throws IOException {
+    in.setNextReader(reader, docBase);
+    segmentSorted = SortingMergePolicy.isSorted(reader, sort);
+    segmentTotalCollect = 0;
+  }
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    return !segmentSorted && in.acceptsDocsOutOfOrder();
+  }
+
+  /** Returns true if the collection of a segment was
+   *  terminated early, in which case the wrapped collector
+   *  did not see all the matching documents. */
+  public boolean terminatedEarly() {
+    return terminatedEarly;
+  }
+}
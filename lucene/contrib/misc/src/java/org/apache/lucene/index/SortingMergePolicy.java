@@ -0,0 +1,586 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.SorterTemplate;
+
+/** A {@link MergePolicy} that sorts the documents of the
+ * segments it merges by a {@link Sort}. The segments to merge
+ * are picked by the wrapped {@code MergePolicy}; this policy
+ * only renumbers the documents of the merged segment, so
+ * that both stored fields and postings follow the sort order,
+ * and records the sort in the diagnostics of the segment.
+ *
+ * <p>Newly flushed segments are not sorted, only merged
+ * ones. {@link #isSorted} tells whether a segment is sorted,
+ * which {@link EarlyTerminatingSortingCollector} uses to stop
+ * collecting a sorted segment once it has enough hits.
+ *
+ * <p>The sort may only use fields: sorting by score or by
+ * document number is rejected. Ties are broken by the order
+ * of the documents before the merge.
+ *
+ * <p><b>NOTE</b>: this policy is unaware of documents added
+ * atomically via {@link IndexWriter#addDocuments}, which means
+ * it can break up such document groups.
+ *
+ * <p><b>NOTE</b>: the postings of each term are buffered in
+ * RAM while they are merged.
+ *
+ * @lucene.experimental
+ */
+public class SortingMergePolicy extends MergePolicy {
+
+  /** The key under which the sort of a merged segment is
+   *  recorded in its diagnostics. */
+  public static final String SORTER_ID_PROP = "sorter";
+
+  protected final MergePolicy base;
+  private final Sort sort;
+  private final String sortDescription;
+
+  /** Wrap the given {@link MergePolicy} so that the segments
+   *  it merges are sorted by <code>sort</code>. */
+  public SortingMergePolicy(MergePolicy base, Sort sort) {
+    for (SortField field : sort.getSort()) {
+      if (field.getType() == SortField.SCORE || field.getType() == SortField.DOC) {
+        throw new IllegalArgumentException("cannot sort the merged segments by " + field);
+      }
+    }
+    this.base = base;
+    this.sort = sort;
+    this.sortDescription = describe(sort);
+  }
+
+  /** Describes the order of <code>sort</code> by the field,
+   *  type, locale and direction of each of its {@link SortField}s,
+   *  so that equal orders are described the same way in any JVM:
+   *  unlike {@link Sort#toString}, which prints a custom
+   *  {@link org.apache.lucene.search.FieldComparatorSource} with its identity hash. A
+   *  custom order is identified by the class of its source, and
+   *  the string types that only differ in how they load the
+   *  terms all describe the same order. */
+  static String describe(Sort sort) {
+    final StringBuilder buffer = new StringBuilder();
+    for (SortField field : sort.getSort()) {
+      if (buffer.length() > 0) {
+        buffer.append(',');
+      }
+      buffer.append(field.getField()).append(':');
+      switch (field.getType()) {
+        case SortField.STRING:
+        case SortField.STRING_VAL:
+        case SortField.STRING_PACKED:
+          buffer.append("string");
+          break;
+        case SortField.CUSTOM:
+          buffer.append("custom(").append(field.getComparatorSource().getClass().getName()).append(')');
+          break;
+        default:
+          buffer.append(field.getType());
+      }
+      if (field.getLocale() != null) {
+        buffer.append('(').append(field.getLocale()).append(')');
+      }
+      if (field.getReverse()) {
+        buffer.append('!');
+      }
+    }
+    return buffer.toString();
+  }
+
+  /** Returns the sort of the merged segments. */
+  public Sort getSort() {
+    return sort;
+  }
+
+  /** Returns true if <code>reader</code> is a segment whose
+   *  documents were sorted by this policy, by <code>sort</code>
+   *  or by a sort that starts with the fields of
+   *  <code>sort</code>. Readers that wrap a segment with a
+   *  {@link FilterIndexReader} are unwrapped. */
+  public static boolean isSorted(IndexReader reader, Sort sort) {
+    while (reader instanceof FilterIndexReader) {
+      reader = ((FilterIndexReader) reader).in;
+    }
+    if (sort == null || !(reader instanceof SegmentReader)) {
+      return false;
+    }
+    final Map<String,String> diagnostics = ((SegmentReader) reader).getSegmentInfo().getDiagnostics();
+    final String sorter = diagnostics == null ? null : diagnostics.get(SORTER_ID_PROP);
+    if (sorter == null) {
+      return false;
+    }
+    final String description = describe(sort);
+    return sorter.equals(description) || sorter.startsWith(description + ",");
+  }
+
+  private MergeSpecification sortedMergeSpecification(MergeSpecification specification) {
+    if (specification == null) {
+      return null;
+    }
+    final MergeSpecification sortingSpec = new MergeSpecification();
+    for (OneMerge merge : specification.merges) {
+      sortingSpec.add(new SortingOneMerge(merge.segments));
+    }
+    return sortingSpec;
+  }
+
+  @Override
+  public void setIndexWriter(IndexWriter writer) {
+    super.setIndexWriter(writer);
+    base.setIndexWriter(writer);
+  }
+
+  @Override
+  public MergeSpecification findMerges(SegmentInfos segmentInfos) throws CorruptIndexException, IOException {
+    return sortedMergeSpecification(base.findMerges(segmentInfos));
+  }
+
+  @Override
+  public MergeSpecification findMergesForOptimize(SegmentInfos segmentInfos, int maxSegmentCount, Map<SegmentInfo,Boolean> segmentsToOptimize) throws CorruptIndexException, IOException {
+    return sortedMergeSpecification(base.findMergesForOptimize(segmentInfos, maxSegmentCount, segmentsToOptimize));
+  }
+
+  @Override
+  public MergeSpecification findMergesToExpungeDeletes(SegmentInfos segmentInfos) throws CorruptIndexException, IOException {
+    return sortedMergeSpecification(base.findMergesToExpungeDeletes(segmentInfos));
+  }
+
+  @Override
+  public boolean useCompoundFile(SegmentInfos segments, SegmentInfo newSegment) throws IOException {
+    return base.useCompoundFile(segments, newSegment);
+  }
+
+  @Override
+  public void close() {
+    base.close();
+  }
+
+  @Override
+  public String toString() {
+    return "[" + getClass().getSimpleName() + "->" + base + " sort=" + sort + "]";
+  }
+
+  /** A merge that presents the live documents of the merged
+   *  segments to the merger in sort order. */
+  private class SortingOneMerge extends OneMerge {
+
+    // the new number of each live document, numbered in order
+    private int[] ordToNew;
+
+    SortingOneMerge(List<SegmentInfo> segments) {
+      super(segments);
+    }
+
+    @Override
+    public List<IndexReader> getMergeReaders() throws IOException {
+      final List<IndexReader> readers = super.getMergeReaders();
+      if (readers.isEmpty()) {
+        ordToNew = new int[0];
+        return readers;
+      }
+      // the comparators seek terms, the merge readers were opened without terms index
+      final int termsIndexDivisor = Math.max(1, writer.get().getConfig().getReaderTermsIndexDivisor());
+      for (SegmentReader clone : readerClones) {
+        clone.loadTermsIndex(termsIndexDivisor);
+      }
+      final MultiReader multiReader = new MultiReader(readers.toArray(new IndexReader[readers.size()]), true);
+      final int numDocs = multiReader.numDocs();
+
+      // the document each live document is, and the sort values of it
+      final int[] oldDocs = new int[numDocs];
+      final SortField[] fields = sort.getSort();
+      final FieldComparator<?>[] comparators = new FieldComparator<?>[fields.length];
+      final int[] reverseMul = new int[fields.length];
+      for (int i = 0; i < fields.length; i++) {
+        comparators[i] = fields[i].getComparator(numDocs, i);
+        reverseMul[i] = fields[i].getReverse() ? -1 : 1;
+      }
+      int ord = 0;
+      int docBase = 0;
+      for (IndexReader reader : readers) {
+        for (FieldComparator<?> comparator : comparators) {
+          comparator.setNextReader(reader, docBase);
+        }
+        final int maxDoc = reader.maxDoc();
+        for (int doc = 0; doc < maxDoc; doc++) {
+          if (!reader.isDeleted(doc)) {
+            for (FieldComparator<?> comparator : comparators) {
+              comparator.copy(ord, doc);
+            }
+            oldDocs[ord++] = docBase + doc;
+          }
+        }
+        docBase += maxDoc;
+      }
+      assert ord == numDocs;
+
+      final int[] newToOrd = new int[numDocs];
+      for (int i = 0; i < numDocs; i++) {
+        newToOrd[i] = i;
+      }
+      new SorterTemplate() {
+        private int pivot;
+
+        private int compareOrds(int ord1, int ord2) {
+          for (int i = 0; i < comparators.length; i++) {
+            final int c = reverseMul[i] * comparators[i].compare(ord1, ord2);
+            if (c != 0) {
+              return c;
+            }
+          }
+          return ord1 < ord2 ? -1 : (ord1 == ord2 ? 0 : 1);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+          final int tmp = newToOrd[i];
+          newToOrd[i] = newToOrd[j];
+          newToOrd[j] = tmp;
+        }
+
+        @Override
+        protected int compare(int i, int j) {
+          return compareOrds(newToOrd[i], newToOrd[j]);
+        }
+
+        @Override
+        protected void setPivot(int i) {
+          pivot = newToOrd[i];
+        }
+
+        @Override
+        protected int comparePivot(int j) {
+          return compareOrds(pivot, newToOrd[j]);
+        }
+      }.quickSort(0, numDocs - 1);
+
+      ordToNew = new int[numDocs];
+      final int[] newToOld = new int[numDocs];
+      final int[] oldToNew = new int[multiReader.maxDoc()];
+      Arrays.fill(oldToNew, -1);
+      for (int newDoc = 0; newDoc < numDocs; newDoc++) {
+        final int oldOrd = newToOrd[newDoc];
+        ordToNew[oldOrd] = newDoc;
+        newToOld[newDoc] = oldDocs[oldOrd];
+        oldToNew[oldDocs[oldOrd]] = newDoc;
+      }
+
+      final Map<String,String> diagnostics = new HashMap<String,String>(info.getDiagnostics());
+      diagnostics.put(SORTER_ID_PROP, sortDescription);
+      info.setDiagnostics(diagnostics);
+
+      return Arrays.<IndexReader>asList(new SortingReader(multiReader, readers.get(0).directory(), oldToNew, newToOld));
+    }
+
+    @Override
+    public int getMergedDocID(int docID) {
+      return ordToNew[docID];
+    }
+  }
+
+  /** A view of the live documents of a reader, renumbered by
+   *  <code>oldToNew</code>. The wrapped reader is never closed
+   *  by this view. */
+  private static class SortingReader extends FilterIndexReader {
+
+    private final Directory dir;
+    private final int[] oldToNew;
+    private final int[] newToOld;
+
+    SortingReader(IndexReader in, Directory dir, int[] oldToNew, int[] newToOld) {
+      super(in);
+      this.dir = dir;
+      this.oldToNew = oldToNew;
+      this.newToOld = newToOld;
+    }
+
+    @Override
+    public IndexReader[] getSequentialSubReaders() {
+      return null;
+    }
+
+    @Override
+    public Directory directory() {
+      return dir;
+    }
+
+    @Override
+    public int numDocs() {
+      return newToOld.length;
+    }
+
+    @Override
+    public int maxDoc() {
+      return newToOld.length;
+    }
+
+    @Override
+    public boolean hasDeletions() {
+      return false;
+    }
+
+    @Override
+    public boolean isDeleted(int n) {
+      return false;
+    }
+
+    @Override
+    public Document document(int n, FieldSelector fieldSelector) throws CorruptIndexException, IOException {
+      return in.document(newToOld[n], fieldSelector);
+    }
+
+    @Override
+    public TermFreqVector[] getTermFreqVectors(int docNumber) throws IOException {
+      return in.getTermFreqVectors(newToOld[docNumber]);
+    }
+
+    @Override
+    public TermFreqVector getTermFreqVector(int docNumber, String field) throws IOException {
+      return in.getTermFreqVector(newToOld[docNumber], field);
+    }
+
+    @Override
+    public void getTermFreqVector(int docNumber, String field, TermVectorMapper mapper) throws IOException {
+      in.getTermFreqVector(newToOld[docNumber], field, mapper);
+    }
+
+    @Override
+    public void getTermFreqVector(int docNumber, TermVectorMapper mapper) throws IOException {
+      in.getTermFreqVector(newToOld[docNumber], mapper);
+    }
+
+    @Override
+    public byte[] norms(String field) throws IOException {
+      if (!in.hasNorms(field)) {
+        return null;
+      }
+      final byte[] norms = new byte[newToOld.length];
+      norms(field, norms, 0);
+      return norms;
+    }
+
+    @Override
+    public void norms(String field, byte[] norms, int offset) throws IOException {
+      final byte[] oldNorms = new byte[in.maxDoc()];
+      in.norms(field, oldNorms, 0);
+      for (int newDoc = 0; newDoc < newToOld.length; newDoc++) {
+        norms[offset + newDoc] = oldNorms[newToOld[newDoc]];
+      }
+    }
+
+    @Override
+    protected void doSetNorm(int d, String f, byte b) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doDelete(int n) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doUndeleteAll() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TermDocs termDocs() throws IOException {
+      return new SortingTermPositions(in.termDocs(), oldToNew, false);
+    }
+
+    @Override
+    public TermDocs termDocs(Term term) throws IOException {
+      final TermDocs termDocs = termDocs();
+      termDocs.seek(term);
+      return termDocs;
+    }
+
+    @Override
+    public TermPositions termPositions() throws IOException {
+      return new SortingTermPositions(in.termPositions(), oldToNew, true);
+    }
+  }
+
+  /** Buffers the postings of a term and replays them in the
+   *  order of the new document numbers. */
+  private static class SortingTermPositions implements TermPositions {
+
+    private final TermDocs in;
+    private final int[] oldToNew;
+    private final boolean withPositions;
+
+    // per document of the term: new doc, freq, first position
+    private int[] docs = new int[8];
+    private int[] freqs = new int[8];
+    private int[] posStarts = new int[8];
+    // per position: position, payload start and length
+    private int[] positions = new int[8];
+    private int[] payloadStarts = new int[8];
+    private int[] payloadLengths = new int[8];
+    private byte[] payloads = new byte[8];
+    // new doc in the upper bits, index of the document in the lower ones
+    private long[] order = new long[8];
+
+    private int count;
+    private int upto;
+    private int current;
+    private int posUpto;
+
+    SortingTermPositions(TermDocs in, int[] oldToNew, boolean withPositions) {
+      this.in = in;
+      this.oldToNew = oldToNew;
+      this.withPositions = withPositions;
+    }
+
+    public void seek(Term term) throws IOException {
+      in.seek(term);
+      load();
+    }
+
+    public void seek(TermEnum termEnum) throws IOException {
+      in.seek(termEnum);
+      load();
+    }
+
+    private void load() throws IOException {
+      count = 0;
+      int numPositions = 0;
+      int payloadUpto = 0;
+      while (in.next()) {
+        final int newDoc = oldToNew[in.doc()];
+        assert newDoc != -1;
+        final int freq = in.freq();
+        if (count == docs.length) {
+          docs = ArrayUtil.grow(docs, count + 1);
+          freqs = ArrayUtil.grow(freqs, count + 1);
+          posStarts = ArrayUtil.grow(posStarts, count + 1);
+        }
+        if (count == order.length) {
+          order = ArrayUtil.grow(order, count + 1);
+        }
+        docs[count] = newDoc;
+        freqs[count] = freq;
+        posStarts[count] = numPositions;
+        order[count] = ((long) newDoc) << 32 | count;
+        count++;
+
+        if (withPositions) {
+          final TermPositions termPositions = (TermPositions) in;
+          if (numPositions + freq > positions.length) {
+            positions = ArrayUtil.grow(positions, numPositions + freq);
+            payloadStarts = ArrayUtil.grow(payloadStarts, numPositions + freq);
+            payloadLengths = ArrayUtil.grow(payloadLengths, numPositions + freq);
+          }
+          for (int i = 0; i < freq; i++) {
+            positions[numPositions] = termPositions.nextPosition();
+            final int payloadLength = termPositions.isPayloadAvailable() ? termPositions.getPayloadLength() : 0;
+            if (payloadLength > 0) {
+              if (payloadUpto + payloadLength > payloads.length) {
+                payloads = ArrayUtil.grow(payloads, payloadUpto + payloadLength);
+              }
+              termPositions.getPayload(payloads, payloadUpto);
+            }
+            payloadStarts[numPositions] = payloadUpto;
+            payloadLengths[numPositions] = payloadLength;
+            payloadUpto += payloadLength;
+            numPositions++;
+          }
+        }
+      }
+      Arrays.sort(order, 0, count);
+      upto = -1;
+    }
+
+    public boolean next() throws IOException {
+      if (++upto < count) {
+        current = (int) order[upto];
+        posUpto = posStarts[current] - 1;
+        return true;
+      }
+      return false;
+    }
+
+    public int doc() {
+      return docs[current];
+    }
+
+    public int freq() {
+      return freqs[current];
+    }
+
+    public int read(int[] docs, int[] freqs) throws IOException {
+      int i = 0;
+      while (i < docs.length && next()) {
+        docs[i] = doc();
+        freqs[i] = freq();
+        i++;
+      }
+      return i;
+    }
+
+    public boolean skipTo(int target) throws IOException {
+      while (next()) {
+        if (doc() >= target) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public int nextPosition() throws IOException {
+      return positions[++posUpto];
+    }
+
+    public int getPayloadLength() {
+      return payloadLengths[posUpto];
+    }
+
+    public byte[] getPayload(byte[] data, int offset) throws IOException {
+      final int length = payloadLengths[posUpto];
+      if (data == null || data.length - offset < length) {
+        data = new byte[length];
+        offset = 0;
+      }
+      System.arraycopy(payloads, payloadStarts[posUpto], data, offset, length);
+      return data;
+    }
+
+    public boolean isPayloadAvailable() {
+      return payloadLengths[posUpto] > 0;
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
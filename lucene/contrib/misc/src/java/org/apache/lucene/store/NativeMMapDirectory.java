@@ -0,0 +1,174 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexFileNames;
+
+/**
+ * A {@link MMapDirectory} that tells the OS how each mapped
+ * file will be accessed, and can load small files into RAM
+ * as soon as they are opened, so that a freshly started
+ * searcher does not warm up one page fault at a time.
+ *
+ * <p>The access pattern hints are given with madvise,
+ * through the JNI helpers of {@link NativePosixUtil}: by
+ * default {@link NativePosixUtil#RANDOM} for the terms
+ * dictionary and postings (.tii, .tis, .frq and .prx), and
+ * {@link NativePosixUtil#SEQUENTIAL} for all files read by
+ * merges (see {@link #setMergeAdvice}).  Use {@link
+ * #setAdvice} to change the hint of an extension.  Note
+ * that the files of a compound segment share the hint of
+ * .cfs.  If NativePosixUtil.cpp was not compiled for your
+ * platform (see {@link #NATIVE_SUPPORTED}), no hints are
+ * given.</p>
+ *
+ * <p>Files no larger than {@link #setPreloadMaxFileSize}
+ * are loaded with {@link MappedByteBuffer#load}, which
+ * works without the native library too.</p>
+ *
+ * @lucene.experimental
+ */
+public class NativeMMapDirectory extends MMapDirectory {
+
+  /**
+   * <code>true</code> if the NativePosixUtil library could
+   * be loaded, so that access pattern hints can be given.
+   */
+  public static final boolean NATIVE_SUPPORTED;
+  static {
+    boolean v;
+    try {
+      Class.forName(NativePosixUtil.class.getName());
+      v = true;
+    } catch (LinkageError e) {
+      v = false;
+    } catch (ClassNotFoundException e) {
+      v = false;
+    }
+    NATIVE_SUPPORTED = v;
+  }
+
+  private final Map<String,Integer> advice = new HashMap<String,Integer>();
+  private int mergeAdvice = NativePosixUtil.SEQUENTIAL;
+  private long preloadMaxFileSize;
+
+  /** Create a new NativeMMapDirectory for the named location.
+   *
+   * @param path the path of the directory
+   * @param lockFactory the lock factory to use, or null for the default
+   * ({@link NativeFSLockFactory});
+   * @throws IOException
+   */
+  public NativeMMapDirectory(File path, LockFactory lockFactory) throws IOException {
+    super(path, lockFactory);
+    advice.put(IndexFileNames.TERMS_INDEX_EXTENSION, NativePosixUtil.RANDOM);
+    advice.put(IndexFileNames.TERMS_EXTENSION, NativePosixUtil.RANDOM);
+    advice.put(IndexFileNames.FREQ_EXTENSION, NativePosixUtil.RANDOM);
+    advice.put(IndexFileNames.PROX_EXTENSION, NativePosixUtil.RANDOM);
+  }
+
+  /** Create a new NativeMMapDirectory for the named location and {@link NativeFSLockFactory}.
+   *
+   * @param path the path of the directory
+   * @throws IOException
+   */
+  public NativeMMapDirectory(File path) throws IOException {
+    this(path, null);
+  }
+
+  /** Sets the madvise hint (one of the constants of {@link
+   *  NativePosixUtil}, except NOREUSE) for the files with
+   *  this extension, when they are not read by a merge. */
+  public synchronized void setAdvice(String extension, int advice) {
+    checkAdvice(advice);
+    this.advice.put(extension, advice);
+  }
+
+  /** Returns the madvise hint for the files with this
+   *  extension; {@link NativePosixUtil#NORMAL} unless
+   *  changed with {@link #setAdvice}. */
+  public synchronized int getAdvice(String extension) {
+    final Integer v = advice.get(extension);
+    return v == null ? NativePosixUtil.NORMAL : v.intValue();
+  }
+
+  /** Sets the madvise hint for all files read by merges,
+   *  ie opened with {@link
+   *  BufferedIndexInput#MERGE_BUFFER_SIZE}.  Default is
+   *  {@link NativePosixUtil#SEQUENTIAL}. */
+  public synchronized void setMergeAdvice(int advice) {
+    checkAdvice(advice);
+    mergeAdvice = advice;
+  }
+
+  /** @see #setMergeAdvice */
+  public synchronized int getMergeAdvice() {
+    return mergeAdvice;
+  }
+
+  /** Files of at most this many bytes are loaded into RAM
+   *  when they are opened, unless for a merge.  0 (the
+   *  default) disables preloading. */
+  public synchronized void setPreloadMaxFileSize(long bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("bytes must be >= 0 (got " + bytes + ")");
+    }
+    preloadMaxFileSize = bytes;
+  }
+
+  /** @see #setPreloadMaxFileSize */
+  public synchronized long getPreloadMaxFileSize() {
+    return preloadMaxFileSize;
+  }
+
+  private static void checkAdvice(int advice) {
+    if (advice < NativePosixUtil.NORMAL || advice > NativePosixUtil.DONTNEED) {
+      throw new IllegalArgumentException("invalid advice " + advice);
+    }
+  }
+
+  @Override
+  protected void prepareMapping(String name, int bufferSize, MappedByteBuffer buffer) throws IOException {
+    final boolean merging = bufferSize == BufferedIndexInput.MERGE_BUFFER_SIZE;
+    final int advice;
+    final long preloadMaxFileSize;
+    synchronized(this) {
+      advice = merging ? mergeAdvice : getAdvice(FileSwitchDirectory.getExtension(name));
+      preloadMaxFileSize = this.preloadMaxFileSize;
+    }
+
+    final boolean preload = !merging && buffer.capacity() <= preloadMaxFileSize && fileLength(name) <= preloadMaxFileSize;
+
+    if (NATIVE_SUPPORTED) {
+      if (preload) {
+        NativePosixUtil.madvise(buffer, NativePosixUtil.WILLNEED);
+      } else if (advice != NativePosixUtil.NORMAL) {
+        NativePosixUtil.madvise(buffer, advice);
+      }
+    }
+    if (preload) {
+      buffer.load();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestEarlyTerminatingSortingCollector extends LuceneTestCase {
+
+  public void testTerminatedEarly() throws Exception {
+    final Sort sort = new Sort(new SortField("num", SortField.INT, random.nextBoolean()));
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random));
+    iwc.setMergePolicy(new SortingMergePolicy(newLogMergePolicy(), sort));
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random, 10, 50));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(500);
+    for (int id = 0; id < numDocs; id++) {
+      Document doc = new Document();
+      doc.add(newField("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(newField("num", Integer.toString(random.nextInt(100)), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+      doc.add(newField("body", random.nextBoolean() ? "a" : "b", Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+      w.addDocument(doc);
+      if (random.nextInt(20) == 0) {
+        w.deleteDocuments(new Term("id", Integer.toString(random.nextInt(id + 1))));
+      }
+    }
+    w.optimize(_TestUtil.nextInt(random, 1, 3));
+    w.deleteDocuments(new Term("id", Integer.toString(random.nextInt(numDocs))));
+    // a last flushed segment, which is not sorted
+    for (int id = numDocs; id < numDocs + 10; id++) {
+      Document doc = new Document();
+      doc.add(newField("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(newField("num", Integer.toString(random.nextInt(100)), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+      doc.add(newField("body", "a", Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+      w.addDocument(doc);
+    }
+    w.close();
+
+    IndexReader reader = IndexReader.open(dir, true);
+    boolean anySorted = false;
+    for (IndexReader segment : reader.getSequentialSubReaders()) {
+      anySorted |= SortingMergePolicy.isSorted(segment, sort);
+    }
+    assertTrue(anySorted);
+
+    IndexSearcher searcher = new IndexSearcher(reader);
+    boolean anyTerminatedEarly = false;
+    for (int iter = 0; iter < 20; iter++) {
+      final Query query = random.nextBoolean() ? new MatchAllDocsQuery() : new TermQuery(new Term("body", "a"));
+      final int numHits = 1 + random.nextInt(50);
+      final boolean fillFields = random.nextBoolean();
+      final TopFieldCollector expectedCollector = TopFieldCollector.create(sort, numHits, fillFields, false, false, false);
+      searcher.search(query, expectedCollector);
+      final TopFieldCollector collector = TopFieldCollector.create(sort, numHits, fillFields, false, false, false);
+      final EarlyTerminatingSortingCollector earlyTerminating = new EarlyTerminatingSortingCollector(collector, sort, numHits);
+      searcher.search(query, earlyTerminating);
+
+      final TopDocs expected = expectedCollector.topDocs();
+      final TopDocs actual = collector.topDocs();
+      assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+      for (int i = 0; i < expected.scoreDocs.length; i++) {
+        final ScoreDoc expectedDoc = expected.scoreDocs[i];
+        assertEquals(expectedDoc.doc, actual.scoreDocs[i].doc);
+      }
+      assertTrue(actual.totalHits <= expected.totalHits);
+      if (actual.totalHits < expected.totalHits) {
+        assertTrue(earlyTerminating.terminatedEarly());
+      }
+      anyTerminatedEarly |= earlyTerminating.terminatedEarly();
+    }
+    // the optimized segments hold more than numHits documents
+    assertTrue(anyTerminatedEarly);
+    searcher.close();
+    reader.close();
+    FieldCache.DEFAULT.purgeAllCaches();
+    dir.close();
+  }
+
+  public void testUnsortedSegments() throws Exception {
+    final Sort sort = new Sort(new SortField("num", SortField.INT));
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random));
+    iwc.setMergePolicy(new SortingMergePolicy(newLogMergePolicy(), sort));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    for (int id = 0; id < 100; id++) {
+      Document doc = new Document();
+      doc.add(newField("num", Integer.toString(random.nextInt(100)), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+      w.addDocument(doc);
+    }
+    w.optimize();
+    w.close();
+
+    IndexReader reader = IndexReader.open(dir, true);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    // the segment is sorted by "num", not in reverse
+    final Sort reverse = new Sort(new SortField("num", SortField.INT, true));
+    final TopFieldCollector collector = TopFieldCollector.create(reverse, 5, false, false, false, false);
+    final EarlyTerminatingSortingCollector earlyTerminating = new EarlyTerminatingSortingCollector(collector, reverse, 5);
+    searcher.search(new MatchAllDocsQuery(), earlyTerminating);
+    assertFalse(earlyTerminating.terminatedEarly());
+    assertEquals(100, collector.getTotalHits());
+    searcher.close();
+    reader.close();
+    FieldCache.DEFAULT.purgeAllCaches();
+    dir.close();
+  }
+}
@@ -0,0 +1,379 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldComparatorSource;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestSortingMergePolicy extends LuceneTestCase {
+
+  private static final String[] WORDS = {"a", "b", "c", "d", "e", "f"};
+
+  private Document randomDocument(int id) {
+    Document doc = new Document();
+    doc.add(newField("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    doc.add(newField("num", Integer.toString(random.nextInt(20)), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+    doc.add(newField("str", _TestUtil.randomSimpleString(random), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+    StringBuilder body = new StringBuilder();
+    for (int i = random.nextInt(10); i >= 0; i--) {
+      body.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+    }
+    doc.add(newField("body", body.toString(), Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.WITH_POSITIONS_OFFSETS));
+    return doc;
+  }
+
+  private Sort randomSort() {
+    switch (random.nextInt(3)) {
+      case 0: return new Sort(new SortField("num", SortField.INT));
+      case 1: return new Sort(new SortField("num", SortField.INT, true));
+      default: return new Sort(new SortField("str", SortField.STRING), new SortField("num", SortField.INT));
+    }
+  }
+
+  public void testSortedMerge() throws Exception {
+    // an unsorted index of several segments
+    Directory unsortedDir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random));
+    iwc.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    IndexWriter w = new IndexWriter(unsortedDir, iwc);
+    int numDocs = atLeast(200);
+    for (int id = 0; id < numDocs; id++) {
+      w.addDocument(randomDocument(id));
+      if (random.nextInt(30) == 0) {
+        w.commit();
+      }
+    }
+    for (int i = random.nextInt(20); i >= 0; i--) {
+      w.deleteDocuments(new Term("id", Integer.toString(random.nextInt(numDocs))));
+    }
+    w.close();
+
+    // the same segments, merged into a sorted one
+    Directory sortedDir = newDirectory(unsortedDir);
+    Sort sort = randomSort();
+    iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random));
+    iwc.setMergePolicy(new SortingMergePolicy(newLogMergePolicy(), sort));
+    w = new IndexWriter(sortedDir, iwc);
+    w.optimize();
+    w.close();
+
+    IndexReader unsorted = IndexReader.open(unsortedDir, true);
+    IndexReader sorted = IndexReader.open(sortedDir, true);
+    assertEquals(1, sorted.getSequentialSubReaders().length);
+    IndexReader segment = sorted.getSequentialSubReaders()[0];
+    assertTrue(SortingMergePolicy.isSorted(segment, sort));
+    assertTrue(SortingMergePolicy.isSorted(segment, new Sort(sort.getSort()[0])));
+    assertFalse(SortingMergePolicy.isSorted(segment, new Sort(new SortField("id", SortField.STRING))));
+    assertEquals(unsorted.numDocs(), sorted.numDocs());
+    assertFalse(sorted.hasDeletions());
+
+    assertSorted(segment, sort);
+    assertSameDocuments(unsorted, sorted);
+    FieldCache.DEFAULT.purgeAllCaches();
+
+    unsorted.close();
+    sorted.close();
+    unsortedDir.close();
+    sortedDir.close();
+  }
+
+  /** Checks the documents of <code>reader</code> are in the order of <code>sort</code>. */
+  private void assertSorted(IndexReader reader, Sort sort) throws IOException {
+    final int[] nums = FieldCache.DEFAULT.getInts(reader, "num");
+    final String[] strs = FieldCache.DEFAULT.getStrings(reader, "str");
+    final boolean byStr = sort.getSort()[0].getType() == SortField.STRING;
+    final boolean reverse = sort.getSort()[0].getReverse();
+    for (int doc = 1; doc < reader.maxDoc(); doc++) {
+      int c = 0;
+      if (byStr) {
+        c = strs[doc - 1].compareTo(strs[doc]);
+      }
+      if (c == 0) {
+        c = nums[doc - 1] < nums[doc] ? -1 : (nums[doc - 1] == nums[doc] ? 0 : 1);
+        if (reverse) c = -c;
+      }
+      assertTrue("doc " + doc + " is not sorted", c <= 0);
+    }
+  }
+
+  private static int[] docsById(IndexReader reader, int maxId) throws IOException {
+    int[] docs = new int[maxId];
+    Arrays.fill(docs, -1);
+    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+      if (!reader.isDeleted(doc)) {
+        docs[Integer.parseInt(reader.document(doc).get("id"))] = doc;
+      }
+    }
+    return docs;
+  }
+
+  /** Checks both readers hold the same documents, postings, norms and term vectors. */
+  private void assertSameDocuments(IndexReader expected, IndexReader actual) throws IOException {
+    final int[] expectedDocs = docsById(expected, expected.maxDoc());
+    final int[] actualDocs = docsById(actual, expected.maxDoc());
+    final int[] expectedToActual = new int[expected.maxDoc()];
+    Arrays.fill(expectedToActual, -1);
+    for (int id = 0; id < expectedDocs.length; id++) {
+      if (expectedDocs[id] != -1) {
+        assertTrue(actualDocs[id] != -1);
+        expectedToActual[expectedDocs[id]] = actualDocs[id];
+      }
+    }
+
+    final byte[] expectedNorms = expected.norms("body");
+    final byte[] actualNorms = actual.norms("body");
+    for (int doc = 0; doc < expected.maxDoc(); doc++) {
+      final int actualDoc = expectedToActual[doc];
+      if (actualDoc == -1) continue;
+      assertEquals(expected.document(doc).get("body"), actual.document(actualDoc).get("body"));
+      assertEquals(expectedNorms[doc], actualNorms[actualDoc]);
+      final TermPositionVector expectedVector = (TermPositionVector) expected.getTermFreqVector(doc, "body");
+      final TermPositionVector actualVector = (TermPositionVector) actual.getTermFreqVector(actualDoc, "body");
+      assertEquals(Arrays.asList(expectedVector.getTerms()), Arrays.asList(actualVector.getTerms()));
+      for (int i = 0; i < expectedVector.size(); i++) {
+        assertTrue(Arrays.equals(expectedVector.getTermPositions(i), actualVector.getTermPositions(i)));
+      }
+    }
+
+    final TermEnum terms = expected.terms();
+    final TermPositions expectedPositions = expected.termPositions();
+    final TermPositions actualPositions = actual.termPositions();
+    while (terms.next()) {
+      final Map<Integer,List<String>> postings = new HashMap<Integer,List<String>>();
+      expectedPositions.seek(terms.term());
+      while (expectedPositions.next()) {
+        postings.put(expectedToActual[expectedPositions.doc()], readPositions(expectedPositions));
+      }
+      actualPositions.seek(terms.term());
+      int lastDoc = -1;
+      int count = 0;
+      while (actualPositions.next()) {
+        assertTrue(actualPositions.doc() > lastDoc);
+        lastDoc = actualPositions.doc();
+        assertEquals("term " + terms.term(), postings.get(lastDoc), readPositions(actualPositions));
+        count++;
+      }
+      assertEquals(postings.size(), count);
+    }
+    terms.close();
+    expectedPositions.close();
+    actualPositions.close();
+  }
+
+  private static List<String> readPositions(TermPositions positions) throws IOException {
+    final List<String> list = new ArrayList<String>();
+    for (int i = positions.freq(); i > 0; i--) {
+      String position = Integer.toString(positions.nextPosition());
+      if (positions.isPayloadAvailable()) {
+        position += ":" + Arrays.toString(positions.getPayload(null, 0));
+      }
+      list.add(position);
+    }
+    return list;
+  }
+
+  /** Orders like {@link SortField#STRING}. Each sort gets its own
+   *  instance, so sorts of the same order differ in {@link Sort#toString}. */
+  private static class StringComparatorSource extends FieldComparatorSource {
+    @Override
+    public FieldComparator<?> newComparator(String fieldname, int numHits, int sortPos, boolean reversed) throws IOException {
+      return new FieldComparator.TermOrdValComparator(numHits, fieldname, sortPos, reversed);
+    }
+  }
+
+  public void testSortedByCustomSource() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random));
+    iwc.setMergePolicy(new SortingMergePolicy(newLogMergePolicy(),
+        new Sort(new SortField("str", new StringComparatorSource()), new SortField("num", SortField.INT, true))));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    int numDocs = atLeast(50);
+    for (int id = 0; id < numDocs; id++) {
+      w.addDocument(randomDocument(id));
+      if (id == numDocs / 2) {
+        w.commit();
+      }
+    }
+    w.optimize();
+    w.close();
+
+    IndexReader reader = IndexReader.open(dir, true);
+    assertEquals(1, reader.getSequentialSubReaders().length);
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    assertTrue(SortingMergePolicy.isSorted(segment, new Sort(new SortField("str", new StringComparatorSource()))));
+    assertTrue(SortingMergePolicy.isSorted(segment,
+        new Sort(new SortField("str", new StringComparatorSource()), new SortField("num", SortField.INT, true))));
+    assertFalse(SortingMergePolicy.isSorted(segment, new Sort(new SortField("str", new StringComparatorSource(), true))));
+    assertFalse(SortingMergePolicy.isSorted(segment,
+        new Sort(new SortField("str", new StringComparatorSource()), new SortField("num", SortField.INT))));
+    assertFalse(SortingMergePolicy.isSorted(segment, new Sort(new SortField("num", SortField.INT, true))));
+    reader.close();
+    dir.close();
+  }
+
+  public void testDescribe() {
+    final String string = SortingMergePolicy.describe(new Sort(new SortField("str", SortField.STRING)));
+    assertEquals(string, SortingMergePolicy.describe(new Sort(new SortField("str", SortField.STRING_VAL))));
+    assertEquals(string, SortingMergePolicy.describe(new Sort(new SortField("str", SortField.STRING_PACKED))));
+    assertFalse(string.equals(SortingMergePolicy.describe(new Sort(new SortField("str", SortField.STRING, true)))));
+    assertFalse(string.equals(SortingMergePolicy.describe(new Sort(new SortField("str", new StringComparatorSource())))));
+    assertFalse(string.equals(SortingMergePolicy.describe(new Sort(new SortField("str", Locale.ENGLISH)))));
+  }
+
+  public void testDeletesDuringMerge() throws Exception {
+    final CountDownLatch sorting = new CountDownLatch(1);
+    final CountDownLatch deleted = new CountDownLatch(1);
+    // sorts by "num", and waits for the deletes before comparing any document
+    final Sort sort = new Sort(new SortField("num", new FieldComparatorSource() {
+      @Override
+      public FieldComparator<?> newComparator(String fieldname, int numHits, int sortPos, boolean reversed) throws IOException {
+        final int[] values = new int[numHits];
+        return new FieldComparator<Integer>() {
+          private int[] currentValues;
+
+          @Override
+          public int compare(int slot1, int slot2) {
+            return values[slot1] < values[slot2] ? -1 : (values[slot1] == values[slot2] ? 0 : 1);
+          }
+
+          @Override
+          public int compareBottom(int doc) {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public void copy(int slot, int doc) {
+            values[slot] = currentValues[doc];
+          }
+
+          @Override
+          public void setBottom(int slot) {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public void setNextReader(IndexReader reader, int docBase) throws IOException {
+            sorting.countDown();
+            try {
+              deleted.await();
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            currentValues = FieldCache.DEFAULT.getInts(reader, "num");
+          }
+
+          @Override
+          public Integer value(int slot) {
+            return Integer.valueOf(values[slot]);
+          }
+        };
+      }
+    }));
+
+    Directory dir = newDirectory();
+    // two segments, that are only merged by optimize
+    IndexWriterConfig iwc = new IndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random));
+    iwc.setMergePolicy(new SortingMergePolicy(new LogDocMergePolicy(), sort));
+    iwc.setMergeScheduler(new ConcurrentMergeScheduler());
+    final IndexWriter w = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(100);
+    for (int id = 0; id < numDocs; id++) {
+      w.addDocument(randomDocument(id));
+      if (id == numDocs / 2) {
+        w.commit();
+      }
+    }
+    w.commit();
+
+    final Throwable[] failure = new Throwable[1];
+    Thread optimizer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          w.optimize();
+        } catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    };
+    optimizer.start();
+    sorting.await();
+    final boolean[] isDeleted = new boolean[numDocs];
+    for (int i = 0; i < numDocs / 5; i++) {
+      int id = random.nextInt(numDocs);
+      isDeleted[id] = true;
+      w.deleteDocuments(new Term("id", Integer.toString(id)));
+    }
+    // applies the deletes to the segments being merged
+    IndexReader.open(w, true).close();
+    deleted.countDown();
+    optimizer.join();
+    assertNull(failure[0]);
+    w.close();
+
+    IndexReader reader = IndexReader.open(dir, true);
+    assertEquals(1, reader.getSequentialSubReaders().length);
+    assertTrue(SortingMergePolicy.isSorted(reader.getSequentialSubReaders()[0], sort));
+    assertTrue(reader.hasDeletions());
+    final int[] nums = FieldCache.DEFAULT.getInts(reader.getSequentialSubReaders()[0], "num");
+    int numDeleted = 0;
+    for (boolean b : isDeleted) {
+      if (b) numDeleted++;
+    }
+    assertEquals(numDocs - numDeleted, reader.numDocs());
+    int lastNum = Integer.MIN_VALUE;
+    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+      if (!reader.isDeleted(doc)) {
+        assertTrue(lastNum <= nums[doc]);
+        lastNum = nums[doc];
+        final int id = Integer.parseInt(reader.document(doc).get("id"));
+        assertFalse("id=" + id + " should be deleted", isDeleted[id]);
+      }
+    }
+    FieldCache.DEFAULT.purgeAllCaches();
+    reader.close();
+    dir.close();
+  }
+
+  public void testRejectsScoreSort() {
+    try {
+      new SortingMergePolicy(newLogMergePolicy(), Sort.RELEVANCE);
+      fail("sorting by score should be rejected");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+}
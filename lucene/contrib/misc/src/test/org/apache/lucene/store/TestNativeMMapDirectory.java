@@ -0,0 +1,103 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestNativeMMapDirectory extends LuceneTestCase {
+
+  public void testDefaults() throws Exception {
+    NativeMMapDirectory dir = new NativeMMapDirectory(_TestUtil.getTempDir("testDefaults"));
+    assertEquals(NativePosixUtil.RANDOM, dir.getAdvice("tis"));
+    assertEquals(NativePosixUtil.RANDOM, dir.getAdvice("frq"));
+    assertEquals(NativePosixUtil.NORMAL, dir.getAdvice("fdt"));
+    assertEquals(NativePosixUtil.SEQUENTIAL, dir.getMergeAdvice());
+    assertEquals(0, dir.getPreloadMaxFileSize());
+    dir.setAdvice("fdt", NativePosixUtil.WILLNEED);
+    assertEquals(NativePosixUtil.WILLNEED, dir.getAdvice("fdt"));
+    try {
+      dir.setAdvice("fdt", NativePosixUtil.NOREUSE);
+      fail("NOREUSE is not supported by madvise");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    dir.close();
+  }
+
+  public void testIndexAndSearch() throws Exception {
+    File path = _TestUtil.getTempDir("testIndexAndSearch");
+    final Set<String> mergeMapped = new HashSet<String>();
+    NativeMMapDirectory dir = new NativeMMapDirectory(path) {
+      @Override
+      protected void prepareMapping(String name, int bufferSize, MappedByteBuffer buffer) throws IOException {
+        super.prepareMapping(name, bufferSize, buffer);
+        if (bufferSize == BufferedIndexInput.MERGE_BUFFER_SIZE) {
+          synchronized(mergeMapped) {
+            mergeMapped.add(name);
+          }
+        }
+      }
+    };
+    dir.setPreloadMaxFileSize(1024*1024);
+    // a small chunk size, to map the larger files in several chunks
+    dir.setMaxChunkSize(1 << 12);
+
+    IndexWriterConfig conf = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)).setMaxBufferedDocs(50)
+      // pooled readers are shared with searches, so merges do
+      // not open them with MERGE_BUFFER_SIZE
+      .setReaderPooling(false);
+    IndexWriter w = new IndexWriter(dir, conf);
+    final int numDocs = atLeast(300);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newField("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(newField("body", "text " + (i % 10), Field.Store.NO, Field.Index.ANALYZED));
+      w.addDocument(doc);
+    }
+    w.optimize();
+    w.close();
+    assertFalse(mergeMapped.isEmpty());
+
+    IndexReader r = IndexReader.open(dir, true);
+    IndexSearcher s = new IndexSearcher(r);
+    assertEquals(numDocs / 10 + (numDocs % 10 > 3 ? 1 : 0), s.search(new TermQuery(new Term("body", "3")), 1).totalHits);
+    TopDocs hits = s.search(new TermQuery(new Term("id", "17")), 1);
+    assertEquals(1, hits.totalHits);
+    assertEquals("17", r.document(hits.scoreDocs[0].doc).get("id"));
+    s.close();
+    r.close();
+    dir.close();
+  }
+}
@@ -17,6 +17,7 @@ package org.apache.lucene.search.regex;
  * limitations under the License.
  */
 
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -24,9 +25,10 @@ import java.util.regex.Pattern;
  *
  * Note that because this implementation currently only returns null from
  * {@link #prefix} that queries using this implementation will enumerate and
- * attempt to {@link #match} each term for the specified field in the index.
+ * attempt to {@link #match} each term for the specified field in the index,
+ * except those skipped with {@link #matchPrefix}.
  */
-public class JavaUtilRegexCapabilities implements RegexCapabilities {
+public class JavaUtilRegexCapabilities implements RegexPrefixMatchCapabilities {
   private Pattern pattern;
   private int flags = 0;
   
@@ -78,6 +80,17 @@ public class JavaUtilRegexCapabilities implements RegexCapabilities {
     return null;
   }
 
+  /**
+   * Matches the first <code>length</code> chars, and tells whether
+   * the match needed to look at the end of them: if it did not, more
+   * chars cannot change the result.
+   */
+  public boolean matchPrefix(String string, int length) {
+    final Matcher matcher = pattern.matcher(string);
+    matcher.region(0, length);
+    return matcher.matches() || matcher.hitEnd();
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -0,0 +1,36 @@
+package org.apache.lucene.search.regex;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Optional extension of {@link RegexCapabilities} for implementations
+ * that can tell when no string starting with some chars matches.
+ * {@link RegexTermEnum} then seeks past all terms starting with the
+ * first chars of a non matching term that no match starts with,
+ * instead of enumerating them.
+ */
+public interface RegexPrefixMatchCapabilities extends RegexCapabilities {
+  /**
+   * @param string
+   * @param length the number of chars of <code>string</code> to test
+   * @return false if no string that starts with the first <code>length</code>
+   *  chars of <code>string</code> matches the pattern last passed to
+   *  {@link #compile}; true if some may.
+   */
+  boolean matchPrefix(String string, int length);
+}
@@ -17,7 +17,7 @@ package org.apache.lucene.search.regex;
  * limitations under the License.
  */
 
-import org.apache.lucene.search.FilteredTermEnum;
+import org.apache.lucene.search.SeekingTermEnum;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 
@@ -28,28 +28,40 @@ import java.io.IOException;
  * specified regular expression term using the specified regular expression
  * implementation.
  * <p>
+ * If the implementation is a {@link RegexPrefixMatchCapabilities}, the
+ * enum seeks past all terms that start with the same chars as a non
+ * matching term, when no match can start with them.
+ * <p>
  * Term enumerations are always ordered by Term.compareTo().  Each term in
  * the enumeration is greater than all that precede it.
  */
 
-public class RegexTermEnum extends FilteredTermEnum {
+public class RegexTermEnum extends SeekingTermEnum {
   private String field = "";
   private String pre = "";
   private boolean endEnum = false;
   private RegexCapabilities regexImpl;
+  private RegexPrefixMatchCapabilities prefixMatchImpl;
 
   public RegexTermEnum(IndexReader reader, Term term, RegexCapabilities regexImpl) throws IOException {
-    super();
+    super(reader, term.field(), compile(regexImpl, term.text()));
     field = term.field();
-    String text = term.text();
     this.regexImpl = regexImpl;
-
-    regexImpl.compile(text);
+    if (regexImpl instanceof RegexPrefixMatchCapabilities) {
+      prefixMatchImpl = (RegexPrefixMatchCapabilities) regexImpl;
+    }
 
     pre = regexImpl.prefix();
     if (pre == null) pre = "";
 
-    setEnum(reader.terms(new Term(term.field(), pre)));
+    initEnum();
+  }
+
+  /** Compiles the pattern and returns its prefix. */
+  private static String compile(RegexCapabilities regexImpl, String text) {
+    regexImpl.compile(text);
+    final String pre = regexImpl.prefix();
+    return pre == null ? "" : pre;
   }
 
   @Override
@@ -57,7 +69,26 @@ public class RegexTermEnum extends FilteredTermEnum {
     if (field == term.field()) {
       String searchText = term.text();
       if (searchText.startsWith(pre)) {
-        return regexImpl.match(searchText);
+        if (regexImpl.match(searchText)) {
+          return true;
+        }
+        if (prefixMatchImpl != null && searchText.length() > pre.length()
+            && !prefixMatchImpl.matchPrefix(searchText, searchText.length())) {
+          // find the fewest chars no match starts with
+          int lo = pre.length() + 1, hi = searchText.length();
+          while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (prefixMatchImpl.matchPrefix(searchText, mid)) {
+              lo = mid + 1;
+            } else {
+              hi = mid;
+            }
+          }
+          if (!seekPast(searchText, hi)) {
+            endEnum = true;
+          }
+        }
+        return false;
       }
     }
     endEnum = true;
@@ -30,6 +30,10 @@ import org.apache.lucene.search.spans.SpanNearQuery;
 import org.apache.lucene.search.spans.SpanQuery;
 import org.apache.lucene.util.LuceneTestCase;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
 public class TestRegexQuery extends LuceneTestCase {
   private IndexSearcher searcher;
   private IndexReader reader;
@@ -104,6 +108,70 @@ public class TestRegexQuery extends LuceneTestCase {
     assertEquals(0, spanRegexQueryNrHits("^q.[aeiou]c.*$", "dog", 5, true));
   }
 
+  /** Compares the terms of random patterns with those of a
+   *  full scan of the terms. */
+  public void testRandomPatterns() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter writer = new RandomIndexWriter(random, dir);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newField(FN, randomText("abc", 8), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    IndexReader reader = writer.getReader();
+    writer.close();
+
+    final String[] parts = new String[] {"a", "b", "c", ".", "[ab]", "[^a]", "(a|bc)", "\\w"};
+    final String[] quantifiers = new String[] {"", "", "", "*", "+", "?", "{2}"};
+    final int numQueries = atLeast(200);
+    for (int i = 0; i < numQueries; i++) {
+      final StringBuilder sb = new StringBuilder();
+      final int numParts = random.nextInt(5);
+      for (int j = 0; j < numParts; j++) {
+        sb.append(parts[random.nextInt(parts.length)]);
+        sb.append(quantifiers[random.nextInt(quantifiers.length)]);
+      }
+      final String regex = sb.toString();
+      final Pattern pattern = Pattern.compile(regex);
+
+      final List<Term> expected = new ArrayList<Term>();
+      TermEnum terms = reader.terms(newTerm(""));
+      do {
+        final Term t = terms.term();
+        if (t == null || t.field() != FN) {
+          break;
+        }
+        if (pattern.matcher(t.text()).matches()) {
+          expected.add(t);
+        }
+      } while (terms.next());
+      terms.close();
+
+      final List<Term> actual = new ArrayList<Term>();
+      final RegexTermEnum regexTerms = new RegexTermEnum(reader, newTerm(regex), new JavaUtilRegexCapabilities());
+      do {
+        final Term t = regexTerms.term();
+        if (t == null) {
+          break;
+        }
+        actual.add(t);
+      } while (regexTerms.next());
+      regexTerms.close();
+      assertEquals("regex=" + regex, expected, actual);
+    }
+    reader.close();
+    dir.close();
+  }
+
+  private String randomText(String chars, int maxLength) {
+    final char[] text = new char[random.nextInt(maxLength + 1)];
+    for (int i = 0; i < text.length; i++) {
+      text[i] = chars.charAt(random.nextInt(chars.length()));
+    }
+    return new String(text);
+  }
+
   public void testEquals() throws Exception {
     RegexQuery query1 = new RegexQuery( newTerm("foo.*"));
     query1.setRegexImplementation(new JakartaRegexpCapabilities());
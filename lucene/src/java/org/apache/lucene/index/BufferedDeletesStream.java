@@ -188,10 +188,12 @@ class BufferedDeletesStream {
 
       if (packet != null && segGen < packet.gen) {
         //System.out.println("  coalesce");
-        if (coalescedDeletes == null) {
-          coalescedDeletes = new CoalescedDeletes();
+        if (!packet.isSegmentPrivate) {
+          if (coalescedDeletes == null) {
+            coalescedDeletes = new CoalescedDeletes();
+          }
+          coalescedDeletes.update(packet);
         }
-        coalescedDeletes.update(packet);
         delIDX--;
       } else if (packet != null && segGen == packet.gen) {
         //System.out.println("  eq");
@@ -228,10 +230,12 @@ class BufferedDeletesStream {
           message("seg=" + info + " segGen=" + segGen + " segDeletes=[" + packet + "]; coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "] delCount=" + delCount + (segAllDeletes ? " 100% deleted" : ""));
         }
 
-        if (coalescedDeletes == null) {
-          coalescedDeletes = new CoalescedDeletes();
+        if (!packet.isSegmentPrivate) {
+          if (coalescedDeletes == null) {
+            coalescedDeletes = new CoalescedDeletes();
+          }
+          coalescedDeletes.update(packet);
         }
-        coalescedDeletes.update(packet);
         delIDX--;
         infosIDX--;
         info.setBufferedDeletesGen(nextGen);
@@ -344,6 +348,10 @@ class BufferedDeletesStream {
       // by re-using the same TermsEnum and seeking only
       // forwards
       assert checkDeleteTerm(term);
+      if (!reader.mayContainTerm(term)) {
+        // the Bloom filter of the field rules the segment out
+        continue;
+      }
       docs.seek(term);
           
       while (docs.next()) {
@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.util.ThreadInterruptedException;
 import org.apache.lucene.util.CollectionUtil;
 
@@ -42,6 +43,17 @@ import java.util.Comparator;
  *  requested then this class will forcefully throttle the
  *  incoming threads by pausing until one more more merges
  *  complete.</p>
+ *
+ *  <p>Optionally, the bytes written by merges can be rate
+ *  limited with {@link #setMaxMergeWriteMBPerSec}, to leave
+ *  IO capacity for searches.  The limit adapts to the merge
+ *  backlog: with no merges waiting, merges write at {@link
+ *  #setMinMergeWriteMBPerSec}; the rate rises linearly to
+ *  the max as merges are paused for lack of threads, and
+ *  the limit is lifted altogether while incoming threads
+ *  are stalled, so that merging can catch up.  Merges
+ *  smaller than {@link #setMinThrottledMergeMB} are never
+ *  limited, so that they finish quickly.</p>
  */ 
 public class ConcurrentMergeScheduler extends MergeScheduler {
 
@@ -63,6 +75,26 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
   // throttling the incoming threads
   private int maxMergeCount = maxThreadCount+2;
 
+  // Max MB/sec merges may write at; 0 means unlimited
+  private double maxMergeWriteMBPerSec;
+
+  // MB/sec merges write at when there is no backlog
+  private double minMergeWriteMBPerSec;
+
+  // Merges smaller than this are not rate limited
+  private double minThrottledMergeMB = 50.0;
+
+  // Shared by all throttled merges
+  private final RateLimiter mergeRateLimiter = new RateLimiter(0.0);
+
+  // Number of merges paused for lack of threads
+  private int pausedMergeCount;
+
+  // Number of incoming threads stalled in merge()
+  private int stalledThreadCount;
+
+  private long totalStallTimeMS;
+
   protected Directory dir;
 
   private volatile boolean closed;
@@ -115,6 +147,113 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     return maxMergeCount;
   }
 
+  /** Sets the max MB/sec merges may write at, when their
+   *  backlog is large; 0 (the default) means merges are
+   *  not rate limited. */
+  public synchronized void setMaxMergeWriteMBPerSec(double mbPerSec) {
+    if (mbPerSec < 0.0) {
+      throw new IllegalArgumentException("mbPerSec must be >= 0 (got " + mbPerSec + ")");
+    }
+    maxMergeWriteMBPerSec = mbPerSec;
+    updateMergeRate();
+  }
+
+  /** @see #setMaxMergeWriteMBPerSec */
+  public synchronized double getMaxMergeWriteMBPerSec() {
+    return maxMergeWriteMBPerSec;
+  }
+
+  /** Sets the MB/sec merges write at when no merges are
+   *  waiting.  0 (the default), or a value above {@link
+   *  #setMaxMergeWriteMBPerSec}, means the max rate is
+   *  always used. */
+  public synchronized void setMinMergeWriteMBPerSec(double mbPerSec) {
+    if (mbPerSec < 0.0) {
+      throw new IllegalArgumentException("mbPerSec must be >= 0 (got " + mbPerSec + ")");
+    }
+    minMergeWriteMBPerSec = mbPerSec;
+    updateMergeRate();
+  }
+
+  /** @see #setMinMergeWriteMBPerSec */
+  public synchronized double getMinMergeWriteMBPerSec() {
+    return minMergeWriteMBPerSec;
+  }
+
+  /** Merges whose estimated size is below this many MB are
+   *  never rate limited.  Default is 50 MB. */
+  public synchronized void setMinThrottledMergeMB(double mb) {
+    if (mb < 0.0) {
+      throw new IllegalArgumentException("mb must be >= 0 (got " + mb + ")");
+    }
+    minThrottledMergeMB = mb;
+  }
+
+  /** @see #setMinThrottledMergeMB */
+  public synchronized double getMinThrottledMergeMB() {
+    return minThrottledMergeMB;
+  }
+
+  /** Returns the MB/sec rate limit merges currently write
+   *  at; 0 means unlimited. */
+  public double getMergeWriteMBPerSec() {
+    return mergeRateLimiter.getMbPerSec();
+  }
+
+  /** Returns the number of merges waiting for a thread,
+   *  plus the number of incoming threads stalled because
+   *  too many merges are pending. */
+  public synchronized int getMergeBacklog() {
+    return pausedMergeCount + stalledThreadCount;
+  }
+
+  /** Returns the total time incoming threads were stalled
+   *  waiting for merges to complete. */
+  public synchronized long getTotalStallTimeMS() {
+    return totalStallTimeMS;
+  }
+
+  /** Returns the total time merge threads were paused by the
+   *  rate limit. */
+  public long getTotalThrottleTimeMS() {
+    return mergeRateLimiter.getTotalPauseNS() / 1000000;
+  }
+
+  /** Returns the total MB written by rate limited merges. */
+  public double getTotalThrottledMB() {
+    return mergeRateLimiter.getTotalBytes() / 1024. / 1024.;
+  }
+
+  // Sets the rate limit from the current backlog
+  private synchronized void updateMergeRate() {
+    final double mbPerSec;
+    if (maxMergeWriteMBPerSec == 0.0 || stalledThreadCount > 0) {
+      mbPerSec = 0.0;
+    } else if (minMergeWriteMBPerSec == 0.0 || minMergeWriteMBPerSec >= maxMergeWriteMBPerSec) {
+      mbPerSec = maxMergeWriteMBPerSec;
+    } else {
+      // the backlog is full when incoming threads are about
+      // to stall:
+      final double fullness = Math.min(1.0, pausedMergeCount / (double) (1+maxMergeCount-maxThreadCount));
+      mbPerSec = minMergeWriteMBPerSec + fullness * (maxMergeWriteMBPerSec - minMergeWriteMBPerSec);
+    }
+    if (mbPerSec != mergeRateLimiter.getMbPerSec()) {
+      if (verbose()) {
+        message("set merge rate limit to " + (mbPerSec == 0.0 ? "unlimited" : mbPerSec + " MB/sec") + "; pausedMerges=" + pausedMergeCount + " stalledThreads=" + stalledThreadCount);
+      }
+      mergeRateLimiter.setMbPerSec(mbPerSec);
+    }
+  }
+
+  /** Returns the rate limiter for a merge, or null if it
+   *  should run unthrottled. */
+  private synchronized RateLimiter getRateLimiter(MergePolicy.OneMerge merge) {
+    if (maxMergeWriteMBPerSec == 0.0 || merge.estimatedMergeBytes < minThrottledMergeMB*1024*1024) {
+      return null;
+    }
+    return mergeRateLimiter;
+  }
+
   /** Return the priority that merge threads run at.  By
    *  default the priority is 1 plus the priority of (ie,
    *  slightly higher priority than) the first thread that
@@ -212,6 +351,9 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
         pri = Math.min(Thread.MAX_PRIORITY, 1+pri);
       }
     }
+
+    pausedMergeCount = Math.max(0, activeMergeCount - maxThreadCount);
+    updateMergeRate();
   }
 
   /**
@@ -319,15 +461,25 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
       synchronized(this) {
         long startStallTime = 0;
-        while (mergeThreadCount() >= 1+maxMergeCount) {
+        if (mergeThreadCount() >= 1+maxMergeCount) {
           startStallTime = System.currentTimeMillis();
           if (verbose()) {
             message("    too many merges; stalling...");
           }
+          stalledThreadCount++;
+          updateMergeRate();
           try {
-            wait();
-          } catch (InterruptedException ie) {
-            throw new ThreadInterruptedException(ie);
+            while (mergeThreadCount() >= 1+maxMergeCount) {
+              try {
+                wait();
+              } catch (InterruptedException ie) {
+                throw new ThreadInterruptedException(ie);
+              }
+            }
+          } finally {
+            stalledThreadCount--;
+            updateMergeRate();
+            totalStallTimeMS += System.currentTimeMillis()-startStallTime;
           }
         }
 
@@ -453,6 +605,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
         while(true) {
           setRunningMerge(merge);
+          merge.rateLimiter = getRateLimiter(merge);
           doMerge(merge);
 
           // Subsequent times through the loop we do any new
@@ -34,6 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.Lock;
 import org.apache.lucene.store.LockObtainFailedException;
@@ -53,6 +54,7 @@ class DirectoryReader extends IndexReader implements Cloneable {
   private final SegmentInfos segmentInfos;
   private boolean stale;
   private final int termInfosIndexDivisor;
+  private final int termInfosCacheSize;
 
   private boolean rollbackHasChanges;
 
@@ -71,28 +73,29 @@ class DirectoryReader extends IndexReader implements Cloneable {
   private final boolean applyAllDeletes;
 
   static IndexReader open(final Directory directory, final IndexDeletionPolicy deletionPolicy, final IndexCommit commit, final boolean readOnly,
-                          final int termInfosIndexDivisor) throws CorruptIndexException, IOException {
+                          final int termInfosIndexDivisor, final int termInfosCacheSize) throws CorruptIndexException, IOException {
     return (IndexReader) new SegmentInfos.FindSegmentsFile(directory) {
       @Override
       protected Object doBody(String segmentFileName) throws CorruptIndexException, IOException {
         SegmentInfos infos = new SegmentInfos();
         infos.read(directory, segmentFileName);
         if (readOnly)
-          return new ReadOnlyDirectoryReader(directory, infos, deletionPolicy, termInfosIndexDivisor, null);
+          return new ReadOnlyDirectoryReader(directory, infos, deletionPolicy, termInfosIndexDivisor, termInfosCacheSize, null);
         else
-          return new DirectoryReader(directory, infos, deletionPolicy, false, termInfosIndexDivisor, null);
+          return new DirectoryReader(directory, infos, deletionPolicy, false, termInfosIndexDivisor, termInfosCacheSize, null);
       }
     }.run(commit);
   }
 
   /** Construct reading the named set of readers. */
   DirectoryReader(Directory directory, SegmentInfos sis, IndexDeletionPolicy deletionPolicy, boolean readOnly, int termInfosIndexDivisor,
-                  Collection<ReaderFinishedListener> readerFinishedListeners) throws IOException {
+                  int termInfosCacheSize, Collection<ReaderFinishedListener> readerFinishedListeners) throws IOException {
     this.directory = directory;
     this.readOnly = readOnly;
     this.segmentInfos = sis;
     this.deletionPolicy = deletionPolicy;
     this.termInfosIndexDivisor = termInfosIndexDivisor;
+    this.termInfosCacheSize = termInfosCacheSize;
 
     if (readerFinishedListeners == null) {
       this.readerFinishedListeners = new MapBackedSet<ReaderFinishedListener>(new ConcurrentHashMap<ReaderFinishedListener,Boolean>());
@@ -110,7 +113,7 @@ class DirectoryReader extends IndexReader implements Cloneable {
     for (int i = sis.size()-1; i >= 0; i--) {
       boolean success = false;
       try {
-        readers[i] = SegmentReader.get(readOnly, sis.info(i), termInfosIndexDivisor);
+        readers[i] = SegmentReader.get(readOnly, sis.info(i), termInfosIndexDivisor, termInfosCacheSize);
         readers[i].readerFinishedListeners = this.readerFinishedListeners;
         success = true;
       } finally {
@@ -137,6 +140,7 @@ class DirectoryReader extends IndexReader implements Cloneable {
     this.applyAllDeletes = applyAllDeletes;       // saved for reopen
 
     this.termInfosIndexDivisor = termInfosIndexDivisor;
+    this.termInfosCacheSize = writer.getConfig().getReaderTermsCacheSize();
     readerFinishedListeners = writer.getReaderFinishedListeners();
 
     // IndexWriter synchronizes externally before calling
@@ -186,11 +190,12 @@ class DirectoryReader extends IndexReader implements Cloneable {
   /** This constructor is only used for {@link #reopen()} */
   DirectoryReader(Directory directory, SegmentInfos infos, SegmentReader[] oldReaders, int[] oldStarts,
                   Map<String,byte[]> oldNormsCache, boolean readOnly, boolean doClone, int termInfosIndexDivisor,
-                  Collection<ReaderFinishedListener> readerFinishedListeners) throws IOException {
+                  int termInfosCacheSize, Collection<ReaderFinishedListener> readerFinishedListeners) throws IOException {
     this.directory = directory;
     this.readOnly = readOnly;
     this.segmentInfos = infos;
     this.termInfosIndexDivisor = termInfosIndexDivisor;
+    this.termInfosCacheSize = termInfosCacheSize;
     assert readerFinishedListeners != null;
     this.readerFinishedListeners = readerFinishedListeners;
     applyAllDeletes = false;
@@ -232,7 +237,7 @@ class DirectoryReader extends IndexReader implements Cloneable {
           assert !doClone;
 
           // this is a new reader; in case we hit an exception we can close it safely
-          newReader = SegmentReader.get(readOnly, infos.info(i), termInfosIndexDivisor);
+          newReader = SegmentReader.get(readOnly, infos.info(i), termInfosIndexDivisor, termInfosCacheSize);
           newReader.readerFinishedListeners = readerFinishedListeners;
         } else {
           newReader = newReaders[i].reopenSegment(infos.info(i), doClone, readOnly);
@@ -422,8 +427,9 @@ class DirectoryReader extends IndexReader implements Cloneable {
     assert commit == null || openReadOnly;
 
     // If we were obtained by writer.getReader(), re-ask the
-    // writer to get a new reader.
-    if (writer != null) {
+    // writer to get a new reader, unless it was closed since
+    // (then we reopen from the last commit, like isCurrent):
+    if (writer != null && !writer.isClosed()) {
       return doReopenFromWriter(openReadOnly, commit);
     } else {
       return doReopenNoWriter(openReadOnly, commit);
@@ -481,9 +487,9 @@ class DirectoryReader extends IndexReader implements Cloneable {
   private synchronized DirectoryReader doReopen(SegmentInfos infos, boolean doClone, boolean openReadOnly) throws CorruptIndexException, IOException {
     DirectoryReader reader;
     if (openReadOnly) {
-      reader = new ReadOnlyDirectoryReader(directory, infos, subReaders, starts, normsCache, doClone, termInfosIndexDivisor, readerFinishedListeners);
+      reader = new ReadOnlyDirectoryReader(directory, infos, subReaders, starts, normsCache, doClone, termInfosIndexDivisor, termInfosCacheSize, readerFinishedListeners);
     } else {
-      reader = new DirectoryReader(directory, infos, subReaders, starts, normsCache, false, doClone, termInfosIndexDivisor, readerFinishedListeners);
+      reader = new DirectoryReader(directory, infos, subReaders, starts, normsCache, false, doClone, termInfosIndexDivisor, termInfosCacheSize, readerFinishedListeners);
     }
     return reader;
   }
@@ -701,6 +707,20 @@ class DirectoryReader extends IndexReader implements Cloneable {
     return total;
   }
 
+  @Override
+  public int maxTermFreq(Term t) throws IOException {
+    ensureOpen();
+    int max = 0;
+    for (int i = 0; i < subReaders.length; i++) {
+      final int maxTermFreq = subReaders[i].maxTermFreq(t);
+      if (maxTermFreq == -1) {
+        return -1;
+      }
+      max = Math.max(max, maxTermFreq);
+    }
+    return max;
+  }
+
   @Override
   public TermDocs termDocs() throws IOException {
     ensureOpen();
@@ -901,7 +921,12 @@ class DirectoryReader extends IndexReader implements Cloneable {
     if (writer != null) {
       // Since we just closed, writer may now be able to
       // delete unused files:
-      writer.deleteUnusedFiles();
+      try {
+        writer.deleteUnusedFiles();
+      } catch (AlreadyClosedException ace) {
+        // OK: the writer was closed before us, and already
+        // deleted what it could
+      }
     }
 
     // throw the first exception
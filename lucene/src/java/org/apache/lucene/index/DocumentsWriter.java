@@ -67,22 +67,21 @@ import org.apache.lucene.util.ThreadInterruptedException;
  *
  * Threads:
  *
- * Multiple threads are allowed into addDocument at once.
- * There is an initial synchronized call to getThreadState
- * which allocates a ThreadState for this thread.  The same
- * thread will get the same ThreadState over time (thread
- * affinity) so that if there are consistent patterns (for
- * example each thread is indexing a different content
- * source) then we make better use of RAM.  Then
- * processDocument is called on that ThreadState without
+ * A DocumentsWriter is used by one thread at a time:
+ * {@link DocumentsWriterPool} hands each indexing thread
+ * its own DocumentsWriter, and decides when it is flushed,
+ * so that one thread can write its segment while the other
+ * threads keep adding documents to their own
+ * DocumentsWriters.  There is an initial synchronized call
+ * to getThreadState which allocates the docID(s).  Then
+ * processDocument is called on the ThreadState without
  * synchronization (most of the "heavy lifting" is in this
  * call).  Finally the synchronized "finishDocument" is
  * called to flush changes to the directory.
  *
- * When flush is called by IndexWriter we forcefully idle
- * all threads and flush only once they are all idle.  This
- * means you can call flush with a given thread even while
- * other threads are actively adding/deleting documents.
+ * A DocumentsWriter is only flushed once it has been
+ * taken out of the pool, so flush never has to wait for
+ * other threads.
  *
  *
  * Exceptions:
@@ -116,6 +115,7 @@ final class DocumentsWriter {
 
   private int nextDocID;                  // Next docID to be added
   private int numDocs;                    // # of docs added, but not yet flushed
+  private int numPublishedDocs;           // # of these the pool's deletes apply to
 
   // Max # ThreadState instances; if there are more threads
   // than this they share ThreadStates
@@ -129,9 +129,9 @@ final class DocumentsWriter {
   int maxFieldLength = IndexWriter.DEFAULT_MAX_FIELD_LENGTH;
   Similarity similarity;
 
-  // max # simultaneous threads; if there are more than
-  // this, they wait for others to finish first
-  private final int maxThreadStates;
+  // DocumentsWriterPool hands this instance to one thread
+  // at a time, so they can all share a single ThreadState
+  private final int maxThreadStates = 1;
 
   // Deletes for our still-in-RAM (to be flushed next) segment
   private BufferedDeletes pendingDeletes = new BufferedDeletes();
@@ -266,17 +266,11 @@ final class DocumentsWriter {
   private boolean closed;
   private final FieldInfos fieldInfos;
 
-  private final BufferedDeletesStream bufferedDeletesStream;
-  private final IndexWriter.FlushControl flushControl;
-
-  DocumentsWriter(IndexWriterConfig config, Directory directory, IndexWriter writer, FieldInfos fieldInfos, BufferedDeletesStream bufferedDeletesStream) throws IOException {
+  DocumentsWriter(IndexWriterConfig config, Directory directory, IndexWriter writer, FieldInfos fieldInfos) throws IOException {
     this.directory = directory;
     this.writer = writer;
     this.similarity = config.getSimilarity();
-    this.maxThreadStates = config.getMaxThreadStates();
     this.fieldInfos = fieldInfos;
-    this.bufferedDeletesStream = bufferedDeletesStream;
-    flushControl = writer.flushControl;
 
     consumer = config.getIndexingChain().getChain(this);
     this.config = config;
@@ -297,43 +291,31 @@ final class DocumentsWriter {
     // confounding exception).
   }
   
-  boolean deleteQueries(Query... queries) {
-    final boolean doFlush = flushControl.waitUpdate(0, queries.length);
-    synchronized(this) {
-      for (Query query : queries) {
-        pendingDeletes.addQuery(query, numDocs);
-      }
-    }
-    return doFlush;
-  }
-  
-  boolean deleteQuery(Query query) { 
-    final boolean doFlush = flushControl.waitUpdate(0, 1);
-    synchronized(this) {
-      pendingDeletes.addQuery(query, numDocs);
+  // Buffers a delete for the docs published so far.  The
+  // pool also buffers it for the segments flushed before,
+  // so we can skip it if we have no docs yet.
+  // TODO: we could check w/ FreqProxTermsWriter: if the
+  // term doesn't exist, don't bother buffering into the
+  // per-DWPT map (but still must go into the global map)
+  synchronized void deleteTerm(Term term) {
+    if (numPublishedDocs > 0) {
+      pendingDeletes.addTerm(term, numPublishedDocs);
     }
-    return doFlush;
   }
-  
-  boolean deleteTerms(Term... terms) {
-    final boolean doFlush = flushControl.waitUpdate(0, terms.length);
-    synchronized(this) {
-      for (Term term : terms) {
-        pendingDeletes.addTerm(term, numDocs);
-      }
+
+  synchronized void deleteQuery(Query query) {
+    if (numPublishedDocs > 0) {
+      pendingDeletes.addQuery(query, numPublishedDocs);
     }
-    return doFlush;
   }
 
-  // TODO: we could check w/ FreqProxTermsWriter: if the
-  // term doesn't exist, don't bother buffering into the
-  // per-DWPT map (but still must go into the global map)
-  boolean deleteTerm(Term term, boolean skipWait) {
-    final boolean doFlush = flushControl.waitUpdate(0, 1, skipWait);
-    synchronized(this) {
-      pendingDeletes.addTerm(term, numDocs);
-    }
-    return doFlush;
+  // Called by the pool once an update has buffered its
+  // delete in the other DocumentsWriters: deletes buffered
+  // after this apply to the docs added so far.  Until then
+  // they must not, else two threads concurrently updating
+  // the same term could each miss the other's doc.
+  synchronized void publishDocs() {
+    numPublishedDocs = numDocs;
   }
 
   public FieldInfos getFieldInfos() {
@@ -453,6 +435,7 @@ final class DocumentsWriter {
     waitQueue.reset();
     segment = null;
     numDocs = 0;
+    numPublishedDocs = 0;
     nextDocID = 0;
     bufferIsFull = false;
     for(int i=0;i<threadStates.length;i++) {
@@ -478,48 +461,38 @@ final class DocumentsWriter {
     return pendingDeletes;
   }
 
-  private void pushDeletes(SegmentInfo newSegment, SegmentInfos segmentInfos) {
-    // Lock order: DW -> BD
-    final long delGen = bufferedDeletesStream.getNextGen();
-    if (pendingDeletes.any()) {
-      if (segmentInfos.size() > 0 || newSegment != null) {
-        final FrozenBufferedDeletes packet = new FrozenBufferedDeletes(pendingDeletes, delGen);
-        if (infoStream != null) {
-          message("flush: push buffered deletes startSize=" + pendingDeletes.bytesUsed.get() + " frozenSize=" + packet.bytesUsed);
-        }
-        bufferedDeletesStream.push(packet);
-        if (infoStream != null) {
-          message("flush: delGen=" + packet.gen);
-        }
-        if (newSegment != null) {
-          newSegment.setBufferedDeletesGen(packet.gen);
-        }
-      } else {
-        if (infoStream != null) {
-          message("flush: drop buffered deletes: no segments");
-        }
-        // We can safely discard these deletes: since
-        // there are no segments, the deletions cannot
-        // affect anything.
-      }
-      pendingDeletes.clear();
-    } else if (newSegment != null) {
-      newSegment.setBufferedDeletesGen(delGen);
-    }
-  }
-
   public boolean anyDeletions() {
     return pendingDeletes.any();
   }
 
-  /** Flush all pending docs to a new segment */
-  // Lock order: IW -> DW
-  synchronized SegmentInfo flush(IndexWriter writer, IndexFileDeleter deleter, MergePolicy mergePolicy, SegmentInfos segmentInfos) throws IOException {
+  /** A segment written by {@link #flush}, which IndexWriter
+   *  still has to publish: it may turn it into a compound
+   *  file, writes the deleted docs and pushes the deletes. */
+  static final class FlushedSegment {
+    final SegmentInfo segmentInfo;
 
-    final long startTime = System.currentTimeMillis();
+    // docs deleted by term or docID; null if none
+    final BitVector deletedDocs;
 
-    // We change writer's segmentInfos:
-    assert Thread.holdsLock(writer);
+    // deletes buffered by this DocumentsWriter; terms were
+    // already applied, queries are still to be applied
+    // (only to the docs of this segment)
+    final BufferedDeletes segmentDeletes;
+
+    FlushedSegment(SegmentInfo segmentInfo, BitVector deletedDocs, BufferedDeletes segmentDeletes) {
+      this.segmentInfo = segmentInfo;
+      this.deletedDocs = deletedDocs;
+      this.segmentDeletes = segmentDeletes;
+    }
+  }
+
+  /** Flush all pending docs to a new segment.  This does
+   *  not need the IndexWriter lock: the caller must have
+   *  taken this instance out of the pool, so no other
+   *  thread is adding docs. */
+  synchronized FlushedSegment flush() throws IOException {
+
+    final long startTime = System.currentTimeMillis();
 
     waitIdle();
 
@@ -528,8 +501,6 @@ final class DocumentsWriter {
       if (infoStream != null) {
         message("flush: no docs; skipping");
       }
-      // Lock order: IW -> DW -> BD
-      pushDeletes(null, segmentInfos);
       return null;
     }
 
@@ -542,7 +513,7 @@ final class DocumentsWriter {
 
     boolean success = false;
 
-    SegmentInfo newSegment;
+    final FlushedSegment flushedSegment;
 
     try {
       //System.out.println(Thread.currentThread().getName() + ": nw=" + waitQueue.numWaiting);
@@ -556,7 +527,8 @@ final class DocumentsWriter {
 
       final SegmentWriteState flushState = new SegmentWriteState(infoStream, directory, segment, fieldInfos,
                                                                  numDocs, writer.getConfig().getTermIndexInterval(),
-                                                                 pendingDeletes);
+                                                                 pendingDeletes, writer.getConfig().getBloomFilterFields(),
+                                                                 writer.getConfig().getBlockPostingsFields());
       // Apply delete-by-docID now (delete-byDocID only
       // happens when an exception is hit processing that
       // doc, eg if analyzer has some problem w/ the text):
@@ -569,7 +541,7 @@ final class DocumentsWriter {
         pendingDeletes.docIDs.clear();
       }
 
-      newSegment = new SegmentInfo(segment, numDocs, directory, false, true, fieldInfos.hasProx(), false);
+      final SegmentInfo newSegment = new SegmentInfo(segment, numDocs, directory, false, true, fieldInfos.hasProx(), false);
 
       Collection<DocConsumerPerThread> threads = new HashSet<DocConsumerPerThread>();
       for (DocumentsWriterThreadState threadState : threadStates) {
@@ -588,57 +560,6 @@ final class DocumentsWriter {
           message("new segment has " + flushState.deletedDocs.count() + " deleted docs");
         }
         message("flushedFiles=" + newSegment.files());
-      }
-
-      if (mergePolicy.useCompoundFile(segmentInfos, newSegment)) {
-        final String cfsFileName = IndexFileNames.segmentFileName(segment, IndexFileNames.COMPOUND_FILE_EXTENSION);
-
-        if (infoStream != null) {
-          message("flush: create compound file \"" + cfsFileName + "\"");
-        }
-
-        CompoundFileWriter cfsWriter = new CompoundFileWriter(directory, cfsFileName);
-        for(String fileName : newSegment.files()) {
-          cfsWriter.addFile(fileName);
-        }
-        cfsWriter.close();
-        deleter.deleteNewFiles(newSegment.files());
-        newSegment.setUseCompoundFile(true);
-      }
-
-      // Must write deleted docs after the CFS so we don't
-      // slurp the del file into CFS:
-      if (flushState.deletedDocs != null) {
-        final int delCount = flushState.deletedDocs.count();
-        assert delCount > 0;
-        newSegment.setDelCount(delCount);
-        newSegment.advanceDelGen();
-        final String delFileName = newSegment.getDelFileName();
-        if (infoStream != null) {
-          message("flush: write " + delCount + " deletes to " + delFileName);
-        }
-        boolean success2 = false;
-        try {
-          // TODO: in the NRT case it'd be better to hand
-          // this del vector over to the
-          // shortly-to-be-opened SegmentReader and let it
-          // carry the changes; there's no reason to use
-          // filesystem as intermediary here.
-          flushState.deletedDocs.write(directory, delFileName);
-          success2 = true;
-        } finally {
-          if (!success2) {
-            try {
-              directory.deleteFile(delFileName);
-            } catch (Throwable t) {
-              // suppress this so we keep throwing the
-              // original exception
-            }
-          }
-        }
-      }
-
-      if (infoStream != null) {
         message("flush: segment=" + newSegment);
         final double newSegmentSizeNoStore = newSegment.sizeInBytes(false)/1024./1024.;
         final double newSegmentSize = newSegment.sizeInBytes(true)/1024./1024.;
@@ -649,26 +570,24 @@ final class DocumentsWriter {
                 " new/old=" + nf.format(100.0 * newSegmentSizeNoStore / startMBUsed) + "%");
       }
 
+      flushedSegment = new FlushedSegment(newSegment, flushState.deletedDocs, pendingDeletes);
+      pendingDeletes = new BufferedDeletes();
+
       success = true;
     } finally {
       notifyAll();
       if (!success) {
-        if (segment != null) {
-          deleter.refresh(segment);
-        }
         abort();
       }
     }
 
     doAfterFlush();
 
-    // Lock order: IW -> DW -> BD
-    pushDeletes(newSegment, segmentInfos);
     if (infoStream != null) {
       message("flush time " + (System.currentTimeMillis()-startTime) + " msec");
     }
 
-    return newSegment;
+    return flushedSegment;
   }
 
   synchronized void close() {
@@ -740,16 +659,13 @@ final class DocumentsWriter {
     return state;
   }
   
-  boolean addDocument(Document doc, Analyzer analyzer) throws CorruptIndexException, IOException {
-    return updateDocument(doc, analyzer, null);
+  void addDocument(Document doc, Analyzer analyzer) throws CorruptIndexException, IOException {
+    updateDocument(doc, analyzer, null);
   }
   
-  boolean updateDocument(Document doc, Analyzer analyzer, Term delTerm)
+  void updateDocument(Document doc, Analyzer analyzer, Term delTerm)
     throws CorruptIndexException, IOException {
 
-    // Possibly trigger a flush, or wait until any running flush completes:
-    boolean doFlush = flushControl.waitUpdate(1, delTerm != null ? 1 : 0);
-
     // This call is synchronized but fast
     final DocumentsWriterThreadState state = getThreadState(delTerm, 1);
 
@@ -775,12 +691,6 @@ final class DocumentsWriter {
     } finally {
       if (!success) {
 
-        // If this thread state had decided to flush, we
-        // must clear it so another thread can flush
-        if (doFlush) {
-          flushControl.clearFlushPending();
-        }
-
         if (infoStream != null) {
           message("exception in updateDocument aborting=" + aborting);
         }
@@ -801,7 +711,7 @@ final class DocumentsWriter {
             } finally {
               if (!success2) {
                 abort();
-                return false;
+                return;
               }
             }
 
@@ -815,17 +725,11 @@ final class DocumentsWriter {
       }
     }
 
-    doFlush |= flushControl.flushByRAMUsage("new document");
-
-    return doFlush;
   }
 
-  boolean updateDocuments(Collection<Document> docs, Analyzer analyzer, Term delTerm)
+  void updateDocuments(Collection<Document> docs, Analyzer analyzer, Term delTerm)
     throws CorruptIndexException, IOException {
 
-    // Possibly trigger a flush, or wait until any running flush completes:
-    boolean doFlush = flushControl.waitUpdate(docs.size(), delTerm != null ? 1 : 0);
-
     final int docCount = docs.size();
 
     // This call is synchronized but fast -- we allocate the
@@ -878,13 +782,6 @@ final class DocumentsWriter {
         if (!success) {
           //System.out.println(Thread.currentThread().getName() + ": E");
 
-          // If this thread state had decided to flush, we
-          // must clear it so another thread can flush
-          if (doFlush) {
-            message("clearFlushPending!");
-            flushControl.clearFlushPending();
-          }
-
           if (infoStream != null) {
             message("exception in updateDocuments aborting=" + aborting);
           }
@@ -912,7 +809,7 @@ final class DocumentsWriter {
                 } finally {
                   if (!success2) {
                     abort();
-                    return false;
+                    return;
                   }
                 }
               }
@@ -953,12 +850,7 @@ final class DocumentsWriter {
 
         abort();
 
-        if (doFlush) {
-          message("clearFlushPending!");
-          flushControl.clearFlushPending();
-        }
-
-        return false;
+        return;
       }
 
       // Apply delTerm only after all indexing has
@@ -974,10 +866,7 @@ final class DocumentsWriter {
       notifyAll();
     }
 
-    doFlush |= flushControl.flushByRAMUsage("new document");
-
     //System.out.println(Thread.currentThread().getName() + ":   B " + docCount);
-    return doFlush;
   }
 
   public synchronized void waitIdle() {
@@ -1236,9 +1125,6 @@ final class DocumentsWriter {
   void balanceRAM() {
 
     final boolean doBalance;
-    final long deletesRAMUsed;
-
-    deletesRAMUsed = bufferedDeletesStream.bytesUsed();
 
     final long ramBufferSize;
     final double mb = config.getRAMBufferSizeMB();
@@ -1253,7 +1139,7 @@ final class DocumentsWriter {
         return;
       }
     
-      doBalance = bytesUsed() + deletesRAMUsed >= ramBufferSize;
+      doBalance = bytesUsed() >= ramBufferSize;
     }
 
     if (doBalance) {
@@ -1261,13 +1147,12 @@ final class DocumentsWriter {
       if (infoStream != null) {
         message("  RAM: balance allocations: usedMB=" + toMB(bytesUsed()) +
                 " vs trigger=" + toMB(ramBufferSize) +
-                " deletesMB=" + toMB(deletesRAMUsed) +
                 " byteBlockFree=" + toMB(byteBlockAllocator.freeByteBlocks.size()*BYTE_BLOCK_SIZE) +
                 " perDocFree=" + toMB(perDocAllocator.freeByteBlocks.size()*PER_DOC_BLOCK_SIZE) +
                 " charBlockFree=" + toMB(freeCharBlocks.size()*CHAR_BLOCK_SIZE*RamUsageEstimator.NUM_BYTES_CHAR));
       }
 
-      final long startBytesUsed = bytesUsed() + deletesRAMUsed;
+      final long startBytesUsed = bytesUsed();
 
       int iter = 0;
 
@@ -1279,7 +1164,7 @@ final class DocumentsWriter {
 
       final long freeLevel = (long) (0.95 * ramBufferSize);
 
-      while(bytesUsed()+deletesRAMUsed > freeLevel) {
+      while(bytesUsed() > freeLevel) {
       
         synchronized(this) {
           if (0 == perDocAllocator.freeByteBlocks.size() 
@@ -1288,9 +1173,9 @@ final class DocumentsWriter {
               && 0 == freeIntBlocks.size() 
               && !any) {
             // Nothing else to free -- must flush now.
-            bufferIsFull = bytesUsed()+deletesRAMUsed > ramBufferSize;
+            bufferIsFull = bytesUsed() > ramBufferSize;
             if (infoStream != null) {
-              if (bytesUsed()+deletesRAMUsed > ramBufferSize) {
+              if (bytesUsed() > ramBufferSize) {
                 message("    nothing to free; set bufferIsFull");
               } else {
                 message("    nothing to free");
@@ -1335,7 +1220,7 @@ final class DocumentsWriter {
       }
 
       if (infoStream != null) {
-        message("    after free: freedMB=" + nf.format((startBytesUsed-bytesUsed()-deletesRAMUsed)/1024./1024.) + " usedMB=" + nf.format((bytesUsed()+deletesRAMUsed)/1024./1024.));
+        message("    after free: freedMB=" + nf.format((startBytesUsed-bytesUsed())/1024./1024.) + " usedMB=" + nf.format((bytesUsed())/1024./1024.));
       }
     }
   }
@@ -0,0 +1,652 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Gives each indexing thread its own {@link
+ * DocumentsWriter}, so that each thread fills a private RAM
+ * buffer and flushes it to its own segment while the other
+ * threads keep indexing.
+ *
+ * Threads:
+ *
+ * A thread takes the DocumentsWriter it used last (thread
+ * affinity), else an idle one, else a new one if there are
+ * fewer than {@link IndexWriterConfig#getMaxThreadStates};
+ * otherwise it waits until one is idle.  After each update
+ * we check whether a flush is due: a DocumentsWriter that
+ * holds maxBufferedDocs docs is flushed, and once all
+ * buffers together use up the RAM buffer the largest idle
+ * one is flushed.  Flushing first "freezes" the
+ * DocumentsWriter, ie takes it out of the pool so no other
+ * thread can add to it, and then the thread that froze it
+ * writes its segment without holding any other lock.  If
+ * the buffers being flushed and the ones being filled
+ * together use twice the RAM buffer, indexing threads wait
+ * for the flushes to catch up.
+ *
+ * Each DocumentsWriter has its own child of our FieldInfos
+ * (see FieldInfos#newChild), so that flushing segments never
+ * see fields added concurrently, while new fields still get
+ * the same number in all segments (which keeps merges of
+ * stored fields and term vectors in bulk).  The flags of a
+ * frozen DocumentsWriter's fields are added back to ours.
+ *
+ * Only a full flush (commit, getReader, close or too many
+ * buffered delete terms) waits until all threads are idle,
+ * so that it includes every document added before.
+ *
+ * Deletes:
+ *
+ * A delete applies to all docs added before it.  We buffer
+ * it in our global deletes, which are pushed to the
+ * BufferedDeletesStream for all previously published
+ * segments when the next DocumentsWriter is frozen, and in
+ * each DocumentsWriter that holds docs, with its current
+ * doc count as docIDUpto; those only apply to the segment
+ * it flushes.  The delete term of an update is buffered
+ * once its doc was added, and a DocumentsWriter's doc count
+ * only includes the docs of finished updates, so that of
+ * concurrent updates to the same term exactly the last one
+ * to finish keeps its doc.  Segments are published by IndexWriter in the
+ * order they were frozen (see {@link FlushTicket}), even if
+ * a small segment is written before a larger one that was
+ * frozen earlier, so that each global delete is applied to
+ * exactly the segments that were frozen before it.
+ */
+final class DocumentsWriterPool {
+
+  /** A frozen DocumentsWriter, and the global deletes
+   *  buffered since the previous one was frozen. */
+  static final class FlushTicket {
+    final BufferedDeletes globalDeletes;
+    final String segmentName;
+    final long bytesUsed;
+    int numDocs;
+
+    // null once written, or if this ticket only carries deletes
+    DocumentsWriter docWriter;
+
+    // Set once written; null if writing the segment failed
+    DocumentsWriter.FlushedSegment segment;
+    boolean done;
+
+    FlushTicket(BufferedDeletes globalDeletes, DocumentsWriter docWriter) {
+      this.globalDeletes = globalDeletes;
+      this.docWriter = docWriter;
+      if (docWriter != null) {
+        segmentName = docWriter.getSegment();
+        numDocs = docWriter.getNumDocs();
+        bytesUsed = docWriter.bytesUsed();
+      } else {
+        segmentName = null;
+        bytesUsed = 0;
+        done = true;
+      }
+    }
+  }
+
+  private final IndexWriterConfig config;
+  private final Directory directory;
+  private final IndexWriter writer;
+  private final FieldInfos fieldInfos;
+
+  // DocumentsWriters that are not frozen, and the ones
+  // currently used by a thread
+  private final List<DocumentsWriter> docWriters = new ArrayList<DocumentsWriter>();
+  private final Set<DocumentsWriter> inUse = new HashSet<DocumentsWriter>();
+  private final Map<Thread,DocumentsWriter> threadBindings = new WeakHashMap<Thread,DocumentsWriter>();
+
+  // Deletes buffered since a DocumentsWriter was last
+  // frozen, for the segments published before
+  private BufferedDeletes pendingDeletes = new BufferedDeletes();
+
+  // Frozen DocumentsWriters, in the order their segments
+  // must be published
+  private final LinkedList<FlushTicket> tickets = new LinkedList<FlushTicket>();
+
+  private int numFlushing;                // # tickets still being written
+  private long flushingBytes;             // RAM used by these
+  private boolean fullFlush;              // True while all threads are held off
+  private boolean aborting;
+  private boolean closed;
+  private boolean flushDeletes;           // True if maxBufferedDeleteTerms triggered a flush
+  private int delCount;
+
+  private PrintStream infoStream;
+  private int maxFieldLength = IndexWriter.DEFAULT_MAX_FIELD_LENGTH;
+  private Similarity similarity;
+
+  DocumentsWriterPool(IndexWriterConfig config, Directory directory, IndexWriter writer, FieldInfos fieldInfos) {
+    this.config = config;
+    this.directory = directory;
+    this.writer = writer;
+    this.fieldInfos = fieldInfos;
+    this.similarity = config.getSimilarity();
+  }
+
+  void message(String message) {
+    if (infoStream != null) {
+      writer.message("DWP: " + message);
+    }
+  }
+
+  /** If non-null, various details of indexing are printed
+   *  here. */
+  synchronized void setInfoStream(PrintStream infoStream) {
+    this.infoStream = infoStream;
+    for (DocumentsWriter docWriter : docWriters) {
+      docWriter.setInfoStream(infoStream);
+    }
+  }
+
+  synchronized void setMaxFieldLength(int maxFieldLength) {
+    this.maxFieldLength = maxFieldLength;
+    for (DocumentsWriter docWriter : docWriters) {
+      docWriter.setMaxFieldLength(maxFieldLength);
+    }
+  }
+
+  synchronized void setSimilarity(Similarity similarity) {
+    this.similarity = similarity;
+    for (DocumentsWriter docWriter : docWriters) {
+      docWriter.setSimilarity(similarity);
+    }
+  }
+
+  /** Returns the fields of all segments frozen so far, to
+   *  seed the FieldInfos of merged segments. */
+  public FieldInfos getFieldInfos() {
+    return fieldInfos;
+  }
+
+  // for testing
+  public synchronized BufferedDeletes getPendingDeletes() {
+    return pendingDeletes;
+  }
+
+  /** Returns how many docs are currently buffered in RAM,
+   *  including the ones that are being flushed. */
+  synchronized int getNumDocs() {
+    int count = 0;
+    for (DocumentsWriter docWriter : docWriters) {
+      count += docWriter.getNumDocs();
+    }
+    for (FlushTicket ticket : tickets) {
+      count += ticket.numDocs;
+    }
+    return count;
+  }
+
+  synchronized boolean anyChanges() {
+    return getNumDocs() != 0 || pendingDeletes.any() || !tickets.isEmpty();
+  }
+
+  synchronized boolean anyDeletions() {
+    if (pendingDeletes.any()) {
+      return true;
+    }
+    for (FlushTicket ticket : tickets) {
+      if (ticket.globalDeletes.any()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  synchronized long bytesUsed() {
+    return activeBytes() + flushingBytes + pendingDeletes.bytesUsed.get();
+  }
+
+  private long activeBytes() {
+    long bytes = 0;
+    for (DocumentsWriter docWriter : docWriters) {
+      bytes += docWriter.bytesUsed();
+    }
+    return bytes;
+  }
+
+  synchronized boolean getFlushDeletes() {
+    return flushDeletes;
+  }
+
+  /** Called once all buffered deletes were applied */
+  synchronized void clearDeletes() {
+    delCount = 0;
+    flushDeletes = false;
+  }
+
+  synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  // True if the flushes fall behind indexing
+  private boolean isStalled() {
+    final double mb = config.getRAMBufferSizeMB();
+    if (numFlushing == 0 || mb == IndexWriterConfig.DISABLE_AUTO_FLUSH) {
+      return false;
+    }
+    return flushingBytes + activeBytes() > 2 * (long) (mb*1024*1024);
+  }
+
+  /** Returns a DocumentsWriter that is used by no other
+   *  thread, waiting if a full flush or abort is running,
+   *  if flushes fall behind, or if all DocumentsWriters are
+   *  in use. */
+  private synchronized DocumentsWriter obtain() throws IOException {
+    assert !Thread.holdsLock(writer);
+
+    final Thread currentThread = Thread.currentThread();
+    while (true) {
+      if (closed) {
+        throw new AlreadyClosedException("this IndexWriter is closed");
+      }
+      if (!fullFlush && !aborting && !isStalled()) {
+        DocumentsWriter docWriter = threadBindings.get(currentThread);
+        if (docWriter == null || inUse.contains(docWriter)) {
+          docWriter = null;
+          for (DocumentsWriter dw : docWriters) {
+            if (!inUse.contains(dw)) {
+              docWriter = dw;
+              break;
+            }
+          }
+          if (docWriter == null && docWriters.size() < config.getMaxThreadStates()) {
+            docWriter = new DocumentsWriter(config, directory, writer, fieldInfos.newChild());
+            docWriter.setInfoStream(infoStream);
+            docWriter.setMaxFieldLength(maxFieldLength);
+            docWriter.setSimilarity(similarity);
+            docWriters.add(docWriter);
+          }
+        }
+        if (docWriter != null) {
+          inUse.add(docWriter);
+          threadBindings.put(currentThread, docWriter);
+          return docWriter;
+        }
+      }
+      try {
+        wait();
+      } catch (InterruptedException ie) {
+        throw new ThreadInterruptedException(ie);
+      }
+    }
+  }
+
+  // Buffers the delete term of an update (if not null) in
+  // the other DocumentsWriters, then lets our deletes see
+  // the docs it added; doing both under our lock orders
+  // concurrent updates of the same term
+  private synchronized void release(DocumentsWriter docWriter, Term delTerm) {
+    if (delTerm != null) {
+      bufferDeleteTerm(delTerm, docWriter);
+    }
+    docWriter.publishDocs();
+    inUse.remove(docWriter);
+    notifyAll();
+  }
+
+  // Buffers a delete term for the flushed segments and for
+  // all DocumentsWriters but the one that adds the doc
+  // replacing it, which buffers it itself
+  private void bufferDeleteTerm(Term term, DocumentsWriter except) {
+    assert Thread.holdsLock(this);
+    pendingDeletes.addTerm(term, BufferedDeletes.MAX_INT);
+    for (DocumentsWriter docWriter : docWriters) {
+      if (docWriter != except) {
+        docWriter.deleteTerm(term);
+      }
+    }
+    delCount++;
+  }
+
+  boolean updateDocument(Document doc, Analyzer analyzer, Term delTerm) throws CorruptIndexException, IOException {
+    final DocumentsWriter docWriter = obtain();
+    try {
+      docWriter.updateDocument(doc, analyzer, delTerm);
+    } finally {
+      // Like DocumentsWriter, delTerm applies even if the
+      // doc hit an exception
+      release(docWriter, delTerm);
+    }
+    return maybeFlush(docWriter);
+  }
+
+  boolean updateDocuments(Collection<Document> docs, Analyzer analyzer, Term delTerm) throws CorruptIndexException, IOException {
+    final DocumentsWriter docWriter = obtain();
+    boolean success = false;
+    try {
+      docWriter.updateDocuments(docs, analyzer, delTerm);
+      success = true;
+    } finally {
+      // Like DocumentsWriter, only buffer delTerm once all
+      // docs were added:
+      release(docWriter, success ? delTerm : null);
+    }
+    return maybeFlush(docWriter);
+  }
+
+  boolean deleteTerm(Term term) throws IOException {
+    synchronized(this) {
+      bufferDeleteTerm(term, null);
+    }
+    return maybeFlush(null);
+  }
+
+  boolean deleteTerms(Term... terms) throws IOException {
+    synchronized(this) {
+      for (Term term : terms) {
+        bufferDeleteTerm(term, null);
+      }
+    }
+    return maybeFlush(null);
+  }
+
+  boolean deleteQuery(Query query) throws IOException {
+    return deleteQueries(query);
+  }
+
+  boolean deleteQueries(Query... queries) throws IOException {
+    synchronized(this) {
+      for (Query query : queries) {
+        pendingDeletes.addQuery(query, BufferedDeletes.MAX_INT);
+        for (DocumentsWriter docWriter : docWriters) {
+          docWriter.deleteQuery(query);
+        }
+        delCount++;
+      }
+    }
+    return maybeFlush(null);
+  }
+
+  /** Flushes a DocumentsWriter if it holds maxBufferedDocs
+   *  docs or if the RAM buffer is full, while the other
+   *  threads keep indexing.  Returns true if IndexWriter
+   *  must do a full flush instead. */
+  private boolean maybeFlush(DocumentsWriter docWriter) throws IOException {
+    final FlushTicket ticket;
+    synchronized(this) {
+      final int maxBufferedDeleteTerms = config.getMaxBufferedDeleteTerms();
+      if (maxBufferedDeleteTerms != IndexWriterConfig.DISABLE_AUTO_FLUSH &&
+          delCount >= maxBufferedDeleteTerms) {
+        message("now trigger flush reason=maxBufferedDeleteTerms");
+        flushDeletes = true;
+        return true;
+      }
+
+      if (fullFlush || aborting) {
+        return false;
+      }
+
+      final int maxBufferedDocs = config.getMaxBufferedDocs();
+      if (docWriter != null && maxBufferedDocs != IndexWriterConfig.DISABLE_AUTO_FLUSH &&
+          docWriters.contains(docWriter) && !inUse.contains(docWriter) &&
+          docWriter.getNumDocs() >= maxBufferedDocs) {
+        ticket = freeze(docWriter, "maxBufferedDocs");
+      } else {
+        final double mb = config.getRAMBufferSizeMB();
+        if (mb == IndexWriterConfig.DISABLE_AUTO_FLUSH) {
+          return false;
+        }
+        final long used = activeBytes() + pendingDeletes.bytesUsed.get() + writer.bufferedDeletesStream.bytesUsed();
+        if (used < (long) (mb*1024*1024)) {
+          return false;
+        }
+
+        // Flush the largest idle buffer
+        DocumentsWriter largest = null;
+        boolean anyDocs = false;
+        for (DocumentsWriter dw : docWriters) {
+          if (dw.getNumDocs() > 0) {
+            anyDocs = true;
+            if (!inUse.contains(dw) && (largest == null || dw.bytesUsed() > largest.bytesUsed())) {
+              largest = dw;
+            }
+          }
+        }
+        if (largest == null) {
+          // Only deletes use the RAM: let IndexWriter push
+          // them, unless the threads still adding docs
+          // will flush those
+          if (!anyDocs && numFlushing == 0) {
+            message("now trigger flush reason=ram full of deletes");
+            return true;
+          }
+          return false;
+        }
+        ticket = freeze(largest, "ram full: usedMB=" + (used/1024./1024.));
+      }
+    }
+
+    doFlush(ticket);
+    writer.publishFlushedSegments(true);
+    return false;
+  }
+
+  /** Takes a DocumentsWriter out of the pool, so it can be
+   *  flushed while the other threads keep indexing. */
+  private FlushTicket freeze(DocumentsWriter docWriter, String reason) {
+    assert Thread.holdsLock(this);
+    assert !inUse.contains(docWriter);
+
+    docWriters.remove(docWriter);
+    while (threadBindings.values().remove(docWriter)) {
+    }
+    final FieldInfos docWriterFieldInfos = docWriter.getFieldInfos();
+    for (int i = 0; i < docWriterFieldInfos.size(); i++) {
+      fieldInfos.add(docWriterFieldInfos.fieldInfo(i));
+    }
+
+    final FlushTicket ticket = new FlushTicket(pendingDeletes, docWriter);
+    pendingDeletes = new BufferedDeletes();
+    tickets.add(ticket);
+    numFlushing++;
+    flushingBytes += ticket.bytesUsed;
+    if (infoStream != null) {
+      message("freeze segment=" + ticket.segmentName + " numDocs=" + ticket.numDocs + " reason=" + reason +
+              " flushing=" + numFlushing + " active=" + docWriters.size());
+    }
+    return ticket;
+  }
+
+  /** Writes the segment of a frozen DocumentsWriter; this
+   *  holds no other lock than the DocumentsWriter's. */
+  private void doFlush(FlushTicket ticket) throws IOException {
+    boolean success = false;
+    try {
+      assert writer.testPoint("DocumentsWriterPool.doFlush start");
+      ticket.segment = ticket.docWriter.flush();
+      success = true;
+    } finally {
+      if (!success) {
+        // flush() aborts itself on exception, but we may
+        // have failed before calling it; free the open files
+        try {
+          ticket.docWriter.abort();
+        } catch (Throwable t) {
+        }
+      }
+      synchronized(this) {
+        if (ticket.segment == null) {
+          // DocumentsWriter aborted, its docs are lost
+          ticket.numDocs = 0;
+        }
+        ticket.docWriter = null;
+        ticket.done = true;
+        numFlushing--;
+        flushingBytes -= ticket.bytesUsed;
+        notifyAll();
+      }
+    }
+  }
+
+  // Marks a frozen ticket as failed without writing it
+  private void abortTicket(FlushTicket ticket) {
+    try {
+      ticket.docWriter.abort();
+    } catch (Throwable t) {
+    }
+    synchronized(this) {
+      ticket.numDocs = 0;
+      ticket.docWriter = null;
+      ticket.done = true;
+      numFlushing--;
+      flushingBytes -= ticket.bytesUsed;
+      notifyAll();
+    }
+  }
+
+  /** Returns the oldest ticket if its segment is written
+   *  (or failed), removing it from the queue; IndexWriter
+   *  publishes the tickets in this order. */
+  synchronized FlushTicket nextFlushedTicket() {
+    assert Thread.holdsLock(writer);
+    if (!tickets.isEmpty() && tickets.getFirst().done) {
+      return tickets.removeFirst();
+    }
+    return null;
+  }
+
+  /** Freezes all DocumentsWriters that hold docs once no
+   *  thread is adding docs, writes their segments, and
+   *  waits for all other running flushes.  IndexWriter then
+   *  publishes all tickets.
+   *  @return true if any docs were flushed */
+  boolean flushAll() throws IOException {
+    assert Thread.holdsLock(writer);
+
+    final List<FlushTicket> toFlush = new ArrayList<FlushTicket>();
+    synchronized(this) {
+      fullFlush = true;
+      try {
+        while (!inUse.isEmpty()) {
+          try {
+            wait();
+          } catch (InterruptedException ie) {
+            throw new ThreadInterruptedException(ie);
+          }
+        }
+      } catch (RuntimeException e) {
+        fullFlush = false;
+        notifyAll();
+        throw e;
+      }
+
+      for (DocumentsWriter docWriter : new ArrayList<DocumentsWriter>(docWriters)) {
+        if (docWriter.getNumDocs() > 0) {
+          toFlush.add(freeze(docWriter, "full flush"));
+        }
+      }
+      if (toFlush.isEmpty() && pendingDeletes.any()) {
+        // Deletes only
+        tickets.add(new FlushTicket(pendingDeletes, null));
+        pendingDeletes = new BufferedDeletes();
+      }
+      if (infoStream != null) {
+        message("full flush: " + toFlush.size() + " segments; " + numFlushing + " flushing");
+      }
+    }
+
+    int upto = 0;
+    try {
+      while (upto < toFlush.size()) {
+        doFlush(toFlush.get(upto++));
+      }
+    } finally {
+      while (upto < toFlush.size()) {
+        abortTicket(toFlush.get(upto++));
+      }
+      synchronized(this) {
+        try {
+          while (numFlushing > 0) {
+            try {
+              wait();
+            } catch (InterruptedException ie) {
+              throw new ThreadInterruptedException(ie);
+            }
+          }
+        } finally {
+          fullFlush = false;
+          notifyAll();
+        }
+      }
+    }
+
+    return !toFlush.isEmpty();
+  }
+
+  /** Discards all buffered docs and deletes, once all
+   *  running updates and flushes are done. */
+  synchronized void abort() throws IOException {
+    assert Thread.holdsLock(writer);
+
+    if (infoStream != null) {
+      message("abort");
+    }
+
+    aborting = true;
+    try {
+      while (!inUse.isEmpty() || numFlushing > 0) {
+        try {
+          wait();
+        } catch (InterruptedException ie) {
+          throw new ThreadInterruptedException(ie);
+        }
+      }
+
+      for (DocumentsWriter docWriter : docWriters) {
+        try {
+          docWriter.abort();
+        } catch (Throwable t) {
+        }
+      }
+      docWriters.clear();
+      threadBindings.clear();
+      tickets.clear();
+      pendingDeletes.clear();
+      delCount = 0;
+      flushDeletes = false;
+    } finally {
+      aborting = false;
+      notifyAll();
+      if (infoStream != null) {
+        message("done abort");
+      }
+    }
+  }
+}
@@ -34,6 +34,8 @@ public final class FieldInfo {
   
   boolean storePayloads; // whether this field stores payloads together with term positions
 
+  boolean blockPostings; // whether doc deltas and freqs are written in packed blocks (see ForUtil)
+
   /**
    * Controls how much information is stored in the postings lists.
    * @lucene.experimental
@@ -73,8 +75,10 @@ public final class FieldInfo {
 
   @Override
   public Object clone() {
-    return new FieldInfo(name, isIndexed, number, storeTermVector, storePositionWithTermVector,
-                         storeOffsetWithTermVector, omitNorms, storePayloads, indexOptions);
+    FieldInfo clone = new FieldInfo(name, isIndexed, number, storeTermVector, storePositionWithTermVector,
+                                    storeOffsetWithTermVector, omitNorms, storePayloads, indexOptions);
+    clone.blockPostings = blockPostings;
+    return clone;
   }
 
   void update(boolean isIndexed, boolean storeTermVector, boolean storePositionWithTermVector, 
@@ -45,8 +45,11 @@ final class FieldInfos {
   // First used in 3.4: omit only positional information
   public static final int FORMAT_OMIT_POSITIONS = -3;
 
+  // each field is followed by the encoding of its postings
+  public static final int FORMAT_POSTINGS_ENCODING = -4;
+
   // whenever you add a new format, make it 1 smaller (negative version logic)!
-  static final int CURRENT_FORMAT = FORMAT_OMIT_POSITIONS;
+  static final int CURRENT_FORMAT = FORMAT_POSTINGS_ENCODING;
   
   static final byte IS_INDEXED = 0x1;
   static final byte STORE_TERMVECTOR = 0x2;
@@ -57,10 +60,17 @@ final class FieldInfos {
   static final byte OMIT_TERM_FREQ_AND_POSITIONS = 0x40;
   static final byte OMIT_POSITIONS = -128;
 
+  // postings encodings
+  static final byte POSTINGS_VINT = 0;
+  static final byte POSTINGS_BLOCK = 1;
+
   private final ArrayList<FieldInfo> byNumber = new ArrayList<FieldInfo>();
   private final HashMap<String,FieldInfo> byName = new HashMap<String,FieldInfo>();
   private int format;
 
+  // if set, new fields are numbered by the parent (see newChild)
+  private FieldInfos parent;
+
   FieldInfos() { }
 
   /**
@@ -116,6 +126,18 @@ final class FieldInfos {
     return fis;
   }
 
+  /** Returns a deep clone of this FieldInfos instance that
+   *  numbers new fields the same way as all other children:
+   *  a field new to a child is added to this instance first,
+   *  and the child then copies all the fields it misses, in
+   *  order.  Children can so add fields concurrently, and
+   *  still write segments that can be merged in bulk. */
+  synchronized FieldInfos newChild() {
+    final FieldInfos child = (FieldInfos) clone();
+    child.parent = this;
+    return child;
+  }
+
   /** Adds field info for a Document. */
   synchronized public void add(Document doc) {
     List<Fieldable> fields = doc.getFields();
@@ -241,7 +263,17 @@ final class FieldInfos {
                        boolean storePositionWithTermVector, boolean storeOffsetWithTermVector,
                        boolean omitNorms, boolean storePayloads, IndexOptions indexOptions) {
     FieldInfo fi = fieldInfo(name);
-    if (fi == null) {
+    if (fi == null && parent != null) {
+      synchronized(parent) {
+        parent.add(name, isIndexed, storeTermVector, storePositionWithTermVector, storeOffsetWithTermVector, omitNorms, storePayloads, indexOptions);
+        for (int i = byNumber.size(); i < parent.byNumber.size(); i++) {
+          final FieldInfo parentFi = (FieldInfo) parent.byNumber.get(i).clone();
+          byNumber.add(parentFi);
+          byName.put(parentFi.name, parentFi);
+        }
+      }
+      return fieldInfo(name);
+    } else if (fi == null) {
       return addInternal(name, isIndexed, storeTermVector, storePositionWithTermVector, storeOffsetWithTermVector, omitNorms, storePayloads, indexOptions);
     } else {
       fi.update(isIndexed, storeTermVector, storePositionWithTermVector, storeOffsetWithTermVector, omitNorms, storePayloads, indexOptions);
@@ -343,6 +375,7 @@ final class FieldInfos {
       
       output.writeString(fi.name);
       output.writeByte(bits);
+      output.writeByte(fi.blockPostings ? POSTINGS_BLOCK : POSTINGS_VINT);
     }
   }
 
@@ -356,7 +389,7 @@ final class FieldInfos {
       format = FORMAT_PRE;
     }
 
-    if (format != FORMAT_PRE && format != FORMAT_START && format != FORMAT_OMIT_POSITIONS) {
+    if (format != FORMAT_PRE && format != FORMAT_START && format != FORMAT_OMIT_POSITIONS && format != FORMAT_POSTINGS_ENCODING) {
       throw new CorruptIndexException("unrecognized format " + format + " in file \"" + fileName + "\"");
     }
 
@@ -396,7 +429,16 @@ final class FieldInfos {
         storePayloads = false;
       }
 
-      addInternal(name, isIndexed, storeTermVector, storePositionsWithTermVector, storeOffsetWithTermVector, omitNorms, storePayloads, indexOptions);
+      final FieldInfo fi = addInternal(name, isIndexed, storeTermVector, storePositionsWithTermVector, storeOffsetWithTermVector, omitNorms, storePayloads, indexOptions);
+
+      if (format <= FORMAT_POSTINGS_ENCODING) {
+        final byte postings = input.readByte();
+        if (postings == POSTINGS_BLOCK) {
+          fi.blockPostings = true;
+        } else if (postings != POSTINGS_VINT) {
+          throw new CorruptIndexException("unrecognized postings encoding " + postings + " for field \"" + name + "\" in file \"" + fileName + "\"");
+        }
+      }
     }
 
     if (input.getFilePointer() != input.length()) {
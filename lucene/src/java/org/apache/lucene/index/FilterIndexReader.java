@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.search.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.MapBackedSet;
 
@@ -190,6 +191,12 @@ public class FilterIndexReader extends IndexReader {
     return in.norms(f);
   }
 
+  @Override
+  public float maxNormValue(String f, Similarity similarity) throws IOException {
+    ensureOpen();
+    return in.maxNormValue(f, similarity);
+  }
+
   @Override
   public void norms(String f, byte[] bytes, int offset) throws IOException {
     ensureOpen();
@@ -219,6 +226,12 @@ public class FilterIndexReader extends IndexReader {
     return in.docFreq(t);
   }
 
+  @Override
+  public int maxTermFreq(Term t) throws IOException {
+    ensureOpen();
+    return in.maxTermFreq(t);
+  }
+
   @Override
   public TermDocs termDocs() throws IOException {
     ensureOpen();
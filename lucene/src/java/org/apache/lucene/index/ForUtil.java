@@ -0,0 +1,120 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+/**
+ * Frame of reference encoding of {@link #BLOCK_SIZE} non
+ * negative ints, used for the doc deltas and freqs of
+ * fields with {@link FieldInfo#blockPostings}.
+ *
+ * <p>A block is written as one byte holding the number of
+ * bits needed by the largest value, followed by all values
+ * packed with that many bits into <code>2 * bits</code>
+ * big-endian longs.  A block of zeros takes one byte.
+ * Decoding a block is a fixed-length loop without any of
+ * the per-value branches of VInts.</p>
+ *
+ * <p>Instances hold scratch buffers and are not thread
+ * safe.</p>
+ */
+final class ForUtil {
+
+  /** Number of values in a block; also the skip interval
+   *  of fields with block postings. */
+  static final int BLOCK_SIZE = 128;
+
+  private final long[] blocks = new long[BLOCK_SIZE / 2];
+  private final byte[] bytes = new byte[BLOCK_SIZE * 4];
+
+  /** Writes the first {@link #BLOCK_SIZE} values. */
+  void writeBlock(int[] values, IndexOutput out) throws IOException {
+    int or = 0;
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      assert values[i] >= 0;
+      or |= values[i];
+    }
+    final int bits = 32 - Integer.numberOfLeadingZeros(or);
+    out.writeByte((byte) bits);
+    if (bits == 0) {
+      return;
+    }
+
+    final int numLongs = 2 * bits;
+    Arrays.fill(blocks, 0, numLongs, 0L);
+    int bitPos = 0;
+    for (int i = 0; i < BLOCK_SIZE; i++, bitPos += bits) {
+      final long v = values[i];
+      final int index = bitPos >>> 6;
+      final int end = (bitPos & 63) + bits;
+      if (end <= 64) {
+        blocks[index] |= v << (64 - end);
+      } else {
+        blocks[index] |= v >>> (end - 64);
+        blocks[index + 1] |= v << (128 - end);
+      }
+    }
+
+    int upto = 0;
+    for (int i = 0; i < numLongs; i++) {
+      final long block = blocks[i];
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        bytes[upto++] = (byte) (block >>> shift);
+      }
+    }
+    out.writeBytes(bytes, 0, upto);
+  }
+
+  /** Reads a block written by {@link #writeBlock} into the
+   *  first {@link #BLOCK_SIZE} values. */
+  void readBlock(IndexInput in, int[] values) throws IOException {
+    final int bits = in.readByte() & 0xFF;
+    if (bits == 0) {
+      Arrays.fill(values, 0, BLOCK_SIZE, 0);
+      return;
+    } else if (bits > 32) {
+      throw new CorruptIndexException("invalid number of bits per value: " + bits + " (resource: " + in + ")");
+    }
+
+    final int numLongs = 2 * bits;
+    in.readBytes(bytes, 0, 8 * numLongs);
+    for (int i = 0, upto = 0; i < numLongs; i++, upto += 8) {
+      blocks[i] = ((long) (((bytes[upto] & 0xFF) << 24) | ((bytes[upto+1] & 0xFF) << 16)
+                           | ((bytes[upto+2] & 0xFF) << 8) | (bytes[upto+3] & 0xFF)) << 32)
+        | ((((bytes[upto+4] & 0xFF) << 24) | ((bytes[upto+5] & 0xFF) << 16)
+            | ((bytes[upto+6] & 0xFF) << 8) | (bytes[upto+7] & 0xFF)) & 0xFFFFFFFFL);
+    }
+
+    final long mask = (1L << bits) - 1;
+    int bitPos = 0;
+    for (int i = 0; i < BLOCK_SIZE; i++, bitPos += bits) {
+      final int index = bitPos >>> 6;
+      final int end = (bitPos & 63) + bits;
+      if (end <= 64) {
+        values[i] = (int) ((blocks[index] >>> (64 - end)) & mask);
+      } else {
+        values[i] = (int) (((blocks[index] << (end - 64)) | (blocks[index + 1] >>> (128 - end))) & mask);
+      }
+    }
+  }
+}
@@ -33,12 +33,23 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer implemen
   final IndexOutput out;
   final FormatPostingsTermsWriter parent;
   final FormatPostingsPositionsWriter posWriter;
-  final DefaultSkipListWriter skipListWriter;
-  final int skipInterval;
   final int totalNumDocs;
 
+  // the skip list of the current field
+  DefaultSkipListWriter skipListWriter;
+  int skipInterval;
+
   boolean omitTermFreqAndPositions;
   boolean storePayloads;
+
+  // Block postings: full blocks of doc deltas and freqs
+  // are packed with ForUtil, the last docs of a term
+  // (fewer than ForUtil.BLOCK_SIZE) are written as VInts
+  boolean blockPostings;
+  final ForUtil forUtil = new ForUtil();
+  final int[] docDeltaBuffer = new int[ForUtil.BLOCK_SIZE];
+  final int[] freqBuffer = new int[ForUtil.BLOCK_SIZE];
+  int bufferedDocs;
   long freqStart;
   FieldInfo fieldInfo;
 
@@ -50,9 +61,8 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer implemen
       totalNumDocs = parent.parent.totalNumDocs;
       
       // TODO: abstraction violation
-      skipInterval = parent.parent.termsOut.skipInterval;
-      skipListWriter = parent.parent.skipListWriter;
-      skipListWriter.setFreqOutput(out);
+      parent.parent.skipListWriter.setFreqOutput(out);
+      parent.parent.blockSkipListWriter.setFreqOutput(out);
       
       posWriter = new FormatPostingsPositionsWriter(state, this);
       success = true;
@@ -67,11 +77,21 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer implemen
     this.fieldInfo = fieldInfo;
     omitTermFreqAndPositions = fieldInfo.indexOptions == IndexOptions.DOCS_ONLY;
     storePayloads = fieldInfo.storePayloads;
+    blockPostings = fieldInfo.blockPostings;
+    if (blockPostings) {
+      skipListWriter = parent.parent.blockSkipListWriter;
+      skipInterval = ForUtil.BLOCK_SIZE;
+    } else {
+      skipListWriter = parent.parent.skipListWriter;
+      // TODO: abstraction violation
+      skipInterval = parent.parent.termsOut.skipInterval;
+    }
     posWriter.setField(fieldInfo);
   }
 
   int lastDocID;
   int df;
+  int maxTermFreq;
 
   /** Adds a new doc in this term.  If this returns null
    *  then we just skip consuming positions/payloads. */
@@ -83,14 +103,31 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer implemen
     if (docID < 0 || (df > 0 && delta <= 0))
       throw new CorruptIndexException("docs out of order (" + docID + " <= " + lastDocID + " )");
 
+    assert docID < totalNumDocs: "docID=" + docID + " totalNumDocs=" + totalNumDocs;
+
+    if (termDocFreq > maxTermFreq) {
+      maxTermFreq = termDocFreq;
+    }
+
+    if (blockPostings) {
+      if (bufferedDocs == ForUtil.BLOCK_SIZE) {
+        // the positions of the last doc are written now
+        flushBlock();
+      }
+      df++;
+      lastDocID = docID;
+      docDeltaBuffer[bufferedDocs] = delta;
+      freqBuffer[bufferedDocs] = termDocFreq - 1;
+      bufferedDocs++;
+      return posWriter;
+    }
+
     if ((++df % skipInterval) == 0) {
       // TODO: abstraction violation
       skipListWriter.setSkipData(lastDocID, storePayloads, posWriter.lastPayloadLength);
       skipListWriter.bufferSkip(df);
     }
 
-    assert docID < totalNumDocs: "docID=" + docID + " totalNumDocs=" + totalNumDocs;
-
     lastDocID = docID;
     if (omitTermFreqAndPositions)
       out.writeVInt(delta);
@@ -104,17 +141,57 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer implemen
     return posWriter;
   }
 
+  /** Writes the buffered full block, and a skip entry
+   *  pointing just after it, so that each skip lands on
+   *  the start of a block. */
+  private void flushBlock() throws IOException {
+    assert bufferedDocs == ForUtil.BLOCK_SIZE;
+    forUtil.writeBlock(docDeltaBuffer, out);
+    if (!omitTermFreqAndPositions) {
+      forUtil.writeBlock(freqBuffer, out);
+    }
+    bufferedDocs = 0;
+
+    // TODO: abstraction violation
+    skipListWriter.setSkipData(lastDocID, storePayloads, posWriter.lastPayloadLength);
+    skipListWriter.bufferSkip(df);
+  }
+
+  /** Writes the buffered docs of the last, partial block
+   *  the same way as the docs of other fields. */
+  private void flushTail() throws IOException {
+    for (int i = 0; i < bufferedDocs; i++) {
+      final int delta = docDeltaBuffer[i];
+      if (omitTermFreqAndPositions)
+        out.writeVInt(delta);
+      else if (0 == freqBuffer[i])
+        out.writeVInt((delta<<1) | 1);
+      else {
+        out.writeVInt(delta<<1);
+        out.writeVInt(freqBuffer[i] + 1);
+      }
+    }
+    bufferedDocs = 0;
+  }
+
   private final TermInfo termInfo = new TermInfo();  // minimize consing
   final UnicodeUtil.UTF8Result utf8 = new UnicodeUtil.UTF8Result();
 
   /** Called when we are done adding docs to this term */
   @Override
   void finish() throws IOException {
+    if (bufferedDocs == ForUtil.BLOCK_SIZE) {
+      flushBlock();
+    } else if (bufferedDocs > 0) {
+      flushTail();
+    }
+
     long skipPointer = skipListWriter.writeSkip(out);
 
     // TODO: this is abstraction violation -- we should not
     // peek up into parents terms encoding format
-    termInfo.set(df, parent.freqStart, parent.proxStart, (int) (skipPointer - parent.freqStart));
+    termInfo.set(df, parent.freqStart, parent.proxStart, (int) (skipPointer - parent.freqStart),
+                 omitTermFreqAndPositions ? 1 : maxTermFreq);
 
     // TODO: we could do this incrementally
     UnicodeUtil.UTF16toUTF8(parent.currentTerm, parent.currentTermStart, utf8);
@@ -124,10 +201,14 @@ final class FormatPostingsDocsWriter extends FormatPostingsDocsConsumer implemen
                           utf8.result,
                           utf8.length,
                           termInfo);
+      if (parent.hasBloomFilter) {
+        parent.parent.bloomFilterOut.add(parent.currentTerm, parent.currentTermStart);
+      }
     }
 
     lastDocID = 0;
     df = 0;
+    maxTermFreq = 0;
   }
 
   public void close() throws IOException {
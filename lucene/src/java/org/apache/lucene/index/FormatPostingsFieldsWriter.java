@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.util.Set;
 
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.IOUtils;
@@ -27,9 +28,13 @@ final class FormatPostingsFieldsWriter extends FormatPostingsFieldsConsumer {
   final Directory dir;
   final String segment;
   TermInfosWriter termsOut;
+  final TermsBloomFilter.Writer bloomFilterOut;
   final FieldInfos fieldInfos;
   FormatPostingsTermsWriter termsWriter;
   final DefaultSkipListWriter skipListWriter;
+  // skips from block to block, for fields with block postings
+  final DefaultSkipListWriter blockSkipListWriter;
+  final Set<String> blockPostingsFields;
   final int totalNumDocs;
 
   public FormatPostingsFieldsWriter(SegmentWriteState state, FieldInfos fieldInfos) throws IOException {
@@ -37,6 +42,12 @@ final class FormatPostingsFieldsWriter extends FormatPostingsFieldsConsumer {
     segment = state.segmentName;
     totalNumDocs = state.numDocs;
     this.fieldInfos = fieldInfos;
+    blockPostingsFields = state.blockPostingsFields;
+    if (state.bloomFilterFields.isEmpty()) {
+      bloomFilterOut = null;
+    } else {
+      bloomFilterOut = new TermsBloomFilter.Writer(dir, segment, state.bloomFilterFields);
+    }
     boolean success = false;
     try {
       termsOut = new TermInfosWriter(dir, segment, fieldInfos, state.termIndexInterval);
@@ -47,6 +58,8 @@ final class FormatPostingsFieldsWriter extends FormatPostingsFieldsConsumer {
       // can provide skip data or not
       skipListWriter = new DefaultSkipListWriter(termsOut.skipInterval,
           termsOut.maxSkipLevels, totalNumDocs, null, null);
+      blockSkipListWriter = new DefaultSkipListWriter(ForUtil.BLOCK_SIZE,
+          termsOut.maxSkipLevels, totalNumDocs, null, null);
       
       termsWriter = new FormatPostingsTermsWriter(state, this);
       success = true;
@@ -60,6 +73,9 @@ final class FormatPostingsFieldsWriter extends FormatPostingsFieldsConsumer {
   /** Add a new field */
   @Override
   FormatPostingsTermsConsumer addField(FieldInfo field) {
+    // Saved to the FieldInfos after this (see
+    // DocFieldProcessor.flush and SegmentMerger.mergeFields)
+    field.blockPostings = blockPostingsFields.contains(field.name);
     termsWriter.setField(field);
     return termsWriter;
   }
@@ -67,6 +83,6 @@ final class FormatPostingsFieldsWriter extends FormatPostingsFieldsConsumer {
   /** Called when we are done adding everything. */
   @Override
   void finish() throws IOException {
-    IOUtils.close(termsOut, termsWriter);
+    IOUtils.close(termsOut, termsWriter, bloomFilterOut);
   }
 }
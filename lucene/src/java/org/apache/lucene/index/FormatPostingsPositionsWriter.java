@@ -41,7 +41,8 @@ final class FormatPostingsPositionsWriter extends FormatPostingsPositionsConsume
       // At least one field does not omit TF, so create the
       // prox file
       out = parent.parent.parent.dir.createOutput(IndexFileNames.segmentFileName(parent.parent.parent.segment, IndexFileNames.PROX_EXTENSION));
-      parent.skipListWriter.setProxOutput(out);
+      parent.parent.parent.skipListWriter.setProxOutput(out);
+      parent.parent.parent.blockSkipListWriter.setProxOutput(out);
     } else
       // Every field omits TF so we will write no prox file
       out = null;
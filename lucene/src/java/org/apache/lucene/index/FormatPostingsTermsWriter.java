@@ -23,12 +23,15 @@ import java.io.IOException;
 final class FormatPostingsTermsWriter extends FormatPostingsTermsConsumer implements Closeable {
 
   final FormatPostingsFieldsWriter parent;
+  final SegmentWriteState state;
   final FormatPostingsDocsWriter docsWriter;
   final TermInfosWriter termsOut;
   FieldInfo fieldInfo;
+  boolean hasBloomFilter;
 
   FormatPostingsTermsWriter(SegmentWriteState state, FormatPostingsFieldsWriter parent) throws IOException {
     this.parent = parent;
+    this.state = state;
     termsOut = parent.termsOut;
     docsWriter = new FormatPostingsDocsWriter(state, this);
   }
@@ -36,6 +39,8 @@ final class FormatPostingsTermsWriter extends FormatPostingsTermsConsumer implem
   void setField(FieldInfo fieldInfo) {
     this.fieldInfo = fieldInfo;
     docsWriter.setField(fieldInfo);
+    hasBloomFilter = parent.bloomFilterOut != null && parent.bloomFilterOut.startField(fieldInfo,
+        state.maxNumFieldTerms == -1 ? state.numDocs : state.maxNumFieldTerms);
   }
 
   char[] currentTerm;
@@ -57,7 +62,7 @@ final class FormatPostingsTermsWriter extends FormatPostingsTermsConsumer implem
     if (docsWriter.posWriter.out != null)
       proxStart = docsWriter.posWriter.out.getFilePointer();
 
-    parent.skipListWriter.resetSkip();
+    docsWriter.skipListWriter.resetSkip();
 
     return docsWriter;
   }
@@ -65,6 +70,9 @@ final class FormatPostingsTermsWriter extends FormatPostingsTermsConsumer implem
   /** Called when we are done adding terms to this field */
   @Override
   void finish() {
+    if (hasBloomFilter) {
+      parent.bloomFilterOut.finishField();
+    }
   }
 
   public void close() throws IOException {
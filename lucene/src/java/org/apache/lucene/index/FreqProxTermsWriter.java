@@ -105,8 +105,11 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
           end++;
         
         FreqProxTermsWriterPerField[] fields = new FreqProxTermsWriterPerField[end-start];
+        state.maxNumFieldTerms = 0;
         for(int i=start;i<end;i++) {
           fields[i-start] = allFields.get(i);
+          // threads may share terms, so the sum is an upper bound
+          state.maxNumFieldTerms += fields[i-start].termsHashPerField.numPostings;
           
           // Aggregate the storePayload as seen by the same
           // field across multiple threads
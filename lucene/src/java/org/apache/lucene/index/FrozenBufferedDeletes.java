@@ -47,7 +47,12 @@ class FrozenBufferedDeletes {
   final int numTermDeletes;
   final long gen;
 
-  public FrozenBufferedDeletes(BufferedDeletes deletes, long gen) {
+  // True if these deletes only apply to the segment that
+  // has the same gen (the deletes buffered by the thread
+  // state that flushed it), and not to older segments
+  final boolean isSegmentPrivate;
+
+  public FrozenBufferedDeletes(BufferedDeletes deletes, long gen, boolean isSegmentPrivate) {
     Term termsArray[] = deletes.terms.keySet().toArray(new Term[deletes.terms.size()]);
     termCount = termsArray.length;
     ArrayUtil.mergeSort(termsArray);
@@ -69,6 +74,7 @@ class FrozenBufferedDeletes {
     bytesUsed = (int) terms.getSizeInBytes() + queries.length * BYTES_PER_DEL_QUERY;
     numTermDeletes = deletes.numTermDeletes.get();
     this.gen = gen;
+    this.isSegmentPrivate = isSegmentPrivate;
   }
 
   public Iterable<Term> termsIterable() {
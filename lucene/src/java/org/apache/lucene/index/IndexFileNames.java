@@ -93,6 +93,9 @@ public final class IndexFileNames {
   /** Extension of gen file */
   public static final String GEN_EXTENSION = "gen";
 
+  /** Extension of terms Bloom filters file */
+  public static final String BLOOM_FILTER_EXTENSION = "blm";
+
   /**
    * This array contains all filename extensions used by
    * Lucene's index files, with two exceptions, namely the
@@ -117,6 +120,7 @@ public final class IndexFileNames {
     GEN_EXTENSION,
     NORMS_EXTENSION,
     COMPOUND_FILE_STORE_EXTENSION,
+    BLOOM_FILTER_EXTENSION,
   };
 
   /** File extensions that are added to a compound file
@@ -132,7 +136,8 @@ public final class IndexFileNames {
     VECTORS_INDEX_EXTENSION,
     VECTORS_DOCUMENTS_EXTENSION,
     VECTORS_FIELDS_EXTENSION,
-    NORMS_EXTENSION
+    NORMS_EXTENSION,
+    BLOOM_FILTER_EXTENSION
   };
 
   public static final String[] STORE_INDEX_EXTENSIONS = new String[] {
@@ -149,7 +154,8 @@ public final class IndexFileNames {
     PROX_EXTENSION,
     TERMS_EXTENSION,
     TERMS_INDEX_EXTENSION,
-    NORMS_EXTENSION
+    NORMS_EXTENSION,
+    BLOOM_FILTER_EXTENSION
   };
   
   /** File extensions of old-style index files */
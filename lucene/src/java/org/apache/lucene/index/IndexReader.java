@@ -171,6 +171,8 @@ public abstract class IndexReader implements Cloneable,Closeable {
 
   static int DEFAULT_TERMS_INDEX_DIVISOR = 1;
 
+  static final int DEFAULT_TERMS_CACHE_SIZE = 1024;
+
   /** Expert: returns the current refCount for this reader */
   public int getRefCount() {
     return refCount.get();
@@ -264,7 +266,7 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * @throws IOException if there is a low-level IO error
    */
   public static IndexReader open(final Directory directory) throws CorruptIndexException, IOException {
-    return open(directory, null, null, true, DEFAULT_TERMS_INDEX_DIVISOR);
+    return open(directory, null, null, true, DEFAULT_TERMS_INDEX_DIVISOR, DEFAULT_TERMS_CACHE_SIZE);
   }
 
   /** Returns an IndexReader reading the index in the given
@@ -278,7 +280,7 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * @throws IOException if there is a low-level IO error
    */
   public static IndexReader open(final Directory directory, boolean readOnly) throws CorruptIndexException, IOException {
-    return open(directory, null, null, readOnly, DEFAULT_TERMS_INDEX_DIVISOR);
+    return open(directory, null, null, readOnly, DEFAULT_TERMS_INDEX_DIVISOR, DEFAULT_TERMS_CACHE_SIZE);
   }
 
   /**
@@ -315,7 +317,7 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * @throws IOException if there is a low-level IO error
    */
   public static IndexReader open(final IndexCommit commit, boolean readOnly) throws CorruptIndexException, IOException {
-    return open(commit.getDirectory(), null, commit, readOnly, DEFAULT_TERMS_INDEX_DIVISOR);
+    return open(commit.getDirectory(), null, commit, readOnly, DEFAULT_TERMS_INDEX_DIVISOR, DEFAULT_TERMS_CACHE_SIZE);
   }
 
   /** Expert: returns an IndexReader reading the index in
@@ -333,7 +335,7 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * @throws IOException if there is a low-level IO error
    */
   public static IndexReader open(final Directory directory, IndexDeletionPolicy deletionPolicy, boolean readOnly) throws CorruptIndexException, IOException {
-    return open(directory, deletionPolicy, null, readOnly, DEFAULT_TERMS_INDEX_DIVISOR);
+    return open(directory, deletionPolicy, null, readOnly, DEFAULT_TERMS_INDEX_DIVISOR, DEFAULT_TERMS_CACHE_SIZE);
   }
 
   /** Expert: returns an IndexReader reading the index in
@@ -361,7 +363,7 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * @throws IOException if there is a low-level IO error
    */
   public static IndexReader open(final Directory directory, IndexDeletionPolicy deletionPolicy, boolean readOnly, int termInfosIndexDivisor) throws CorruptIndexException, IOException {
-    return open(directory, deletionPolicy, null, readOnly, termInfosIndexDivisor);
+    return open(directory, deletionPolicy, null, readOnly, termInfosIndexDivisor, DEFAULT_TERMS_CACHE_SIZE);
   }
 
   /** Expert: returns an IndexReader reading the index in
@@ -381,7 +383,7 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * @throws IOException if there is a low-level IO error
    */
   public static IndexReader open(final IndexCommit commit, IndexDeletionPolicy deletionPolicy, boolean readOnly) throws CorruptIndexException, IOException {
-    return open(commit.getDirectory(), deletionPolicy, commit, readOnly, DEFAULT_TERMS_INDEX_DIVISOR);
+    return open(commit.getDirectory(), deletionPolicy, commit, readOnly, DEFAULT_TERMS_INDEX_DIVISOR, DEFAULT_TERMS_CACHE_SIZE);
   }
 
   /** Expert: returns an IndexReader reading the index in
@@ -414,11 +416,44 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * @throws IOException if there is a low-level IO error
    */
   public static IndexReader open(final IndexCommit commit, IndexDeletionPolicy deletionPolicy, boolean readOnly, int termInfosIndexDivisor) throws CorruptIndexException, IOException {
-    return open(commit.getDirectory(), deletionPolicy, commit, readOnly, termInfosIndexDivisor);
+    return open(commit.getDirectory(), deletionPolicy, commit, readOnly, termInfosIndexDivisor, DEFAULT_TERMS_CACHE_SIZE);
   }
 
-  private static IndexReader open(final Directory directory, final IndexDeletionPolicy deletionPolicy, final IndexCommit commit, final boolean readOnly, int termInfosIndexDivisor) throws CorruptIndexException, IOException {
-    return DirectoryReader.open(directory, deletionPolicy, commit, readOnly, termInfosIndexDivisor);
+  /** Expert: returns an IndexReader reading the index in
+   *  the given Directory, with a custom {@link
+   *  IndexDeletionPolicy} and terms index and cache settings.
+   * @param termInfosIndexDivisor see {@link #open(Directory,IndexDeletionPolicy,boolean,int)}
+   * @param termInfosCacheSize how many recently looked up
+   *  terms each segment keeps the TermInfo of, so that
+   *  repeated lookups (eg of the terms of frequent queries,
+   *  or of primary keys) need not seek the terms dictionary.
+   *  The default is 1024; pass 0 to disable the cache.  The
+   *  hit rate of the cache can be checked with {@link
+   *  SegmentReader#getTermInfosCacheHits} and {@link
+   *  SegmentReader#getTermInfosCacheMisses}.
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   * @lucene.experimental
+   */
+  public static IndexReader open(final Directory directory, IndexDeletionPolicy deletionPolicy, boolean readOnly, int termInfosIndexDivisor,
+                                 int termInfosCacheSize) throws CorruptIndexException, IOException {
+    return open(directory, deletionPolicy, null, readOnly, termInfosIndexDivisor, termInfosCacheSize);
+  }
+
+  /** Expert: like {@link #open(Directory,IndexDeletionPolicy,boolean,int,int)},
+   *  but opens a specific commit.
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   * @lucene.experimental
+   */
+  public static IndexReader open(final IndexCommit commit, IndexDeletionPolicy deletionPolicy, boolean readOnly, int termInfosIndexDivisor,
+                                 int termInfosCacheSize) throws CorruptIndexException, IOException {
+    return open(commit.getDirectory(), deletionPolicy, commit, readOnly, termInfosIndexDivisor, termInfosCacheSize);
+  }
+
+  private static IndexReader open(final Directory directory, final IndexDeletionPolicy deletionPolicy, final IndexCommit commit, final boolean readOnly, int termInfosIndexDivisor,
+                                  int termInfosCacheSize) throws CorruptIndexException, IOException {
+    return DirectoryReader.open(directory, deletionPolicy, commit, readOnly, termInfosIndexDivisor, termInfosCacheSize);
   }
 
   /**
@@ -537,9 +572,10 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * over, so far</p>.
    *
    * <p><b>NOTE</b>: Once the writer is closed, any
-   * outstanding readers may continue to be used.  However,
-   * if you attempt to reopen any of those readers, you'll
-   * hit an {@link AlreadyClosedException}.</p>
+   * outstanding readers may continue to be used.  If you
+   * reopen any of those readers, the new reader is opened
+   * from the last commit in the directory, as if it had not
+   * been obtained from the writer.</p>
    *
    * @return IndexReader that covers entire index plus all
    * changes made so far by this IndexWriter instance
@@ -903,6 +939,49 @@ public abstract class IndexReader implements Cloneable,Closeable {
   public abstract void norms(String field, byte[] bytes, int offset)
     throws IOException;
 
+  /** Expert: Returns the largest normalization factor that
+   *  <code>similarity</code> decodes from the norms of the
+   *  named field, or 1.0 if norms were not indexed for this
+   *  field.  This is used by the search code to bound the
+   *  scores of documents.
+   *
+   *  <p>This implementation decodes the distinct values of
+   *  {@link #norms(String)}.
+   *
+   * @see Similarity#decodeNormValue(byte)
+   * @lucene.experimental
+   */
+  public float maxNormValue(String field, Similarity similarity) throws IOException {
+    final byte[] norms = norms(field);
+    if (norms == null) {
+      return 1.0f;
+    }
+    return maxNormValue(normValues(norms), similarity);
+  }
+
+  /** Returns the distinct values of the given norms, as a
+   *  set of 256 bits indexed by the unsigned byte value. */
+  static long[] normValues(byte[] norms) {
+    final long[] values = new long[4];
+    for (byte b : norms) {
+      final int value = b & 0xFF;
+      values[value >>> 6] |= 1L << value;
+    }
+    return values;
+  }
+
+  /** Returns the largest factor <code>similarity</code>
+   *  decodes from the values returned by {@link #normValues}. */
+  static float maxNormValue(long[] values, Similarity similarity) {
+    float max = Float.NEGATIVE_INFINITY;
+    for (int value = 0; value < 256; value++) {
+      if ((values[value >>> 6] & (1L << value)) != 0) {
+        max = Math.max(max, similarity.decodeNormValue((byte) value));
+      }
+    }
+    return max;
+  }
+
   /** Expert: Resets the normalization factor for the named field of the named
    * document.  The norm represents the product of the field's {@link
    * org.apache.lucene.document.Fieldable#setBoost(float) boost} and its {@link Similarity#lengthNorm(String,
@@ -983,6 +1062,20 @@ public abstract class IndexReader implements Cloneable,Closeable {
    */
   public abstract int docFreq(Term t) throws IOException;
 
+  /** Expert: Returns an upper bound of the frequency of the
+   *  term <code>t</code> in any document, or -1 if it is not
+   *  known.  This is used by the search code to bound the
+   *  scores of documents.
+   *
+   *  <p>This implementation returns -1.
+   *
+   * @throws IOException if there is a low-level IO error
+   * @lucene.experimental
+   */
+  public int maxTermFreq(Term t) throws IOException {
+    return -1;
+  }
+
   /** Returns an enumeration of all the documents which contain
    * <code>term</code>. For each document, the document number, the frequency of
    * the term in that document is also provided, for use in
@@ -46,6 +46,7 @@ import org.apache.lucene.store.BufferedIndexInput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.Lock;
 import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.BitVector;
 import org.apache.lucene.util.Constants;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.ThreadInterruptedException;
@@ -261,7 +262,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
   // it too much because there are quite a few
   // BufferedIndexInputs created during merging.  See
   // LUCENE-888 for details.
-  private final static int MERGE_READ_BUFFER_SIZE = 4096;
+  private final static int MERGE_READ_BUFFER_SIZE = BufferedIndexInput.MERGE_BUFFER_SIZE;
 
   // Used for printing messages
   private static final AtomicInteger MESSAGE_ID = new AtomicInteger();
@@ -284,7 +285,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
   final SegmentInfos segmentInfos = new SegmentInfos();       // the segments
 
-  private DocumentsWriter docWriter;
+  private DocumentsWriterPool docWriter;
   private IndexFileDeleter deleter;
 
   private Map<SegmentInfo,Boolean> segmentsToOptimize = new HashMap<SegmentInfo,Boolean>();           // used by optimize to note those needing optimization
@@ -383,9 +384,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
    * over, so far</p>.
    *
    * <p><b>NOTE</b>: Once the writer is closed, any
-   * outstanding readers may continue to be used.  However,
-   * if you attempt to reopen any of those readers, you'll
-   * hit an {@link AlreadyClosedException}.</p>
+   * outstanding readers may continue to be used.  If you
+   * reopen any of those readers, the new reader is opened
+   * from the last commit in the directory, as if it had not
+   * been obtained from the writer.</p>
    *
    * @lucene.experimental
    *
@@ -707,7 +709,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         // TODO: we may want to avoid doing this while
         // synchronized
         // Returns a ref, which we xfer to readerMap:
-        sr = SegmentReader.get(false, info.dir, info, readBufferSize, doOpenStores, termsIndexDivisor);
+        sr = SegmentReader.get(false, info.dir, info, readBufferSize, doOpenStores, termsIndexDivisor,
+                               config.getReaderTermsCacheSize());
         sr.readerFinishedListeners = readerFinishedListeners;
 
         if (info.dir == directory) {
@@ -1172,7 +1175,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
       rollbackSegments = segmentInfos.createBackupSegmentInfos(true);
 
-      docWriter = new DocumentsWriter(config, directory, this, getCurrentFieldInfos(), bufferedDeletesStream);
+      docWriter = new DocumentsWriterPool(config, directory, this, getCurrentFieldInfos());
       docWriter.setInfoStream(infoStream);
       docWriter.setMaxFieldLength(maxFieldLength);
 
@@ -2200,7 +2203,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
   public void deleteDocuments(Term term) throws CorruptIndexException, IOException {
     ensureOpen();
     try {
-      if (docWriter.deleteTerm(term, false)) {
+      if (docWriter.deleteTerm(term)) {
         flush(true, false);
       }
     } catch (OutOfMemoryError oom) {
@@ -3083,7 +3086,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       // abortable so that IW.close(false) is able to stop it
       SegmentMerger merger = new SegmentMerger(directory, config.getTermIndexInterval(),
                                                mergedName, null, payloadProcessorProvider,
-                                               ((FieldInfos) docWriter.getFieldInfos().clone()));
+                                               ((FieldInfos) docWriter.getFieldInfos().clone()),
+                                               config.getBloomFilterFields(), config.getBlockPostingsFields());
       
       for (IndexReader reader : readers)      // add new indexes
         merger.add(reader);
@@ -3580,14 +3584,6 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
     assert testPoint("startDoFlush");
 
-    // We may be flushing because it was triggered by doc
-    // count, del count, ram usage (in which case flush
-    // pending is already set), or we may be flushing
-    // due to external event eg getReader or commit is
-    // called (in which case we now set it, and this will
-    // pause all threads):
-    flushControl.setFlushPendingNoWait("explicit flush");
-
     boolean success = false;
 
     try {
@@ -3596,85 +3592,224 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         message("  start flush: applyAllDeletes=" + applyAllDeletes);
         message("  index before flush " + segString());
       }
-    
-      final SegmentInfo newSegment = docWriter.flush(this, deleter, mergePolicy, segmentInfos);
-      if (newSegment != null) {
-        setDiagnostics(newSegment, "flush");
-        segmentInfos.add(newSegment);
-        checkpoint();
-      }
 
-      if (!applyAllDeletes) {
-        // If deletes alone are consuming > 1/2 our RAM
-        // buffer, force them all to apply now. This is to
-        // prevent too-frequent flushing of a long tail of
-        // tiny segments:
-        if (flushControl.getFlushDeletes() ||
-            (config.getRAMBufferSizeMB() != IndexWriterConfig.DISABLE_AUTO_FLUSH &&
-             bufferedDeletesStream.bytesUsed() > (1024*1024*config.getRAMBufferSizeMB()/2))) {
-          applyAllDeletes = true;
-          if (infoStream != null) {
-            message("force apply deletes bytesUsed=" + bufferedDeletesStream.bytesUsed() + " vs ramBuffer=" + (1024*1024*config.getRAMBufferSizeMB()));
-          }
-        }
+      // Waits until no thread is adding docs, and for the
+      // flushes other threads are running:
+      boolean anySegment = false;
+      try {
+        docWriter.flushAll();
+      } finally {
+        anySegment = publishFlushedSegments();
       }
 
-      if (applyAllDeletes) {
-        if (infoStream != null) {
-          message("apply all deletes during flush");
-        }
-        
-        flushDeletesCount.incrementAndGet();
-        final BufferedDeletesStream.ApplyDeletesResult result = bufferedDeletesStream
-          .applyDeletes(readerPool, segmentInfos.asList());
-        if (result.anyDeletes) {
-          checkpoint();
-        }
-        if (!keepFullyDeletedSegments && result.allDeleted != null) {
-          if (infoStream != null) {
-            message("drop 100% deleted segments: " + result.allDeleted);
-          }
-          for (SegmentInfo info : result.allDeleted) {
-            // If a merge has already registered for this
-            // segment, we leave it in the readerPool; the
-            // merge will skip merging it and will then drop
-            // it once it's done:
-            if (!mergingSegments.contains(info)) {
-              segmentInfos.remove(info);
-              if (readerPool != null) {
-                readerPool.drop(info);
-              }
-            }
-          }
-          checkpoint();
-        }
-        bufferedDeletesStream.prune(segmentInfos);
-
-        assert !bufferedDeletesStream.any();
-        flushControl.clearDeletes();
-      } else if (infoStream != null) {
-        message("don't apply deletes now delTermCount=" + bufferedDeletesStream.numTerms() + " bytesUsed=" + bufferedDeletesStream.bytesUsed());
-      }
-      
+      maybeApplyAllDeletes(applyAllDeletes);
 
       doAfterFlush();
       flushCount.incrementAndGet();
 
       success = true;
 
-      return newSegment != null;
+      return anySegment;
 
     } catch (OutOfMemoryError oom) {
       handleOOM(oom, "doFlush");
       // never hit
       return false;
     } finally {
-      flushControl.clearFlushPending();
       if (!success && infoStream != null)
         message("hit exception during flush");
     }
   }
 
+  /** Called by {@link DocumentsWriterPool} once a thread
+   *  flushed a segment while the other threads kept
+   *  indexing. */
+  final void publishFlushedSegments(boolean triggerMerge) throws IOException {
+    final boolean anySegment;
+    synchronized(this) {
+      if (hitOOM) {
+        throw new IllegalStateException("this writer hit an OutOfMemoryError; cannot flush");
+      }
+      doBeforeFlush();
+      anySegment = publishFlushedSegments();
+      if (anySegment) {
+        maybeApplyAllDeletes(false);
+        flushCount.incrementAndGet();
+      }
+      doAfterFlush();
+    }
+    if (anySegment && triggerMerge) {
+      maybeMerge();
+    }
+  }
+
+  /* Adds the segments that were flushed to the index, in
+   * the order their DocumentsWriters were frozen, and pushes
+   * their deletes.  Returns true if any segment was added. */
+  // Lock order: IW -> DWP -> BD
+  private synchronized boolean publishFlushedSegments() throws IOException {
+    boolean anySegment = false;
+    DocumentsWriterPool.FlushTicket ticket;
+    while ((ticket = docWriter.nextFlushedTicket()) != null) {
+      anySegment |= publishFlushedSegment(ticket);
+    }
+    return anySegment;
+  }
+
+  private boolean publishFlushedSegment(DocumentsWriterPool.FlushTicket ticket) throws IOException {
+    // The global deletes apply to all segments published
+    // before this one:
+    if (ticket.globalDeletes.any()) {
+      if (segmentInfos.size() > 0) {
+        final FrozenBufferedDeletes packet = new FrozenBufferedDeletes(ticket.globalDeletes, bufferedDeletesStream.getNextGen(), false);
+        if (infoStream != null) {
+          message("flush: push buffered deletes startSize=" + ticket.globalDeletes.bytesUsed.get() + " frozenSize=" + packet.bytesUsed);
+        }
+        bufferedDeletesStream.push(packet);
+      } else if (infoStream != null) {
+        // We can safely discard these deletes: since
+        // there are no segments, the deletions cannot
+        // affect anything.
+        message("flush: drop buffered deletes: no segments");
+      }
+    }
+
+    if (ticket.segment == null) {
+      if (ticket.segmentName != null) {
+        // Writing the segment failed: remove its files
+        deleter.refresh(ticket.segmentName);
+      }
+      return false;
+    }
+
+    final SegmentInfo newSegment = ticket.segment.segmentInfo;
+    final BitVector deletedDocs = ticket.segment.deletedDocs;
+
+    boolean success = false;
+    try {
+      if (mergePolicy.useCompoundFile(segmentInfos, newSegment)) {
+        final String cfsFileName = IndexFileNames.segmentFileName(newSegment.name, IndexFileNames.COMPOUND_FILE_EXTENSION);
+
+        if (infoStream != null) {
+          message("flush: create compound file \"" + cfsFileName + "\"");
+        }
+
+        CompoundFileWriter cfsWriter = new CompoundFileWriter(directory, cfsFileName);
+        for(String fileName : newSegment.files()) {
+          cfsWriter.addFile(fileName);
+        }
+        cfsWriter.close();
+        deleter.deleteNewFiles(newSegment.files());
+        newSegment.setUseCompoundFile(true);
+      }
+
+      // Must write deleted docs after the CFS so we don't
+      // slurp the del file into CFS:
+      if (deletedDocs != null) {
+        final int delCount = deletedDocs.count();
+        assert delCount > 0;
+        newSegment.setDelCount(delCount);
+        newSegment.advanceDelGen();
+        final String delFileName = newSegment.getDelFileName();
+        if (infoStream != null) {
+          message("flush: write " + delCount + " deletes to " + delFileName);
+        }
+        // TODO: in the NRT case it'd be better to hand
+        // this del vector over to the
+        // shortly-to-be-opened SegmentReader and let it
+        // carry the changes; there's no reason to use
+        // filesystem as intermediary here.
+        deletedDocs.write(directory, delFileName);
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        if (infoStream != null) {
+          message("hit exception publishing segment " + newSegment.name);
+        }
+        deleter.refresh(newSegment.name);
+      }
+    }
+
+    // The term deletes buffered by the flushed
+    // DocumentsWriter were applied while writing the
+    // segment; its delete queries only apply to the docs of
+    // this segment:
+    final BufferedDeletes segmentDeletes = ticket.segment.segmentDeletes;
+    if (segmentDeletes.queries.size() > 0) {
+      final BufferedDeletes queryDeletes = new BufferedDeletes();
+      for(Map.Entry<Query,Integer> ent : segmentDeletes.queries.entrySet()) {
+        queryDeletes.addQuery(ent.getKey(), ent.getValue().intValue());
+      }
+      final FrozenBufferedDeletes packet = new FrozenBufferedDeletes(queryDeletes, bufferedDeletesStream.getNextGen(), true);
+      bufferedDeletesStream.push(packet);
+      newSegment.setBufferedDeletesGen(packet.gen);
+    } else {
+      newSegment.setBufferedDeletesGen(bufferedDeletesStream.getNextGen());
+    }
+
+    setDiagnostics(newSegment, "flush");
+    segmentInfos.add(newSegment);
+    checkpoint();
+    return true;
+  }
+
+  private void maybeApplyAllDeletes(boolean applyAllDeletes) throws IOException {
+    assert Thread.holdsLock(this);
+
+    if (!applyAllDeletes) {
+      // If deletes alone are consuming > 1/2 our RAM
+      // buffer, force them all to apply now. This is to
+      // prevent too-frequent flushing of a long tail of
+      // tiny segments:
+      if (docWriter.getFlushDeletes() ||
+          (config.getRAMBufferSizeMB() != IndexWriterConfig.DISABLE_AUTO_FLUSH &&
+           bufferedDeletesStream.bytesUsed() > (1024*1024*config.getRAMBufferSizeMB()/2))) {
+        applyAllDeletes = true;
+        if (infoStream != null) {
+          message("force apply deletes bytesUsed=" + bufferedDeletesStream.bytesUsed() + " vs ramBuffer=" + (1024*1024*config.getRAMBufferSizeMB()));
+        }
+      }
+    }
+
+    if (applyAllDeletes) {
+      if (infoStream != null) {
+        message("apply all deletes during flush");
+      }
+
+      flushDeletesCount.incrementAndGet();
+      final BufferedDeletesStream.ApplyDeletesResult result = bufferedDeletesStream
+        .applyDeletes(readerPool, segmentInfos.asList());
+      if (result.anyDeletes) {
+        checkpoint();
+      }
+      if (!keepFullyDeletedSegments && result.allDeleted != null) {
+        if (infoStream != null) {
+          message("drop 100% deleted segments: " + result.allDeleted);
+        }
+        for (SegmentInfo info : result.allDeleted) {
+          // If a merge has already registered for this
+          // segment, we leave it in the readerPool; the
+          // merge will skip merging it and will then drop
+          // it once it's done:
+          if (!mergingSegments.contains(info)) {
+            segmentInfos.remove(info);
+            if (readerPool != null) {
+              readerPool.drop(info);
+            }
+          }
+        }
+        checkpoint();
+      }
+      bufferedDeletesStream.prune(segmentInfos);
+
+      assert !bufferedDeletesStream.any();
+      docWriter.clearDeletes();
+    } else if (infoStream != null) {
+      message("don't apply deletes now delTermCount=" + bufferedDeletesStream.numTerms() + " bytesUsed=" + bufferedDeletesStream.bytesUsed());
+    }
+  }
+
   /** Expert:  Return the total size of all index files currently cached in memory.
    * Useful for size management with flushRamDocs()
    */
@@ -3750,7 +3885,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
               assert currentReader.isDeleted(j);
             else {
               if (currentReader.isDeleted(j)) {
-                mergedReader.doDelete(docUpto);
+                mergedReader.doDelete(merge.getMergedDocID(docUpto));
                 delCount++;
               }
               docUpto++;
@@ -3764,7 +3899,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         // does:
         for(int j=0; j<docCount; j++) {
           if (currentReader.isDeleted(j)) {
-            mergedReader.doDelete(docUpto);
+            mergedReader.doDelete(merge.getMergedDocID(docUpto));
             delCount++;
           }
           docUpto++;
@@ -4224,7 +4359,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
     SegmentMerger merger = new SegmentMerger(directory, config.getTermIndexInterval(), mergedName, merge,
                                              payloadProcessorProvider,
-                                             ((FieldInfos) docWriter.getFieldInfos().clone()));
+                                             ((FieldInfos) docWriter.getFieldInfos().clone()),
+                                             config.getBloomFilterFields(), config.getBlockPostingsFields());
 
     if (infoStream != null) {
       message("merging " + merge.segString(directory) + " mergeVectors=" + merge.info.getHasVectors());
@@ -4257,12 +4393,15 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         merge.readerClones.add(clone);
 
         if (clone.numDocs() > 0) {
-          merger.add(clone);
           totDocCount += clone.numDocs();
         }
         segUpto++;
       }
 
+      for (IndexReader mergeReader : merge.getMergeReaders()) {
+        merger.add(mergeReader);
+      }
+
       if (infoStream != null) {
         message("merge: total " + totDocCount + " docs");
       }
@@ -4783,6 +4922,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
    *  be deleted the next time commit() is called.
    */
   public synchronized void deleteUnusedFiles() throws IOException {
+    // once closed, the deleter's commits may be stale
+    ensureOpen(false);
     deleter.deletePendingFiles();
     deleter.revisitPolicy();
   }
@@ -4817,122 +4958,4 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     return payloadProcessorProvider;
   }
 
-  // decides when flushes happen
-  final class FlushControl {
-
-    private boolean flushPending;
-    private boolean flushDeletes;
-    private int delCount;
-    private int docCount;
-    private boolean flushing;
-
-    private synchronized boolean setFlushPending(String reason, boolean doWait) {
-      if (flushPending || flushing) {
-        if (doWait) {
-          while(flushPending || flushing) {
-            try {
-              wait();
-            } catch (InterruptedException ie) {
-              throw new ThreadInterruptedException(ie);
-            }
-          }
-        }
-        return false;
-      } else {
-        if (infoStream != null) {
-          message("now trigger flush reason=" + reason);
-        }
-        flushPending = true;
-        return flushPending;
-      }
-    }
-
-    public synchronized void setFlushPendingNoWait(String reason) {
-      setFlushPending(reason, false);
-    }
-
-    public synchronized boolean getFlushPending() {
-      return flushPending;
-    }
-
-    public synchronized boolean getFlushDeletes() {
-      return flushDeletes;
-    }
-
-    public synchronized void clearFlushPending() {
-      if (infoStream != null) {
-        message("clearFlushPending");
-      }
-      flushPending = false;
-      flushDeletes = false;
-      docCount = 0;
-      notifyAll();
-    }
-
-    public synchronized void clearDeletes() {
-      delCount = 0;
-    }
-
-    public synchronized boolean waitUpdate(int docInc, int delInc) {
-      return waitUpdate(docInc, delInc, false);
-    }
-
-    public synchronized boolean waitUpdate(int docInc, int delInc, boolean skipWait) {
-      while(flushPending) {
-        try {
-          wait();
-        } catch (InterruptedException ie) {
-          throw new ThreadInterruptedException(ie);
-        }
-      }
-
-      docCount += docInc;
-      delCount += delInc;
-
-      // skipWait is only used when a thread is BOTH adding
-      // a doc and buffering a del term, and, the adding of
-      // the doc already triggered a flush
-      if (skipWait) {
-        return false;
-      }
-
-      final int maxBufferedDocs = config.getMaxBufferedDocs();
-      if (maxBufferedDocs != IndexWriterConfig.DISABLE_AUTO_FLUSH &&
-          docCount >= maxBufferedDocs) {
-        return setFlushPending("maxBufferedDocs", true);
-      }
-
-      final int maxBufferedDeleteTerms = config.getMaxBufferedDeleteTerms();
-      if (maxBufferedDeleteTerms != IndexWriterConfig.DISABLE_AUTO_FLUSH &&
-          delCount >= maxBufferedDeleteTerms) {
-        flushDeletes = true;
-        return setFlushPending("maxBufferedDeleteTerms", true);
-      }
-
-      return flushByRAMUsage("add delete/doc");
-    }
-
-    public synchronized boolean flushByRAMUsage(String reason) {
-      final double ramBufferSizeMB = config.getRAMBufferSizeMB();
-      if (ramBufferSizeMB != IndexWriterConfig.DISABLE_AUTO_FLUSH) {
-        final long limit = (long) (ramBufferSizeMB*1024*1024);
-        long used = bufferedDeletesStream.bytesUsed() + docWriter.bytesUsed();
-        if (used >= limit) {
-          
-          // DocumentsWriter may be able to free up some
-          // RAM:
-          // Lock order: FC -> DW
-          docWriter.balanceRAM();
-
-          used = bufferedDeletesStream.bytesUsed() + docWriter.bytesUsed();
-          if (used >= limit) {
-            return setFlushPending("ram full: " + reason, false);
-          }
-        }
-      }
-      return false;
-    }
-  }
-
-  final FlushControl flushControl = new FlushControl();
 }
@@ -17,6 +17,10 @@ package org.apache.lucene.index;
  * limitations under the License.
  */
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.DocumentsWriter.IndexingChain;
 import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
@@ -92,6 +96,9 @@ public final class IndexWriterConfig implements Cloneable {
   /** Default value is 1. Change using {@link #setReaderTermsIndexDivisor(int)}. */
   public static final int DEFAULT_READER_TERMS_INDEX_DIVISOR = IndexReader.DEFAULT_TERMS_INDEX_DIVISOR;
 
+  /** Default value is 1024. Change using {@link #setReaderTermsCacheSize(int)}. */
+  public static final int DEFAULT_READER_TERMS_CACHE_SIZE = IndexReader.DEFAULT_TERMS_CACHE_SIZE;
+
   /**
    * Sets the default (for any instance) maximum time to wait for a write lock
    * (in milliseconds).
@@ -127,6 +134,9 @@ public final class IndexWriterConfig implements Cloneable {
   private volatile int maxThreadStates;
   private volatile boolean readerPooling;
   private volatile int readerTermsIndexDivisor;
+  private volatile int readerTermsCacheSize;
+  private volatile Set<String> bloomFilterFields;
+  private volatile Set<String> blockPostingsFields;
   
   private Version matchVersion;
 
@@ -165,6 +175,9 @@ public final class IndexWriterConfig implements Cloneable {
     maxThreadStates = DEFAULT_MAX_THREAD_STATES;
     readerPooling = DEFAULT_READER_POOLING;
     readerTermsIndexDivisor = DEFAULT_READER_TERMS_INDEX_DIVISOR;
+    readerTermsCacheSize = DEFAULT_READER_TERMS_CACHE_SIZE;
+    bloomFilterFields = Collections.emptySet();
+    blockPostingsFields = Collections.emptySet();
   }
   
   @Override
@@ -597,6 +610,77 @@ public final class IndexWriterConfig implements Cloneable {
   public int getReaderTermsIndexDivisor() {
     return readerTermsIndexDivisor;
   }
+
+  /** Sets how many recently looked up terms the pooled
+   *  readers keep the TermInfo of, per segment; 0 disables
+   *  the cache.  The hit rate can be checked with {@link
+   *  SegmentReader#getTermInfosCacheHits} and {@link
+   *  SegmentReader#getTermInfosCacheMisses}.
+   *
+   * <p>Takes effect immediately, but only applies to
+   * segments opened after this call
+   * @lucene.experimental */
+  public IndexWriterConfig setReaderTermsCacheSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("size must be >= 0 (got " + size + ")");
+    }
+    readerTermsCacheSize = size;
+    return this;
+  }
+
+  /** @see #setReaderTermsCacheSize(int) */
+  public int getReaderTermsCacheSize() {
+    return readerTermsCacheSize;
+  }
+
+  /** Sets the fields to write a Bloom filter of the terms
+   *  for in each flushed or merged segment.  Readers use the
+   *  filters to skip segments that cannot contain a term,
+   *  which makes {@link IndexWriter#updateDocument} and
+   *  {@link IndexWriter#deleteDocuments(Term)} by a primary
+   *  key much cheaper with many segments.  The filters take
+   *  10 to 20 bits per unique term, so they are only worth
+   *  it for fields that are looked up by exact term, like
+   *  primary keys.  By default no field has a filter.
+   *
+   * <p>Takes effect immediately, but only applies to
+   * segments written after this call
+   * @lucene.experimental */
+  public IndexWriterConfig setBloomFilterFields(Set<String> fields) {
+    bloomFilterFields = Collections.unmodifiableSet(new HashSet<String>(fields));
+    return this;
+  }
+
+  /** @see #setBloomFilterFields(Set) */
+  public Set<String> getBloomFilterFields() {
+    return bloomFilterFields;
+  }
+
+  /** Sets the fields whose postings are written in blocks:
+   *  the doc deltas and freqs of every 128 docs of a term
+   *  are bit packed with the same number of bits, and the
+   *  skip list points to the start of each block.  Blocks
+   *  are decoded in bulk, so iterating long postings lists,
+   *  eg for {@link org.apache.lucene.search.Filter}s or
+   *  conjunctions of common terms, is faster than with the
+   *  default VInt encoding, at the price of a slightly
+   *  larger index and slower short postings lists.  Terms
+   *  with fewer than 128 docs are written as usual.  By
+   *  default no field has block postings.
+   *
+   * <p>Takes effect immediately, but only applies to
+   * segments written after this call; merges rewrite older
+   * segments as configured
+   * @lucene.experimental */
+  public IndexWriterConfig setBlockPostingsFields(Set<String> fields) {
+    blockPostingsFields = Collections.unmodifiableSet(new HashSet<String>(fields));
+    return this;
+  }
+
+  /** @see #setBlockPostingsFields(Set) */
+  public Set<String> getBlockPostingsFields() {
+    return blockPostingsFields;
+  }
   
   @Override
   public String toString() {
@@ -619,6 +703,9 @@ public final class IndexWriterConfig implements Cloneable {
     sb.append("maxThreadStates=").append(maxThreadStates).append("\n");
     sb.append("readerPooling=").append(readerPooling).append("\n");
     sb.append("readerTermsIndexDivisor=").append(readerTermsIndexDivisor).append("\n");
+    sb.append("readerTermsCacheSize=").append(readerTermsCacheSize).append("\n");
+    sb.append("bloomFilterFields=").append(bloomFilterFields).append("\n");
+    sb.append("blockPostingsFields=").append(blockPostingsFields).append("\n");
     return sb.toString();
   }
 }
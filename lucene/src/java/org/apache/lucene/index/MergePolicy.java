@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.util.SetOnce;
 import org.apache.lucene.util.SetOnce.AlreadySetException;
 
@@ -80,6 +81,7 @@ public abstract class MergePolicy implements java.io.Closeable {
     boolean aborted;
     Throwable error;
     boolean paused;
+    RateLimiter rateLimiter;        // used by ConcurrentMergeScheduler
 
     public OneMerge(List<SegmentInfo> segments) {
       if (0 == segments.size())
@@ -93,6 +95,32 @@ public abstract class MergePolicy implements java.io.Closeable {
       totalDocCount = count;
     }
 
+    /** Expert: returns the readers whose documents are
+     *  merged into the new segment, in order.  By default
+     *  these are the point in time clones of the merged
+     *  segments that still have live documents.  A subclass
+     *  may return a view of them that renumbers the
+     *  documents, in which case it must also override {@link
+     *  #getMergedDocID}.  This is called once per merge,
+     *  after the readers were opened. */
+    public List<IndexReader> getMergeReaders() throws IOException {
+      final List<IndexReader> mergeReaders = new ArrayList<IndexReader>(readerClones.size());
+      for (SegmentReader clone : readerClones) {
+        if (clone.numDocs() > 0) {
+          mergeReaders.add(clone);
+        }
+      }
+      return mergeReaders;
+    }
+
+    /** Expert: maps the given document, numbered among the
+     *  live documents of the merged segments in order, to its
+     *  number in the new segment.  This is used to carry over
+     *  the deletes that happened while merging. */
+    public int getMergedDocID(int docID) {
+      return docID;
+    }
+
     /** Record that an exception occurred while executing
      *  this merge */
     synchronized void setException(Throwable error) {
@@ -370,6 +370,20 @@ public class MultiReader extends IndexReader implements Cloneable {
     return total;
   }
 
+  @Override
+  public int maxTermFreq(Term t) throws IOException {
+    ensureOpen();
+    int max = 0;
+    for (int i = 0; i < subReaders.length; i++) {
+      final int maxTermFreq = subReaders[i].maxTermFreq(t);
+      if (maxTermFreq == -1) {
+        return -1;
+      }
+      max = Math.max(max, maxTermFreq);
+    }
+    return max;
+  }
+
   @Override
   public TermDocs termDocs() throws IOException {
     ensureOpen();
@@ -405,6 +405,13 @@ public class ParallelReader extends IndexReader {
     return reader==null ? 0 : reader.docFreq(term);
   }
 
+  @Override
+  public int maxTermFreq(Term term) throws IOException {
+    ensureOpen();
+    IndexReader reader = fieldToReader.get(term.field());
+    return reader==null ? 0 : reader.maxTermFreq(term);
+  }
+
   @Override
   public TermDocs termDocs(Term term) throws IOException {
     ensureOpen();
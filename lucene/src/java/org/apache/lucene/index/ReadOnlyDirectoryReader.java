@@ -25,13 +25,13 @@ import java.util.Collection;
 
 class ReadOnlyDirectoryReader extends DirectoryReader {
   ReadOnlyDirectoryReader(Directory directory, SegmentInfos sis, IndexDeletionPolicy deletionPolicy, int termInfosIndexDivisor,
-                          Collection<ReaderFinishedListener> readerFinishedListeners) throws IOException {
-    super(directory, sis, deletionPolicy, true, termInfosIndexDivisor, readerFinishedListeners);
+                          int termInfosCacheSize, Collection<ReaderFinishedListener> readerFinishedListeners) throws IOException {
+    super(directory, sis, deletionPolicy, true, termInfosIndexDivisor, termInfosCacheSize, readerFinishedListeners);
   }
 
   ReadOnlyDirectoryReader(Directory directory, SegmentInfos infos, SegmentReader[] oldReaders, int[] oldStarts,  Map<String,byte[]> oldNormsCache, boolean doClone,
-                          int termInfosIndexDivisor, Collection<ReaderFinishedListener> readerFinishedListeners) throws IOException {
-    super(directory, infos, oldReaders, oldStarts, oldNormsCache, true, doClone, termInfosIndexDivisor, readerFinishedListeners);
+                          int termInfosIndexDivisor, int termInfosCacheSize, Collection<ReaderFinishedListener> readerFinishedListeners) throws IOException {
+    super(directory, infos, oldReaders, oldStarts, oldNormsCache, true, doClone, termInfosIndexDivisor, termInfosCacheSize, readerFinishedListeners);
   }
   
   ReadOnlyDirectoryReader(IndexWriter writer, SegmentInfos infos, int termInfosIndexDivisor, boolean applyAllDeletes) throws IOException {
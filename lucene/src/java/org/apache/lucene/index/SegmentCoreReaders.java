@@ -46,6 +46,7 @@ final class SegmentCoreReaders {
   final Directory cfsDir;
   final int readBufferSize;
   final int termsIndexDivisor;
+  final int termInfosCacheSize;
 
   private final SegmentReader owner;
 
@@ -55,9 +56,11 @@ final class SegmentCoreReaders {
   CompoundFileReader cfsReader;
   CompoundFileReader storeCFSReader;
 
-  SegmentCoreReaders(SegmentReader owner, Directory dir, SegmentInfo si, int readBufferSize, int termsIndexDivisor) throws IOException {
+  SegmentCoreReaders(SegmentReader owner, Directory dir, SegmentInfo si, int readBufferSize, int termsIndexDivisor,
+                     int termInfosCacheSize) throws IOException {
     segment = si.name;
     this.readBufferSize = readBufferSize;
+    this.termInfosCacheSize = termInfosCacheSize;
     this.dir = dir;
 
     boolean success = false;
@@ -73,7 +76,7 @@ final class SegmentCoreReaders {
       fieldInfos = new FieldInfos(cfsDir, IndexFileNames.segmentFileName(segment, IndexFileNames.FIELD_INFOS_EXTENSION));
 
       this.termsIndexDivisor = termsIndexDivisor;
-      TermInfosReader reader = new TermInfosReader(cfsDir, segment, fieldInfos, readBufferSize, termsIndexDivisor);
+      TermInfosReader reader = new TermInfosReader(cfsDir, segment, fieldInfos, readBufferSize, termsIndexDivisor, termInfosCacheSize);
       if (termsIndexDivisor == -1) {
         tisNoIndex = reader;
       } else {
@@ -153,7 +156,7 @@ final class SegmentCoreReaders {
         dir0 = dir;
       }
 
-      tis = new TermInfosReader(dir0, segment, fieldInfos, readBufferSize, termsIndexDivisor);
+      tis = new TermInfosReader(dir0, segment, fieldInfos, readBufferSize, termsIndexDivisor, termInfosCacheSize);
     }
   }
 
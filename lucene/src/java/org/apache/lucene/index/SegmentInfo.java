@@ -95,6 +95,9 @@ public final class SegmentInfo implements Cloneable {
 
   private boolean hasVectors;                     // True if this segment wrote term vectors
 
+  private byte hasTermsIndexFST;                  // YES if the terms index is stored as FSTs; NO if it is not;
+                                                  // CHECK_DIR if the terms index file must be read to find out
+
   private Map<String,String> diagnostics;
 
   // Tracks the Lucene version this segment was created with, since 3.1. The
@@ -121,6 +124,7 @@ public final class SegmentInfo implements Cloneable {
     this.hasProx = hasProx;
     this.hasVectors = hasVectors;
     this.version = Constants.LUCENE_MAIN_VERSION;
+    hasTermsIndexFST = YES;
   }
 
   /**
@@ -129,6 +133,7 @@ public final class SegmentInfo implements Cloneable {
   void reset(SegmentInfo src) {
     clearFiles();
     version = src.version;
+    hasTermsIndexFST = src.hasTermsIndexFST;
     name = src.name;
     docCount = src.docCount;
     dir = src.dir;
@@ -167,6 +172,7 @@ public final class SegmentInfo implements Cloneable {
    */
   SegmentInfo(Directory dir, int format, IndexInput input) throws IOException {
     this.dir = dir;
+    hasTermsIndexFST = CHECK_DIR;
     if (format <= SegmentInfos.FORMAT_3_1) {
       version = input.readString();
     }
@@ -386,6 +392,7 @@ public final class SegmentInfo implements Cloneable {
       si.normGen = normGen.clone();
     }
     si.version = version;
+    si.hasTermsIndexFST = hasTermsIndexFST;
     return si;
   }
 
@@ -541,6 +548,43 @@ public final class SegmentInfo implements Cloneable {
     }
   }
 
+  /**
+   * Returns true if the terms index of this segment is
+   * stored as FSTs, ie the segment was written with {@link
+   * TermInfosWriter#FORMAT_TERMS_INDEX_FST} or later.
+   * Older segments build the FSTs when they are opened.
+   * Segments written by this version have one; for the others,
+   * the terms index file is only read the first time.
+   */
+  boolean getHasTermsIndexFST() throws IOException {
+    if (hasTermsIndexFST == CHECK_DIR) {
+      hasTermsIndexFST = (byte) (readHasTermsIndexFST() ? YES : NO);
+    }
+    return hasTermsIndexFST == YES;
+  }
+
+  private boolean readHasTermsIndexFST() throws IOException {
+    final boolean useCompoundFile = getUseCompoundFile();
+    final Directory dirToTest;
+    if (useCompoundFile) {
+      dirToTest = new CompoundFileReader(dir, IndexFileNames.segmentFileName(name, IndexFileNames.COMPOUND_FILE_EXTENSION));
+    } else {
+      dirToTest = dir;
+    }
+    try {
+      final IndexInput input = dirToTest.openInput(IndexFileNames.segmentFileName(name, IndexFileNames.TERMS_INDEX_EXTENSION));
+      try {
+        return input.readInt() <= TermInfosWriter.FORMAT_TERMS_INDEX_FST;
+      } finally {
+        input.close();
+      }
+    } finally {
+      if (useCompoundFile) {
+        dirToTest.close();
+      }
+    }
+  }
+
   public int getDelCount() throws IOException {
     if (delCount == -1) {
       if (hasDeletions()) {
@@ -20,7 +20,11 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.FieldInfo.IndexOptions;
@@ -30,6 +34,7 @@ import org.apache.lucene.index.PayloadProcessorProvider.PayloadProcessor;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RateLimitedDirectoryWrapper;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.ReaderUtil;
 
@@ -45,6 +50,8 @@ final class SegmentMerger {
   private Directory directory;
   private String segment;
   private int termIndexInterval = IndexWriterConfig.DEFAULT_TERM_INDEX_INTERVAL;
+  private final Set<String> bloomFilterFields;
+  private final Set<String> blockPostingsFields;
 
   private List<IndexReader> readers = new ArrayList<IndexReader>();
   private final FieldInfos fieldInfos;
@@ -62,12 +69,22 @@ final class SegmentMerger {
   private final PayloadProcessorProvider payloadProcessorProvider;
   
   SegmentMerger(Directory dir, int termIndexInterval, String name, MergePolicy.OneMerge merge, PayloadProcessorProvider payloadProcessorProvider, FieldInfos fieldInfos) {
+    this(dir, termIndexInterval, name, merge, payloadProcessorProvider, fieldInfos, Collections.<String>emptySet(), Collections.<String>emptySet());
+  }
+
+  SegmentMerger(Directory dir, int termIndexInterval, String name, MergePolicy.OneMerge merge, PayloadProcessorProvider payloadProcessorProvider,
+                FieldInfos fieldInfos, Set<String> bloomFilterFields, Set<String> blockPostingsFields) {
+    this.bloomFilterFields = bloomFilterFields;
+    this.blockPostingsFields = blockPostingsFields;
     this.payloadProcessorProvider = payloadProcessorProvider;
-    directory = dir;
     this.fieldInfos = fieldInfos;
     segment = name;
     if (merge != null) {
-      checkAbort = new CheckAbort(merge, directory);
+      checkAbort = new CheckAbort(merge, dir);
+      // throttle what we write, if the merge scheduler asked for it:
+      if (merge.rateLimiter != null) {
+        dir = new RateLimitedDirectoryWrapper(dir, merge.rateLimiter);
+      }
     } else {
       checkAbort = new CheckAbort(null, null) {
         @Override
@@ -76,6 +93,7 @@ final class SegmentMerger {
         }
       };
     }
+    directory = dir;
     this.termIndexInterval = termIndexInterval;
   }
 
@@ -222,6 +240,12 @@ final class SegmentMerger {
         fieldInfos.add(reader.getFieldNames(FieldOption.UNINDEXED), false);
       }
     }
+    // the postings are written after the FieldInfos
+    // (see FormatPostingsFieldsWriter.addField)
+    for (int i = 0; i < fieldInfos.size(); i++) {
+      final FieldInfo fi = fieldInfos.fieldInfo(i);
+      fi.blockPostings = blockPostingsFields.contains(fi.name);
+    }
     fieldInfos.write(directory, segment + ".fnm");
 
     int docCount = 0;
@@ -264,7 +288,7 @@ final class SegmentMerger {
       // details.
       throw new RuntimeException("mergeFields produced an invalid result: docCount is " + docCount + " but fdx file size is " + fdxFileLength + " file=" + fileName + " file exists?=" + directory.fileExists(fileName) + "; now aborting this merge to prevent index corruption");
 
-    segmentWriteState = new SegmentWriteState(null, directory, segment, fieldInfos, docCount, termIndexInterval, null);
+    segmentWriteState = new SegmentWriteState(null, directory, segment, fieldInfos, docCount, termIndexInterval, null, bloomFilterFields, blockPostingsFields);
     return docCount;
   }
 
@@ -460,8 +484,47 @@ final class SegmentMerger {
 
   private SegmentMergeQueue queue = null;
 
+  /** Upper bounds of the number of terms of the merged
+   *  fields that have Bloom filters, which size the filters */
+  private Map<String,Long> maxNumBloomFilterTerms;
+
+  /** Returns an upper bound of the number of terms of the
+   *  field in the segment merged from the readers, or -1 if
+   *  it is unknown.  Each segment that has a Bloom filter of
+   *  the field recorded its number of terms; the terms of
+   *  all the fields of other readers bound their terms of
+   *  the field. */
+  static long maxNumFieldTerms(List<IndexReader> readers, String field) throws IOException {
+    long maxNumFieldTerms = 0;
+    for (IndexReader reader : readers) {
+      if (reader instanceof SegmentReader) {
+        final SegmentReader segmentReader = (SegmentReader) reader;
+        final FieldInfo fieldInfo = segmentReader.fieldInfos().fieldInfo(field);
+        if (fieldInfo == null || !fieldInfo.isIndexed) {
+          continue;
+        }
+        final Long numTerms = segmentReader.getBloomFilterNumTerms().get(fieldInfo.name);
+        if (numTerms != null) {
+          maxNumFieldTerms += numTerms.longValue();
+          continue;
+        }
+      }
+      try {
+        maxNumFieldTerms += reader.getUniqueTermCount();
+      } catch (UnsupportedOperationException e) {
+        return -1;
+      }
+    }
+    return maxNumFieldTerms;
+  }
+
   private final void mergeTerms() throws CorruptIndexException, IOException {
 
+    maxNumBloomFilterTerms = new HashMap<String,Long>();
+    for (String field : segmentWriteState.bloomFilterFields) {
+      maxNumBloomFilterTerms.put(field, maxNumFieldTerms(readers, field));
+    }
+
     final FormatPostingsFieldsConsumer fieldsConsumer = new FormatPostingsFieldsWriter(segmentWriteState, fieldInfos);
 
     try {
@@ -531,6 +594,8 @@ final class SegmentMerger {
         if (termsConsumer != null)
           termsConsumer.finish();
         final FieldInfo fieldInfo = fieldInfos.fieldInfo(currentField);
+        final Long maxNumFieldTerms = maxNumBloomFilterTerms.get(currentField);
+        segmentWriteState.maxNumFieldTerms = maxNumFieldTerms == null ? -1 : maxNumFieldTerms.longValue();
         termsConsumer = consumer.addField(fieldInfo);
         indexOptions = fieldInfo.indexOptions;
       }
@@ -546,6 +611,9 @@ final class SegmentMerger {
           smi.close();				  // done with a segment
       }
     }
+    if (termsConsumer != null) {
+      termsConsumer.finish();
+    }
   }
 
   private byte[] payloadBuffer;
@@ -51,6 +51,9 @@ final class SegmentNorms implements Cloneable {
   private byte[] bytes;
   private int number;
 
+  // the distinct values of bytes, see IndexReader.normValues
+  private long[] normValues;
+
   boolean dirty;
   boolean rollbackDirty;
   
@@ -172,6 +175,15 @@ final class SegmentNorms implements Cloneable {
     return bytes;
   }
 
+  // Load bytes and return the distinct values they hold,
+  // which are computed once until a norm is changed
+  public synchronized long[] normValues() throws IOException {
+    if (normValues == null) {
+      normValues = IndexReader.normValues(bytes());
+    }
+    return normValues;
+  }
+
   // Only for testing
   AtomicInteger bytesRef() {
     return bytesRef;
@@ -194,6 +206,7 @@ final class SegmentNorms implements Cloneable {
       bytesRef = new AtomicInteger(1);
       oldRef.decrementAndGet();
     }
+    normValues = null;
     dirty = true;
     return bytes;
   }
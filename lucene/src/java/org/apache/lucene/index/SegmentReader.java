@@ -93,6 +93,14 @@ public class SegmentReader extends IndexReader implements Cloneable {
     return get(readOnly, si.dir, si, BufferedIndexInput.BUFFER_SIZE, true, termInfosIndexDivisor);
   }
 
+  /**
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   */
+  public static SegmentReader get(boolean readOnly, SegmentInfo si, int termInfosIndexDivisor, int termInfosCacheSize) throws CorruptIndexException, IOException {
+    return get(readOnly, si.dir, si, BufferedIndexInput.BUFFER_SIZE, true, termInfosIndexDivisor, termInfosCacheSize);
+  }
+
   /**
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
@@ -104,6 +112,21 @@ public class SegmentReader extends IndexReader implements Cloneable {
                                   boolean doOpenStores,
                                   int termInfosIndexDivisor)
     throws CorruptIndexException, IOException {
+    return get(readOnly, dir, si, readBufferSize, doOpenStores, termInfosIndexDivisor, IndexReader.DEFAULT_TERMS_CACHE_SIZE);
+  }
+
+  /**
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   */
+  public static SegmentReader get(boolean readOnly,
+                                  Directory dir,
+                                  SegmentInfo si,
+                                  int readBufferSize,
+                                  boolean doOpenStores,
+                                  int termInfosIndexDivisor,
+                                  int termInfosCacheSize)
+    throws CorruptIndexException, IOException {
     SegmentReader instance = readOnly ? new ReadOnlySegmentReader() : new SegmentReader();
     instance.readOnly = readOnly;
     instance.si = si;
@@ -112,7 +135,7 @@ public class SegmentReader extends IndexReader implements Cloneable {
     boolean success = false;
 
     try {
-      instance.core = new SegmentCoreReaders(instance, dir, si, readBufferSize, termInfosIndexDivisor);
+      instance.core = new SegmentCoreReaders(instance, dir, si, readBufferSize, termInfosIndexDivisor, termInfosCacheSize);
       if (doOpenStores) {
         instance.core.openDocStores(si);
       }
@@ -511,6 +534,16 @@ public class SegmentReader extends IndexReader implements Cloneable {
       return 0;
   }
 
+  @Override
+  public int maxTermFreq(Term t) throws IOException {
+    ensureOpen();
+    TermInfo ti = core.getTermsReader().get(t);
+    if (ti == null)
+      return 0;
+    // not recorded by older segments
+    return ti.maxTermFreq > 0 ? ti.maxTermFreq : -1;
+  }
+
   @Override
   public int numDocs() {
     // Don't call ensureOpen() here (it could affect performance)
@@ -597,6 +630,17 @@ public class SegmentReader extends IndexReader implements Cloneable {
     return norm.bytes();
   }
 
+  @Override
+  public float maxNormValue(String field, Similarity similarity) throws IOException {
+    ensureOpen();
+    final SegmentNorms norm = norms.get(field);
+    if (norm == null) {
+      // not indexed, or norms not stored
+      return 1.0f;
+    }
+    return maxNormValue(norm.normValues(), similarity);
+  }
+
   @Override
   protected void doSetNorm(int doc, String field, byte value)
           throws IOException {
@@ -923,6 +967,40 @@ public class SegmentReader extends IndexReader implements Cloneable {
     return core.termsIndexDivisor;
   }
 
+  /** Returns false if this segment certainly has no
+   *  document with the term, according to the Bloom filter
+   *  of its field (see {@link
+   *  IndexWriterConfig#setBloomFilterFields}).  Returns true
+   *  if it may have one, or if the field has no filter.
+   * @lucene.experimental */
+  public boolean mayContainTerm(Term term) {
+    ensureOpen();
+    return core.getTermsReader().mayContain(term);
+  }
+
+  /** Returns the number of terms of each field of this
+   *  segment that has a Bloom filter, read from the
+   *  filters' file whether or not the terms index is loaded. */
+  Map<String,Long> getBloomFilterNumTerms() throws IOException {
+    return TermsBloomFilter.readNumTerms(core.cfsDir, core.segment, core.fieldInfos, BufferedIndexInput.BUFFER_SIZE);
+  }
+
+  /** Returns how many term lookups were answered by the
+   *  terms cache of this segment, which is shared by all
+   *  clones and reopened instances of this reader.
+   * @lucene.experimental */
+  public long getTermInfosCacheHits() {
+    return core.getTermsReader().getCacheHits();
+  }
+
+  /** Returns how many term lookups missed the terms cache
+   *  of this segment.
+   * @see #getTermInfosCacheHits
+   * @lucene.experimental */
+  public long getTermInfosCacheMisses() {
+    return core.getTermsReader().getCacheMisses();
+  }
+
   @Override
   protected void readerFinished() {
     // Do nothing here -- we have more careful control on
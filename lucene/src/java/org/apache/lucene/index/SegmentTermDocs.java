@@ -18,6 +18,8 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.util.Arrays;
+
 import org.apache.lucene.util.BitVector;
 import org.apache.lucene.index.FieldInfo.IndexOptions;
 import org.apache.lucene.store.IndexInput;
@@ -34,6 +36,7 @@ class SegmentTermDocs implements TermDocs {
   private int skipInterval;
   private int maxSkipLevels;
   private DefaultSkipListReader skipListReader;
+  private DefaultSkipListReader blockSkipListReader;
   
   private long freqBasePointer;
   private long proxBasePointer;
@@ -43,6 +46,15 @@ class SegmentTermDocs implements TermDocs {
   
   protected boolean currentFieldStoresPayloads;
   protected IndexOptions indexOptions;
+
+  // Block postings (see FieldInfo.blockPostings): the
+  // current block of doc deltas and freqs, decoded at once
+  protected boolean currentFieldBlockPostings;
+  private ForUtil forUtil;
+  private int[] docDeltaBuffer;
+  private int[] freqBuffer;
+  private int blockUpto;
+  private int blockCount;
   
   protected SegmentTermDocs(SegmentReader parent) {
     this.parent = parent;
@@ -81,6 +93,13 @@ class SegmentTermDocs implements TermDocs {
     FieldInfo fi = parent.core.fieldInfos.fieldInfo(term.field);
     indexOptions = (fi != null) ? fi.indexOptions : IndexOptions.DOCS_AND_FREQS_AND_POSITIONS;
     currentFieldStoresPayloads = (fi != null) ? fi.storePayloads : false;
+    currentFieldBlockPostings = (fi != null) ? fi.blockPostings : false;
+    if (currentFieldBlockPostings && forUtil == null) {
+      forUtil = new ForUtil();
+      docDeltaBuffer = new int[ForUtil.BLOCK_SIZE];
+      freqBuffer = new int[ForUtil.BLOCK_SIZE];
+    }
+    blockUpto = blockCount = 0;
     if (ti == null) {
       df = 0;
     } else {
@@ -98,6 +117,8 @@ class SegmentTermDocs implements TermDocs {
     freqStream.close();
     if (skipListReader != null)
       skipListReader.close();
+    if (blockSkipListReader != null)
+      blockSkipListReader.close();
   }
 
   public final int doc() { return doc; }
@@ -106,7 +127,38 @@ class SegmentTermDocs implements TermDocs {
   protected void skippingDoc() throws IOException {
   }
 
+  /** Decodes the next block of doc deltas and freqs: a
+   *  packed one, or the VInts of the last docs of the term. */
+  private void refillBlock() throws IOException {
+    final int left = df - count;
+    if (left >= ForUtil.BLOCK_SIZE) {
+      forUtil.readBlock(freqStream, docDeltaBuffer);
+      if (indexOptions == IndexOptions.DOCS_ONLY) {
+        Arrays.fill(freqBuffer, 0);
+      } else {
+        forUtil.readBlock(freqStream, freqBuffer);
+      }
+      blockCount = ForUtil.BLOCK_SIZE;
+    } else {
+      for (int i = 0; i < left; i++) {
+        final int docCode = freqStream.readVInt();
+        if (indexOptions == IndexOptions.DOCS_ONLY) {
+          docDeltaBuffer[i] = docCode;
+          freqBuffer[i] = 0;
+        } else {
+          docDeltaBuffer[i] = docCode >>> 1;
+          freqBuffer[i] = (docCode & 1) != 0 ? 0 : freqStream.readVInt() - 1;
+        }
+      }
+      blockCount = left;
+    }
+    blockUpto = 0;
+  }
+
   public boolean next() throws IOException {
+    if (currentFieldBlockPostings) {
+      return nextBlockDoc();
+    }
     while (true) {
       if (count == df)
         return false;
@@ -132,11 +184,31 @@ class SegmentTermDocs implements TermDocs {
     return true;
   }
 
+  private boolean nextBlockDoc() throws IOException {
+    while (true) {
+      if (count == df)
+        return false;
+      if (blockUpto == blockCount)
+        refillBlock();
+      doc += docDeltaBuffer[blockUpto];
+      freq = freqBuffer[blockUpto] + 1;
+      blockUpto++;
+      count++;
+
+      if (deletedDocs == null || !deletedDocs.get(doc))
+        break;
+      skippingDoc();
+    }
+    return true;
+  }
+
   /** Optimized implementation. */
   public int read(final int[] docs, final int[] freqs)
           throws IOException {
     final int length = docs.length;
-    if (indexOptions == IndexOptions.DOCS_ONLY) {
+    if (currentFieldBlockPostings) {
+      return readBlocks(docs, freqs, length);
+    } else if (indexOptions == IndexOptions.DOCS_ONLY) {
       return readNoTf(docs, freqs, length);
     } else {
       int i = 0;
@@ -160,6 +232,42 @@ class SegmentTermDocs implements TermDocs {
     }
   }
 
+  private final int readBlocks(final int[] docs, final int[] freqs, final int length) throws IOException {
+    int i = 0;
+    while (i < length && count < df) {
+      if (blockUpto == blockCount)
+        refillBlock();
+      // copy from the current block, until either is full
+      final int limit = Math.min(blockCount, blockUpto + length - i);
+      if (deletedDocs == null) {
+        final int start = i;
+        while (blockUpto < limit) {
+          doc += docDeltaBuffer[blockUpto];
+          docs[i] = doc;
+          freqs[i] = freqBuffer[blockUpto] + 1;
+          blockUpto++;
+          i++;
+        }
+        count += i - start;
+      } else {
+        while (blockUpto < limit) {
+          doc += docDeltaBuffer[blockUpto];
+          count++;
+          if (!deletedDocs.get(doc)) {
+            docs[i] = doc;
+            freqs[i] = freqBuffer[blockUpto] + 1;
+            i++;
+          }
+          blockUpto++;
+        }
+      }
+    }
+    if (i > 0) {
+      freq = freqs[i-1];
+    }
+    return i;
+  }
+
   private final int readNoTf(final int[] docs, final int[] freqs, final int length) throws IOException {
     int i = 0;
     while (i < length && count < df) {
@@ -184,7 +292,9 @@ class SegmentTermDocs implements TermDocs {
 
   /** Optimized implementation. */
   public boolean skipTo(int target) throws IOException {
-    if ((target - skipInterval) >= doc && df >= skipInterval) {                      // optimized case
+    if (currentFieldBlockPostings) {
+      skipBlocks(target);
+    } else if ((target - skipInterval) >= doc && df >= skipInterval) {                      // optimized case
       if (skipListReader == null)
         skipListReader = new DefaultSkipListReader((IndexInput) freqStream.clone(), maxSkipLevels, skipInterval); // lazily clone
 
@@ -210,4 +320,30 @@ class SegmentTermDocs implements TermDocs {
     } while (target > doc);
     return true;
   }
+
+  /** Skips to the block holding the target, if that is
+   *  not the current one. */
+  private void skipBlocks(int target) throws IOException {
+    if ((target - ForUtil.BLOCK_SIZE) >= doc && df >= ForUtil.BLOCK_SIZE) {
+      if (blockSkipListReader == null)
+        blockSkipListReader = new DefaultSkipListReader((IndexInput) freqStream.clone(), maxSkipLevels, ForUtil.BLOCK_SIZE); // lazily clone
+
+      if (!haveSkipped) {                          // lazily initialize skip stream
+        blockSkipListReader.init(skipPointer, freqBasePointer, proxBasePointer, df, currentFieldStoresPayloads);
+        haveSkipped = true;
+      }
+
+      // skip entries are written after each full block, so
+      // they point to the start of the next one
+      int newCount = blockSkipListReader.skipTo(target) + 1;
+      if (newCount > count) {
+        freqStream.seek(blockSkipListReader.getFreqPointer());
+        skipProx(blockSkipListReader.getProxPointer(), blockSkipListReader.getPayloadLength());
+
+        doc = blockSkipListReader.getDoc();
+        count = newCount;
+        blockUpto = blockCount = 0;
+      }
+    }
+  }
 }
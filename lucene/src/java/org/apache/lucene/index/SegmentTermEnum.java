@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.IntsRef;
 
 final class SegmentTermEnum extends TermEnum implements Cloneable {
   private IndexInput input;
@@ -32,7 +33,7 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
 
   private TermInfo termInfo = new TermInfo();
 
-  private int format;
+  int format;
   private boolean isIndex = false;
   long indexPointer = 0;
   int indexInterval;
@@ -109,11 +110,13 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
     return clone;
   }
 
-  final void seek(long pointer, long p, Term t, TermInfo ti)
+  /** Positions the enum on an index term, given as the
+   *  field and the UTF-16 code units of the text. */
+  final void seek(long pointer, long p, String field, IntsRef text, TermInfo ti)
           throws IOException {
     input.seek(pointer);
     position = p;
-    termBuffer.set(t);
+    termBuffer.set(field, text);
     prevBuffer.reset();
     termInfo.set(ti);
   }
@@ -147,6 +150,9 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
       if (termInfo.docFreq >= skipInterval) 
         termInfo.skipOffset = input.readVInt();
     }
+
+    if (format <= TermInfosWriter.FORMAT_MAX_TERM_FREQ)
+      termInfo.maxTermFreq = input.readVInt();
     
     if (isIndex)
       indexPointer += input.readVLong();	  // read index pointer
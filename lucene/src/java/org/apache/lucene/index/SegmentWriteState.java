@@ -18,6 +18,8 @@ package org.apache.lucene.index;
  */
 
 import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Set;
 
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BitVector;
@@ -62,8 +64,28 @@ public class SegmentWriteState {
    */
   public final int maxSkipLevels = 10;
 
+  /** The fields to write terms Bloom filters for.
+   * @see IndexWriterConfig#setBloomFilterFields */
+  public final Set<String> bloomFilterFields;
+
+  /** The fields to write block postings for.
+   * @see IndexWriterConfig#setBlockPostingsFields */
+  public final Set<String> blockPostingsFields;
+
+  /** An upper bound of the number of terms of the field
+   * being written, that sizes its terms Bloom filter, or -1
+   * if it is unknown, in which case the field is assumed to
+   * have at most one term per document. */
+  public long maxNumFieldTerms = -1;
+
   public SegmentWriteState(PrintStream infoStream, Directory directory, String segmentName, FieldInfos fieldInfos,
                            int numDocs, int termIndexInterval, BufferedDeletes segDeletes) {
+    this(infoStream, directory, segmentName, fieldInfos, numDocs, termIndexInterval, segDeletes, Collections.<String>emptySet(), Collections.<String>emptySet());
+  }
+
+  public SegmentWriteState(PrintStream infoStream, Directory directory, String segmentName, FieldInfos fieldInfos,
+                           int numDocs, int termIndexInterval, BufferedDeletes segDeletes, Set<String> bloomFilterFields,
+                           Set<String> blockPostingsFields) {
     this.infoStream = infoStream;
     this.segDeletes = segDeletes;
     this.directory = directory;
@@ -71,5 +93,7 @@ public class SegmentWriteState {
     this.fieldInfos = fieldInfos;
     this.numDocs = numDocs;
     this.termIndexInterval = termIndexInterval;
+    this.bloomFilterFields = bloomFilterFields;
+    this.blockPostingsFields = blockPostingsFields;
   }
 }
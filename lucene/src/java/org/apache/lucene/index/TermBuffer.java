@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.UnicodeUtil;
 
 final class TermBuffer implements Cloneable {
@@ -100,6 +101,19 @@ final class TermBuffer implements Cloneable {
     this.term = term;
   }
 
+  /** Sets the term from the UTF-16 code units of its text;
+   *  the field must be interned. */
+  public final void set(String field, IntsRef termText) {
+    final int termLen = termText.length;
+    text.setLength(termLen);
+    for (int i = 0; i < termLen; i++) {
+      text.result[i] = (char) termText.ints[termText.offset + i];
+    }
+    dirty = true;
+    this.field = field;
+    this.term = null;
+  }
+
   public final void set(TermBuffer other) {
     text.copyText(other.text);
     dirty = true;
@@ -27,6 +27,11 @@ class TermInfo {
   long proxPointer = 0;
   int skipOffset;
 
+  /** The largest frequency of the term in a document, or 0
+   *  if it is unknown (segments written before {@link
+   *  TermInfosWriter#FORMAT_MAX_TERM_FREQ}). */
+  int maxTermFreq;
+
   TermInfo() {}
 
   TermInfo(int df, long fp, long pp) {
@@ -40,14 +45,16 @@ class TermInfo {
     freqPointer = ti.freqPointer;
     proxPointer = ti.proxPointer;
     skipOffset = ti.skipOffset;
+    maxTermFreq = ti.maxTermFreq;
   }
 
   final void set(int docFreq,
-                 long freqPointer, long proxPointer, int skipOffset) {
+                 long freqPointer, long proxPointer, int skipOffset, int maxTermFreq) {
     this.docFreq = docFreq;
     this.freqPointer = freqPointer;
     this.proxPointer = proxPointer;
     this.skipOffset = skipOffset;
+    this.maxTermFreq = maxTermFreq;
   }
 
   final void set(TermInfo ti) {
@@ -55,5 +62,6 @@ class TermInfo {
     freqPointer = ti.freqPointer;
     proxPointer = ti.proxPointer;
     skipOffset = ti.skipOffset;
+    maxTermFreq = ti.maxTermFreq;
   }
 }
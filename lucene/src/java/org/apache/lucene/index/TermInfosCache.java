@@ -0,0 +1,140 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Caches the {@link TermInfo} and ordinal of recently
+ *  looked up terms of a segment, for {@link
+ *  TermInfosReader}.
+ *
+ *  <p>The cache is open addressed: a term hashes to a run of
+ *  {@link #PROBES} slots, and a new entry takes an empty slot
+ *  of its run, else replaces one of them in round robin
+ *  order.  Looking up a term does not allocate anything, as
+ *  it compares the (interned) field and the text of the
+ *  entries directly.  Entries are immutable once published,
+ *  so lookups need no locking.
+ *
+ *  <p>The numbers of hits and misses are counted, so that
+ *  the size can be tuned from real traffic (see {@link
+ *  IndexWriterConfig#setReaderTermsCacheSize}). */
+
+final class TermInfosCache {
+
+  /** Number of slots a term may be stored in */
+  static final int PROBES = 4;
+
+  /** A cached TermInfo, with its term and ordinal */
+  static final class Entry extends TermInfo {
+    final Term term;
+    final long termOrd;
+
+    Entry(Term term, TermInfo ti, long termOrd) {
+      super(ti);
+      assert termOrd >= 0;
+      // the term may be reused by the caller (see PrefixCodedTerms)
+      this.term = new Term(term.field(), term.text(), false);
+      this.termOrd = termOrd;
+    }
+  }
+
+  private final AtomicReferenceArray<Entry> slots;
+  private final int mask;
+  private int nextVictim;  // not thread safe, any value will do
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /** Creates a cache of at least the given number of
+   *  entries, rounded up to a power of two; 0 disables the
+   *  cache, but lookups are still counted as misses. */
+  TermInfosCache(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("size must be >= 0 (got " + size + ")");
+    }
+    int numSlots = 0;
+    if (size > 0) {
+      numSlots = Math.max(PROBES, Integer.highestOneBit(size - 1) << 1);
+    }
+    slots = new AtomicReferenceArray<Entry>(numSlots);
+    mask = numSlots - 1;
+  }
+
+  private static int hash(Term term) {
+    int h = term.field().hashCode() * 31 + term.text().hashCode();
+    // spread the bits, since we only use the low ones
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+
+  private static boolean matches(Entry entry, Term term) {
+    return entry != null && entry.term.field() == term.field() && entry.term.text().equals(term.text());
+  }
+
+  /** Returns the cached entry of the term, or null. */
+  Entry get(Term term) {
+    if (mask >= 0) {
+      final int start = hash(term);
+      for (int i = 0; i < PROBES; i++) {
+        final Entry entry = slots.get((start + i) & mask);
+        if (matches(entry, term)) {
+          hits.incrementAndGet();
+          return entry;
+        }
+      }
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /** Caches the TermInfo and ordinal of a term. */
+  void put(Term term, TermInfo ti, long termOrd) {
+    if (mask < 0) {
+      return;
+    }
+    final int start = hash(term);
+    int slot = -1;
+    for (int i = 0; i < PROBES; i++) {
+      final int s = (start + i) & mask;
+      final Entry entry = slots.get(s);
+      if (entry == null || matches(entry, term)) {
+        slot = s;
+        break;
+      }
+    }
+    if (slot == -1) {
+      slot = (start + (nextVictim++ & (PROBES-1))) & mask;
+    }
+    slots.set(slot, new Entry(term, ti, termOrd));
+  }
+
+  /** Returns the number of slots. */
+  int size() {
+    return slots.length();
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+}
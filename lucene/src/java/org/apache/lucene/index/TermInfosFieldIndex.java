@@ -0,0 +1,197 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+
+/** The terms index of a single field: an {@link FST} that maps
+ *  the UTF-16 code units of each index term to its ordinal in
+ *  the field, plus the {@link TermInfo} and .tis file pointer
+ *  of each index term by ordinal.  Labels are compared as
+ *  unsigned code units, which is the same order as {@link
+ *  Term#compareTo}, so a floor lookup in the FST finds the
+ *  index term a scan for a term has to start at.
+ *
+ *  <p>Built by {@link TermInfosWriter} and stored in the .tii
+ *  file as of {@link TermInfosWriter#FORMAT_TERMS_INDEX_FST};
+ *  for older segments {@link TermInfosReader} builds it from
+ *  the index terms when the segment is opened. */
+
+final class TermInfosFieldIndex {
+
+  final FST<Long> fst;
+  private final int size;
+  private final int[] docFreqs;
+  private final long[] freqPointers;
+  private final long[] proxPointers;
+  private final int[] skipOffsets;
+  private final int[] maxTermFreqs;
+  private final long[] indexPointers;
+
+  private TermInfosFieldIndex(FST<Long> fst, int size, int[] docFreqs, long[] freqPointers, long[] proxPointers,
+                              int[] skipOffsets, int[] maxTermFreqs, long[] indexPointers) {
+    this.fst = fst;
+    this.size = size;
+    this.docFreqs = docFreqs;
+    this.freqPointers = freqPointers;
+    this.proxPointers = proxPointers;
+    this.skipOffsets = skipOffsets;
+    this.maxTermFreqs = maxTermFreqs;
+    this.indexPointers = indexPointers;
+  }
+
+  /** Reads a field index written by {@link #write}, in
+   *  the given format of the terms dictionary. */
+  TermInfosFieldIndex(DataInput in, int format) throws IOException {
+    fst = new FST<Long>(in, PositiveIntOutputs.getSingleton(true));
+    size = in.readVInt();
+    docFreqs = new int[size];
+    freqPointers = new long[size];
+    proxPointers = new long[size];
+    skipOffsets = new int[size];
+    maxTermFreqs = new int[size];
+    indexPointers = new long[size];
+    long freqPointer = 0, proxPointer = 0, indexPointer = 0;
+    for (int i = 0; i < size; i++) {
+      docFreqs[i] = in.readVInt();
+      freqPointers[i] = freqPointer += in.readVLong();
+      proxPointers[i] = proxPointer += in.readVLong();
+      skipOffsets[i] = in.readVInt();
+      if (format <= TermInfosWriter.FORMAT_MAX_TERM_FREQ) {
+        maxTermFreqs[i] = in.readVInt();
+      }
+      indexPointers[i] = indexPointer += in.readVLong();
+    }
+  }
+
+  void write(DataOutput out) throws IOException {
+    fst.save(out);
+    out.writeVInt(size);
+    long freqPointer = 0, proxPointer = 0, indexPointer = 0;
+    for (int i = 0; i < size; i++) {
+      out.writeVInt(docFreqs[i]);
+      out.writeVLong(freqPointers[i] - freqPointer);
+      out.writeVLong(proxPointers[i] - proxPointer);
+      out.writeVInt(skipOffsets[i]);
+      out.writeVInt(maxTermFreqs[i]);
+      out.writeVLong(indexPointers[i] - indexPointer);
+      freqPointer = freqPointers[i];
+      proxPointer = proxPointers[i];
+      indexPointer = indexPointers[i];
+    }
+  }
+
+  /** Returns the number of index terms of the field. */
+  int size() {
+    return size;
+  }
+
+  /** Sets the argument to the TermInfo of the index term with the given ordinal. */
+  void termInfo(int ord, TermInfo ti) {
+    ti.docFreq = docFreqs[ord];
+    ti.freqPointer = freqPointers[ord];
+    ti.proxPointer = proxPointers[ord];
+    ti.skipOffset = skipOffsets[ord];
+    ti.maxTermFreq = maxTermFreqs[ord];
+  }
+
+  /** Returns the .tis file pointer of the index term with the given ordinal. */
+  long indexPointer(int ord) {
+    return indexPointers[ord];
+  }
+
+  /** Collects the index terms of one field, which must be
+   *  added in order. */
+  static final class Builder {
+    private final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton(true);
+    private final org.apache.lucene.util.fst.Builder<Long> fstBuilder =
+      new org.apache.lucene.util.fst.Builder<Long>(FST.INPUT_TYPE.BYTE2, outputs);
+    private final IntsRef lastTerm = new IntsRef(10);
+    private final TermInfo lastTermInfo = new TermInfo();
+    private long lastIndexPointer;
+
+    private int size;
+    private int[] docFreqs = new int[8];
+    private long[] freqPointers = new long[8];
+    private long[] proxPointers = new long[8];
+    private int[] skipOffsets = new int[8];
+    private int[] maxTermFreqs = new int[8];
+    private long[] indexPointers = new long[8];
+
+    void add(char[] text, int length, TermInfo ti, long indexPointer) throws IOException {
+      lastTerm.grow(length);
+      for (int i = 0; i < length; i++) {
+        lastTerm.ints[i] = text[i];
+      }
+      lastTerm.length = length;
+      fstBuilder.add(lastTerm, outputs.get(size));
+
+      docFreqs = ArrayUtil.grow(docFreqs, size+1);
+      freqPointers = ArrayUtil.grow(freqPointers, size+1);
+      proxPointers = ArrayUtil.grow(proxPointers, size+1);
+      skipOffsets = ArrayUtil.grow(skipOffsets, size+1);
+      maxTermFreqs = ArrayUtil.grow(maxTermFreqs, size+1);
+      indexPointers = ArrayUtil.grow(indexPointers, size+1);
+      docFreqs[size] = ti.docFreq;
+      freqPointers[size] = ti.freqPointer;
+      proxPointers[size] = ti.proxPointer;
+      skipOffsets[size] = ti.skipOffset;
+      maxTermFreqs[size] = ti.maxTermFreq;
+      indexPointers[size] = indexPointer;
+      lastTermInfo.set(ti);
+      lastIndexPointer = indexPointer;
+      size++;
+    }
+
+    /** Returns the number of index terms added so far. */
+    int size() {
+      return size;
+    }
+
+    /** Returns the UTF-16 code units of the last index term added. */
+    IntsRef lastTerm() {
+      return lastTerm;
+    }
+
+    TermInfo lastTermInfo() {
+      return lastTermInfo;
+    }
+
+    long lastIndexPointer() {
+      return lastIndexPointer;
+    }
+
+    TermInfosFieldIndex finish() throws IOException {
+      assert size > 0;
+      return new TermInfosFieldIndex(fstBuilder.finish(), size,
+                                     ArrayUtil.shrink(docFreqs, size),
+                                     ArrayUtil.shrink(freqPointers, size),
+                                     ArrayUtil.shrink(proxPointers, size),
+                                     ArrayUtil.shrink(skipOffsets, size),
+                                     ArrayUtil.shrink(maxTermFreqs, size),
+                                     ArrayUtil.shrink(indexPointers, size));
+    }
+  }
+}
@@ -19,10 +19,19 @@ package org.apache.lucene.index;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.util.DoubleBarrelLRUCache;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
 
 /** This stores a monotonically increasing set of <Term, TermInfo> pairs in a
  * Directory.  Pairs are accessed either by Term or by ordinal position the
@@ -37,58 +46,67 @@ final class TermInfosReader implements Closeable {
   private final SegmentTermEnum origEnum;
   private final long size;
 
-  private final Term[] indexTerms;
-  private final TermInfo[] indexInfos;
-  private final long[] indexPointers;
-  
-  private final int totalIndexInterval;
-
-  private final static int DEFAULT_CACHE_SIZE = 1024;
-
-  // Just adds term's ord to TermInfo
-  private final static class TermInfoAndOrd extends TermInfo {
-    final long termOrd;
-    public TermInfoAndOrd(TermInfo ti, long termOrd) {
-      super(ti);
-      assert termOrd >= 0;
-      this.termOrd = termOrd;
-    }
-  }
-
-  private static class CloneableTerm extends DoubleBarrelLRUCache.CloneableKey {
-    private final Term term;
+  // The terms index: an FST per field (see
+  // TermInfosFieldIndex), loaded on first use if the .tii
+  // file has them, preceded by the index term that starts
+  // the .tis file.  Lookups of terms before the first index
+  // term of their field start at the last index term of the
+  // previous field, which is kept in indexFields[] so that
+  // the previous field's index does not have to be loaded.
+  private final String[] indexFieldNames;
+  private final IndexField[] indexFields;
+  private final long firstIndexPointer;
+  private final int indexSize;
+  private IndexInput indexInput;  // to load field indexes; null once all are loaded
+  private int numUnloadedFields;
 
-    public CloneableTerm(Term t) {
-      this.term = new Term(t.field(), t.text());
-    }
-
-    @Override
-    public Object clone() {
-      return new CloneableTerm(term);
-    }
-
-    @Override
-    public boolean equals(Object _other) {
-      CloneableTerm other = (CloneableTerm) _other;
-      return term.equals(other.term);
-    }
+  private final int totalIndexInterval;
 
-    @Override
-    public int hashCode() {
-      return term.hashCode();
+  private final TermInfosCache termsCache;
+  private final Map<String,TermsBloomFilter> bloomFilters;
+
+  /** The terms index of one field, and its last index term */
+  private static final class IndexField {
+    final String name;
+    final int firstOrd;         // ord of the field's first index term
+    final long indexPointer;    // file pointer of the field index, if not loaded yet
+    final IntsRef lastTerm;
+    final TermInfo lastTermInfo;
+    final long lastIndexPointer;
+    TermInfosFieldIndex index;
+
+    IndexField(String name, int firstOrd, long indexPointer, IntsRef lastTerm, TermInfo lastTermInfo, long lastIndexPointer) {
+      this.name = name;
+      this.firstOrd = firstOrd;
+      this.indexPointer = indexPointer;
+      this.lastTerm = lastTerm;
+      this.lastTermInfo = lastTermInfo;
+      this.lastIndexPointer = lastIndexPointer;
     }
   }
 
-  private final DoubleBarrelLRUCache<CloneableTerm,TermInfoAndOrd> termsCache = new DoubleBarrelLRUCache<CloneableTerm,TermInfoAndOrd>(DEFAULT_CACHE_SIZE);
-  
   /**
    * Per-thread resources managed by ThreadLocal
    */
   private static final class ThreadResources {
     SegmentTermEnum termEnum;
+    // the field indexes this thread has seen, and its enums
+    // over them, so lookups need not synchronize
+    TermInfosFieldIndex[] fieldIndexes;
+    IntsRefFSTEnum<Long>[] fstEnums;
+    final IntsRef target = new IntsRef(10);
+
+    // the index term found by the last getIndexOffset()
+    String indexField;
+    IntsRef indexTerm;
+    final TermInfo indexTermInfo = new TermInfo();
+    long indexPointer;
   }
+
+  private static final IntsRef EMPTY_TERM = new IntsRef(0);
+  private static final TermInfo EMPTY_TERM_INFO = new TermInfo();
   
-  TermInfosReader(Directory dir, String seg, FieldInfos fis, int readBufferSize, int indexDivisor)
+  TermInfosReader(Directory dir, String seg, FieldInfos fis, int readBufferSize, int indexDivisor, int cacheSize)
        throws CorruptIndexException, IOException {
     boolean success = false;
 
@@ -100,6 +118,7 @@ final class TermInfosReader implements Closeable {
       directory = dir;
       segment = seg;
       fieldInfos = fis;
+      termsCache = new TermInfosCache(cacheSize);
 
       origEnum = new SegmentTermEnum(directory.openInput(IndexFileNames.segmentFileName(segment, IndexFileNames.TERMS_EXTENSION),
           readBufferSize), fieldInfos, false);
@@ -109,34 +128,101 @@ final class TermInfosReader implements Closeable {
       if (indexDivisor != -1) {
         // Load terms index
         totalIndexInterval = origEnum.indexInterval * indexDivisor;
-        final SegmentTermEnum indexEnum = new SegmentTermEnum(directory.openInput(IndexFileNames.segmentFileName(segment, IndexFileNames.TERMS_INDEX_EXTENSION),
-                                                                                  readBufferSize), fieldInfos, true);
-
-        try {
-          int indexSize = 1+((int)indexEnum.size-1)/indexDivisor;  // otherwise read index
-
-          indexTerms = new Term[indexSize];
-          indexInfos = new TermInfo[indexSize];
-          indexPointers = new long[indexSize];
-        
-          for (int i = 0; indexEnum.next(); i++) {
-            indexTerms[i] = indexEnum.term();
-            indexInfos[i] = indexEnum.termInfo();
-            indexPointers[i] = indexEnum.indexPointer;
-        
-            for (int j = 1; j < indexDivisor; j++)
-              if (!indexEnum.next())
-                break;
+        bloomFilters = TermsBloomFilter.read(directory, segment, fieldInfos, readBufferSize);
+        final String indexFileName = IndexFileNames.segmentFileName(segment, IndexFileNames.TERMS_INDEX_EXTENSION);
+        if (origEnum.format <= TermInfosWriter.FORMAT_TERMS_INDEX_FST && indexDivisor == 1) {
+          // Read the directory of the field indexes, and load
+          // each one on first use
+          indexInput = directory.openInput(indexFileName, readBufferSize);
+          indexInput.seek(indexInput.length() - 8);
+          indexInput.seek(indexInput.readLong());
+          final long fieldIndexesStart = indexInput.readVLong();
+          firstIndexPointer = indexInput.readVLong();
+          final int numFields = indexInput.readVInt();
+          indexFields = new IndexField[numFields];
+          int ord = 1;
+          for (int i = 0; i < numFields; i++) {
+            final String name = fieldInfos.fieldName(indexInput.readVInt());
+            final long indexPointer = fieldIndexesStart + indexInput.readVLong();
+            final int size = indexInput.readVInt();
+            final IntsRef lastTerm = new IntsRef(indexInput.readVInt());
+            for (int j = 0; j < lastTerm.ints.length; j++) {
+              lastTerm.ints[j] = indexInput.readVInt();
+            }
+            lastTerm.length = lastTerm.ints.length;
+            final TermInfo lastTermInfo = new TermInfo();
+            lastTermInfo.docFreq = indexInput.readVInt();
+            lastTermInfo.freqPointer = indexInput.readVLong();
+            lastTermInfo.proxPointer = indexInput.readVLong();
+            lastTermInfo.skipOffset = indexInput.readVInt();
+            if (origEnum.format <= TermInfosWriter.FORMAT_MAX_TERM_FREQ) {
+              lastTermInfo.maxTermFreq = indexInput.readVInt();
+            }
+            indexFields[i] = new IndexField(name, ord, indexPointer, lastTerm, lastTermInfo, indexInput.readVLong());
+            ord += size;
           }
-        } finally {
-          indexEnum.close();
+          indexSize = numFields == 0 ? 0 : ord;
+          numUnloadedFields = numFields;
+          if (numFields == 0) {
+            indexInput.close();
+            indexInput = null;
+          }
+        } else {
+          // Older segments, or only every indexDivisor'th
+          // index term is loaded: build the field indexes
+          // from the index terms
+          final SegmentTermEnum indexEnum = new SegmentTermEnum(directory.openInput(indexFileName,
+                                                                                    readBufferSize), fieldInfos, true);
+          try {
+            final List<IndexField> fields = new ArrayList<IndexField>();
+            long indexPointer = 0;
+            int ord = 0;
+            if (indexEnum.next()) {
+              indexPointer = indexEnum.indexPointer;
+              ord++;
+            }
+            String field = null;
+            int firstOrd = 0;
+            TermInfosFieldIndex.Builder builder = null;
+            char[] text = new char[10];
+            while (skip(indexEnum, indexDivisor)) {
+              final Term term = indexEnum.term();
+              if (term.field() != field) {
+                if (builder != null) {
+                  fields.add(newIndexField(field, firstOrd, builder));
+                }
+                builder = new TermInfosFieldIndex.Builder();
+                field = term.field();
+                firstOrd = ord;
+              }
+              final int length = term.text().length();
+              text = ArrayUtil.grow(text, length);
+              term.text().getChars(0, length, text, 0);
+              builder.add(text, length, indexEnum.termInfo(), indexEnum.indexPointer);
+              ord++;
+            }
+            if (builder != null) {
+              fields.add(newIndexField(field, firstOrd, builder));
+            }
+            indexFields = fields.toArray(new IndexField[fields.size()]);
+            firstIndexPointer = indexPointer;
+            indexSize = ord;
+          } finally {
+            indexEnum.close();
+          }
+        }
+        indexFieldNames = new String[indexFields.length];
+        for (int i = 0; i < indexFields.length; i++) {
+          indexFieldNames[i] = indexFields[i].name;
         }
       } else {
         // Do not load terms index:
         totalIndexInterval = -1;
-        indexTerms = null;
-        indexInfos = null;
-        indexPointers = null;
+        bloomFilters = Collections.emptyMap();
+        indexFieldNames = null;
+        indexFields = null;
+        firstIndexPointer = -1;
+        indexSize = 0;
       }
       success = true;
     } finally {
@@ -162,6 +248,12 @@ final class TermInfosReader implements Closeable {
   public final void close() throws IOException {
     if (origEnum != null)
       origEnum.close();
+    synchronized(this) {
+      if (indexInput != null) {
+        indexInput.close();
+        indexInput = null;
+      }
+    }
     threadResources.close();
   }
 
@@ -170,39 +262,125 @@ final class TermInfosReader implements Closeable {
     return size;
   }
 
+  /** Returns false if the segment certainly does not
+   *  contain the term, according to the Bloom filter of its
+   *  field; true if it may, or if the field has no filter. */
+  boolean mayContain(Term term) {
+    final TermsBloomFilter filter = bloomFilters.get(term.field());
+    return filter == null || filter.mayContain(term.text());
+  }
+
+  /** Returns the number of lookups answered by the term cache. */
+  long getCacheHits() {
+    return termsCache.getHits();
+  }
+
+  /** Returns the number of lookups that missed the term cache. */
+  long getCacheMisses() {
+    return termsCache.getMisses();
+  }
+
   private ThreadResources getThreadResources() {
     ThreadResources resources = threadResources.get();
     if (resources == null) {
       resources = new ThreadResources();
       resources.termEnum = terms();
+      if (indexFields != null) {
+        resources.fieldIndexes = new TermInfosFieldIndex[indexFields.length];
+        @SuppressWarnings({"unchecked","rawtypes"}) final IntsRefFSTEnum<Long>[] fstEnums = new IntsRefFSTEnum[indexFields.length];
+        resources.fstEnums = fstEnums;
+      }
       threadResources.set(resources);
     }
     return resources;
   }
 
+  private static IndexField newIndexField(String name, int firstOrd, TermInfosFieldIndex.Builder builder) throws IOException {
+    final IndexField field = new IndexField(name, firstOrd, -1, new IntsRef(builder.lastTerm()),
+                                            new TermInfo(builder.lastTermInfo()), builder.lastIndexPointer());
+    field.index = builder.finish();
+    return field;
+  }
 
-  /** Returns the offset of the greatest index entry which is less than or equal to term.*/
-  private final int getIndexOffset(Term term) {
-    int lo = 0;					  // binary search indexTerms[]
-    int hi = indexTerms.length - 1;
-
-    while (hi >= lo) {
-      int mid = (lo + hi) >>> 1;
-      int delta = term.compareTo(indexTerms[mid]);
-      if (delta < 0)
-	hi = mid - 1;
-      else if (delta > 0)
-	lo = mid + 1;
-      else
-	return mid;
+  /** Advances the enum by count terms. */
+  private static boolean skip(SegmentTermEnum indexEnum, int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      if (!indexEnum.next()) {
+        return false;
+      }
     }
-    return hi;
+    return true;
   }
 
-  private final void seekEnum(SegmentTermEnum enumerator, int indexOffset) throws IOException {
-    enumerator.seek(indexPointers[indexOffset],
-                   ((long) indexOffset * totalIndexInterval) - 1,
-                   indexTerms[indexOffset], indexInfos[indexOffset]);
+  /** Returns the index of the given field, loading it on first use. */
+  private synchronized TermInfosFieldIndex loadFieldIndex(IndexField field) throws IOException {
+    if (field.index == null) {
+      if (indexInput == null) {
+        throw new AlreadyClosedException("this TermInfosReader is closed");
+      }
+      indexInput.seek(field.indexPointer);
+      field.index = new TermInfosFieldIndex(indexInput, origEnum.format);
+      if (--numUnloadedFields == 0) {
+        indexInput.close();
+        indexInput = null;
+      }
+    }
+    return field.index;
+  }
+
+  /** Returns the offset of the greatest index entry which is less than or equal to term,
+   *  and sets the resources' index term to that entry. */
+  private final int getIndexOffset(Term term, ThreadResources resources) throws IOException {
+    int field = Arrays.binarySearch(indexFieldNames, term.field());
+    if (field >= 0) {
+      IntsRefFSTEnum<Long> fstEnum = resources.fstEnums[field];
+      if (fstEnum == null) {
+        resources.fieldIndexes[field] = loadFieldIndex(indexFields[field]);
+        fstEnum = resources.fstEnums[field] = new IntsRefFSTEnum<Long>(resources.fieldIndexes[field].fst);
+      }
+      final String text = term.text();
+      final IntsRef target = resources.target;
+      target.grow(text.length());
+      for (int i = 0; i < text.length(); i++) {
+        target.ints[i] = text.charAt(i);
+      }
+      target.length = text.length();
+      final IntsRefFSTEnum.InputOutput<Long> floor = fstEnum.seekFloor(target);
+      if (floor != null) {
+        final TermInfosFieldIndex index = resources.fieldIndexes[field];
+        final int ord = floor.output.intValue();
+        resources.indexField = indexFieldNames[field];
+        resources.indexTerm = floor.input;
+        index.termInfo(ord, resources.indexTermInfo);
+        resources.indexPointer = index.indexPointer(ord);
+        return indexFields[field].firstOrd + ord;
+      }
+    } else {
+      field = -field - 1;
+    }
+
+    // the term is before the first index term of its field,
+    // or its field has no index terms
+    if (field == 0) {
+      resources.indexField = "";
+      resources.indexTerm = EMPTY_TERM;
+      resources.indexTermInfo.set(EMPTY_TERM_INFO);
+      resources.indexPointer = firstIndexPointer;
+      return 0;
+    } else {
+      final IndexField previous = indexFields[field-1];
+      resources.indexField = previous.name;
+      resources.indexTerm = previous.lastTerm;
+      resources.indexTermInfo.set(previous.lastTermInfo);
+      resources.indexPointer = previous.lastIndexPointer;
+      return field == indexFields.length ? indexSize - 1 : indexFields[field].firstOrd - 1;
+    }
+  }
+
+  private final void seekEnum(SegmentTermEnum enumerator, int indexOffset, ThreadResources resources) throws IOException {
+    enumerator.seek(resources.indexPointer,
+                    ((long) indexOffset * totalIndexInterval) - 1,
+                    resources.indexField, resources.indexTerm, resources.indexTermInfo);
   }
 
   /** Returns the TermInfo for a Term in the set, or null. */
@@ -216,23 +394,26 @@ final class TermInfosReader implements Closeable {
 
     ensureIndexIsRead();
 
-    final CloneableTerm cacheKey = new CloneableTerm(term);
+    if (!mustSeekEnum) {
+      if (!mayContain(term)) {
+        return null;
+      }
+      final TermInfosCache.Entry cached = termsCache.get(term);
+      if (cached != null) {
+        return cached;
+      }
+    }
 
-    TermInfoAndOrd tiOrd = termsCache.get(cacheKey);
     ThreadResources resources = getThreadResources();
-    
-    if (!mustSeekEnum && tiOrd != null) {
-      return tiOrd;
-    }
-    
+    final int indexPos = getIndexOffset(term, resources);
+
     // optimize sequential access: first try scanning cached enum w/o seeking
     SegmentTermEnum enumerator = resources.termEnum;
     if (enumerator.term() != null                 // term is at or past current
 	&& ((enumerator.prev() != null && term.compareTo(enumerator.prev())> 0)
 	    || term.compareTo(enumerator.term()) >= 0)) {
       int enumOffset = (int)(enumerator.position/totalIndexInterval)+1;
-      if (indexTerms.length == enumOffset	  // but before end of block
-    || term.compareTo(indexTerms[enumOffset]) < 0) {
+      if (indexPos < enumOffset) {	  // but before end of block
        // no need to seek
 
         final TermInfo ti;
@@ -246,12 +427,7 @@ final class TermInfosReader implements Closeable {
             // This prevents RangeQueries or WildcardQueries to 
             // wipe out the cache when they iterate over a large numbers
             // of terms in order
-            if (tiOrd == null) {
-              termsCache.put(cacheKey, new TermInfoAndOrd(ti, enumerator.position));
-            } else {
-              assert sameTermInfo(ti, tiOrd, enumerator);
-              assert (int) enumerator.position == tiOrd.termOrd;
-            }
+            termsCache.put(term, ti, enumerator.position);
           }
         } else {
           ti = null;
@@ -262,30 +438,17 @@ final class TermInfosReader implements Closeable {
     }
 
     // random-access: must seek
-    final int indexPos;
-    if (tiOrd != null) {
-      indexPos = (int) (tiOrd.termOrd / totalIndexInterval);
-    } else {
-      // Must do binary search:
-      indexPos = getIndexOffset(term);
-    }
-
-    seekEnum(enumerator, indexPos);
+    seekEnum(enumerator, indexPos, resources);
     enumerator.scanTo(term);
     final TermInfo ti;
     if (enumerator.term() != null && term.compareTo(enumerator.term()) == 0) {
       ti = enumerator.termInfo();
-      if (tiOrd == null) {
-        // LUCENE-3183: it's possible, if term is Term("",
-        // ""), for the STE to be incorrectly un-positioned
-        // after scan-to; work around this by not caching in
-        // this case:
-        if (enumerator.position >= 0) {
-          termsCache.put(cacheKey, new TermInfoAndOrd(ti, enumerator.position));
-        }
-      } else {
-        assert sameTermInfo(ti, tiOrd, enumerator);
-        assert enumerator.position == tiOrd.termOrd;
+      // LUCENE-3183: it's possible, if term is Term("",
+      // ""), for the STE to be incorrectly un-positioned
+      // after scan-to; work around this by not caching in
+      // this case:
+      if (enumerator.position >= 0) {
+        termsCache.put(term, ti, enumerator.position);
       }
     } else {
       ti = null;
@@ -293,27 +456,8 @@ final class TermInfosReader implements Closeable {
     return ti;
   }
 
-  // called only from asserts
-  private final boolean sameTermInfo(TermInfo ti1, TermInfo ti2, SegmentTermEnum enumerator) {
-    if (ti1.docFreq != ti2.docFreq) {
-      return false;
-    }
-    if (ti1.freqPointer != ti2.freqPointer) {
-      return false;
-    }
-    if (ti1.proxPointer != ti2.proxPointer) {
-      return false;
-    }
-    // skipOffset is only valid when docFreq >= skipInterval:
-    if (ti1.docFreq >= enumerator.skipInterval &&
-        ti1.skipOffset != ti2.skipOffset) {
-      return false;
-    }
-    return true;
-  }
-
   private void ensureIndexIsRead() {
-    if (indexTerms == null) {
+    if (indexFields == null) {
       throw new IllegalStateException("terms index was not loaded when this reader was created");
     }
   }
@@ -323,10 +467,11 @@ final class TermInfosReader implements Closeable {
     if (size == 0) return -1;
 
     ensureIndexIsRead();
-    int indexOffset = getIndexOffset(term);
+    ThreadResources resources = getThreadResources();
+    int indexOffset = getIndexOffset(term, resources);
     
-    SegmentTermEnum enumerator = getThreadResources().termEnum;
-    seekEnum(enumerator, indexOffset);
+    SegmentTermEnum enumerator = resources.termEnum;
+    seekEnum(enumerator, indexOffset, resources);
 
     while(term.compareTo(enumerator.term()) > 0 && enumerator.next()) {}
 
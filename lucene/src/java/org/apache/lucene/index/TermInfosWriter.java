@@ -22,7 +22,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMOutputStream;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.UnicodeUtil;
 import org.apache.lucene.util.ArrayUtil;
 
@@ -38,8 +40,16 @@ final class TermInfosWriter implements Closeable {
   // length-in-chars
   public static final int FORMAT_VERSION_UTF8_LENGTH_IN_BYTES = -4;
 
+  // The .tii file ends with the terms index of each field
+  // as an FST (see TermInfosFieldIndex)
+  public static final int FORMAT_TERMS_INDEX_FST = -5;
+
+  // Each term records its largest frequency in a document,
+  // an upper bound for the scores of its documents
+  public static final int FORMAT_MAX_TERM_FREQ = -6;
+
   // NOTE: always change this if you switch to a new format!
-  public static final int FORMAT_CURRENT = FORMAT_VERSION_UTF8_LENGTH_IN_BYTES;
+  public static final int FORMAT_CURRENT = FORMAT_MAX_TERM_FREQ;
 
   private FieldInfos fieldInfos;
   private IndexOutput output;
@@ -81,6 +91,16 @@ final class TermInfosWriter implements Closeable {
   private TermInfosWriter other;
   private UnicodeUtil.UTF8Result utf8Result = new UnicodeUtil.UTF8Result();
 
+  // Only used by the .tii writer: the terms index of the
+  // current field, and the fields written so far
+  private TermInfosFieldIndex.Builder fieldIndex;
+  private int fieldIndexNumber = -1;
+  private int numFieldIndexes;
+  private long firstIndexPointer;
+  private RAMOutputStream fieldIndexes;
+  private RAMOutputStream fieldIndexDirectory;
+  private UnicodeUtil.UTF16Result indexTermChars;
+
   TermInfosWriter(Directory directory, String segment, FieldInfos fis,
                   int interval)
        throws IOException {
@@ -115,6 +135,11 @@ final class TermInfosWriter implements Closeable {
       output.writeInt(indexInterval);               // write indexInterval
       output.writeInt(skipInterval);                // write skipInterval
       output.writeInt(maxSkipLevels);               // write maxSkipLevels
+      if (isIndex) {
+        fieldIndexes = new RAMOutputStream();
+        fieldIndexDirectory = new RAMOutputStream();
+        indexTermChars = new UnicodeUtil.UTF16Result();
+      }
       assert initUTF16Results();
       success = true;
     } finally {
@@ -197,10 +222,12 @@ final class TermInfosWriter implements Closeable {
     if (ti.docFreq >= skipInterval) {
       output.writeVInt(ti.skipOffset);
     }
+    output.writeVInt(ti.maxTermFreq);
 
     if (isIndex) {
       output.writeVLong(other.output.getFilePointer() - lastIndexPointer);
       lastIndexPointer = other.output.getFilePointer(); // write pointer
+      addFieldIndexTerm(fieldNumber, termBytes, termBytesLength, ti);
     }
 
     lastFieldNumber = fieldNumber;
@@ -233,9 +260,75 @@ final class TermInfosWriter implements Closeable {
     lastTermBytesLength = termBytesLength;
   }
 
+  private void addFieldIndexTerm(int fieldNumber, byte[] termBytes, int termBytesLength, TermInfo ti)
+       throws IOException {
+    if (size == 0) {
+      // the first index term is the empty term before all
+      // fields, that only records where the .tis terms start
+      assert fieldNumber == -1;
+      firstIndexPointer = lastIndexPointer;
+      return;
+    }
+    if (fieldNumber != fieldIndexNumber) {
+      finishFieldIndex();
+      fieldIndex = new TermInfosFieldIndex.Builder();
+      fieldIndexNumber = fieldNumber;
+    }
+    UnicodeUtil.UTF8toUTF16(termBytes, 0, termBytesLength, indexTermChars);
+    fieldIndex.add(indexTermChars.result, indexTermChars.length, ti, lastIndexPointer);
+  }
+
+  /** Writes the terms index of the current field, and its
+   *  entry in the directory of the field indexes, which
+   *  also holds the last index term of the field so that
+   *  readers do not have to load a field's index when a
+   *  lookup in the next field starts before its first index
+   *  term. */
+  private void finishFieldIndex() throws IOException {
+    if (fieldIndex == null) {
+      return;
+    }
+    fieldIndexDirectory.writeVInt(fieldIndexNumber);
+    fieldIndexDirectory.writeVLong(fieldIndexes.getFilePointer());
+    fieldIndexDirectory.writeVInt(fieldIndex.size());
+    final IntsRef lastTerm = fieldIndex.lastTerm();
+    fieldIndexDirectory.writeVInt(lastTerm.length);
+    for (int i = 0; i < lastTerm.length; i++) {
+      fieldIndexDirectory.writeVInt(lastTerm.ints[lastTerm.offset + i]);
+    }
+    final TermInfo lastTermInfo = fieldIndex.lastTermInfo();
+    fieldIndexDirectory.writeVInt(lastTermInfo.docFreq);
+    fieldIndexDirectory.writeVLong(lastTermInfo.freqPointer);
+    fieldIndexDirectory.writeVLong(lastTermInfo.proxPointer);
+    fieldIndexDirectory.writeVInt(lastTermInfo.skipOffset);
+    fieldIndexDirectory.writeVInt(lastTermInfo.maxTermFreq);
+    fieldIndexDirectory.writeVLong(fieldIndex.lastIndexPointer());
+
+    fieldIndex.finish().write(fieldIndexes);
+    fieldIndex = null;
+    numFieldIndexes++;
+  }
+
+  /** Appends the field indexes, their directory and a
+   *  pointer to the directory to the .tii file. */
+  private void writeFieldIndexes() throws IOException {
+    finishFieldIndex();
+    final long fieldIndexesStart = output.getFilePointer();
+    fieldIndexes.writeTo(output);
+    final long directoryStart = output.getFilePointer();
+    output.writeVLong(fieldIndexesStart);
+    output.writeVLong(firstIndexPointer);
+    output.writeVInt(numFieldIndexes);
+    fieldIndexDirectory.writeTo(output);
+    output.writeLong(directoryStart);
+  }
+
   /** Called to complete TermInfos creation. */
   public void close() throws IOException {
     try {
+      if (isIndex) {
+        writeFieldIndexes();
+      }
       output.seek(4);          // write size after format
       output.writeLong(size);
     } finally {
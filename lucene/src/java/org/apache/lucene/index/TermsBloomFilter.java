@@ -0,0 +1,288 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.IOUtils;
+
+/** A Bloom filter over the terms of one field of a segment,
+ *  used to skip segments that cannot contain a term, for
+ *  example when a primary key is deleted or looked up.
+ *
+ *  <p>The filters of the fields listed in {@link
+ *  IndexWriterConfig#setBloomFilterFields} are written to the
+ *  .blm file of each flushed or merged segment.  A filter is
+ *  sized to between {@link #BITS_PER_TERM} and twice as many
+ *  bits per term and sets {@link #NUM_HASHES} bits per term,
+ *  for a false positive rate of at most about 1%.  Bit
+ *  positions are derived from a 64 bit hash of the UTF-16
+ *  code units of the term text.  The number of terms of
+ *  each filter is recorded too, which bounds the terms of
+ *  the field when segments are merged. */
+
+final class TermsBloomFilter {
+
+  /** The .blm file format */
+  static final int FORMAT_CURRENT = -1;
+
+  /** Minimum number of bits per term */
+  static final int BITS_PER_TERM = 10;
+
+  /** Number of bits set per term */
+  static final int NUM_HASHES = 7;
+
+  private final long[] bits;
+  private final int numHashes;
+  private final long numTerms;
+  private final int mask;
+
+  private TermsBloomFilter(long[] bits, int numHashes, long numTerms) {
+    assert bits.length > 0 && (bits.length & (bits.length-1)) == 0;
+    this.bits = bits;
+    this.numHashes = numHashes;
+    this.numTerms = numTerms;
+    this.mask = (bits.length << 6) - 1;
+  }
+
+  /** Returns the number of terms added to the filter. */
+  long getNumTerms() {
+    return numTerms;
+  }
+
+  /** Returns the number of 64 bit words of the filter of
+   *  numTerms terms: a power of 2, of between {@link
+   *  #BITS_PER_TERM} and twice as many bits per term. */
+  private static int numWords(long numTerms) {
+    final long numBits = Math.max(64L, numTerms * BITS_PER_TERM);
+    return (int) Math.max(1, Math.min(1 << 25, Long.highestOneBit(numBits - 1) >>> 5));
+  }
+
+  /** Returns false if the field certainly has no term with
+   *  this text. */
+  boolean mayContain(String text) {
+    final long hash = hash(text);
+    final int h1 = (int) hash;
+    final int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < numHashes; i++) {
+      final int bit = (h1 + i * h2) & mask;
+      if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long hash(String text) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < text.length(); i++) {
+      h = (h ^ text.charAt(i)) * 0x100000001b3L;
+    }
+    return mix(h);
+  }
+
+  /** Hashes the term starting at start and ended by the
+   *  0xffff terminator, as the indexing chain passes it. */
+  private static long hash(char[] text, int start) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = start; text[i] != 0xffff; i++) {
+      h = (h ^ text[i]) * 0x100000001b3L;
+    }
+    return mix(h);
+  }
+
+  // FNV-1a does not spread short keys over the high bits,
+  // so finish with the MurmurHash3 finalizer:
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+  /** Loads the filters of a segment, by (interned) field
+   *  name; the map is empty if the segment has none. */
+  static Map<String,TermsBloomFilter> read(Directory dir, String segment, FieldInfos fieldInfos, int readBufferSize) throws IOException {
+    final String fileName = IndexFileNames.segmentFileName(segment, IndexFileNames.BLOOM_FILTER_EXTENSION);
+    if (!dir.fileExists(fileName)) {
+      return Collections.emptyMap();
+    }
+    final Map<String,TermsBloomFilter> filters = new HashMap<String,TermsBloomFilter>();
+    final IndexInput in = dir.openInput(fileName, readBufferSize);
+    try {
+      final int numFields = readHeader(in);
+      for (int i = 0; i < numFields; i++) {
+        final String field = fieldInfos.fieldName(in.readVInt());
+        final int numHashes = in.readVInt();
+        final long numTerms = in.readVLong();
+        final long[] bits = new long[in.readVInt()];
+        for (int j = 0; j < bits.length; j++) {
+          bits[j] = in.readLong();
+        }
+        filters.put(field, new TermsBloomFilter(bits, numHashes, numTerms));
+      }
+    } finally {
+      in.close();
+    }
+    return filters;
+  }
+
+  /** Reads the number of terms of the filters of a
+   *  segment, by (interned) field name, without loading the
+   *  filters; the map is empty if the segment has none. */
+  static Map<String,Long> readNumTerms(Directory dir, String segment, FieldInfos fieldInfos, int readBufferSize) throws IOException {
+    final String fileName = IndexFileNames.segmentFileName(segment, IndexFileNames.BLOOM_FILTER_EXTENSION);
+    if (!dir.fileExists(fileName)) {
+      return Collections.emptyMap();
+    }
+    final Map<String,Long> numTerms = new HashMap<String,Long>();
+    final IndexInput in = dir.openInput(fileName, readBufferSize);
+    try {
+      final int numFields = readHeader(in);
+      for (int i = 0; i < numFields; i++) {
+        final String field = fieldInfos.fieldName(in.readVInt());
+        in.readVInt(); // numHashes
+        numTerms.put(field, in.readVLong());
+        final int numWords = in.readVInt();
+        in.seek(in.getFilePointer() + 8L * numWords);
+      }
+    } finally {
+      in.close();
+    }
+    return numTerms;
+  }
+
+  /** Checks the format and returns the number of filters. */
+  private static int readHeader(IndexInput in) throws IOException {
+    final int format = in.readInt();
+    if (format < FORMAT_CURRENT) {
+      throw new CorruptIndexException("Unknown format version:" + format + " expected " + FORMAT_CURRENT + " or higher");
+    }
+    return in.readVInt();
+  }
+
+  /** Collects the terms of the selected fields of a segment
+   *  being written, and writes their filters on close.  The
+   *  bits of each term are set as it arrives, in a filter
+   *  sized for an upper bound of the number of terms of the
+   *  field, that is folded down to the number of terms that
+   *  arrived once the field is finished. */
+  static final class Writer implements Closeable {
+    private final Directory dir;
+    private final String segment;
+    private final Set<String> fields;
+    private final List<FieldInfo> fieldInfos = new ArrayList<FieldInfo>();
+    private final List<TermsBloomFilter> filters = new ArrayList<TermsBloomFilter>();
+
+    private FieldInfo fieldInfo;
+    private long[] bits;
+    private int mask;
+    private long numTerms;
+
+    Writer(Directory dir, String segment, Set<String> fields) {
+      this.dir = dir;
+      this.segment = segment;
+      this.fields = fields;
+    }
+
+    /** Starts a field of at most maxNumTerms terms; returns
+     *  false if it has no filter.  The filter of a field that
+     *  gets more terms has a higher false positive rate. */
+    boolean startField(FieldInfo fieldInfo, long maxNumTerms) {
+      if (!fields.contains(fieldInfo.name)) {
+        return false;
+      }
+      this.fieldInfo = fieldInfo;
+      bits = new long[numWords(maxNumTerms)];
+      mask = (bits.length << 6) - 1;
+      numTerms = 0;
+      return true;
+    }
+
+    void add(char[] text, int start) {
+      final long hash = hash(text, start);
+      final int h1 = (int) hash;
+      final int h2 = (int) (hash >>> 32);
+      for (int i = 0; i < NUM_HASHES; i++) {
+        final int bit = (h1 + i * h2) & mask;
+        bits[bit >>> 6] |= 1L << bit;
+      }
+      numTerms++;
+    }
+
+    void finishField() {
+      if (numTerms > 0) {
+        // a bit of a filter half the size is the bit of either
+        // half of this one, since the bit positions are masked:
+        final int numWords = numWords(numTerms);
+        int length = bits.length;
+        while (length > numWords) {
+          length >>>= 1;
+          for (int i = 0; i < length; i++) {
+            bits[i] |= bits[i + length];
+          }
+        }
+        fieldInfos.add(fieldInfo);
+        filters.add(new TermsBloomFilter(length == bits.length ? bits : Arrays.copyOf(bits, length), NUM_HASHES, numTerms));
+      }
+      fieldInfo = null;
+      bits = null;
+    }
+
+    public void close() throws IOException {
+      if (filters.isEmpty()) {
+        return;
+      }
+      final IndexOutput out = dir.createOutput(IndexFileNames.segmentFileName(segment, IndexFileNames.BLOOM_FILTER_EXTENSION));
+      boolean success = false;
+      try {
+        out.writeInt(FORMAT_CURRENT);
+        out.writeVInt(filters.size());
+        for (int i = 0; i < filters.size(); i++) {
+          final TermsBloomFilter filter = filters.get(i);
+          out.writeVInt(fieldInfos.get(i).number);
+          out.writeVInt(filter.numHashes);
+          out.writeVLong(filter.numTerms);
+          out.writeVInt(filter.bits.length);
+          for (long word : filter.bits) {
+            out.writeLong(word);
+          }
+        }
+        success = true;
+      } finally {
+        if (success) {
+          IOUtils.close(out);
+        } else {
+          IOUtils.closeWhileHandlingException(out);
+        }
+      }
+    }
+  }
+}
@@ -59,12 +59,21 @@ public class UpgradeIndexMergePolicy extends MergePolicy {
   }
   
   /** Returns if the given segment should be upgraded. The default implementation
-   * will return {@code !Constants.LUCENE_MAIN_VERSION.equals(si.getVersion())},
-   * so all segments created with a different version number than this Lucene version will
-   * get upgraded.
+   * will return true for all segments created with a different version number than
+   * this Lucene version, and for segments of this version whose terms index was written
+   * before it was stored as FSTs, so all of them get upgraded.
    */
   protected boolean shouldUpgradeSegment(SegmentInfo si) {
-    return !Constants.LUCENE_MAIN_VERSION.equals(si.getVersion());
+    if (!Constants.LUCENE_MAIN_VERSION.equals(si.getVersion())) {
+      return true;
+    }
+    try {
+      return !si.getHasTermsIndexFST();
+    } catch (IOException e) {
+      // rewrite the segment if its terms index cannot be checked
+      if (verbose()) message("shouldUpgradeSegment: cannot read the terms index of " + si.name + ": " + e);
+      return true;
+    }
   }
 
   @Override
@@ -39,13 +39,16 @@ class BooleanScorer2 extends Scorer {
 
   private class Coordinator {
     float[] coordFactors = null;
+    float maxCoordFactor; // the largest of coordFactors
     int maxCoord = 0; // to be increased for each non prohibited scorer
     int nrMatchers; // to be increased by score() of match counting scorers.
     
     void init(Similarity sim, boolean disableCoord) { // use after all scorers have been added.
       coordFactors = new float[optionalScorers.size() + requiredScorers.size() + 1];
+      maxCoordFactor = Float.NEGATIVE_INFINITY;
       for (int i = 0; i < coordFactors.length; i++) {
         coordFactors[i] = disableCoord ? 1.0f : sim.coord(i, maxCoord);
+        maxCoordFactor = Math.max(maxCoordFactor, coordFactors[i]);
       }
     }
   }
@@ -141,6 +144,16 @@ class BooleanScorer2 extends Scorer {
     public int advance(int target) throws IOException {
       return scorer.advance(target);
     }
+
+    @Override
+    public float maxScore() throws IOException {
+      return scorer.maxScore();
+    }
+
+    @Override
+    public void setMinCompetitiveScore(float minScore) throws IOException {
+      scorer.setMinCompetitiveScore(minScore);
+    }
   }
 
   private Scorer countingDisjunctionSumScorer(final List<Scorer> scorers,
@@ -315,6 +328,23 @@ class BooleanScorer2 extends Scorer {
     return coordinator.nrMatchers;
   }
 
+  @Override
+  public float maxScore() throws IOException {
+    // a document with a negative sum scores at most 0, whatever its coordination factor
+    final float maxSum = Math.max(0.0f, countingSumScorer.maxScore());
+    return maxSum == Float.POSITIVE_INFINITY ? maxSum : maxSum * coordinator.maxCoordFactor;
+  }
+
+  @Override
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+    if (coordinator.maxCoordFactor > 0 && minScore >= 0) {
+      // a document whose sum is at most this minimum score
+      // cannot compete, whatever its coordination factor;
+      // unless both are negative, and a smaller factor raises the score
+      countingSumScorer.setMinCompetitiveScore(minScore / coordinator.maxCoordFactor);
+    }
+  }
+
   @Override
   public int advance(int target) throws IOException {
     return doc = countingSumScorer.advance(target);
@@ -136,4 +136,13 @@ class ConjunctionScorer extends Scorer {
     }
     return sum * coord;
   }
+
+  @Override
+  public float maxScore() throws IOException {
+    float sum = 0.0f;
+    for (int i = 0; i < scorers.length; i++) {
+      sum += scorers[i].maxScore();
+    }
+    return sum == Float.POSITIVE_INFINITY ? sum : sum * coord;
+  }
 }
@@ -201,6 +201,11 @@ public class ConstantScoreQuery extends Query {
       return theScore;
     }
 
+    @Override
+    public float maxScore() {
+      return theScore;
+    }
+
     @Override
     public int advance(int target) throws IOException {
       return docIdSetIterator.advance(target);
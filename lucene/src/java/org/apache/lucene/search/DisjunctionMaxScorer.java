@@ -102,6 +102,25 @@ class DisjunctionMaxScorer extends Scorer {
     return scoreMax + (scoreSum - scoreMax) * tieBreakerMultiplier;
   }
 
+  @Override
+  public float maxScore() throws IOException {
+    float maxSum = 0, maxMax = 0;
+    for (int i = 0; i < numScorers; i++) {
+      // a document need not match a sub scorer whose bound is negative
+      final float sub = Math.max(0.0f, subScorers[i].maxScore());
+      if (sub == Float.POSITIVE_INFINITY) {
+        return sub;
+      }
+      maxSum += sub;
+      maxMax = Math.max(maxMax, sub);
+    }
+    if (tieBreakerMultiplier > 1.0f) {
+      // the maximum may be the score of any sub scorer
+      return maxSum * tieBreakerMultiplier;
+    }
+    return maxMax + (maxSum - maxMax) * tieBreakerMultiplier;
+  }
+
   // Recursively iterate all subScorers that generated last doc computing sum and max
   private void scoreAll(int root, int size, int doc) throws IOException {
     if (root < size && subScorers[root].docID() == doc) {
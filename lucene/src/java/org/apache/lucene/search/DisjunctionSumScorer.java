@@ -21,9 +21,14 @@ import java.util.List;
 import java.io.IOException;
 
 import org.apache.lucene.util.ScorerDocQueue;
+import org.apache.lucene.util.SorterTemplate;
 
 /** A Scorer for OR like queries, counterpart of <code>ConjunctionScorer</code>.
  * This Scorer implements {@link Scorer#skipTo(int)} and uses skipTo() on the given Scorers. 
+ * <p>Once a minimum competitive score is set, see {@link #setMinCompetitiveScore(float)},
+ * the documents that cannot score more than it are skipped (MaxScore): the subscorers
+ * with the smallest {@link Scorer#maxScore()} bounds, whose bounds sum to at most the
+ * minimum score, are not iterated, but only advanced to the documents matched by the others.
  */
 class DisjunctionSumScorer extends Scorer {
   /** The number of subscorers. */ 
@@ -56,6 +61,27 @@ class DisjunctionSumScorer extends Scorer {
   protected int nrMatchers = -1;
 
   private float currentScore = Float.NaN;
+
+  /** The score a document must exceed to compete, see {@link #setMinCompetitiveScore(float)}. */
+  private float minCompetitiveScore = Float.NEGATIVE_INFINITY;
+
+  /** The subscorers by increasing {@link Scorer#maxScore()}, null until a
+   * minimum competitive score is set.
+   */
+  private Scorer[] scorersByMaxScore;
+
+  /** The sums of the bounds of the first i+1 <code>scorersByMaxScore</code>. */
+  private double[] maxScoreSums;
+
+  /** The number of first <code>scorersByMaxScore</code> that are not in the
+   * <code>scorerDocQueue</code>, since a document that only they match cannot compete.
+   */
+  private int numNonEssential;
+
+  /** The relative error of the bounds of the scores, that are summed in
+   * a different order than the scores, and of the scores of the subscorers.
+   */
+  private final double maxScoreSlack;
   
   /** Construct a <code>DisjunctionScorer</code>.
    * @param weight The weight to be used.
@@ -82,6 +108,7 @@ class DisjunctionSumScorer extends Scorer {
 
     this.minimumNrMatchers = minimumNrMatchers;
     this.subScorers = subScorers;
+    this.maxScoreSlack = (nrScorers + 4) * 16 * (double) Math.ulp(1.0f);
 
     initScorerDocQueue();
   }
@@ -180,13 +207,134 @@ class DisjunctionSumScorer extends Scorer {
         nrMatchers++;
       } while (true);
       
-      if (nrMatchers >= minimumNrMatchers) {
+      if (numNonEssential > 0) { // minimumNrMatchers is 1
+        if (addNonEssentialScores()) {
+          return true;
+        } else if (scorerDocQueue.size() == 0) {
+          return false;
+        }
+      } else if (nrMatchers >= minimumNrMatchers) {
         return true;
       } else if (scorerDocQueue.size() < minimumNrMatchers) {
         return false;
       }
     } while (true);
   }
+
+  /** Adds the scores of the non essential subscorers that match
+   * <code>currentDoc</code>, the ones with the largest bounds first.
+   * @return false iff <code>currentDoc</code> cannot compete.
+   */
+  private boolean addNonEssentialScores() throws IOException {
+    for (int i = numNonEssential - 1; i >= 0; i--) {
+      if (upperBound(currentScore + maxScoreSums[i]) <= minCompetitiveScore) {
+        return false;
+      }
+      final Scorer scorer = scorersByMaxScore[i];
+      int doc = scorer.docID();
+      if (doc < currentDoc) {
+        doc = scorer.advance(currentDoc);
+      }
+      if (doc == currentDoc) {
+        currentScore += scorer.score();
+        nrMatchers++;
+      }
+    }
+    return true;
+  }
+
+  private double upperBound(double score) {
+    return score + Math.abs(score) * maxScoreSlack;
+  }
+
+  /** Returns the sum of the non negative bounds of the subscorers. */
+  @Override
+  public float maxScore() throws IOException {
+    float sum = 0.0f;
+    for (Scorer se : subScorers) {
+      sum += nonNegativeMaxScore(se);
+    }
+    return sum;
+  }
+
+  /** Skips the documents that cannot score more than <code>minScore</code> from
+   * now on, unless more than one subscorer should match.
+   */
+  @Override
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+    if (minimumNrMatchers > 1 || minScore <= minCompetitiveScore) {
+      return;
+    }
+    minCompetitiveScore = minScore;
+    if (scorersByMaxScore == null) {
+      initMaxScores();
+    }
+    int numNonEssential = this.numNonEssential;
+    while (numNonEssential < nrScorers
+           && upperBound(maxScoreSums[numNonEssential]) <= minCompetitiveScore) {
+      numNonEssential++;
+    }
+    if (numNonEssential > this.numNonEssential) {
+      this.numNonEssential = numNonEssential;
+      // All essential subscorers are after currentDoc, or exhausted.
+      scorerDocQueue = new ScorerDocQueue(nrScorers);
+      for (int i = numNonEssential; i < nrScorers; i++) {
+        if (scorersByMaxScore[i].docID() != NO_MORE_DOCS) {
+          scorerDocQueue.insert(scorersByMaxScore[i]);
+        }
+      }
+    }
+  }
+
+  /** Returns the bound of <code>scorer</code>, or 0 if it is negative: a
+   * document that does not match the subscorer does not get its negative score,
+   * so only non negative bounds add up to bounds of the sums of scores.
+   */
+  private static float nonNegativeMaxScore(Scorer scorer) throws IOException {
+    return Math.max(0.0f, scorer.maxScore());
+  }
+
+  private void initMaxScores() throws IOException {
+    final Scorer[] scorers = subScorers.toArray(new Scorer[nrScorers]);
+    final float[] maxScores = new float[nrScorers];
+    for (int i = 0; i < nrScorers; i++) {
+      maxScores[i] = nonNegativeMaxScore(scorers[i]);
+    }
+    new SorterTemplate() {
+      private float pivot;
+
+      @Override
+      protected void swap(int i, int j) {
+        final Scorer scorer = scorers[i];
+        scorers[i] = scorers[j];
+        scorers[j] = scorer;
+        final float maxScore = maxScores[i];
+        maxScores[i] = maxScores[j];
+        maxScores[j] = maxScore;
+      }
+
+      @Override
+      protected int compare(int i, int j) {
+        return Float.compare(maxScores[i], maxScores[j]);
+      }
+
+      @Override
+      protected void setPivot(int i) {
+        pivot = maxScores[i];
+      }
+
+      @Override
+      protected int comparePivot(int j) {
+        return Float.compare(pivot, maxScores[j]);
+      }
+    }.quickSort(0, nrScorers - 1);
+    maxScoreSums = new double[nrScorers];
+    double sum = 0;
+    for (int i = 0; i < nrScorers; i++) {
+      maxScoreSums[i] = sum += maxScores[i];
+    }
+    scorersByMaxScore = scorers;
+  }
   
   /** Returns the score of the current document matching the query.
    * Initially invalid, until {@link #nextDoc()} is called the first time.
@@ -18,8 +18,10 @@ package org.apache.lucene.search;
  */
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
 import org.apache.lucene.document.NumericField; // for javadocs
 import org.apache.lucene.analysis.NumericTokenStream; // for javadocs
 
@@ -28,6 +30,7 @@ import java.io.Serializable;
 import java.io.PrintStream;
 
 import java.text.DecimalFormat;
+import java.util.Comparator;
 
 /**
  * Expert: Maintains caches of term values.
@@ -87,6 +90,90 @@ public interface FieldCache {
     }
   }
 
+  /** Expert: Stores term text values and document ordering
+   *  data, like {@link StringIndex}, but packed into far less
+   *  heap: each document's ord uses only as many bits as the
+   *  number of unique terms requires, and the UTF-8 bytes of
+   *  all terms are stored back to back in a few shared byte
+   *  blocks instead of one String object per term.
+   *
+   *  <p>As with {@link StringIndex}, ord 0 is reserved for
+   *  documents that have no term in the field, and the
+   *  remaining ords follow the natural String order of the
+   *  terms.
+   *
+   *  @see FieldCache#getTermsIndex
+   *  @lucene.experimental */
+  public static abstract class DocTermsIndex {
+
+    /** Returns the ord of the provided term, or <code>-(insertionPoint+1)</code>
+     *  if it is not found, using the same ordering as
+     *  {@link String#compareTo}.  A null key maps to ord 0.
+     *  @param key the term to look up, as UTF-8 bytes
+     *  @param spare a scratch BytesRef used during the search */
+    public int binarySearchLookup(BytesRef key, BytesRef spare) {
+      // this special case is the reason that Arrays.binarySearch() isn't useful.
+      if (key == null)
+        return 0;
+
+      int low = 1;
+      int high = numOrd()-1;
+
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = UTF16_ORDER.compare(lookup(mid, spare), key);
+
+        if (cmp < 0)
+          low = mid + 1;
+        else if (cmp > 0)
+          high = mid - 1;
+        else
+          return mid; // key found
+      }
+      return -(low + 1);  // key not found.
+    }
+
+    /** The term for this ord, or null for ord 0.  The
+     *  returned BytesRef (which is the provided one, filled
+     *  in) points into shared storage and must not be
+     *  modified. */
+    public abstract BytesRef lookup(int ord, BytesRef reuse);
+
+    /** Convenience method, to lookup the term for a doc.
+     *  Returns null if the doc has no term in this field. */
+    public BytesRef getTerm(int docID, BytesRef reuse) {
+      return lookup(getOrd(docID), reuse);
+    }
+
+    /** Returns the term for this ord as a String, or null
+     *  for ord 0. */
+    public String lookupString(int ord) {
+      final BytesRef term = lookup(ord, new BytesRef());
+      return term == null ? null : term.utf8ToString();
+    }
+
+    /** Returns the ord for this doc, 0 if it has no term. */
+    public abstract int getOrd(int docID);
+
+    /** Returns total unique ord count, including the
+     *  reserved ord 0. */
+    public abstract int numOrd();
+
+    /** Number of documents */
+    public abstract int size();
+
+    /** Returns the packed doc to ord mapping. */
+    public abstract PackedInts.Reader getDocToOrd();
+
+    /** Returns approximate heap memory, in bytes, used by
+     *  this index. */
+    public abstract long ramBytesUsed();
+
+    /** Orders UTF-8 terms the way {@link String#compareTo}
+     *  orders the equivalent Strings. */
+    static final Comparator<BytesRef> UTF16_ORDER = BytesRef.getUTF8SortedAsUTF16Comparator();
+  }
+
   /**
    * Marker interface as super-interface to all parsers. It
    * is used to specify a custom parser to {@link
@@ -501,6 +588,19 @@ public interface FieldCache {
   public StringIndex getStringIndex (IndexReader reader, String field)
   throws IOException;
 
+  /** Checks the internal cache for an appropriate entry, and if none
+   * is found reads the term values in <code>field</code> and returns
+   * a {@link DocTermsIndex}, which holds the same information as
+   * {@link #getStringIndex} in a much more compact form.
+   * @param reader  Used to get field values.
+   * @param field   Which field contains the strings.
+   * @return Packed terms and ord for each document.
+   * @throws IOException  If any error occurs.
+   * @lucene.experimental
+   */
+  public DocTermsIndex getTermsIndex (IndexReader reader, String field)
+  throws IOException;
+
   /**
    * EXPERT: A unique Identifier/Description for each item in the FieldCache. 
    * Can be useful for logging/debugging.
@@ -30,11 +30,17 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BitVector;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.DocIdBitSet;
 import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.PagedBytes;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.FieldCacheSanityChecker;
+import org.apache.lucene.util.UnicodeUtil;
+import org.apache.lucene.util.packed.GrowableWriter;
+import org.apache.lucene.util.packed.PackedInts;
 
 /**
  * Expert: The default cache implementation, storing all values in memory.
@@ -60,6 +66,7 @@ class FieldCacheImpl implements FieldCache {
     caches.put(Double.TYPE, new DoubleCache(this));
     caches.put(String.class, new StringCache(this));
     caches.put(StringIndex.class, new StringIndexCache(this));
+    caches.put(DocTermsIndex.class, new DocTermsIndexCache(this));
     caches.put(UnValuedDocsCache.class, new UnValuedDocsCache(this));
   }
 
@@ -727,6 +734,122 @@ class FieldCacheImpl implements FieldCache {
     }
   }
 
+  // inherit javadocs
+  public DocTermsIndex getTermsIndex(IndexReader reader, String field)
+      throws IOException {
+    return (DocTermsIndex) caches.get(DocTermsIndex.class).get(reader, new Entry(field, (Parser)null));
+  }
+
+  static final class DocTermsIndexImpl extends DocTermsIndex {
+    private final PagedBytes.Reader bytes;
+    private final PackedInts.Reader termOrdToBytesOffset;
+    private final PackedInts.Reader docToTermOrd;
+    private final int numOrd;
+
+    DocTermsIndexImpl(PagedBytes.Reader bytes, PackedInts.Reader termOrdToBytesOffset, PackedInts.Reader docToTermOrd, int numOrd) {
+      this.bytes = bytes;
+      this.docToTermOrd = docToTermOrd;
+      this.termOrdToBytesOffset = termOrdToBytesOffset;
+      this.numOrd = numOrd;
+    }
+
+    @Override
+    public PackedInts.Reader getDocToOrd() {
+      return docToTermOrd;
+    }
+
+    @Override
+    public int numOrd() {
+      return numOrd;
+    }
+
+    @Override
+    public int getOrd(int docID) {
+      return (int) docToTermOrd.get(docID);
+    }
+
+    @Override
+    public int size() {
+      return docToTermOrd.size();
+    }
+
+    @Override
+    public BytesRef lookup(int ord, BytesRef ret) {
+      if (ord == 0) {
+        return null;
+      }
+      return bytes.fill(ret, termOrdToBytesOffset.get(ord));
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return bytes.ramBytesUsed() + termOrdToBytesOffset.ramBytesUsed() + docToTermOrd.ramBytesUsed();
+    }
+  }
+
+  static final class DocTermsIndexCache extends Cache {
+    // Each page holds 64 KB, which is always enough for one
+    // term: IndexWriter limits terms to 16383 chars, which
+    // is at most 49149 UTF-8 bytes plus a 3 byte length.
+    private static final int PAGE_BITS = 16;
+
+    DocTermsIndexCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    @Override
+    protected Object createValue(IndexReader reader, Entry entryKey)
+        throws IOException {
+      String field = StringHelper.intern(entryKey.field);
+      final int maxDoc = reader.maxDoc();
+
+      final PagedBytes bytes = new PagedBytes(PAGE_BITS);
+      // start with 1 bit per value and let the writers grow
+      // as ords and offsets get larger
+      GrowableWriter termOrdToBytesOffset = new GrowableWriter(1, 1+Math.min(maxDoc, 1024));
+      final GrowableWriter docToTermOrd = new GrowableWriter(1, maxDoc);
+      final BytesRef scratch = new BytesRef();
+
+      TermDocs termDocs = reader.termDocs();
+      TermEnum termEnum = reader.terms (new Term (field));
+      // ord 0 is reserved for documents that have no terms
+      // in this field, exactly like StringIndex
+      int t = 1;  // current term number
+
+      try {
+        do {
+          Term term = termEnum.term();
+          // like StringIndex, never hold more ords than docs
+          if (term==null || term.field() != field || t > maxDoc) break;
+
+          final String text = term.text();
+          UnicodeUtil.UTF16toUTF8(text, 0, text.length(), scratch);
+          if (t == termOrdToBytesOffset.size()) {
+            termOrdToBytesOffset = termOrdToBytesOffset.resize(ArrayUtil.oversize(1+t, 1));
+          }
+          termOrdToBytesOffset.set(t, bytes.copyUsingLengthPrefix(scratch));
+
+          termDocs.seek (termEnum);
+          while (termDocs.next()) {
+            docToTermOrd.set(termDocs.doc(), t);
+          }
+
+          t++;
+        } while (termEnum.next());
+      } finally {
+        termDocs.close();
+        termEnum.close();
+      }
+
+      // trim off the dead space
+      if (termOrdToBytesOffset.size() > t) {
+        termOrdToBytesOffset = termOrdToBytesOffset.resize(t);
+      }
+
+      return new DocTermsIndexImpl(bytes.freeze(true), termOrdToBytesOffset.getMutable(), docToTermOrd.getMutable(), t);
+    }
+  }
+
   private volatile PrintStream infoStream;
 
   public void setInfoStream(PrintStream stream) {
@@ -19,9 +19,11 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 import java.text.Collator;
+import java.util.Comparator;
 import java.util.Locale;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache.DocTermsIndex;
 import org.apache.lucene.search.FieldCache.DoubleParser;
 import org.apache.lucene.search.FieldCache.LongParser;
 import org.apache.lucene.search.FieldCache.ByteParser;
@@ -29,6 +31,7 @@ import org.apache.lucene.search.FieldCache.FloatParser;
 import org.apache.lucene.search.FieldCache.IntParser;
 import org.apache.lucene.search.FieldCache.ShortParser;
 import org.apache.lucene.search.FieldCache.StringIndex;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.OpenBitSet;
 
 /**
@@ -932,6 +935,175 @@ public abstract class FieldComparator<T> {
     }
   }
 
+  /** Sorts by field's natural String sort order, using
+   *  ordinals, exactly like {@link StringOrdValComparator},
+   *  but reading the ords and terms from the compact index
+   *  returned by {@link FieldCache#getTermsIndex} instead of
+   *  the one returned by {@link FieldCache#getStringIndex}.
+   *  Terms are compared as UTF-8 bytes in UTF-16 order, so
+   *  the resulting sort is identical to String.compareTo;
+   *  only competitive hits are converted to String.
+   *
+   *  @lucene.experimental */
+  public static final class TermOrdValComparator extends FieldComparator<String> {
+
+    private static final Comparator<BytesRef> UTF16_ORDER = BytesRef.getUTF8SortedAsUTF16Comparator();
+
+    private final int[] ords;
+    private final BytesRef[] values;
+    private final int[] readerGen;
+
+    private int currentReaderGen = -1;
+    private DocTermsIndex termsIndex;
+    private final String field;
+
+    private int bottomSlot = -1;
+    private int bottomOrd;
+    private boolean bottomSameReader;
+    private BytesRef bottomValue;
+    private final BytesRef tempBR = new BytesRef();
+
+    public TermOrdValComparator(int numHits, String field, int sortPos, boolean reversed) {
+      ords = new int[numHits];
+      values = new BytesRef[numHits];
+      readerGen = new int[numHits];
+      this.field = field;
+    }
+
+    @Override
+    public int compare(int slot1, int slot2) {
+      if (readerGen[slot1] == readerGen[slot2]) {
+        return ords[slot1] - ords[slot2];
+      }
+
+      final BytesRef val1 = values[slot1];
+      final BytesRef val2 = values[slot2];
+      if (val1 == null) {
+        if (val2 == null) {
+          return 0;
+        }
+        return -1;
+      } else if (val2 == null) {
+        return 1;
+      }
+      return UTF16_ORDER.compare(val1, val2);
+    }
+
+    @Override
+    public int compareBottom(int doc) {
+      assert bottomSlot != -1;
+      if (bottomSameReader) {
+        // ord is precisely comparable, even in the equal case
+        return bottomOrd - termsIndex.getOrd(doc);
+      } else {
+        // ord is only approx comparable: if they are not
+        // equal, we can use that; if they are equal, we
+        // must fallback to compare by value
+        final int order = termsIndex.getOrd(doc);
+        final int cmp = bottomOrd - order;
+        if (cmp != 0) {
+          return cmp;
+        }
+
+        final BytesRef val2 = termsIndex.lookup(order, tempBR);
+        if (bottomValue == null) {
+          if (val2 == null) {
+            return 0;
+          }
+          // bottom wins
+          return -1;
+        } else if (val2 == null) {
+          // doc wins
+          return 1;
+        }
+        return UTF16_ORDER.compare(bottomValue, val2);
+      }
+    }
+
+    @Override
+    public void copy(int slot, int doc) {
+      final int ord = termsIndex.getOrd(doc);
+      ords[slot] = ord;
+      assert ord >= 0;
+      if (ord == 0) {
+        values[slot] = null;
+      } else {
+        if (values[slot] == null) {
+          values[slot] = new BytesRef();
+        }
+        values[slot].copy(termsIndex.lookup(ord, tempBR));
+      }
+      readerGen[slot] = currentReaderGen;
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+      termsIndex = FieldCache.DEFAULT.getTermsIndex(reader, field);
+      currentReaderGen++;
+      assert termsIndex.numOrd() > 0;
+      if (bottomSlot != -1) {
+        setBottom(bottomSlot);
+      }
+    }
+    
+    @Override
+    public void setBottom(final int bottom) {
+      bottomSlot = bottom;
+
+      bottomValue = values[bottomSlot];
+      if (currentReaderGen == readerGen[bottomSlot]) {
+        bottomOrd = ords[bottomSlot];
+        bottomSameReader = true;
+      } else {
+        if (bottomValue == null) {
+          ords[bottomSlot] = 0;
+          bottomOrd = 0;
+          bottomSameReader = true;
+          readerGen[bottomSlot] = currentReaderGen;
+        } else {
+          final int index = termsIndex.binarySearchLookup(bottomValue, tempBR);
+          if (index < 0) {
+            bottomOrd = -index - 2;
+            bottomSameReader = false;
+          } else {
+            bottomOrd = index;
+            // exact value match
+            bottomSameReader = true;
+            readerGen[bottomSlot] = currentReaderGen;            
+            ords[bottomSlot] = bottomOrd;
+          }
+        }
+      }
+    }
+
+    @Override
+    public String value(int slot) {
+      final BytesRef value = values[slot];
+      return value == null ? null : value.utf8ToString();
+    }
+    
+    @Override
+    public int compareValues(String val1, String val2) {
+      if (val1 == null) {
+        if (val2 == null) {
+          return 0;
+        }
+        return -1;
+      } else if (val2 == null) {
+        return 1;
+      }
+      return val1.compareTo(val2);
+    }
+
+    public int getBottomSlot() {
+      return bottomSlot;
+    }
+
+    public String getField() {
+      return field;
+    }
+  }
+
   /** Sorts by field's natural String sort order.  All
    *  comparisons are done using String.compareTo, which is
    *  slow for medium to large result sets but possibly
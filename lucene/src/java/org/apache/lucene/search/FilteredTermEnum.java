@@ -42,6 +42,16 @@ public abstract class FilteredTermEnum extends TermEnum {
 
     /** Indicates the end of the enumeration has been reached */
     protected abstract boolean endEnum();
+
+    /**
+     * Called by rewrites that only keep the best terms, like
+     * {@link TopTermsRewrite}, once terms with a {@link #difference}
+     * up to the given one can no longer be used.  Enums may then
+     * skip such terms; this implementation does nothing.
+     * @lucene.experimental
+     */
+    public void setMaxNonCompetitiveDifference(float difference) {
+    }
     
     /**
      * use this method to set the actual TermEnum (e.g. in ctor),
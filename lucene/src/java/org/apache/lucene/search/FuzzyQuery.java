@@ -26,14 +26,17 @@ import java.io.IOException;
 /** Implements the fuzzy search query. The similarity measurement
  * is based on the Levenshtein (edit distance) algorithm.
  * 
- * <p><em>Warning:</em> this query is not very scalable with its default prefix
- * length of 0 - in this case, *every* term will be enumerated and
- * cause an edit score calculation.
+ * <p>Terms are enumerated with a {@link FuzzyTermEnum}, which skips the
+ * terms starting with chars that are already too far from the query term.
+ * With the default prefix length of 0, the number of terms visited still
+ * grows with the allowed edit distance, so a low minimum similarity on a
+ * long term can be slow.
  * 
  * <p>This query uses {@link MultiTermQuery.TopTermsScoringBooleanQueryRewrite}
  * as default. So terms will be collected and scored according to their
- * edit distance. Only the top terms are used for building the {@link BooleanQuery}.
- * It is not recommended to change the rewrite mode for fuzzy queries.
+ * edit distance. Only the top terms are used for building the {@link BooleanQuery};
+ * once <code>maxExpansions</code> terms were found, only closer terms are
+ * enumerated. It is not recommended to change the rewrite mode for fuzzy queries.
  */
 public class FuzzyQuery extends MultiTermQuery {
   
@@ -21,20 +21,35 @@ import java.io.IOException;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
 
 /** Subclass of FilteredTermEnum for enumerating all terms that are similar
  * to the specified filter term.
  *
  * <p>Term enumerations are always ordered by Term.compareTo().  Each term in
  * the enumeration is greater than all that precede it.
+ *
+ * <p>The edit distance rows computed for a term are kept, so a term
+ * that shares a prefix with the previous one only computes the rows of
+ * its remaining chars.  When the distance of some prefix of a term is
+ * already too large for any term starting with it to match, all these
+ * terms are skipped by seeking the underlying enum past them.  So a
+ * query does not need to visit every term of the field, even with a
+ * prefix length of 0.
  */
-public final class FuzzyTermEnum extends FilteredTermEnum {
+public final class FuzzyTermEnum extends SeekingTermEnum {
 
-  /* Allows us save time required to create a new array
-   * every time similarity is called.
+  /* Allows us save time required to create new arrays
+   * for every term: rows[j] holds the edit distances
+   * between the first j chars after the prefix of
+   * lastTermText and each prefix of text, and rowMins[j]
+   * the smallest of them.  Rows 0..rowsUpto are valid.
    */
-  private int[] p;
-  private int[] d;
+  private int[][] rows;
+  private int[] rowMins;
+  private int rowsUpto;
+  private String lastTermText;
 
   private float similarity;
   private boolean endEnum = false;
@@ -47,6 +62,10 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
   private final float minimumSimilarity;
   private final float scale_factor;
 
+  /* Terms starting with chars whose edit distance row has
+   * no value up to this are skipped */
+  private int maxPrefixDistance;
+
   /**
    * Creates a FuzzyTermEnum with an empty prefix and a minSimilarity of 0.5f.
    * <p>
@@ -93,7 +112,7 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
    * @throws IOException
    */
   public FuzzyTermEnum(IndexReader reader, Term term, final float minSimilarity, final int prefixLength) throws IOException {
-    super();
+    super(reader, term.field(), term.text().substring(0, Math.max(0, Math.min(prefixLength, term.text().length()))));
     
     if (minSimilarity >= 1.0f)
       throw new IllegalArgumentException("minimumSimilarity cannot be greater than or equal to 1");
@@ -115,10 +134,16 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
     this.text = searchTerm.text().substring(realPrefixLength).toCharArray();
     this.prefix = searchTerm.text().substring(0, realPrefixLength);
 
-    this.p = new int[this.text.length+1];
-    this.d = new int[this.text.length+1];
+    this.rows = new int[1][this.text.length+1];
+    this.rowMins = new int[1];
+    for (int i = 0; i<=this.text.length; ++i) {
+      rows[0][i] = i;
+    }
+    // no target gets a larger max distance than one at
+    // least as long as text
+    this.maxPrefixDistance = calculateMaxDistance(this.text.length);
 
-    setEnum(reader.terms(new Term(searchTerm.field(), prefix)));
+    initEnum();
   }
 
   /**
@@ -128,13 +153,43 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
   @Override
   protected final boolean termCompare(Term term) {
     if (field == term.field() && term.text().startsWith(prefix)) {
-        final String target = term.text().substring(prefix.length());
-        this.similarity = similarity(target);
+        final String termText = term.text();
+        final int deadLength = computeRows(termText);
+        if (deadLength != -1) {
+          // no term starting with these chars matches
+          if (!seekPast(termText, prefix.length() + deadLength)) {
+            endEnum = true;
+          }
+          return false;
+        }
+        this.similarity = similarity(termText.length() - prefix.length());
         return (similarity > minimumSimilarity);
     }
     endEnum = true;
     return false;
   }
+
+  /**
+   * Lowers the max distance of prefixes to the one that
+   * still gives a {@link #difference} above the given one:
+   * the Levenshtein distance to any target is at least the
+   * smallest distance in the row of any of its prefixes, and
+   * the similarity is highest for targets at least as long
+   * as the text.
+   */
+  @Override
+  public void setMaxNonCompetitiveDifference(float difference) {
+    final double minCompetitiveSimilarity = minimumSimilarity + difference / scale_factor;
+    // the margin keeps float rounding from dropping targets
+    // that are exactly as similar
+    final int distance = (int) Math.floor((1 - minCompetitiveSimilarity) * (prefix.length() + text.length) + 0.001);
+    if (distance < maxPrefixDistance) {
+      maxPrefixDistance = distance;
+      if (distance < 0) {
+        endEnum = true;
+      }
+    }
+  }
   
   /** {@inheritDoc} */
   @Override
@@ -185,12 +240,12 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
    * between two strings where the distance is measured as the number of character
    * deletions, insertions or substitutions required to transform one string to
    * the other string.
-   * @param target the target word or phrase
+   * @param m the length of the target after the prefix, whose rows
+   * {@link #computeRows} computed
    * @return the similarity,  0.0 or less indicates that it matches less than the required
    * threshold and 1.0 indicates that the text and target are identical
    */
-  private float similarity(final String target) {
-    final int m = target.length();
+  private float similarity(final int m) {
     final int n = text.length;
     if (n == 0)  {
       //we don't have anything to compare.  That means if we just add
@@ -214,52 +269,88 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
       return 0.0f;
     }
 
-    // init matrix d
-    for (int i = 0; i<=n; ++i) {
-      p[i] = i;
+    //The best possible edit distance can be found by finding the
+    //smallest value in a row, and it only grows from row to row.
+    //If it is greater than the max distance once we are past the
+    //first maxDistance rows, the target is too far away.
+    if (m > maxDistance && rowMins[m] > maxDistance) {  //equal is okay, but not greater
+      //the closest the target can be to the text is just too far away.
+      //this target is leaving the party early.
+      return 0.0f;
     }
 
-    // start computing edit distance
-    for (int j = 1; j<=m; ++j) { // iterates through target
-      int bestPossibleEditDistance = m;
-      final char t_j = target.charAt(j-1); // jth character of t
-      d[0] = j;
+    // this will return less than 0.0 when the edit distance is
+    // greater than the number of characters in the shorter word.
+    // but this was the formula that was previously used in FuzzyTermEnum,
+    // so it has not been changed (even though minimumSimilarity must be
+    // greater than 0.0)
+    return 1.0f - ((float)rows[m][n] / (float) (prefix.length() + Math.min(n, m)));
+  }
+
+  /**
+   * Computes the edit distance rows for the chars after the
+   * prefix of <code>termText</code>, reusing the rows of the
+   * chars it shares with the last term.
+   * @return -1, or the number of chars after the prefix whose
+   * row shows that no term starting with them can match
+   */
+  private int computeRows(final String termText) {
+    final int n = text.length;
+    if (n == 0) {
+      return -1;
+    }
+    final int offset = prefix.length();
+    final int m = termText.length() - offset;
+
+    int j = 0;
+    final int limit = Math.min(rowsUpto, m);
+    while (j < limit && termText.charAt(offset+j) == lastTermText.charAt(offset+j)) {
+      j++;
+    }
+    lastTermText = termText;
+    rowsUpto = j;
+    // the max distance may have been lowered since these
+    // rows were computed
+    for (int k = 1; k <= j; ++k) {
+      if (rowMins[k] > maxPrefixDistance) {
+        return k;
+      }
+    }
+
+    if (m >= rows.length) {
+      final int[][] newRows = new int[ArrayUtil.oversize(m+1, RamUsageEstimator.NUM_BYTES_OBJECT_REF)][];
+      System.arraycopy(rows, 0, newRows, 0, rows.length);
+      for (int k = rows.length; k < newRows.length; ++k) {
+        newRows[k] = new int[n+1];
+      }
+      rows = newRows;
+      rowMins = ArrayUtil.grow(rowMins, newRows.length);
+    }
+
+    for (; j < m; ++j) { // iterates through target
+      final char t_j = termText.charAt(offset+j); // jth character of t
+      final int[] p = rows[j];
+      final int[] d = rows[j+1];
+      d[0] = j+1;
+      int bestPossibleEditDistance = d[0];
 
       for (int i=1; i<=n; ++i) { // iterates through text
         // minimum of cell to the left+1, to the top+1, diagonally left and up +(0|1)
         if (t_j != text[i-1]) {
           d[i] = Math.min(Math.min(d[i-1], p[i]),  p[i-1]) + 1;
-		} else {
+        } else {
           d[i] = Math.min(Math.min(d[i-1]+1, p[i]+1),  p[i-1]);
-		}
+        }
         bestPossibleEditDistance = Math.min(bestPossibleEditDistance, d[i]);
       }
 
-      //After calculating row i, the best possible edit distance
-      //can be found by found by finding the smallest value in a given column.
-      //If the bestPossibleEditDistance is greater than the max distance, abort.
-
-      if (j > maxDistance && bestPossibleEditDistance > maxDistance) {  //equal is okay, but not greater
-        //the closest the target can be to the text is just too far away.
-        //this target is leaving the party early.
-        return 0.0f;
+      rowMins[j+1] = bestPossibleEditDistance;
+      rowsUpto = j+1;
+      if (bestPossibleEditDistance > maxPrefixDistance) {
+        return j+1;
       }
-
-      // copy current distance counts to 'previous row' distance counts: swap p and d
-      int _d[] = p;
-      p = d;
-      d = _d;
     }
-
-    // our last action in the above loop was to switch d and p, so p now
-    // actually has the most recent cost counts
-
-    // this will return less than 0.0 when the edit distance is
-    // greater than the number of characters in the shorter word.
-    // but this was the formula that was previously used in FuzzyTermEnum,
-    // so it has not been changed (even though minimumSimilarity must be
-    // greater than 0.0)
-    return 1.0f - ((float)p[n] / (float) (prefix.length() + Math.min(n, m)));
+    return -1;
   }
 
   /**
@@ -276,7 +367,8 @@ public final class FuzzyTermEnum extends FilteredTermEnum {
   /** {@inheritDoc} */
   @Override
   public void close() throws IOException {
-    p = d = null;
+    rows = null;
+    rowMins = null;
     searchTerm = null;
     super.close();  //call super.close() and let the garbage collector do its work.
   }
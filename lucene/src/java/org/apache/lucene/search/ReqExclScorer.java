@@ -57,6 +57,20 @@ class ReqExclScorer extends Scorer {
     return doc = toNonExcluded();
   }
   
+  @Override
+  public float maxScore() throws IOException {
+    // no more documents once reqScorer is exhausted
+    return reqScorer == null ? 0.0f : reqScorer.maxScore();
+  }
+
+  @Override
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+    if (reqScorer != null) {
+      // excluding documents does not change the scores
+      reqScorer.setMinCompetitiveScore(minScore);
+    }
+  }
+
   /** Advance to non excluded doc.
    * <br>On entry:
    * <ul>
@@ -80,5 +80,12 @@ class ReqOptSumScorer extends Scorer {
     return optScorerDoc == curDoc ? reqScore + optScorer.score() : reqScore;
   }
 
+  @Override
+  public float maxScore() throws IOException {
+    final float reqMaxScore = reqScorer.maxScore();
+    // a document need not match the optional scorer, whose bound may be negative
+    return optScorer == null ? reqMaxScore : reqMaxScore + Math.max(0.0f, optScorer.maxScore());
+  }
+
 }
 
@@ -63,6 +63,16 @@ public class ScoreCachingWrappingScorer extends Scorer {
     return curScore;
   }
 
+  @Override
+  public float maxScore() throws IOException {
+    return scorer.maxScore();
+  }
+
+  @Override
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+    scorer.setMinCompetitiveScore(minScore);
+  }
+
   @Override
   public int docID() {
     return scorer.docID();
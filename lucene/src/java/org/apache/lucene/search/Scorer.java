@@ -138,6 +138,31 @@ public abstract class Scorer extends DocIdSetIterator {
     throw new UnsupportedOperationException(this + " does not implement freq()");
   }
 
+  /** Returns an upper bound of the score of any document
+   *  this scorer may match, or {@link Float#POSITIVE_INFINITY}
+   *  if it is not known.  Scorers that skip the documents
+   *  that cannot compete, see {@link
+   *  #setMinCompetitiveScore(float)}, rely on the bounds of
+   *  their sub scorers.
+   *
+   * @lucene.experimental */
+  public float maxScore() throws IOException {
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /** Called by collectors that only keep the documents that
+   *  score more than <code>minScore</code>, such as the
+   *  {@link TopScoreDocCollector} that does not count all hits.
+   *  The scorer may then skip the documents that cannot score
+   *  more.  The minimum score only increases, and is
+   *  typically set while the current document is collected.
+   *
+   *  <p>This implementation does nothing.
+   *
+   * @lucene.experimental */
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+  }
+
   /**
    * A callback to gather information from a scorer and its sub-scorers. Each
    * the top-level scorer as well as each of its sub-scorers are passed to
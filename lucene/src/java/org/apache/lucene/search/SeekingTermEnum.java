@@ -0,0 +1,152 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+
+/**
+ * Subclass of FilteredTermEnum for enums that can tell from the first
+ * chars of a term that no term starting with them matches, like the
+ * enums of {@link FuzzyQuery} and {@link WildcardQuery}.
+ * {@link #termCompare} then calls {@link #seekPast} or {@link #seekTo},
+ * and {@link #next} moves the underlying enum directly to the next
+ * term that may match instead of enumerating all terms in between.
+ * <p>
+ * All terms of the enumeration are in one field and start with a
+ * given prefix; {@link #termCompare} must end the enumeration at the
+ * first term that does not.
+ * <p>
+ * Term enumerations are always ordered by Term.compareTo().  Each term in
+ * the enumeration is greater than all that precede it.
+ * @lucene.experimental
+ */
+public abstract class SeekingTermEnum extends FilteredTermEnum {
+
+  /* Number of terms that next() steps over to get to a
+   * seek target before it seeks instead; a seek costs about
+   * as much as scanning half a terms index interval in each
+   * segment.
+   */
+  private static final int MAX_SCAN_BEFORE_SEEK = 32;
+
+  private final IndexReader reader;
+  private final String field;
+  private final String prefix;
+
+  /* If not null, the next term to enumerate is the first
+   * one not smaller than this text */
+  private String seekText;
+
+  /**
+   * @param reader delivers the terms
+   * @param field the field of all terms, must be interned
+   * @param prefix the prefix of all terms
+   */
+  protected SeekingTermEnum(IndexReader reader, String field, String prefix) {
+    this.reader = reader;
+    this.field = field;
+    this.prefix = prefix;
+  }
+
+  /**
+   * Positions the enum on the first term of the field starting with
+   * the prefix that matches.
+   */
+  protected void initEnum() throws IOException {
+    setEnum(reader.terms(new Term(field, prefix)));
+  }
+
+  /**
+   * Makes {@link #next} continue after all terms that start with the
+   * first <code>length</code> chars of <code>text</code>, which must
+   * be longer than the prefix.
+   * @return false if no more terms start with the prefix, so the
+   * enumeration should end
+   */
+  protected final boolean seekPast(String text, int length) {
+    assert length > prefix.length();
+    // the smallest text after these chars: increment the
+    // last one that can be
+    int upto = length;
+    while (upto > prefix.length() && text.charAt(upto-1) == Character.MAX_VALUE) {
+      upto--;
+    }
+    if (upto == prefix.length()) {
+      return false;
+    }
+    seekTo(text.substring(0, upto-1) + (char) (text.charAt(upto-1) + 1));
+    return true;
+  }
+
+  /**
+   * Makes {@link #next} continue with the first term not smaller
+   * than <code>text</code>, which must be greater than the current
+   * term and start with the prefix.
+   */
+  protected final void seekTo(String text) {
+    assert text.startsWith(prefix);
+    seekText = text;
+  }
+
+  /** Increments the enumeration to the next element, seeking
+   *  past terms that cannot match.  True if one exists. */
+  @Override
+  public boolean next() throws IOException {
+    if (actualEnum == null) return false; // the actual enumerator is not initialized!
+    currentTerm = null;
+    while (!endEnum()) {
+      final Term term;
+      if (seekText != null) {
+        term = seek();
+      } else {
+        term = actualEnum.next() ? actualEnum.term() : null;
+      }
+      if (term == null) {
+        return false;
+      }
+      if (termCompare(term)) {
+        currentTerm = term;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the first term not smaller than {@link #seekText},
+   *  by stepping over a few terms or else seeking, or null if
+   *  there is none. */
+  private Term seek() throws IOException {
+    final String target = seekText;
+    seekText = null;
+    for (int i = 0; i < MAX_SCAN_BEFORE_SEEK; i++) {
+      if (!actualEnum.next()) {
+        return null;
+      }
+      final Term term = actualEnum.term();
+      if (term.field() != field || term.text().compareTo(target) >= 0) {
+        return term;
+      }
+    }
+    actualEnum.close();
+    actualEnum = reader.terms(new Term(field, target));
+    return actualEnum.term();
+  }
+}
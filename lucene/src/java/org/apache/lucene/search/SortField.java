@@ -82,6 +82,14 @@ implements Serializable {
    * This is typically slower than {@link #STRING}, which
    * uses ordinals to do the sorting. */
   public static final int STRING_VAL = 11;
+
+  /** Sort using term values as Strings, exactly like
+   * {@link #STRING}, but using the compact, bit-packed
+   * {@link FieldCache#getTermsIndex} instead of {@link
+   * FieldCache#getStringIndex}.  This needs far less heap
+   * for fields with many unique terms.
+   * @lucene.experimental */
+  public static final int STRING_PACKED = 12;
   
   // IMPLEMENTATION NOTE: the FieldCache.STRING_INDEX is in the same "namespace"
   // as the above static int values.  Any new values must not have the same value
@@ -293,6 +301,10 @@ implements Serializable {
         buffer.append("<string_val: \"").append(field).append("\">");
         break;
 
+      case STRING_PACKED:
+        buffer.append("<string_packed: \"").append(field).append("\">");
+        break;
+
       case BYTE:
         buffer.append("<byte: \"").append(field).append("\">");
         break;
@@ -429,6 +441,9 @@ implements Serializable {
 
     case SortField.STRING_VAL:
       return new FieldComparator.StringValComparator(numHits, field);
+
+    case SortField.STRING_PACKED:
+      return new FieldComparator.TermOrdValComparator(numHits, field, sortPos, reverse);
         
     default:
       throw new IllegalStateException("Illegal sort type: " + type);
@@ -31,7 +31,10 @@ abstract class TermCollectingRewrite<Q extends Query> extends MultiTermQuery.Rew
   protected abstract void addClause(Q topLevel, Term term, float boost) throws IOException;
   
   protected final void collectTerms(IndexReader reader, MultiTermQuery query, TermCollector collector) throws IOException {
-    final FilteredTermEnum enumerator = query.getEnum(reader);
+    collectTerms(query.getEnum(reader), collector);
+  }
+  
+  protected final void collectTerms(FilteredTermEnum enumerator, TermCollector collector) throws IOException {
     try {
       do {
         final Term t = enumerator.term();
@@ -103,7 +103,7 @@ public class TermQuery extends Query {
       if (termDocs == null)
         return null;
 
-      return new TermScorer(this, termDocs, similarity, reader.norms(term.field()));
+      return new TermScorer(this, termDocs, similarity, reader.norms(term.field()), reader, term);
     }
 
     @Override
@@ -19,6 +19,8 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 
 /** Expert: A <code>Scorer</code> for documents matching a <code>Term</code>.
@@ -26,6 +28,8 @@ import org.apache.lucene.index.TermDocs;
 final class TermScorer extends Scorer {
   private TermDocs termDocs;
   private byte[] norms;
+  private final IndexReader reader;
+  private final Term term;
   private float weightValue;
   private int doc = -1;
   private int freq;
@@ -50,12 +54,18 @@ final class TermScorer extends Scorer {
    *          computations.
    * @param norms
    *          The field norms of the document fields for the <code>Term</code>.
+   * @param reader
+   *          The reader of <code>td</code>, that bounds the scores.
+   * @param term
+   *          The <code>Term</code>.
    */
-  TermScorer(Weight weight, TermDocs td, Similarity similarity, byte[] norms) {
+  TermScorer(Weight weight, TermDocs td, Similarity similarity, byte[] norms, IndexReader reader, Term term) {
     super(similarity, weight);
     
     this.termDocs = td;
     this.norms = norms;
+    this.reader = reader;
+    this.term = term;
     this.weightValue = weight.getValue();
 
     for (int i = 0; i < SCORE_CACHE_SIZE; i++)
@@ -133,6 +143,22 @@ final class TermScorer extends Scorer {
     return norms == null ? raw : raw * getSimilarity().decodeNormValue(norms[doc]); // normalize for field
   }
 
+  /** Returns the score of the largest frequency of the term
+   *  in the reader, normalized by the largest norm of the
+   *  field, assuming that tf does not decrease with the
+   *  frequency. */
+  @Override
+  public float maxScore() throws IOException {
+    final int maxFreq = reader.maxTermFreq(term);
+    if (maxFreq == -1 || weightValue < 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final float raw = maxFreq < SCORE_CACHE_SIZE
+      ? scoreCache[maxFreq]
+      : getSimilarity().tf(maxFreq)*weightValue;
+    return norms == null ? raw : raw * reader.maxNormValue(term.field(), getSimilarity());
+  }
+
   /**
    * Advances to the first match beyond the current whose document number is
    * greater than or equal to a given target. <br>
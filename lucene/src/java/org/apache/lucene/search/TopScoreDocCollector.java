@@ -68,6 +68,52 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     }
   }
 
+  // Assumes docs are scored in order, and passes the score
+  // of the last hit of the full queue to the scorer, so that
+  // it can skip the docs that cannot compete.
+  private static class PruningTopScoreDocCollector extends TopScoreDocCollector {
+    private PruningTopScoreDocCollector(int numHits) {
+      super(numHits);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      float score = scorer.score();
+
+      // This collector cannot handle these scores:
+      assert score != Float.NEGATIVE_INFINITY;
+      assert !Float.isNaN(score);
+
+      totalHits++;
+      if (score <= pqTop.score) {
+        // Same as InOrderTopScoreDocCollector
+        return;
+      }
+      pqTop.doc = doc + docBase;
+      pqTop.score = score;
+      pqTop = pq.updateTop();
+      setMinCompetitiveScore();
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+      super.setScorer(scorer);
+      setMinCompetitiveScore();
+    }
+
+    private void setMinCompetitiveScore() throws IOException {
+      // the queue is full once its top is not a sentinel
+      if (pqTop.score != Float.NEGATIVE_INFINITY) {
+        scorer.setMinCompetitiveScore(pqTop.score);
+      }
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+      return false;
+    }
+  }
+
   // Assumes docs are scored out of order.
   private static class OutOfOrderTopScoreDocCollector extends TopScoreDocCollector {
     private OutOfOrderTopScoreDocCollector(int numHits) {
@@ -125,6 +171,37 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     }
     
   }
+
+  /**
+   * Creates a new {@link TopScoreDocCollector} given the number of hits to
+   * collect, whether documents are scored in order by the input
+   * {@link Scorer} to {@link #setScorer(Scorer)}, and whether all hits must be
+   * counted.
+   *
+   * <p>If <code>trackTotalHits</code> is false, the collector accepts
+   * documents in order only, and passes the score of its last hit to
+   * {@link Scorer#setMinCompetitiveScore(float)} once it collected
+   * <code>numHits</code> hits, so that scorers such as the ones of
+   * disjunctive {@link BooleanQuery}s skip the documents that cannot compete.
+   * The top hits are the same, but {@link #getTotalHits()} is then only a
+   * lower bound of the number of matches.
+   *
+   * <p><b>NOTE</b>: The instances returned by this method
+   * pre-allocate a full array of length
+   * <code>numHits</code>, and fill the array with sentinel
+   * objects.
+   *
+   * @lucene.experimental
+   */
+  public static TopScoreDocCollector create(int numHits, boolean docsScoredInOrder, boolean trackTotalHits) {
+    if (trackTotalHits) {
+      return create(numHits, docsScoredInOrder);
+    }
+    if (numHits <= 0) {
+      throw new IllegalArgumentException("numHits must be > 0; please use TotalHitCountCollector if you just need the total hit count");
+    }
+    return new PruningTopScoreDocCollector(numHits);
+  }
   
   ScoreDoc pqTop;
   int docBase = 0;
@@ -55,7 +55,8 @@ public abstract class TopTermsRewrite<Q extends Query> extends TermCollectingRew
   public Q rewrite(final IndexReader reader, final MultiTermQuery query) throws IOException {
     final int maxSize = Math.min(size, getMaxSize());
     final PriorityQueue<ScoreTerm> stQueue = new PriorityQueue<ScoreTerm>();
-    collectTerms(reader, query, new TermCollector() {
+    final FilteredTermEnum enumerator = query.getEnum(reader);
+    collectTerms(enumerator, new TermCollector() {
       public boolean collect(Term t, float boost) {
         // ignore uncompetitive hits
         if (stQueue.size() >= maxSize && boost <= stQueue.peek().boost)
@@ -66,6 +67,9 @@ public abstract class TopTermsRewrite<Q extends Query> extends TermCollectingRew
         stQueue.offer(st);
         // possibly drop entries from queue
         st = (stQueue.size() > maxSize) ? stQueue.poll() : new ScoreTerm();
+        // let the enum skip terms that cannot get in anymore
+        if (stQueue.size() >= maxSize)
+          enumerator.setMaxNonCompetitiveDifference(stQueue.peek().boost);
         return true;
       }
       
@@ -25,10 +25,11 @@ import java.io.IOException;
 
 /** Implements the wildcard search query. Supported wildcards are <code>*</code>, which
  * matches any character sequence (including the empty one), and <code>?</code>,
- * which matches any single character. Note this query can be slow, as it
- * needs to iterate over many terms. In order to prevent extremely slow WildcardQueries,
- * a Wildcard term should not start with one of the wildcards <code>*</code> or
- * <code>?</code>.
+ * which matches any single character. Terms are enumerated with a
+ * {@link WildcardTermEnum}, which skips the terms that the pattern cannot
+ * match, but a pattern starting with <code>*</code> still needs to iterate
+ * over all terms of the field. In order to prevent extremely slow
+ * WildcardQueries, a Wildcard term should not start with <code>*</code>.
  * 
  * <p>This query uses the {@link
  * MultiTermQuery#CONSTANT_SCORE_AUTO_REWRITE_DEFAULT}
@@ -18,18 +18,31 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
 
 /**
  * Subclass of FilteredTermEnum for enumerating all terms that match the
  * specified wildcard filter term.
  * <p>
+ * The pattern after the literal prefix is run as a nondeterministic
+ * automaton, whose states are the pattern positions the chars of a
+ * term can have reached.  The states computed for a term are kept, so
+ * a term only steps through the chars after those it shares with the
+ * previous term.  When no state is left after some chars of a term,
+ * the enum seeks directly to the smallest following text that the
+ * pattern can still match, so only parts of the field that can match
+ * are enumerated.  Patterns starting with <code>*</code> still visit
+ * every term of the field.
+ * <p>
  * Term enumerations are always ordered by Term.compareTo().  Each term in
  * the enumeration is greater than all that precede it.
  */
-public class WildcardTermEnum extends FilteredTermEnum {
+public class WildcardTermEnum extends SeekingTermEnum {
   final Term searchTerm;
   final String field;
   final String text;
@@ -37,6 +50,15 @@ public class WildcardTermEnum extends FilteredTermEnum {
   final int preLen;
   boolean endEnum = false;
 
+  /* the pattern after pre: state p means pattern[0..p) was
+   * matched, and state pattern.length accepts */
+  private final char[] pattern;
+  /* states[j] holds the states after the first j chars
+   * after pre of lastText, as bits; 0..statesUpto are valid */
+  private long[][] states;
+  private int statesUpto;
+  private String lastText;
+
   /**
    * Creates a new <code>WildcardTermEnum</code>.
    * <p>
@@ -44,11 +66,25 @@ public class WildcardTermEnum extends FilteredTermEnum {
    * valid term if such a term exists.
    */
   public WildcardTermEnum(IndexReader reader, Term term) throws IOException {
-    super();
+    super(reader, term.field(), literalPrefix(term.text()));
     searchTerm = term;
     field = searchTerm.field();
     final String searchTermText = searchTerm.text();
 
+    pre = literalPrefix(searchTermText);
+    preLen = pre.length();
+    text = searchTermText.substring(preLen);
+
+    pattern = text.toCharArray();
+    states = new long[1][(pattern.length >>> 6) + 1];
+    set(states[0], 0);
+    closure(states[0]);
+
+    initEnum();
+  }
+
+  /** Returns the text before the first wildcard. */
+  private static String literalPrefix(String searchTermText) {
     final int sidx = searchTermText.indexOf(WILDCARD_STRING);
     final int cidx = searchTermText.indexOf(WILDCARD_CHAR);
     int idx = sidx;
@@ -58,11 +94,7 @@ public class WildcardTermEnum extends FilteredTermEnum {
     else if (cidx >= 0) {
       idx = Math.min(idx, cidx);
     }
-    pre = idx != -1?searchTerm.text().substring(0,idx): "";
-
-    preLen = pre.length();
-    text = searchTermText.substring(preLen);
-    setEnum(reader.terms(new Term(searchTerm.field(), pre)));
+    return idx != -1 ? searchTermText.substring(0,idx) : "";
   }
 
   @Override
@@ -70,7 +102,14 @@ public class WildcardTermEnum extends FilteredTermEnum {
     if (field == term.field()) {
       String searchText = term.text();
       if (searchText.startsWith(pre)) {
-        return wildcardEquals(text, 0, searchText, preLen);
+        final int deadLength = computeStates(searchText);
+        if (deadLength == -1) {
+          return get(states[searchText.length() - preLen], pattern.length);
+        }
+        if (!seekToNextMatch(searchText, deadLength)) {
+          endEnum = true;
+        }
+        return false;
       }
     }
     endEnum = true;
@@ -87,6 +126,118 @@ public class WildcardTermEnum extends FilteredTermEnum {
     return endEnum;
   }
 
+  /**
+   * Computes the states for the chars after the prefix of
+   * <code>searchText</code>, reusing those of the chars it shares
+   * with the last term.
+   * @return -1, or the number of chars after the prefix that
+   * leave no state
+   */
+  private int computeStates(String searchText) {
+    final int m = searchText.length() - preLen;
+    int j = 0;
+    final int limit = Math.min(statesUpto, m);
+    while (j < limit && searchText.charAt(preLen+j) == lastText.charAt(preLen+j)) {
+      j++;
+    }
+    lastText = searchText;
+    statesUpto = j;
+
+    if (m >= states.length) {
+      final long[][] newStates = new long[ArrayUtil.oversize(m+1, RamUsageEstimator.NUM_BYTES_OBJECT_REF)][];
+      System.arraycopy(states, 0, newStates, 0, states.length);
+      for (int k = states.length; k < newStates.length; ++k) {
+        newStates[k] = new long[states[0].length];
+      }
+      states = newStates;
+    }
+
+    for (; j < m; ++j) {
+      if (!step(states[j], searchText.charAt(preLen+j), states[j+1])) {
+        return j+1;
+      }
+      statesUpto = j+1;
+    }
+    return -1;
+  }
+
+  /**
+   * Makes the enum continue with the smallest text after
+   * <code>searchText</code> whose chars after the prefix leave some
+   * state, given that the first <code>deadLength</code> of them
+   * leave none.
+   * @return false if there is no such text
+   */
+  private boolean seekToNextMatch(String searchText, int deadLength) {
+    for (int j = deadLength; j > 0; --j) {
+      // try a larger char after the first j-1 chars
+      final int c = nextChar(states[j-1], searchText.charAt(preLen+j-1));
+      if (c != -1) {
+        seekTo(searchText.substring(0, preLen+j-1) + (char) c);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the smallest char greater than <code>c</code> that
+   *  leaves some state after the given ones, or -1. */
+  private int nextChar(long[] from, char c) {
+    int next = -1;
+    for (int p = 0; p < pattern.length; ++p) {
+      if (get(from, p)) {
+        final char ch = pattern[p];
+        if (ch == WILDCARD_STRING || ch == WILDCARD_CHAR) {
+          return c == Character.MAX_VALUE ? -1 : c + 1;
+        } else if (ch > c && (next == -1 || ch < next)) {
+          next = ch;
+        }
+      }
+    }
+    return next;
+  }
+
+  /** Computes the states after char <code>c</code> and returns
+   *  false if there are none. */
+  private boolean step(long[] from, char c, long[] to) {
+    Arrays.fill(to, 0L);
+    for (int p = 0; p < pattern.length; ++p) {
+      if (get(from, p)) {
+        final char ch = pattern[p];
+        if (ch == WILDCARD_STRING) {
+          set(to, p);
+        } else if (ch == WILDCARD_CHAR || ch == c) {
+          set(to, p+1);
+        }
+      }
+    }
+    closure(to);
+    for (int i = 0; i < to.length; ++i) {
+      if (to[i] != 0L) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Adds the states reached by matching nothing with a
+   *  <code>*</code>. */
+  private void closure(long[] to) {
+    for (int p = 0; p < pattern.length; ++p) {
+      if (pattern[p] == WILDCARD_STRING && get(to, p)) {
+        set(to, p+1);
+      }
+    }
+  }
+
+  private static boolean get(long[] bits, int index) {
+    return (bits[index >>> 6] & (1L << index)) != 0;
+  }
+
+  private static void set(long[] bits, int index) {
+    bits[index >>> 6] |= 1L << index;
+  }
+
   /********************************************
    * String equality with support for wildcards
    ********************************************/
@@ -25,6 +25,11 @@ public abstract class BufferedIndexInput extends IndexInput {
   /** Default buffer size */
   public static final int BUFFER_SIZE = 1024;
 
+  /** Buffer size IndexWriter uses to read the segments it
+   *  merges; a Directory may take it as a hint that the
+   *  file will be read sequentially. */
+  public static final int MERGE_BUFFER_SIZE = 4096;
+
   private int bufferSize = BUFFER_SIZE;
   
   protected byte[] buffer;
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedChannelException; // javadoc
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -213,12 +214,25 @@ public class MMapDirectory extends FSDirectory {
     File f = new File(getDirectory(), name);
     RandomAccessFile raf = new RandomAccessFile(f, "r");
     try {
-      return new MMapIndexInput(raf, chunkSizePower);
+      return new MMapIndexInput(name, raf, bufferSize, chunkSizePower);
     } finally {
       raf.close();
     }
   }
 
+  /**
+   * Expert: called for each chunk of a file right after it
+   * was mapped, for example to give the OS a hint about how
+   * it will be accessed or to {@link MappedByteBuffer#load
+   * load} it into RAM.  <code>bufferSize</code> is the one
+   * passed to {@link #openInput(String,int)}; IndexWriter
+   * reads the segments it merges with {@link
+   * BufferedIndexInput#MERGE_BUFFER_SIZE}.  The default
+   * implementation does nothing.
+   */
+  protected void prepareMapping(String name, int bufferSize, MappedByteBuffer buffer) throws IOException {
+  }
+
   // Because Java's ByteBuffer uses an int to address the
   // values, it's necessary to access a file >
   // Integer.MAX_VALUE in size using multiple byte buffers.
@@ -235,7 +249,7 @@ public class MMapDirectory extends FSDirectory {
   
     private boolean isClone = false;
     
-    MMapIndexInput(RandomAccessFile raf, int chunkSizePower) throws IOException {
+    MMapIndexInput(String name, RandomAccessFile raf, int bufferSize, int chunkSizePower) throws IOException {
       this.length = raf.length();
       this.chunkSizePower = chunkSizePower;
       this.chunkSize = 1L << chunkSizePower;
@@ -261,7 +275,11 @@ public class MMapDirectory extends FSDirectory {
           ? chunkSize
           : (length - bufferStart)
         );
-        this.buffers[bufNr] = rafc.map(MapMode.READ_ONLY, bufferStart, bufSize);
+        final MappedByteBuffer buffer = rafc.map(MapMode.READ_ONLY, bufferStart, bufSize);
+        this.buffers[bufNr] = buffer;
+        if (bufSize > 0) {
+          prepareMapping(name, bufferSize, buffer);
+        }
         bufferStart += bufSize;
       }
       seek(0L);
@@ -321,6 +339,38 @@ public class MMapDirectory extends FSDirectory {
         return super.readLong();
       }
     }
+
+    @Override
+    public int readVInt() throws IOException {
+      // read from the buffer directly unless the vInt may
+      // cross into the next one:
+      if (5 <= curBuf.remaining()) {
+        byte b = curBuf.get();
+        int i = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+          b = curBuf.get();
+          i |= (b & 0x7F) << shift;
+        }
+        return i;
+      } else {
+        return super.readVInt();
+      }
+    }
+
+    @Override
+    public long readVLong() throws IOException {
+      if (9 <= curBuf.remaining()) {
+        byte b = curBuf.get();
+        long i = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+          b = curBuf.get();
+          i |= (b & 0x7FL) << shift;
+        }
+        return i;
+      } else {
+        return super.readVLong();
+      }
+    }
     
     @Override
     public long getFilePointer() {
@@ -0,0 +1,213 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Expert: A Directory that delegates to another one, and
+ * limits the rate at which the files it creates are written
+ * with a {@link RateLimiter}.  Reads are not limited.
+ *
+ * <p>Used by {@link org.apache.lucene.index.ConcurrentMergeScheduler}
+ * to throttle merges.</p>
+ *
+ * @lucene.experimental
+ */
+
+public class RateLimitedDirectoryWrapper extends Directory {
+
+  /** Writes are passed to the RateLimiter in chunks of at least this many bytes */
+  static final int MIN_PAUSE_CHECK_BYTES = 8192;
+
+  private final Directory delegate;
+  private final RateLimiter rateLimiter;
+
+  public RateLimitedDirectoryWrapper(Directory delegate, RateLimiter rateLimiter) {
+    this.delegate = delegate;
+    this.rateLimiter = rateLimiter;
+    this.lockFactory = delegate.getLockFactory();
+  }
+
+  /** Returns the wrapped Directory */
+  public Directory getDelegate() {
+    return delegate;
+  }
+
+  public RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  @Override
+  public String[] listAll() throws IOException {
+    return delegate.listAll();
+  }
+
+  @Override
+  public boolean fileExists(String name) throws IOException {
+    return delegate.fileExists(name);
+  }
+
+  /** @deprecated */
+  @Deprecated
+  @Override
+  public long fileModified(String name) throws IOException {
+    return delegate.fileModified(name);
+  }
+
+  /** @deprecated */
+  @Deprecated
+  @Override
+  public void touchFile(String name) throws IOException {
+    delegate.touchFile(name);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    delegate.deleteFile(name);
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    return delegate.fileLength(name);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name) throws IOException {
+    return new RateLimitedIndexOutput(delegate.createOutput(name));
+  }
+
+  /** @deprecated */
+  @Deprecated
+  @Override
+  public void sync(String name) throws IOException {
+    delegate.sync(name);
+  }
+
+  @Override
+  public void sync(Collection<String> names) throws IOException {
+    delegate.sync(names);
+  }
+
+  @Override
+  public IndexInput openInput(String name) throws IOException {
+    return delegate.openInput(name);
+  }
+
+  @Override
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    return delegate.openInput(name, bufferSize);
+  }
+
+  @Override
+  public Lock makeLock(String name) {
+    return delegate.makeLock(name);
+  }
+
+  @Override
+  public void clearLock(String name) throws IOException {
+    delegate.clearLock(name);
+  }
+
+  @Override
+  public void setLockFactory(LockFactory lockFactory) throws IOException {
+    delegate.setLockFactory(lockFactory);
+    this.lockFactory = lockFactory;
+  }
+
+  @Override
+  public String getLockID() {
+    return delegate.getLockID();
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+
+  @Override
+  public String toString() {
+    return "RateLimitedDirectoryWrapper(" + delegate.toString() + ")";
+  }
+
+  private final class RateLimitedIndexOutput extends IndexOutput {
+    private final IndexOutput out;
+    private int pendingBytes;
+
+    RateLimitedIndexOutput(IndexOutput out) {
+      this.out = out;
+    }
+
+    private void written(int bytes) {
+      pendingBytes += bytes;
+      if (pendingBytes >= MIN_PAUSE_CHECK_BYTES) {
+        rateLimiter.pause(pendingBytes);
+        pendingBytes = 0;
+      }
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+      out.writeByte(b);
+      written(1);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+      out.writeBytes(b, offset, length);
+      written(length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+      if (pendingBytes > 0) {
+        rateLimiter.pause(pendingBytes);
+        pendingBytes = 0;
+      }
+    }
+
+    @Override
+    public long getFilePointer() {
+      return out.getFilePointer();
+    }
+
+    /** @deprecated */
+    @Deprecated
+    @Override
+    public void seek(long pos) throws IOException {
+      out.seek(pos);
+    }
+
+    @Override
+    public long length() throws IOException {
+      return out.length();
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+      out.setLength(length);
+    }
+  }
+}
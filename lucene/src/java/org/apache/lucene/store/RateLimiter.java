@@ -0,0 +1,104 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/** Limits the rate at which any number of threads write
+ *  bytes, by making them sleep in {@link #pause}.  The limit
+ *  can be changed at any time.
+ *
+ *  @see RateLimitedDirectoryWrapper
+ *  @lucene.experimental */
+
+public class RateLimiter {
+
+  private volatile double mbPerSec;
+  private volatile double nsPerByte;
+
+  // the time by which all bytes paused for so far may be written
+  private long targetNS;
+
+  private final AtomicLong totalBytes = new AtomicLong();
+  private final AtomicLong totalPauseNS = new AtomicLong();
+
+  /** mbPerSec is the MB/sec rate limit; 0 or less means
+   *  unlimited. */
+  public RateLimiter(double mbPerSec) {
+    setMbPerSec(mbPerSec);
+  }
+
+  /** Sets the MB/sec rate limit; 0 or less means
+   *  unlimited. */
+  public void setMbPerSec(double mbPerSec) {
+    this.mbPerSec = mbPerSec;
+    nsPerByte = mbPerSec > 0 ? 1000000000.0 / (1024*1024*mbPerSec) : 0.0;
+  }
+
+  /** Returns the MB/sec rate limit. */
+  public double getMbPerSec() {
+    return mbPerSec;
+  }
+
+  /** Records that the calling thread wrote this many bytes,
+   *  and pauses it as long as needed to keep all threads at
+   *  or below the rate limit.  Returns the number of
+   *  nanoseconds paused. */
+  public long pause(long bytes) {
+    totalBytes.addAndGet(bytes);
+    final double nsPerByte = this.nsPerByte;
+    if (nsPerByte == 0.0) {
+      return 0;
+    }
+
+    final long startNS = System.nanoTime();
+    final long target;
+    synchronized(this) {
+      // don't let idle time build up credit for later bursts:
+      targetNS = Math.max(targetNS, startNS) + (long) (bytes * nsPerByte);
+      target = targetNS;
+    }
+
+    long curNS = startNS;
+    // loop because Thread.sleep may wake up early:
+    while (curNS < target) {
+      final long pauseNS = target - curNS;
+      try {
+        Thread.sleep(pauseNS / 1000000, (int) (pauseNS % 1000000));
+      } catch (InterruptedException ie) {
+        throw new ThreadInterruptedException(ie);
+      }
+      curNS = System.nanoTime();
+    }
+    final long pausedNS = curNS - startNS;
+    totalPauseNS.addAndGet(pausedNS);
+    return pausedNS;
+  }
+
+  /** Returns the number of bytes passed to {@link #pause}. */
+  public long getTotalBytes() {
+    return totalBytes.get();
+  }
+
+  /** Returns the number of nanoseconds threads were paused. */
+  public long getTotalPauseNS() {
+    return totalPauseNS.get();
+  }
+}
@@ -0,0 +1,185 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Represents a logical byte[] as a series of pages.  You
+ *  can write-once into the logical byte[] (append only),
+ *  using copy, and then retrieve slices (BytesRef) into it
+ *  using fill.
+ *
+ *  <p>Each value is written with a variable-length prefix
+ *  (1 to 3 bytes) holding its length, and never spans two
+ *  pages, so a value can always be returned as a BytesRef
+ *  pointing into a single page without copying.
+ *
+ * @lucene.internal
+ **/
+public final class PagedBytes {
+  private final List<byte[]> blocks = new ArrayList<byte[]>();
+  private final int blockSize;
+  private final int blockBits;
+  private final int blockMask;
+  private int upto;
+  private byte[] currentBlock;
+  private boolean frozen;
+
+  private static final byte[] EMPTY_BYTES = new byte[0];
+
+  /** Provides methods to read BytesRefs from a frozen
+   *  PagedBytes.
+   *
+   * @see #freeze */
+  public final static class Reader {
+    private final byte[][] blocks;
+    private final int blockBits;
+    private final int blockMask;
+    private final long ramBytesUsed;
+
+    Reader(PagedBytes pagedBytes) {
+      blocks = pagedBytes.blocks.toArray(new byte[pagedBytes.blocks.size()][]);
+      blockBits = pagedBytes.blockBits;
+      blockMask = pagedBytes.blockMask;
+      long size = 0;
+      for (byte[] block : blocks) {
+        size += RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + block.length;
+      }
+      ramBytesUsed = size;
+    }
+
+    /** Reads the length-prefixed value written at the
+     *  provided pointer (as returned by {@link
+     *  PagedBytes#copyUsingLengthPrefix}) into the provided
+     *  BytesRef, which then points into the shared page;
+     *  its contents must not be modified.
+     *
+     * @return the provided BytesRef, for convenience */
+    public BytesRef fill(BytesRef b, long start) {
+      final int index = (int) (start >> blockBits);
+      int offset = (int) (start & blockMask);
+      final byte[] block = b.bytes = blocks[index];
+
+      int length = 0;
+      int shift = 0;
+      byte bt;
+      do {
+        bt = block[offset++];
+        length |= (bt & 0x7F) << shift;
+        shift += 7;
+      } while ((bt & 0x80) != 0);
+
+      b.offset = offset;
+      b.length = length;
+      return b;
+    }
+
+    /** Returns approximate heap memory, in bytes, used by
+     *  the pages */
+    public long ramBytesUsed() {
+      return ramBytesUsed;
+    }
+  }
+
+  /** 1&lt;&lt;blockBits must be bigger than the biggest
+   *  single value (plus its length prefix) you'll copy. */
+  public PagedBytes(int blockBits) {
+    if (blockBits < 1 || blockBits > 30) {
+      throw new IllegalArgumentException("blockBits must be 1..30 (got: " + blockBits + ")");
+    }
+    this.blockSize = 1 << blockBits;
+    this.blockBits = blockBits;
+    blockMask = blockSize-1;
+    upto = blockSize;
+  }
+
+  /** Copies the bytes of the provided BytesRef, preceded by
+   *  their length, and returns the pointer to pass to {@link
+   *  Reader#fill} to retrieve them. */
+  public long copyUsingLengthPrefix(BytesRef bytes) {
+    if (frozen) {
+      throw new IllegalStateException("cannot copy after freeze");
+    }
+    final int prefixLength = vIntLength(bytes.length);
+    if (bytes.length + prefixLength > blockSize) {
+      throw new IllegalArgumentException("value of " + bytes.length + " bytes does not fit in a block of " + blockSize + " bytes");
+    }
+
+    if (upto + bytes.length + prefixLength > blockSize) {
+      if (currentBlock != null) {
+        blocks.add(currentBlock);
+      }
+      currentBlock = new byte[blockSize];
+      upto = 0;
+    }
+
+    final long pointer = getPointer();
+
+    int length = bytes.length;
+    while ((length & ~0x7F) != 0) {
+      currentBlock[upto++] = (byte) ((length & 0x7F) | 0x80);
+      length >>>= 7;
+    }
+    currentBlock[upto++] = (byte) length;
+
+    System.arraycopy(bytes.bytes, bytes.offset, currentBlock, upto, bytes.length);
+    upto += bytes.length;
+
+    return pointer;
+  }
+
+  /** Commits the final byte[], trimming it if necessary
+   *  and if trim=true; no more values can be copied
+   *  afterwards. */
+  public Reader freeze(boolean trim) {
+    if (frozen) {
+      throw new IllegalStateException("already frozen");
+    }
+    if (currentBlock == null) {
+      currentBlock = EMPTY_BYTES;
+    } else if (trim && upto < blockSize) {
+      final byte[] newBlock = new byte[upto];
+      System.arraycopy(currentBlock, 0, newBlock, 0, upto);
+      currentBlock = newBlock;
+    }
+    blocks.add(currentBlock);
+    frozen = true;
+    currentBlock = null;
+    return new Reader(this);
+  }
+
+  /** Returns the pointer at which the next value will be
+   *  written, if it fits in the current page. */
+  public long getPointer() {
+    if (currentBlock == null) {
+      return 0;
+    } else {
+      return ((long) blocks.size() << blockBits) + upto;
+    }
+  }
+
+  private static int vIntLength(int i) {
+    int length = 1;
+    while ((i & ~0x7F) != 0) {
+      length++;
+      i >>>= 7;
+    }
+    return length;
+  }
+}
@@ -0,0 +1,84 @@
+package org.apache.lucene.util.packed;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Implements {@link PackedInts.Mutable}, but grows the
+ * bit count of the underlying packed ints on-demand.
+ *
+ * <p>Use this when the maximum value is not known up
+ * front; once all values are set, {@link #getMutable}
+ * returns the tightest packed array that holds them.
+ *
+ * @lucene.internal
+ */
+public class GrowableWriter implements PackedInts.Mutable {
+
+  private long currentMaxValue;
+  private PackedInts.Mutable current;
+
+  public GrowableWriter(int startBitsPerValue, int valueCount) {
+    current = PackedInts.getMutable(valueCount, startBitsPerValue);
+    currentMaxValue = PackedInts.maxValue(current.getBitsPerValue());
+  }
+
+  public long get(int index) {
+    return current.get(index);
+  }
+
+  public int size() {
+    return current.size();
+  }
+
+  public int getBitsPerValue() {
+    return current.getBitsPerValue();
+  }
+
+  public long ramBytesUsed() {
+    return current.ramBytesUsed();
+  }
+
+  public PackedInts.Mutable getMutable() {
+    return current;
+  }
+
+  public void set(int index, long value) {
+    if (value > currentMaxValue) {
+      final int bpv = PackedInts.bitsRequired(value);
+      currentMaxValue = PackedInts.maxValue(bpv);
+      final int valueCount = size();
+      final PackedInts.Mutable next = PackedInts.getMutable(valueCount, bpv);
+      PackedInts.copy(current, next, valueCount);
+      current = next;
+    }
+    current.set(index, value);
+  }
+
+  public void clear() {
+    current.clear();
+  }
+
+  /** Returns a new GrowableWriter holding the first
+   *  {@code newSize} values of this one (or all of them,
+   *  padded with 0s, if {@code newSize} is larger). */
+  public GrowableWriter resize(int newSize) {
+    final GrowableWriter next = new GrowableWriter(getBitsPerValue(), newSize);
+    PackedInts.copy(current, next.current, Math.min(size(), newSize));
+    return next;
+  }
+}
@@ -0,0 +1,114 @@
+package org.apache.lucene.util.packed;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Space optimized random access capable array of values with a fixed number of
+ * bits. The maximum number of bits/value is 64.
+ * <p>
+ * Values are stored back to back in a long[], so a single
+ * value may span two adjacent longs.  Reading such a value
+ * costs two array lookups, but no space is wasted.
+ */
+class Packed64 extends PackedInts.ReaderImpl implements PackedInts.Mutable {
+  private static final int BLOCK_SIZE = 64; // 32 = int, 64 = long
+  private static final int BLOCK_BITS = 6; // The #bits representing BLOCK_SIZE
+  private static final int MOD_MASK = BLOCK_SIZE - 1; // x % BLOCK_SIZE
+
+  /* The bits */
+  private final long[] blocks;
+
+  /* Mask for isolating a single value, right aligned. */
+  private final long maskRight;
+
+  /**
+   * Creates an array with the internal structures adjusted for the given
+   * limits and initialized to 0.
+   * @param valueCount   the number of elements.
+   * @param bitsPerValue the number of bits available for any given value.
+   */
+  public Packed64(int valueCount, int bitsPerValue) {
+    super(valueCount, bitsPerValue);
+    this.blocks = new long[size(valueCount, bitsPerValue)];
+    this.maskRight = bitsPerValue == 64 ? ~0L : ~(~0L << bitsPerValue);
+  }
+
+  private static int size(int valueCount, int bitsPerValue) {
+    final long totBitCount = (long) valueCount * bitsPerValue;
+    return (int) (totBitCount / BLOCK_SIZE + ((totBitCount % BLOCK_SIZE == 0) ? 0 : 1));
+  }
+
+  /**
+   * @param index the position of the value.
+   * @return the value at the given index.
+   */
+  public long get(final int index) {
+    assert index >= 0 && index < valueCount;
+    final long majorBitPos = (long) index * bitsPerValue;
+    final int elementPos = (int) (majorBitPos >>> BLOCK_BITS);
+    final int bitPos = (int) (majorBitPos & MOD_MASK);
+    final int endBits = bitPos + bitsPerValue;
+
+    if (endBits <= BLOCK_SIZE) {
+      // the value is contained in a single block
+      return (blocks[elementPos] >>> bitPos) & maskRight;
+    }
+    // the value spans two blocks: low bits come from the
+    // first block, high bits from the second
+    final int highBits = endBits - BLOCK_SIZE;
+    return ((blocks[elementPos] >>> bitPos)
+            | ((blocks[elementPos + 1] & ~(~0L << highBits)) << (BLOCK_SIZE - bitPos)))
+           & maskRight;
+  }
+
+  public void set(final int index, final long value) {
+    assert index >= 0 && index < valueCount;
+    assert (value & ~maskRight) == 0 : "value " + value + " does not fit in " + bitsPerValue + " bits";
+    final long majorBitPos = (long) index * bitsPerValue;
+    final int elementPos = (int) (majorBitPos >>> BLOCK_BITS);
+    final int bitPos = (int) (majorBitPos & MOD_MASK);
+    final int endBits = bitPos + bitsPerValue;
+
+    blocks[elementPos] = (blocks[elementPos] & ~(maskRight << bitPos)) | (value << bitPos);
+    if (endBits > BLOCK_SIZE) {
+      final int highBits = endBits - BLOCK_SIZE;
+      final long highMask = ~(~0L << highBits);
+      blocks[elementPos + 1] = (blocks[elementPos + 1] & ~highMask)
+                               | ((value >>> (BLOCK_SIZE - bitPos)) & highMask);
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(blocks, 0L);
+  }
+
+  public long ramBytesUsed() {
+    return RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+      + (long) blocks.length * RamUsageEstimator.NUM_BYTES_LONG;
+  }
+
+  @Override
+  public String toString() {
+    return "Packed64(bitsPerValue=" + bitsPerValue + ", size="
+            + size() + ", elements.length=" + blocks.length + ")";
+  }
+}
@@ -714,6 +714,7 @@ public class TestBackwardsCompatibility extends LuceneTestCase {
     }
     for (SegmentInfo si : infos) {
       assertEquals(Constants.LUCENE_MAIN_VERSION, si.getVersion());
+      assertTrue(si.getHasTermsIndexFST());
     }
     return infos.size();
   }
@@ -0,0 +1,256 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestBlockPostings extends LuceneTestCase {
+
+  private static final IndexOptions[] OPTIONS = IndexOptions.values();
+  private static final int NUM_TERMS = 8;
+
+  private static String fieldName(boolean block, IndexOptions options) {
+    return (block ? "block_" : "plain_") + options.name();
+  }
+
+  private Document newDoc(int id) {
+    // term k is in every (k*k+1)th doc, some of them more than once
+    StringBuilder sb = new StringBuilder();
+    for (int k = 0; k < NUM_TERMS; k++) {
+      if (id % (k*k+1) == 0) {
+        final int freq = 1 + (id / (k+1)) % (k+3);
+        for (int j = 0; j < freq; j++) {
+          sb.append(" t").append(k);
+        }
+        if (random.nextInt(5) == 0) {
+          sb.append(" x").append(random.nextInt(100));
+        }
+      }
+    }
+    final String text = sb.toString();
+
+    Document doc = new Document();
+    doc.add(newField("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    for (IndexOptions options : OPTIONS) {
+      for (int i = 0; i < 2; i++) {
+        Field f = newField(fieldName(i == 0, options), text, Field.Store.NO, Field.Index.ANALYZED);
+        f.setIndexOptions(options);
+        doc.add(f);
+      }
+    }
+    return doc;
+  }
+
+  private IndexWriterConfig newConfig(Set<String> blockFields) {
+    return newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random, MockTokenizer.WHITESPACE, false))
+      .setBlockPostingsFields(blockFields);
+  }
+
+  private static Set<String> blockFields() {
+    Set<String> fields = new HashSet<String>();
+    for (IndexOptions options : OPTIONS) {
+      fields.add(fieldName(true, options));
+    }
+    return fields;
+  }
+
+  public void testSameAsVIntPostings() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newConfig(blockFields()));
+    final int numDocs = atLeast(2000);
+    for (int i = 0; i < numDocs; i++) {
+      w.addDocument(newDoc(i));
+      if (random.nextInt(10) == 0) {
+        w.deleteDocuments(new Term("id", Integer.toString(random.nextInt(i+1))));
+      }
+    }
+    IndexReader r = IndexReader.open(w, true);
+    checkSegments(r, true);
+    checkPostings(r);
+    r.close();
+
+    w.optimize();
+    r = IndexReader.open(w, true);
+    assertEquals(1, r.getSequentialSubReaders().length);
+    checkSegments(r, true);
+    checkPostings(r);
+    r.close();
+    w.close();
+
+    // merges follow the current config
+    w = new IndexWriter(dir, newConfig(new HashSet<String>()));
+    w.addDocument(newDoc(numDocs));
+    w.optimize();
+    w.close();
+    r = IndexReader.open(dir, true);
+    checkSegments(r, false);
+    checkPostings(r);
+    r.close();
+    dir.close();
+  }
+
+  private void checkSegments(IndexReader r, boolean expected) throws Exception {
+    for (IndexReader sub : r.getSequentialSubReaders()) {
+      FieldInfos fieldInfos = ((SegmentReader) sub).fieldInfos();
+      for (IndexOptions options : OPTIONS) {
+        assertEquals(expected, fieldInfos.fieldInfo(fieldName(true, options)).blockPostings);
+        assertFalse(fieldInfos.fieldInfo(fieldName(false, options)).blockPostings);
+      }
+    }
+  }
+
+  private void checkPostings(IndexReader r) throws Exception {
+    for (IndexOptions options : OPTIONS) {
+      final String blockField = fieldName(true, options);
+      final String plainField = fieldName(false, options);
+      TermEnum terms = r.terms(new Term(plainField, ""));
+      int numTerms = 0;
+      do {
+        final Term term = terms.term();
+        if (term == null || !term.field().equals(plainField)) {
+          break;
+        }
+        numTerms++;
+        final Term blockTerm = new Term(blockField, term.text());
+        assertEquals(terms.docFreq(), r.docFreq(blockTerm));
+        checkNext(r.termDocs(term), r.termDocs(blockTerm));
+        checkRead(r.termDocs(term), r.termDocs(blockTerm));
+        checkSkipTo(r.maxDoc(), r.termDocs(term), r.termDocs(blockTerm));
+        if (options == IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) {
+          checkPositions(r.termPositions(term), r.termPositions(blockTerm));
+        }
+      } while (terms.next());
+      terms.close();
+      assertTrue(numTerms >= NUM_TERMS);
+    }
+  }
+
+  private void checkNext(TermDocs expected, TermDocs actual) throws Exception {
+    while (expected.next()) {
+      assertTrue(actual.next());
+      assertEquals(expected.doc(), actual.doc());
+      assertEquals(expected.freq(), actual.freq());
+    }
+    assertFalse(actual.next());
+    expected.close();
+    actual.close();
+  }
+
+  private void checkRead(TermDocs expected, TermDocs actual) throws Exception {
+    final int[] expectedDocs = new int[1 + random.nextInt(300)];
+    final int[] expectedFreqs = new int[expectedDocs.length];
+    final int[] docs = new int[expectedDocs.length];
+    final int[] freqs = new int[expectedDocs.length];
+    while (true) {
+      final int count = expected.read(expectedDocs, expectedFreqs);
+      int actualCount = 0;
+      // fill the same number of docs, possibly with several reads
+      while (actualCount < count) {
+        final int[] moreDocs = new int[count - actualCount];
+        final int[] moreFreqs = new int[count - actualCount];
+        final int more = actual.read(moreDocs, moreFreqs);
+        assertTrue(more > 0);
+        System.arraycopy(moreDocs, 0, docs, actualCount, more);
+        System.arraycopy(moreFreqs, 0, freqs, actualCount, more);
+        actualCount += more;
+      }
+      for (int i = 0; i < count; i++) {
+        assertEquals(expectedDocs[i], docs[i]);
+        assertEquals(expectedFreqs[i], freqs[i]);
+      }
+      if (count == 0) {
+        assertEquals(0, actual.read(docs, freqs));
+        break;
+      }
+    }
+    expected.close();
+    actual.close();
+  }
+
+  private void checkSkipTo(int maxDoc, TermDocs expected, TermDocs actual) throws Exception {
+    int target = 0;
+    while (true) {
+      if (random.nextBoolean()) {
+        target += random.nextInt(10);
+      } else {
+        target += random.nextInt(1000);
+      }
+      final boolean found = expected.skipTo(target);
+      assertEquals(found, actual.skipTo(target));
+      if (!found) {
+        break;
+      }
+      assertEquals(expected.doc(), actual.doc());
+      assertEquals(expected.freq(), actual.freq());
+      target = expected.doc() + 1;
+      if (random.nextInt(3) == 0) {
+        // mix in next()
+        final boolean hasNext = expected.next();
+        assertEquals(hasNext, actual.next());
+        if (!hasNext) {
+          break;
+        }
+        assertEquals(expected.doc(), actual.doc());
+        target = expected.doc() + 1;
+      }
+      if (target >= maxDoc) {
+        break;
+      }
+    }
+    expected.close();
+    actual.close();
+  }
+
+  private void checkPositions(TermPositions expected, TermPositions actual) throws Exception {
+    int doc = -1;
+    while (true) {
+      final boolean found;
+      if (random.nextBoolean()) {
+        found = expected.next();
+        assertEquals(found, actual.next());
+      } else {
+        final int target = doc + 1 + random.nextInt(500);
+        found = expected.skipTo(target);
+        assertEquals(found, actual.skipTo(target));
+      }
+      if (!found) {
+        break;
+      }
+      doc = expected.doc();
+      assertEquals(doc, actual.doc());
+      assertEquals(expected.freq(), actual.freq());
+      // sometimes leave positions unread
+      if (random.nextInt(4) != 0) {
+        for (int i = 0; i < expected.freq(); i++) {
+          assertEquals(expected.nextPosition(), actual.nextPosition());
+        }
+      }
+    }
+    expected.close();
+    actual.close();
+  }
+}
@@ -249,4 +249,65 @@ public class TestConcurrentMergeScheduler extends LuceneTestCase {
 
     directory.close();
   }
+
+  public void testMergeRateLimit() throws IOException {
+    MockDirectoryWrapper directory = newDirectory();
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    cms.setMaxMergeWriteMBPerSec(20.0);
+    cms.setMinMergeWriteMBPerSec(10.0);
+    cms.setMinThrottledMergeMB(0.0);
+    assertEquals(10.0, cms.getMergeWriteMBPerSec(), 0.0);
+
+    IndexWriter writer = new IndexWriter(
+        directory,
+        newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)).
+            setMaxBufferedDocs(10).
+            setMergeScheduler(cms).
+            setMergePolicy(newLogMergePolicy(3))
+    );
+    writer.setInfoStream(VERBOSE ? System.out : null);
+
+    for(int i=0;i<500;i++) {
+      Document doc = new Document();
+      doc.add(newField("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(newField("content", "a b c " + i, Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.optimize();
+    writer.close();
+
+    assertTrue(cms.getTotalThrottledMB() > 0.0);
+    assertTrue(cms.getTotalThrottleTimeMS() >= 0);
+    assertEquals(0, cms.getMergeBacklog());
+    final double rate = cms.getMergeWriteMBPerSec();
+    assertTrue("rate=" + rate, rate >= 10.0 && rate <= 20.0);
+
+    IndexReader reader = IndexReader.open(directory, true);
+    assertEquals(500, reader.numDocs());
+    reader.close();
+    directory.close();
+  }
+
+  public void testSmallMergesNotRateLimited() throws IOException {
+    MockDirectoryWrapper directory = newDirectory();
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    cms.setMaxMergeWriteMBPerSec(0.1);
+    IndexWriter writer = new IndexWriter(
+        directory,
+        newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)).
+            setMaxBufferedDocs(2).
+            setMergeScheduler(cms).
+            setMergePolicy(newLogMergePolicy(2))
+    );
+    for(int i=0;i<100;i++) {
+      Document doc = new Document();
+      doc.add(newField("content", "a b c " + i, Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.close();
+    // all merges were far below the default 50 MB minimum:
+    assertEquals(0.0, cms.getTotalThrottledMB(), 0.0);
+    assertEquals(0, cms.getTotalThrottleTimeMS());
+    directory.close();
+  }
 }
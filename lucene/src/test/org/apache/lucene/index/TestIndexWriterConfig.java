@@ -80,6 +80,9 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     assertNull(conf.getMergedSegmentWarmer());
     assertEquals(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES, conf.getMaxThreadStates());
     assertEquals(IndexWriterConfig.DEFAULT_READER_TERMS_INDEX_DIVISOR, conf.getReaderTermsIndexDivisor());
+    assertEquals(IndexWriterConfig.DEFAULT_READER_TERMS_CACHE_SIZE, conf.getReaderTermsCacheSize());
+    assertTrue(conf.getBloomFilterFields().isEmpty());
+    assertTrue(conf.getBlockPostingsFields().isEmpty());
     assertEquals(TieredMergePolicy.class, conf.getMergePolicy().getClass());
     
     // Sanity check - validate that all getters are covered.
@@ -102,6 +105,9 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     getters.add("getMaxThreadStates");
     getters.add("getReaderPooling");
     getters.add("getReaderTermsIndexDivisor");
+    getters.add("getReaderTermsCacheSize");
+    getters.add("getBloomFilterFields");
+    getters.add("getBlockPostingsFields");
     for (Method m : IndexWriterConfig.class.getDeclaredMethods()) {
       if (m.getDeclaringClass() == IndexWriterConfig.class && m.getName().startsWith("get")) {
         assertTrue("method " + m.getName() + " is not tested for defaults", getters.contains(m.getName()));
@@ -135,6 +141,7 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     assertEquals(false, IndexWriterConfig.DEFAULT_READER_POOLING);
     assertEquals(8, IndexWriterConfig.DEFAULT_MAX_THREAD_STATES);
     assertEquals(IndexReader.DEFAULT_TERMS_INDEX_DIVISOR, IndexWriterConfig.DEFAULT_READER_TERMS_INDEX_DIVISOR);
+    assertEquals(IndexReader.DEFAULT_TERMS_CACHE_SIZE, IndexWriterConfig.DEFAULT_READER_TERMS_CACHE_SIZE);
   }
   
   @Test
@@ -247,6 +254,16 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     } catch (IllegalArgumentException e) {
       // this is expected
     }
+
+    // Setting the terms cache size to 0 disables it
+    conf.setReaderTermsCacheSize(0);
+    assertEquals(0, conf.getReaderTermsCacheSize());
+    try {
+      conf.setReaderTermsCacheSize(-1);
+      fail("should not have succeeded to set readerTermsCacheSize to < 0");
+    } catch (IllegalArgumentException e) {
+      // this is expected
+    }
     
     assertEquals(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES, conf.getMaxThreadStates());
     conf.setMaxThreadStates(5);
@@ -37,7 +37,6 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MockDirectoryWrapper;
-import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util._TestUtil;
@@ -698,13 +697,25 @@ public class TestIndexWriterReader extends LuceneTestCase {
     IndexSearcher searcher = newSearcher(r);
     assertEquals(100, searcher.search(q, 10).totalHits);
     searcher.close();
-    try {
-      r.reopen();
-      fail("failed to hit AlreadyClosedException");
-    } catch (AlreadyClosedException ace) {
-      // expected
+
+    // once the writer is closed, reopen falls back to the
+    // last commit:
+    IndexReader r2 = r.reopen();
+    assertEquals(100, r2.numDocs());
+    if (r2 != r) {
+      r.close();
+      r = r2;
     }
+    writer = new IndexWriter(dir1, newIndexWriterConfig( TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    for (int i = 0; i < 10; i++) {
+      writer.addDocument(DocHelper.createDocument(i, "test", 4));
+    }
+    writer.close();
+    r2 = r.reopen();
+    assertNotSame(r, r2);
+    assertEquals(110, r2.numDocs());
     r.close();
+    r2.close();
     dir1.close();
   }
 
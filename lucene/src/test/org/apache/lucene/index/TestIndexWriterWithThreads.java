@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
@@ -398,6 +399,84 @@ public class TestIndexWriterWithThreads extends LuceneTestCase {
     _testMultipleThreadsFailure(new FailOnlyInWriteSegment(true));
   }
   
+  // One thread writing its segment must not hold up the
+  // other threads, and deletes buffered meanwhile must still
+  // apply to that segment
+  public void testIndexingWhileFlushing() throws Exception {
+    Directory dir = newDirectory();
+    final CountDownLatch flushing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(
+        TEST_VERSION_CURRENT, new MockAnalyzer(random)).setMaxBufferedDocs(2).setRAMBufferSizeMB(
+        IndexWriterConfig.DISABLE_AUTO_FLUSH)) {
+      @Override
+      boolean testPoint(String name) {
+        if (name.equals("DocumentsWriterPool.doFlush start") && flushing.getCount() > 0) {
+          flushing.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ie) {
+            throw new ThreadInterruptedException(ie);
+          }
+        }
+        return true;
+      }
+    };
+    writer.setInfoStream(VERBOSE ? System.out : null);
+
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread flusher = new Thread() {
+      @Override
+      public void run() {
+        try {
+          // the 2nd doc fills the buffer of this thread
+          writer.addDocument(createIdDoc(0));
+          writer.addDocument(createIdDoc(1));
+        } catch (Throwable t) {
+          failure.set(t);
+        }
+      }
+    };
+    flusher.start();
+    flushing.await();
+
+    for(int i=2;i<10;i++) {
+      writer.addDocument(createIdDoc(i));
+    }
+    writer.deleteDocuments(new Term("id", "0"));
+    writer.updateDocument(new Term("id", "1"), createIdDoc(1));
+    assertEquals(11, writer.maxDoc());
+
+    release.countDown();
+    flusher.join();
+    assertNull(failure.get());
+    writer.close();
+
+    IndexReader reader = IndexReader.open(dir, true);
+    assertEquals(9, reader.numDocs());
+    assertEquals(0, countDocs(reader, new Term("id", "0")));
+    assertEquals(1, countDocs(reader, new Term("id", "1")));
+    reader.close();
+    dir.close();
+  }
+
+  private Document createIdDoc(int id) {
+    Document doc = new Document();
+    doc.add(newField("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    doc.add(newField("field", "aaa bbb ccc", Field.Store.NO, Field.Index.ANALYZED));
+    return doc;
+  }
+
+  private static int countDocs(IndexReader reader, Term term) throws IOException {
+    TermDocs termDocs = reader.termDocs(term);
+    int count = 0;
+    while (termDocs.next()) {
+      count++;
+    }
+    termDocs.close();
+    return count;
+  }
+
   //  LUCENE-3365: Test adding two documents with the same field from two different IndexWriters 
   //  that we attempt to open at the same time.  As long as the first IndexWriter completes
   //  and closes before the second IndexWriter time's out trying to get the Lock,
@@ -277,4 +277,46 @@ public class TestNorms extends LuceneTestCase {
     reader.close();
     dir.close();
   }
+
+  public void testMaxNormValue() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
+                                         .setMaxBufferedDocs(10));
+    for (int i = 0; i < 50; i++) {
+      Document doc = new Document();
+      StringBuilder text = new StringBuilder();
+      for (int j = 1 + random.nextInt(20); j > 0; j--) {
+        text.append(" word");
+      }
+      doc.add(newField("field", text.toString(), Store.NO, Index.ANALYZED));
+      doc.add(newField("nonorms", text.toString(), Store.NO, Index.ANALYZED_NO_NORMS));
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    Similarity sim = new DefaultSimilarity();
+    IndexReader reader = IndexReader.open(dir, false);
+    for (IndexReader segment : reader.getSequentialSubReaders()) {
+      assertEquals(maxNormValue(segment.norms("field"), sim), segment.maxNormValue("field", sim), 0f);
+      assertEquals(1.0f, segment.maxNormValue("nonorms", sim), 0f);
+    }
+    assertEquals(maxNormValue(reader.norms("field"), sim), reader.maxNormValue("field", sim), 0f);
+
+    // a larger norm is taken into account
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    final float maxNormValue = segment.maxNormValue("field", sim);
+    segment.setNorm(0, "field", sim.encodeNormValue(maxNormValue * 2));
+    assertEquals(sim.decodeNormValue(sim.encodeNormValue(maxNormValue * 2)), segment.maxNormValue("field", sim), 0f);
+    assertEquals(maxNormValue(segment.norms("field"), sim), segment.maxNormValue("field", sim), 0f);
+    reader.close();
+    dir.close();
+  }
+
+  private static float maxNormValue(byte[] norms, Similarity sim) {
+    float max = Float.NEGATIVE_INFINITY;
+    for (byte norm : norms) {
+      max = Math.max(max, sim.decodeNormValue(norm));
+    }
+    return max;
+  }
 }
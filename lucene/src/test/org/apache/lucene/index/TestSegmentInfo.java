@@ -50,6 +50,27 @@ public class TestSegmentInfo extends LuceneTestCase {
     dir.close();
   }
   
+  public void testHasTermsIndexFSTCache() throws Exception {
+    // a segment written by this version has an FST terms index
+    assertTrue(new SegmentInfo("_0", 1, null, false, false, true, false).getHasTermsIndexFST());
+
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    Document doc = new Document();
+    doc.add(new Field("a", "value", Store.YES, Index.ANALYZED));
+    writer.addDocument(doc);
+    writer.close();
+
+    SegmentInfos sis = new SegmentInfos();
+    sis.read(dir);
+    SegmentInfo si = sis.info(0);
+    assertTrue(si.getHasTermsIndexFST());
+    dir.close();
+    // read once, the directory is not needed anymore
+    assertTrue(si.getHasTermsIndexFST());
+    assertTrue(((SegmentInfo) si.clone()).getHasTermsIndexFST());
+  }
+  
   // LUCENE-2584: calling files() by multiple threads could lead to ConcurrentModificationException
   public void testFilesConcurrency() throws Exception {
     Directory dir = newDirectory();
@@ -145,6 +145,28 @@ public class TestSegmentReader extends LuceneTestCase {
     assertTrue(positions.nextPosition() >= 0);
   }    
   
+  public void testTermInfosCache() throws IOException {
+    final Term term = new Term(DocHelper.TEXT_FIELD_1_KEY, "field");
+    final long hits = reader.getTermInfosCacheHits();
+    final long misses = reader.getTermInfosCacheMisses();
+    assertEquals(1, reader.docFreq(term));
+    assertEquals(misses + 1, reader.getTermInfosCacheMisses());
+    assertEquals(1, reader.docFreq(term));
+    assertEquals(hits + 1, reader.getTermInfosCacheHits());
+    assertEquals(misses + 1, reader.getTermInfosCacheMisses());
+
+    // a cache size of 0 disables the cache
+    SegmentReader noCache = SegmentReader.get(true, reader.getSegmentInfo(), IndexReader.DEFAULT_TERMS_INDEX_DIVISOR, 0);
+    try {
+      assertEquals(1, noCache.docFreq(term));
+      assertEquals(1, noCache.docFreq(term));
+      assertEquals(0, noCache.getTermInfosCacheHits());
+      assertEquals(2, noCache.getTermInfosCacheMisses());
+    } finally {
+      noCache.close();
+    }
+  }
+
   public void testNorms() throws IOException {
     //TODO: Not sure how these work/should be tested
 /*
@@ -18,11 +18,19 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
 import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.store.Directory;
 
@@ -87,6 +95,109 @@ public class TestSegmentTermEnum extends LuceneTestCase {
     reader.close();
   }
 
+  public void testSeekWithTermsIndex() throws IOException {
+    // a small index interval and fields of very different
+    // sizes, so that lookups start at index terms of their
+    // own field as well as of the previous ones
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
+                                         .setTermIndexInterval(_TestUtil.nextInt(random, 2, 8)));
+    final String[] fields = {"a", "b", "bb", "c"};
+    final int[] numTerms = {1, 200, 3, 50};
+    final SortedSet<Term> terms = new TreeSet<Term>();
+    for (int i = 0; i < fields.length; i++) {
+      while (terms.tailSet(new Term(fields[i], "")).size() < numTerms[i]) {
+        final Term term = new Term(fields[i], _TestUtil.randomUnicodeString(random, 5));
+        if (!terms.add(term)) {
+          continue;
+        }
+        Document doc = new Document();
+        doc.add(newField(term.field(), term.text(), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+        writer.addDocument(doc);
+      }
+    }
+    writer.optimize();
+    writer.close();
+
+    for (int indexDivisor = 1; indexDivisor <= 3; indexDivisor += 2) {
+      IndexReader reader = IndexReader.open(dir, null, true, indexDivisor);
+      for (Term term : terms) {
+        assertEquals(1, reader.docFreq(term));
+      }
+      for (int i = 0; i < 200; i++) {
+        final Term target = new Term(fields[random.nextInt(fields.length)], _TestUtil.randomUnicodeString(random, 5));
+        final SortedSet<Term> tail = terms.tailSet(target);
+        final TermEnum termEnum = reader.terms(target);
+        if (tail.isEmpty()) {
+          assertNull(termEnum.term());
+        } else {
+          assertEquals(tail.first(), termEnum.term());
+          assertEquals(terms.contains(target) ? 1 : 0, reader.docFreq(target));
+        }
+        termEnum.close();
+      }
+      reader.close();
+    }
+  }
+
+  public void testMaxTermFreq() throws IOException {
+    // a small index interval, so that some terms are index terms
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT,
+                                                                   new MockAnalyzer(random, MockTokenizer.WHITESPACE, false))
+                                         .setTermIndexInterval(_TestUtil.nextInt(random, 2, 8))
+                                         .setMaxBufferedDocs(_TestUtil.nextInt(random, 10, 50)));
+    for (int i = 0; i < 200; i++) {
+      StringBuilder text = new StringBuilder();
+      for (int j = random.nextInt(20); j >= 0; j--) {
+        text.append(" t").append(random.nextInt(30));
+      }
+      Document doc = new Document();
+      doc.add(newField("content", text.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      Field docsOnly = newField("docsonly", text.toString(), Field.Store.NO, Field.Index.ANALYZED);
+      docsOnly.setIndexOptions(IndexOptions.DOCS_ONLY);
+      doc.add(docsOnly);
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    // verify the max term freqs of flushed segments
+    verifyMaxTermFreq();
+
+    // and of merged segments
+    writer = new IndexWriter(dir, newIndexWriterConfig( TEST_VERSION_CURRENT, new MockAnalyzer(random)).setOpenMode(OpenMode.APPEND));
+    writer.optimize();
+    writer.close();
+
+    verifyMaxTermFreq();
+  }
+
+  private void verifyMaxTermFreq() throws IOException {
+    for (int indexDivisor = 1; indexDivisor <= 3; indexDivisor += 2) {
+      IndexReader reader = IndexReader.open(dir, null, true, indexDivisor);
+      List<IndexReader> readers = new ArrayList<IndexReader>();
+      readers.add(reader);
+      readers.addAll(Arrays.asList(reader.getSequentialSubReaders()));
+      for (IndexReader r : readers) {
+        TermEnum termEnum = r.terms();
+        TermDocs termDocs = r.termDocs();
+        while (termEnum.next()) {
+          termDocs.seek(termEnum);
+          int maxTermFreq = 0;
+          while (termDocs.next()) {
+            maxTermFreq = Math.max(maxTermFreq, termDocs.freq());
+          }
+          assertEquals(termEnum.term().toString(), maxTermFreq, r.maxTermFreq(termEnum.term()));
+          if (termEnum.term().field().equals("docsonly")) {
+            assertEquals(1, maxTermFreq);
+          }
+        }
+        termEnum.close();
+        termDocs.close();
+        assertEquals(0, r.maxTermFreq(new Term("content", "missing")));
+      }
+      reader.close();
+    }
+  }
+
   private void verifyDocFreq()
       throws IOException
   {
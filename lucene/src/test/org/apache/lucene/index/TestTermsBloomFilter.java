@@ -0,0 +1,183 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTermsBloomFilter extends LuceneTestCase {
+
+  private static Document newDoc(String id) {
+    Document doc = new Document();
+    doc.add(newField("id", id, Field.Store.YES, Field.Index.NOT_ANALYZED));
+    doc.add(newField("body", "text " + id, Field.Store.NO, Field.Index.ANALYZED));
+    return doc;
+  }
+
+  private void checkFilters(IndexReader r, int numIDs) throws Exception {
+    int falsePositives = 0, absentLookups = 0;
+    for (IndexReader sub : r.getSequentialSubReaders()) {
+      SegmentReader sr = (SegmentReader) sub;
+      for (int i = 0; i < numIDs; i++) {
+        final Term term = new Term("id", Integer.toString(i));
+        if (sr.docFreq(term) > 0) {
+          assertTrue(sr.mayContainTerm(term));
+        } else {
+          absentLookups++;
+          if (sr.mayContainTerm(term)) {
+            falsePositives++;
+          }
+        }
+        // no filter for this field:
+        assertTrue(sr.mayContainTerm(new Term("body", "absent" + i)));
+      }
+    }
+    // each filter has at most a ~1% false positive rate
+    assertTrue("falsePositives=" + falsePositives + " of " + absentLookups, falsePositives <= 20 + absentLookups / 20);
+  }
+
+  public void testFlushAndMerge() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
+      .setMaxBufferedDocs(50).setBloomFilterFields(Collections.singleton("id"));
+    IndexWriter w = new IndexWriter(dir, conf);
+    final int numIDs = 500;
+    for (int i = 0; i < numIDs; i++) {
+      w.addDocument(newDoc(Integer.toString(i)));
+    }
+    // overwrite some, through the filters
+    for (int i = 0; i < numIDs; i += 7) {
+      w.updateDocument(new Term("id", Integer.toString(i)), newDoc(Integer.toString(i)));
+    }
+    w.commit();
+
+    IndexReader r = IndexReader.open(dir, true);
+    assertEquals(numIDs, r.numDocs());
+    for (int i = 0; i < numIDs; i++) {
+      assertEquals(1, countLive(r, Integer.toString(i)));
+    }
+    checkFilters(r, numIDs);
+    r.close();
+
+    w.optimize();
+    w.close();
+
+    r = IndexReader.open(dir, true);
+    assertEquals(1, r.getSequentialSubReaders().length);
+    assertEquals(numIDs, r.numDocs());
+    checkFilters(r, numIDs);
+    r.close();
+    dir.close();
+  }
+
+  public void testMergeSizesFilterByKeyTerms() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
+      .setMaxBufferedDocs(100).setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES)
+      .setBloomFilterFields(Collections.singleton("id"));
+    IndexWriter w = new IndexWriter(dir, conf);
+    final int numIDs = 500;
+    for (int i = 0; i < numIDs; i++) {
+      Document doc = newDoc(Integer.toString(i));
+      // many more body terms than keys
+      StringBuilder body = new StringBuilder();
+      for (int j = 0; j < 20; j++) {
+        body.append(" w").append(i).append('_').append(j);
+      }
+      doc.add(newField("body", body.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      w.addDocument(doc);
+    }
+    w.commit();
+
+    IndexReader r = IndexReader.open(dir, true);
+    assertTrue(r.getSequentialSubReaders().length > 1);
+    List<IndexReader> segments = Arrays.asList(r.getSequentialSubReaders());
+    long numTerms = 0;
+    for (IndexReader segment : segments) {
+      numTerms += segment.getUniqueTermCount();
+    }
+    assertTrue(numTerms > 20 * numIDs);
+    // the key filters bound the keys, the other fields fall back to all terms
+    assertEquals(numIDs, SegmentMerger.maxNumFieldTerms(segments, "id"));
+    assertEquals(numTerms, SegmentMerger.maxNumFieldTerms(segments, "body"));
+    r.close();
+    w.close();
+
+    w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
+      .setBloomFilterFields(Collections.singleton("id")));
+    w.optimize();
+    w.close();
+
+    r = IndexReader.open(dir, true);
+    assertEquals(1, r.getSequentialSubReaders().length);
+    SegmentReader sr = (SegmentReader) r.getSequentialSubReaders()[0];
+    assertEquals(numIDs, SegmentMerger.maxNumFieldTerms(Collections.<IndexReader>singletonList(sr), "id"));
+    final String fileName = IndexFileNames.segmentFileName(sr.getSegmentName(), IndexFileNames.BLOOM_FILTER_EXTENSION);
+    assertTrue(sr.core.cfsDir.fileLength(fileName) <= 32 + numIDs * 2 * TermsBloomFilter.BITS_PER_TERM / 8);
+    checkFilters(r, numIDs);
+    r.close();
+    dir.close();
+  }
+
+  public void testFoldToNumTerms() throws Exception {
+    Directory dir = newDirectory();
+    FieldInfos fieldInfos = new FieldInfos();
+    fieldInfos.add("id", true);
+    final int numTerms = atLeast(100);
+    // sized for far more terms than arrive
+    TermsBloomFilter.Writer writer = new TermsBloomFilter.Writer(dir, "_0", Collections.singleton("id"));
+    assertTrue(writer.startField(fieldInfos.fieldInfo("id"), 1 << 20));
+    for (int i = 0; i < numTerms; i++) {
+      writer.add((Integer.toString(i) + '\uffff').toCharArray(), 0);
+    }
+    writer.finishField();
+    writer.close();
+
+    // at most twice the bits per term of the smallest filter
+    final String fileName = IndexFileNames.segmentFileName("_0", IndexFileNames.BLOOM_FILTER_EXTENSION);
+    assertTrue(dir.fileLength(fileName) <= 16 + numTerms * 2 * TermsBloomFilter.BITS_PER_TERM / 8);
+    TermsBloomFilter filter = TermsBloomFilter.read(dir, "_0", fieldInfos, 1024).get("id");
+    int falsePositives = 0;
+    for (int i = 0; i < numTerms; i++) {
+      assertTrue(filter.mayContain(Integer.toString(i)));
+      if (filter.mayContain(Integer.toString(numTerms + i))) {
+        falsePositives++;
+      }
+    }
+    assertTrue("falsePositives=" + falsePositives + " of " + numTerms, falsePositives <= 5 + numTerms / 20);
+    dir.close();
+  }
+
+  private static int countLive(IndexReader r, String id) throws Exception {
+    int count = 0;
+    TermDocs td = r.termDocs();
+    td.seek(new Term("id", id));
+    while (td.next()) {
+      count++;
+    }
+    td.close();
+    return count;
+  }
+}
@@ -22,7 +22,9 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
 import java.io.IOException;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
@@ -30,6 +32,7 @@ import java.io.PrintStream;
 public class TestFieldCache extends LuceneTestCase {
   protected IndexReader reader;
   private int NUM_DOCS;
+  private String[] unicodeStrings;
   private Directory directory;
 
   @Override
@@ -44,6 +47,7 @@ public class TestFieldCache extends LuceneTestCase {
     short theShort = Short.MAX_VALUE;
     int theInt = Integer.MAX_VALUE;
     float theFloat = Float.MAX_VALUE;
+    unicodeStrings = new String[NUM_DOCS];
     for (int i = 0; i < NUM_DOCS; i++){
       Document doc = new Document();
       doc.add(newField("theLong", String.valueOf(theLong--), Field.Store.NO, Field.Index.NOT_ANALYZED));
@@ -52,6 +56,24 @@ public class TestFieldCache extends LuceneTestCase {
       doc.add(newField("theShort", String.valueOf(theShort--), Field.Store.NO, Field.Index.NOT_ANALYZED));
       doc.add(newField("theInt", String.valueOf(theInt--), Field.Store.NO, Field.Index.NOT_ANALYZED));
       doc.add(newField("theFloat", String.valueOf(theFloat--), Field.Store.NO, Field.Index.NOT_ANALYZED));
+
+      // sometimes skip the field:
+      if (random.nextInt(40) != 0) {
+        String s = null;
+        if (i > 0 && random.nextInt(3) == 1) {
+          // reuse past string -- try to find one that's not null
+          for(int iter = 0; iter < 10 && s == null;iter++) {
+            s = unicodeStrings[random.nextInt(i)];
+          }
+          if (s == null) {
+            s = _TestUtil.randomUnicodeString(random, 250);
+          }
+        } else {
+          s = _TestUtil.randomUnicodeString(random, 250);
+        }
+        unicodeStrings[i] = s;
+        doc.add(newField("theRandomUnicodeString", unicodeStrings[i], Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+      }
       writer.addDocument(doc);
     }
     writer.close();
@@ -134,4 +156,49 @@ public class TestFieldCache extends LuceneTestCase {
 
     }
   }
+
+  public void testTermsIndex() throws IOException {
+    FieldCache cache = FieldCache.DEFAULT;
+    try {
+      FieldCache.DocTermsIndex termsIndex = cache.getTermsIndex(reader, "theRandomUnicodeString");
+      assertSame("Second request to cache return same index", termsIndex, cache.getTermsIndex(reader, "theRandomUnicodeString"));
+      assertEquals(NUM_DOCS, termsIndex.size());
+      final BytesRef br = new BytesRef();
+      for (int i = 0; i < NUM_DOCS; i++) {
+        final BytesRef term = termsIndex.getTerm(i, br);
+        final String s = term == null ? null : term.utf8ToString();
+        assertTrue("for doc " + i + ": " + s + " does not equal: " + unicodeStrings[i],
+            unicodeStrings[i] == null || unicodeStrings[i].equals(s));
+      }
+
+      // must hold exactly the same ords and terms as the StringIndex
+      FieldCache.StringIndex stringIndex = cache.getStringIndex(reader, "theRandomUnicodeString");
+      assertEquals(stringIndex.lookup.length, termsIndex.numOrd());
+      for (int ord = 0; ord < termsIndex.numOrd(); ord++) {
+        assertEquals(stringIndex.lookup[ord], termsIndex.lookupString(ord));
+        assertEquals(stringIndex.binarySearchLookup(stringIndex.lookup[ord]),
+            termsIndex.binarySearchLookup(termsIndex.lookup(ord, new BytesRef()), br));
+      }
+      for (int i = 0; i < NUM_DOCS; i++) {
+        assertEquals(stringIndex.order[i], termsIndex.getOrd(i));
+      }
+      assertTrue(termsIndex.getDocToOrd().getBitsPerValue() < 32);
+
+      // look up terms that don't exist
+      for (int i = 0; i < 100; i++) {
+        final String s = _TestUtil.randomUnicodeString(random);
+        assertEquals(stringIndex.binarySearchLookup(s),
+            termsIndex.binarySearchLookup(new BytesRef(s), br));
+      }
+
+      // test non-existent field
+      FieldCache.DocTermsIndex nullIndex = cache.getTermsIndex(reader, "bogusfield");
+      assertEquals(1, nullIndex.numOrd());
+      assertEquals(0, nullIndex.getOrd(0));
+      assertNull(nullIndex.getTerm(0, br));
+    } finally {
+      // StringIndex and DocTermsIndex on the same field is insane
+      FieldCache.DEFAULT.purgeAllCaches();
+    }
+  }
 }
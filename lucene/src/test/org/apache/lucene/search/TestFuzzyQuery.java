@@ -17,8 +17,11 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Arrays;
+import java.util.Set;
 import java.io.IOException;
 
 import org.apache.lucene.analysis.MockAnalyzer;
@@ -30,6 +33,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.queryParser.QueryParser;
 
@@ -381,6 +385,136 @@ public class TestFuzzyQuery extends LuceneTestCase {
     index.close();
   }
 
+  /** Compares the terms of random queries with those of a
+   *  full scan of the terms. */
+  public void testRandomTerms() throws Exception {
+    Directory directory = newDirectory();
+    RandomIndexWriter writer = new RandomIndexWriter(random, directory);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newField("field", randomText(), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(newField("other", randomText(), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    IndexReader reader = writer.getReader();
+    writer.close();
+
+    final float[] similarities = new float[] {0.0f, 0.3f, 0.5f, 0.7f, 0.9f};
+    final int numQueries = atLeast(200);
+    for (int i = 0; i < numQueries; i++) {
+      final Term term = new Term("field", randomText());
+      final float minSimilarity = similarities[random.nextInt(similarities.length)];
+      final int prefixLength = random.nextInt(3);
+
+      final List<Term> expected = new ArrayList<Term>();
+      final List<Float> expectedDifferences = new ArrayList<Float>();
+      TermEnum terms = reader.terms(new Term("field", ""));
+      do {
+        final Term t = terms.term();
+        if (t == null || t.field() != term.field()) {
+          break;
+        }
+        final float similarity = similarity(term.text(), t.text(), minSimilarity, prefixLength);
+        if (similarity > minSimilarity) {
+          expected.add(t);
+          expectedDifferences.add((similarity - minSimilarity) / (1.0f - minSimilarity));
+        }
+      } while (terms.next());
+      terms.close();
+
+      final List<Term> actual = new ArrayList<Term>();
+      final FuzzyTermEnum fuzzyTerms = new FuzzyTermEnum(reader, term, minSimilarity, prefixLength);
+      do {
+        final Term t = fuzzyTerms.term();
+        if (t == null) {
+          break;
+        }
+        final int upto = actual.size();
+        assertTrue(upto < expected.size());
+        assertEquals(expected.get(upto), t);
+        assertEquals(expectedDifferences.get(upto).floatValue(), fuzzyTerms.difference(), 0.0001f);
+        actual.add(t);
+      } while (fuzzyTerms.next());
+      fuzzyTerms.close();
+      assertEquals(expected, actual);
+
+      if (term.text().length() <= 1.0f / (1.0f - minSimilarity)) {
+        // FuzzyQuery only looks for the term itself
+        continue;
+      }
+      // only the closest terms are enumerated once the rewrite is full
+      final int maxExpansions = 1 + random.nextInt(5);
+      FuzzyQuery query = new FuzzyQuery(term, minSimilarity, prefixLength, maxExpansions);
+      final Set<Term> rewritten = new HashSet<Term>();
+      query.rewrite(reader).extractTerms(rewritten);
+      if (expected.size() <= maxExpansions) {
+        assertEquals(new HashSet<Term>(expected), rewritten);
+      } else {
+        assertEquals(maxExpansions, rewritten.size());
+        float minDifference = Float.POSITIVE_INFINITY;
+        for (Term t : rewritten) {
+          minDifference = Math.min(minDifference, expectedDifferences.get(expected.indexOf(t)));
+        }
+        for (int j = 0; j < expected.size(); j++) {
+          if (!rewritten.contains(expected.get(j))) {
+            assertTrue(expectedDifferences.get(j) <= minDifference + 0.0001f);
+          }
+        }
+      }
+    }
+    reader.close();
+    directory.close();
+  }
+
+  private String randomText() {
+    final char[] chars = new char[random.nextInt(8)];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) ('a' + random.nextInt(4));
+    }
+    return new String(chars);
+  }
+
+  /** The similarity of FuzzyTermEnum, computed with a full
+   *  Levenshtein distance. */
+  private static float similarity(String text, String target, float minSimilarity, int prefixLength) {
+    final String prefix = text.substring(0, Math.min(prefixLength, text.length()));
+    if (!target.startsWith(prefix)) {
+      return 0.0f;
+    }
+    text = text.substring(prefix.length());
+    target = target.substring(prefix.length());
+    final int n = text.length();
+    final int m = target.length();
+    if (n == 0) {
+      return prefix.length() == 0 ? 0.0f : 1.0f - ((float) m / prefix.length());
+    }
+    if (m == 0) {
+      return prefix.length() == 0 ? 0.0f : 1.0f - ((float) n / prefix.length());
+    }
+    final int maxDistance = (int) ((1-minSimilarity) * (Math.min(n, m) + prefix.length()));
+    if (maxDistance < Math.abs(m-n)) {
+      return 0.0f;
+    }
+    int[][] d = new int[m+1][n+1];
+    for (int i = 0; i <= n; i++) {
+      d[0][i] = i;
+    }
+    for (int j = 1; j <= m; j++) {
+      d[j][0] = j;
+      int best = m;
+      for (int i = 1; i <= n; i++) {
+        final int cost = target.charAt(j-1) == text.charAt(i-1) ? 0 : 1;
+        d[j][i] = Math.min(Math.min(d[j][i-1]+1, d[j-1][i]+1), d[j-1][i-1]+cost);
+        best = Math.min(best, d[j][i]);
+      }
+      if (j > maxDistance && best > maxDistance) {
+        return 0.0f;
+      }
+    }
+    return 1.0f - ((float) d[m][n] / (float) (prefix.length() + Math.min(n, m)));
+  }
+
   private void addDoc(String text, RandomIndexWriter writer) throws IOException {
     Document doc = new Document();
     doc.add(newField("field", text, Field.Store.YES, Field.Index.ANALYZED));
@@ -410,6 +410,43 @@ public class TestSort extends LuceneTestCase implements Serializable {
     searcher.close();
   }
   
+  /**
+   * Test that STRING_PACKED sorts exactly like STRING
+   */
+  public void testStringPackedSort() throws IOException {
+    IndexSearcher searcher = getFullStrings();
+    final int numHits = _TestUtil.nextInt(random, 1, 100);
+    for (int iter = 0; iter < 4; iter++) {
+      final boolean reverse1 = random.nextBoolean();
+      final boolean reverse2 = random.nextBoolean();
+      sort.setSort(
+          new SortField("string", SortField.STRING, reverse1),
+          new SortField("string2", SortField.STRING, reverse2),
+          SortField.FIELD_DOC);
+      TopFieldDocs expected = searcher.search(new MatchAllDocsQuery(), null, numHits, sort);
+      // StringIndex and DocTermsIndex on the same field is insane
+      purgeFieldCache(FieldCache.DEFAULT);
+
+      sort.setSort(
+          new SortField("string", SortField.STRING_PACKED, reverse1),
+          new SortField("string2", SortField.STRING_PACKED, reverse2),
+          SortField.FIELD_DOC);
+      TopFieldDocs actual = searcher.search(new MatchAllDocsQuery(), null, numHits, sort);
+      purgeFieldCache(FieldCache.DEFAULT);
+
+      assertEquals(expected.totalHits, actual.totalHits);
+      assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+      for (int i = 0; i < expected.scoreDocs.length; i++) {
+        final FieldDoc expectedDoc = (FieldDoc) expected.scoreDocs[i];
+        final FieldDoc actualDoc = (FieldDoc) actual.scoreDocs[i];
+        assertEquals(expectedDoc.doc, actualDoc.doc);
+        assertEquals(expectedDoc.fields[0], actualDoc.fields[0]);
+        assertEquals(expectedDoc.fields[1], actualDoc.fields[1]);
+      }
+    }
+    searcher.close();
+  }
+
   /** 
    * test sorts where the type of field is specified and a custom field parser 
    * is used, that uses a simple char encoding. The sorted string contains a 
@@ -1206,6 +1243,32 @@ public class TestSort extends LuceneTestCase implements Serializable {
     dir.close();
   }
 
+  public void testEmptyStringVsNullStringPackedSort() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(
+                        TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    Document doc = new Document();
+    doc.add(newField("f", "", Field.Store.NO, Field.Index.NOT_ANALYZED));
+    doc.add(newField("t", "1", Field.Store.NO, Field.Index.NOT_ANALYZED));
+    w.addDocument(doc);
+    w.commit();
+    doc = new Document();
+    doc.add(newField("t", "1", Field.Store.NO, Field.Index.NOT_ANALYZED));
+    w.addDocument(doc);
+
+    IndexReader r = IndexReader.open(w, true);
+    w.close();
+    IndexSearcher s = newSearcher(r);
+    TopDocs hits = s.search(new TermQuery(new Term("t", "1")), null, 10, new Sort(new SortField("f", SortField.STRING_PACKED)));
+    assertEquals(2, hits.totalHits);
+    // null sorts first
+    assertEquals(1, hits.scoreDocs[0].doc);
+    assertEquals(0, hits.scoreDocs[1].doc);
+    s.close();
+    r.close();
+    dir.close();
+  }
+
   public void testLUCENE2142() throws IOException {
     Directory indexStore = newDirectory();
     IndexWriter writer = new IndexWriter(indexStore, newIndexWriterConfig(
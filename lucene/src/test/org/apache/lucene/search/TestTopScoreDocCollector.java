@@ -17,12 +17,20 @@ package org.apache.lucene.search;
  * limitations under the License.
  */
 
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
 
 public class TestTopScoreDocCollector extends LuceneTestCase {
 
@@ -65,5 +73,168 @@ public class TestTopScoreDocCollector extends LuceneTestCase {
     reader.close();
     dir.close();
   }
+
+  public void testSkipNonCompetitiveHits() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter writer = new RandomIndexWriter(random, dir,
+        newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random, MockTokenizer.WHITESPACE, false))
+        .setMaxBufferedDocs(_TestUtil.nextInt(random, 50, 500)));
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newField("id", Integer.toString(i), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+      for (String field : new String[] {"title", "body"}) {
+        // the term t<j> is in about one doc out of j+1, up to j+1 times
+        StringBuilder text = new StringBuilder();
+        for (int j = 0; j < 10; j++) {
+          if (random.nextInt(j + 1) == 0) {
+            for (int freq = 1 + random.nextInt(j + 1); freq > 0; freq--) {
+              text.append(" t").append(j);
+            }
+          }
+        }
+        text.append(" x").append(random.nextInt(5));
+        doc.add(newField(field, text.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      }
+      writer.addDocument(doc);
+      if (random.nextInt(100) == 0) {
+        writer.deleteDocuments(new Term("id", Integer.toString(random.nextInt(i + 1))));
+      }
+    }
+    IndexReader reader = writer.getReader();
+    writer.close();
+    IndexSearcher searcher = newSearcher(reader);
+
+    boolean skipped = false;
+    for (int iter = 0; iter < 50; iter++) {
+      final Query query = randomDisjunction(2);
+      final int numHits = 1 + random.nextInt(20);
+      TopScoreDocCollector all = TopScoreDocCollector.create(reader.maxDoc(), true);
+      searcher.search(query, all);
+      final Map<Integer,Float> scores = new HashMap<Integer,Float>();
+      for (ScoreDoc hit : all.topDocs().scoreDocs) {
+        scores.put(hit.doc, hit.score);
+      }
+      TopScoreDocCollector exact = TopScoreDocCollector.create(numHits, true);
+      searcher.search(query, exact);
+      TopScoreDocCollector pruning = TopScoreDocCollector.create(numHits, random.nextBoolean(), false);
+      assertFalse(pruning.acceptsDocsOutOfOrder());
+      searcher.search(query, pruning);
+
+      final String message = query.toString();
+      ScoreDoc[] expected = exact.topDocs().scoreDocs;
+      ScoreDoc[] actual = pruning.topDocs().scoreDocs;
+      assertEquals(message, expected.length, actual.length);
+      for (int i = 0; i < expected.length; i++) {
+        // the scores may differ by rounding errors, since their
+        // clauses are summed in a different order
+        final float delta = expected[i].score * 1e-5f;
+        assertEquals(message, expected[i].score, actual[i].score, delta);
+        assertEquals(message, scores.get(actual[i].doc), actual[i].score, delta);
+      }
+      assertTrue(message, pruning.getTotalHits() <= exact.getTotalHits());
+      skipped |= pruning.getTotalHits() < exact.getTotalHits();
+    }
+    assertTrue(skipped);
+
+    searcher.close();
+    reader.close();
+    dir.close();
+  }
+
+  public void testNegativeBounds() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter writer = new RandomIndexWriter(random, dir,
+        newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random, MockTokenizer.WHITESPACE, false)));
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      StringBuilder text = new StringBuilder();
+      for (int freq = random.nextInt(6); freq > 0; freq--) {
+        text.append(" a");
+      }
+      for (String term : new String[] {"b", "c"}) {
+        if (random.nextInt(3) == 0) {
+          text.append(' ').append(term);
+        }
+      }
+      doc.add(newField("body", text.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    IndexReader reader = writer.getReader();
+    writer.close();
+    IndexSearcher searcher = newSearcher(reader);
+
+    for (int iter = 0; iter < 20; iter++) {
+      // negatively boosted constant score clauses, alone and nested,
+      // have negative bounds that documents need not match
+      BooleanQuery nested = new BooleanQuery();
+      nested.add(negativeConstantScore("b"), Occur.SHOULD);
+      nested.add(negativeConstantScore("c"), Occur.SHOULD);
+      BooleanQuery query = new BooleanQuery(random.nextBoolean());
+      query.add(new TermQuery(new Term("body", "a")), Occur.SHOULD);
+      query.add(negativeConstantScore("b"), Occur.SHOULD);
+      query.add(nested, Occur.SHOULD);
+
+      final int numHits = 1 + random.nextInt(10);
+      TopScoreDocCollector exact = TopScoreDocCollector.create(numHits, true);
+      searcher.search(query, exact);
+      TopScoreDocCollector pruning = TopScoreDocCollector.create(numHits, true, false);
+      searcher.search(query, pruning);
+
+      final String message = query.toString();
+      ScoreDoc[] expected = exact.topDocs().scoreDocs;
+      ScoreDoc[] actual = pruning.topDocs().scoreDocs;
+      assertEquals(message, expected.length, actual.length);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(message, expected[i].doc, actual[i].doc);
+        assertEquals(message, expected[i].score, actual[i].score, Math.abs(expected[i].score) * 1e-5f);
+      }
+    }
+
+    searcher.close();
+    reader.close();
+    dir.close();
+  }
+
+  private Query negativeConstantScore(String text) {
+    Query query = new ConstantScoreQuery(new TermQuery(new Term("body", text)));
+    query.setBoost(-1 - random.nextInt(10));
+    return query;
+  }
+
+  private Query randomTerm() {
+    final String text = random.nextInt(10) == 0 ? "x" + random.nextInt(5) : "t" + random.nextInt(10);
+    return new TermQuery(new Term(random.nextBoolean() ? "title" : "body", text));
+  }
+
+  private Query randomDisjunction(int depth) {
+    BooleanQuery query = new BooleanQuery(random.nextBoolean());
+    final int numClauses = _TestUtil.nextInt(random, 2, 8);
+    for (int i = 0; i < numClauses; i++) {
+      final Query clause;
+      switch (random.nextInt(depth > 0 ? 4 : 2)) {
+        case 2:
+          DisjunctionMaxQuery dmq = new DisjunctionMaxQuery(random.nextFloat());
+          dmq.add(randomTerm());
+          dmq.add(randomTerm());
+          clause = dmq;
+          break;
+        case 3:
+          clause = randomDisjunction(depth - 1);
+          break;
+        default:
+          clause = randomTerm();
+      }
+      if (random.nextInt(4) == 0) {
+        clause.setBoost(1 + random.nextInt(5));
+      }
+      query.add(clause, Occur.SHOULD);
+    }
+    if (random.nextInt(5) == 0) {
+      query.add(randomTerm(), Occur.MUST_NOT);
+    }
+    return query;
+  }
   
 }
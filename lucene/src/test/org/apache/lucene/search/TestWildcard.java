@@ -24,11 +24,15 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.Field.Index;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.queryParser.QueryParser;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * TestWildcard tests the '*' and '?' wildcard characters.
@@ -220,6 +224,62 @@ public class TestWildcard
     indexStore.close();
   }
 
+  /** Compares the terms of random patterns with those of a
+   *  full scan of the terms. */
+  public void testRandomPatterns() throws Exception {
+    Directory indexStore = newDirectory();
+    RandomIndexWriter writer = new RandomIndexWriter(random, indexStore);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newField("body", randomText("ab\u00e9\uffef", 8), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(newField("other", randomText("ab", 3), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    IndexReader reader = writer.getReader();
+    writer.close();
+
+    final int numQueries = atLeast(200);
+    for (int i = 0; i < numQueries; i++) {
+      final Term pattern = new Term("body", randomText("ab\u00e9\uffef*?", 6));
+
+      final List<Term> expected = new ArrayList<Term>();
+      TermEnum terms = reader.terms(new Term("body", ""));
+      do {
+        final Term t = terms.term();
+        if (t == null || t.field() != pattern.field()) {
+          break;
+        }
+        if (WildcardTermEnum.wildcardEquals(pattern.text(), 0, t.text(), 0)) {
+          expected.add(t);
+        }
+      } while (terms.next());
+      terms.close();
+
+      final List<Term> actual = new ArrayList<Term>();
+      final WildcardTermEnum wildcardTerms = new WildcardTermEnum(reader, pattern);
+      do {
+        final Term t = wildcardTerms.term();
+        if (t == null) {
+          break;
+        }
+        actual.add(t);
+      } while (wildcardTerms.next());
+      wildcardTerms.close();
+      assertEquals("pattern=" + pattern, expected, actual);
+    }
+    reader.close();
+    indexStore.close();
+  }
+
+  private String randomText(String chars, int maxLength) {
+    final char[] text = new char[random.nextInt(maxLength + 1)];
+    for (int i = 0; i < text.length; i++) {
+      text[i] = chars.charAt(random.nextInt(chars.length()));
+    }
+    return new String(text);
+  }
+
   private Directory getIndexStore(String field, String[] contents)
       throws IOException {
     Directory indexStore = newDirectory();
@@ -60,6 +60,31 @@ public class TestMultiMMap extends LuceneTestCase {
     }
   }
   
+  public void testVIntsAcrossChunks() throws Exception {
+    for (int i = 3; i < 12; i++) {
+      MMapDirectory mmapDir = new MMapDirectory(_TestUtil.getTempDir("testVIntsAcrossChunks"));
+      mmapDir.setMaxChunkSize(1<<i);
+      IndexOutput io = mmapDir.createOutput("vints");
+      final int count = atLeast(500);
+      final long seed = random.nextLong();
+      Random r = new Random(seed);
+      for (int j = 0; j < count; j++) {
+        io.writeVInt(r.nextInt() >>> r.nextInt(32));
+        io.writeVLong(r.nextLong() >>> (1+r.nextInt(63)));
+      }
+      io.close();
+      IndexInput ii = mmapDir.openInput("vints");
+      r = new Random(seed);
+      for (int j = 0; j < count; j++) {
+        assertEquals(r.nextInt() >>> r.nextInt(32), ii.readVInt());
+        assertEquals(r.nextLong() >>> (1+r.nextInt(63)), ii.readVLong());
+      }
+      assertEquals(ii.length(), ii.getFilePointer());
+      ii.close();
+      mmapDir.close();
+    }
+  }
+
   public void testSeekEnd() throws Exception {
     for (int i = 0; i < 17; i++) {
       MMapDirectory mmapDir = new MMapDirectory(_TestUtil.getTempDir("testSeekEnd"));
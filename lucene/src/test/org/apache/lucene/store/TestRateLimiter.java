@@ -0,0 +1,61 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestRateLimiter extends LuceneTestCase {
+
+  public void testPause() throws Exception {
+    RateLimiter limiter = new RateLimiter(10.0);
+    final long startNS = System.nanoTime();
+    // 1 MB at 10 MB/sec takes at least 100 msec:
+    for (int i = 0; i < 16; i++) {
+      limiter.pause(65536);
+    }
+    final long elapsedMS = (System.nanoTime() - startNS) / 1000000;
+    assertTrue("elapsedMS=" + elapsedMS, elapsedMS >= 95);
+    assertEquals(1024*1024, limiter.getTotalBytes());
+    assertTrue(limiter.getTotalPauseNS() > 0);
+  }
+
+  public void testUnlimited() throws Exception {
+    RateLimiter limiter = new RateLimiter(0.0);
+    assertEquals(0, limiter.pause(1024*1024*1024));
+    assertEquals(0, limiter.getTotalPauseNS());
+    limiter.setMbPerSec(1000.0);
+    assertEquals(1000.0, limiter.getMbPerSec(), 0.0);
+  }
+
+  public void testDirectoryWrapper() throws Exception {
+    RateLimiter limiter = new RateLimiter(100.0);
+    Directory dir = new RateLimitedDirectoryWrapper(newDirectory(), limiter);
+    IndexOutput out = dir.createOutput("foo");
+    final byte[] bytes = new byte[1000];
+    for (int i = 0; i < 100; i++) {
+      out.writeBytes(bytes, bytes.length);
+    }
+    out.close();
+    assertEquals(100000, dir.fileLength("foo"));
+    assertTrue(limiter.getTotalBytes() > 90000);
+    IndexInput in = dir.openInput("foo");
+    assertEquals(100000, in.length());
+    in.close();
+    dir.close();
+  }
+}
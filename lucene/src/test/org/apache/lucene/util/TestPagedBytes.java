@@ -0,0 +1,73 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestPagedBytes extends LuceneTestCase {
+
+  public void testDataInputOutput() throws Exception {
+    final int numIters = atLeast(3);
+    for (int iter = 0; iter < numIters; iter++) {
+      final int blockBits = _TestUtil.nextInt(random, 10, 16);
+      final int maxLength = (1 << blockBits) - 3;
+      final PagedBytes p = new PagedBytes(blockBits);
+      final List<String> values = new ArrayList<String>();
+      final List<Long> pointers = new ArrayList<Long>();
+      final int numValues = atLeast(200);
+      final BytesRef scratch = new BytesRef();
+      for (int i = 0; i < numValues; i++) {
+        final String value;
+        if (random.nextInt(10) == 7) {
+          // occasionally a value that nearly fills a block
+          final char[] chars = new char[_TestUtil.nextInt(random, maxLength/2, maxLength)];
+          Arrays.fill(chars, (char) _TestUtil.nextInt(random, 'a', 'z'));
+          value = new String(chars);
+        } else {
+          value = _TestUtil.randomUnicodeString(random, 200);
+        }
+        scratch.copy(value);
+        if (scratch.length > maxLength) {
+          continue;
+        }
+        values.add(value);
+        pointers.add(p.copyUsingLengthPrefix(scratch));
+      }
+
+      final PagedBytes.Reader reader = p.freeze(random.nextBoolean());
+      final BytesRef result = new BytesRef();
+      for (int i = 0; i < values.size(); i++) {
+        reader.fill(result, pointers.get(i));
+        assertEquals(values.get(i), result.utf8ToString());
+      }
+      assertTrue(reader.ramBytesUsed() > 0);
+    }
+  }
+
+  public void testTooLarge() throws Exception {
+    final PagedBytes p = new PagedBytes(8);
+    try {
+      p.copyUsingLengthPrefix(new BytesRef(new byte[256]));
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+}
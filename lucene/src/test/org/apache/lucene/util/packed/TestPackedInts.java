@@ -0,0 +1,119 @@
+package org.apache.lucene.util.packed;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestPackedInts extends LuceneTestCase {
+
+  public void testBitsRequired() throws Exception {
+    assertEquals(61, PackedInts.bitsRequired((long)Math.pow(2, 61)-1));
+    assertEquals(61, PackedInts.bitsRequired(0x1FFFFFFFFFFFFFFFL));
+    assertEquals(62, PackedInts.bitsRequired(0x3FFFFFFFFFFFFFFFL));
+    assertEquals(63, PackedInts.bitsRequired(0x7FFFFFFFFFFFFFFFL));
+    assertEquals(1, PackedInts.bitsRequired(0));
+    assertEquals(1, PackedInts.bitsRequired(1));
+    assertEquals(8, PackedInts.bitsRequired(255));
+    assertEquals(9, PackedInts.bitsRequired(256));
+  }
+
+  public void testMaxValues() throws Exception {
+    assertEquals("1 bit -> max == 1",
+            1, PackedInts.maxValue(1));
+    assertEquals("2 bit -> max == 3",
+            3, PackedInts.maxValue(2));
+    assertEquals("8 bit -> max == 255",
+            255, PackedInts.maxValue(8));
+    assertEquals("63 bit -> max == Long.MAX_VALUE",
+            Long.MAX_VALUE, PackedInts.maxValue(63));
+    assertEquals("64 bit -> max == Long.MAX_VALUE (same as for 63 bit)",
+            Long.MAX_VALUE, PackedInts.maxValue(64));
+  }
+
+  public void testRandomValues() throws Exception {
+    final int numIters = atLeast(3);
+    for (int iter = 0; iter < numIters; iter++) {
+      final int valueCount = _TestUtil.nextInt(random, 1, 2000);
+      for (int bitsPerValue = 1; bitsPerValue <= 64; bitsPerValue++) {
+        final PackedInts.Mutable mutable = PackedInts.getMutable(valueCount, bitsPerValue);
+        assertEquals(bitsPerValue, mutable.getBitsPerValue());
+        assertEquals(valueCount, mutable.size());
+        final long[] values = new long[valueCount];
+        final long maxValue = bitsPerValue == 64 ? -1L : PackedInts.maxValue(bitsPerValue);
+        for (int i = 0; i < valueCount; i++) {
+          values[i] = random.nextLong() & maxValue;
+          mutable.set(i, values[i]);
+        }
+        for (int i = 0; i < valueCount; i++) {
+          assertEquals("index=" + i + " bitsPerValue=" + bitsPerValue + " impl=" + mutable,
+              values[i], mutable.get(i));
+        }
+        // overwrite in random order and check neighbours are untouched
+        for (int i = 0; i < valueCount; i++) {
+          final int index = random.nextInt(valueCount);
+          values[index] = random.nextLong() & maxValue;
+          mutable.set(index, values[index]);
+        }
+        for (int i = 0; i < valueCount; i++) {
+          assertEquals("index=" + i + " bitsPerValue=" + bitsPerValue + " impl=" + mutable,
+              values[i], mutable.get(i));
+        }
+        mutable.clear();
+        for (int i = 0; i < valueCount; i++) {
+          assertEquals(0, mutable.get(i));
+        }
+      }
+    }
+  }
+
+  public void testGrowableWriter() {
+    final int valueCount = 113 + random.nextInt(1111);
+    GrowableWriter wrt = new GrowableWriter(1, valueCount);
+    wrt.set(4, 2);
+    wrt.set(7, 10);
+    wrt.set(valueCount - 10, 99);
+    wrt.set(99, 999);
+    wrt.set(valueCount - 1, 1 << 10);
+    assertEquals(1 << 10, wrt.get(valueCount - 1));
+    wrt.set(99, (1 << 23) - 1);
+    assertEquals(1 << 10, wrt.get(valueCount - 1));
+    wrt.set(1, Long.MAX_VALUE);
+    assertEquals(2, wrt.get(4));
+    assertEquals((1 << 23) - 1, wrt.get(99));
+    assertEquals(10, wrt.get(7));
+    assertEquals(99, wrt.get(valueCount - 10));
+    assertEquals(1 << 10, wrt.get(valueCount - 1));
+    assertEquals(Long.MAX_VALUE, wrt.get(1));
+    assertEquals(63, wrt.getBitsPerValue());
+
+    GrowableWriter smaller = wrt.resize(10);
+    assertEquals(10, smaller.size());
+    assertEquals(2, smaller.get(4));
+    assertEquals(Long.MAX_VALUE, smaller.get(1));
+  }
+
+  public void testSingleValue() throws Exception {
+    for (int bitsPerValue = 1; bitsPerValue <= 64; bitsPerValue++) {
+      PackedInts.Mutable mutable = PackedInts.getMutable(1, bitsPerValue);
+      final long maxValue = bitsPerValue == 64 ? -1L : PackedInts.maxValue(bitsPerValue);
+      mutable.set(0, maxValue);
+      assertEquals(maxValue, mutable.get(0));
+    }
+  }
+}
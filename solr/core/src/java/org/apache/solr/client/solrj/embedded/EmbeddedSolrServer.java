@@ -17,11 +17,15 @@
 
 package org.apache.solr.client.solrj.embedded;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.StreamingBinaryResponseParser;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
@@ -142,6 +146,14 @@ public class EmbeddedSolrServer extends SolrServer
         throw new SolrServerException( rsp.getException() );
       }
       
+      // the streaming parser needs the documents to be written out
+      if( request.getResponseParser() instanceof StreamingBinaryResponseParser ) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryResponseWriter().write( out, req, rsp );
+        InputStream in = new ByteArrayInputStream( out.toByteArray() );
+        return request.getResponseParser().processResponse( in, null );
+      }
+
       // Now write it out
       NamedList<Object> normalized = getParsedResponse(req, rsp);
       return normalized;
@@ -19,6 +19,8 @@ package org.apache.solr.core;
 import java.io.IOException;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.store.Directory;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.util.plugin.NamedListInitializedPlugin;
@@ -28,9 +30,10 @@ import org.apache.solr.util.plugin.NamedListInitializedPlugin;
  */
 public abstract class IndexReaderFactory implements NamedListInitializedPlugin {
   protected int termInfosIndexDivisor = 1;//IndexReader.DEFAULT_TERMS_INDEX_DIVISOR;  Set this once Lucene makes this public.
+  protected int termInfosCacheSize = IndexWriterConfig.DEFAULT_READER_TERMS_CACHE_SIZE;
   /**
-   * Potentially initializes {@link #termInfosIndexDivisor}.  Overriding classes should call super.init() in order
-   * to make sure termInfosIndexDivisor is set.
+   * Potentially initializes {@link #termInfosIndexDivisor} and {@link #termInfosCacheSize}.  Overriding classes
+   * should call super.init() in order to make sure they are set.
    * <p>
    * <code>init</code> will be called just once, immediately after creation.
    * <p>
@@ -43,6 +46,10 @@ public abstract class IndexReaderFactory implements NamedListInitializedPlugin {
     if (v != null) {
       termInfosIndexDivisor = v.intValue();
     }
+    v = (Integer)args.get("setTermInfosCacheSize");
+    if (v != null) {
+      termInfosCacheSize = v.intValue();
+    }
   }
 
   /**
@@ -53,6 +60,14 @@ public abstract class IndexReaderFactory implements NamedListInitializedPlugin {
     return termInfosIndexDivisor;
   }
 
+  /**
+   *
+   * @return The setting of {@link #termInfosCacheSize}, the number of terms each segment caches the TermInfo of
+   */
+  public int getTermInfosCacheSize() {
+    return termInfosCacheSize;
+  }
+
   /**
    * Creates a new IndexReader instance using the given Directory.
    * 
@@ -63,4 +78,22 @@ public abstract class IndexReaderFactory implements NamedListInitializedPlugin {
    */
   public abstract IndexReader newReader(Directory indexDir, boolean readOnly)
       throws IOException;
+
+  /**
+   * Creates a new near real-time IndexReader over the segments of the given writer.
+   * The segment readers are shared with the writer, so they load the terms index
+   * with the divisor and cache size of the writer's config; Solr's update handler
+   * configures its writer with {@link #termInfosIndexDivisor} and
+   * {@link #termInfosCacheSize}.
+   *
+   * @param writer the writer to open the reader from
+   * @param applyAllDeletes whether the reader must see all buffered deletes
+   * @return An IndexReader instance
+   * @throws IOException
+   * @see IndexReader#open(IndexWriter, boolean)
+   */
+  public IndexReader newReader(IndexWriter writer, boolean applyAllDeletes)
+      throws IOException {
+    return IndexReader.open(writer, applyAllDeletes);
+  }
 }
@@ -0,0 +1,64 @@
+package org.apache.solr.core;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Factory to instantiate {@link org.apache.lucene.store.NRTCachingDirectory}
+ * around {@link org.apache.lucene.store.FSDirectory#open}, for use with soft commits:
+ * newly flushed segments, and small merged ones, stay in RAM until the next hard commit.
+ *
+ * Can set the following parameters:
+ * <ul>
+ *  <li>maxMergeSizeMB -- Merged segments up to this size are cached (default 4)</li>
+ *  <li>maxCachedMB -- Nothing more is cached once the cache holds this much (default 48)</li>
+ * </ul>
+ *
+ **/
+public class NRTCachingDirectoryFactory extends DirectoryFactory {
+  public static final double DEFAULT_MAX_MERGE_SIZE_MB = 4;
+  public static final double DEFAULT_MAX_CACHED_MB = 48;
+
+  private double maxMergeSizeMB = DEFAULT_MAX_MERGE_SIZE_MB;
+  private double maxCachedMB = DEFAULT_MAX_CACHED_MB;
+
+  @Override
+  public Directory open(String path) throws IOException {
+    return new NRTCachingDirectory(FSDirectory.open(new File(path)), maxMergeSizeMB, maxCachedMB);
+  }
+
+  @Override
+  public void init(NamedList args) {
+    SolrParams params = SolrParams.toSolrParams( args );
+    maxMergeSizeMB = params.getDouble("maxMergeSizeMB", DEFAULT_MAX_MERGE_SIZE_MB);
+    if (maxMergeSizeMB <= 0){
+      throw new IllegalArgumentException("maxMergeSizeMB must be greater than 0");
+    }
+    maxCachedMB = params.getDouble("maxCachedMB", DEFAULT_MAX_CACHED_MB);
+    if (maxCachedMB <= 0){
+      throw new IllegalArgumentException("maxCachedMB must be greater than 0");
+    }
+  }
+}
@@ -146,6 +146,11 @@ public class SolrConfig extends Config {
     queryResultWindowSize = Math.max(1, getInt("query/queryResultWindowSize", 1));
     queryResultMaxDocsCached = getInt("query/queryResultMaxDocsCached", Integer.MAX_VALUE);
     enableLazyFieldLoading = getBool("query/enableLazyFieldLoading", false);
+    usePackedStringIndex = getBool("query/usePackedStringIndex", false);
+    autowarmThreads = Math.max(1, getInt("query/autowarmThreads", 1));
+    segmentFilterCacheSize = getInt("query/segmentFilterCacheSize", 0);
+    maxFacetThreads = Math.max(1, getInt("query/maxFacetThreads", Runtime.getRuntime().availableProcessors()));
+    searchThreads = Math.max(1, getInt("query/searchThreads", 1));
 
     
     filterCacheConfig = CacheConfig.getConfig(this, "query/filterCache");
@@ -221,7 +226,9 @@ public class SolrConfig extends Config {
     return new UpdateHandlerInfo(get("updateHandler/@class",null),
             getInt("updateHandler/autoCommit/maxDocs",-1),
             getInt("updateHandler/autoCommit/maxTime",-1),
-            getInt("updateHandler/commitIntervalLowerBound",-1));
+            getInt("updateHandler/commitIntervalLowerBound",-1),
+            getInt("updateHandler/autoSoftCommit/maxDocs",-1),
+            getInt("updateHandler/autoSoftCommit/maxTime",-1));
   }
 
   private void loadPluginInfo(Class clazz, String tag, boolean requireName, boolean requireClass) {
@@ -256,6 +263,11 @@ public class SolrConfig extends Config {
   public final int queryResultWindowSize;
   public final int queryResultMaxDocsCached;
   public final boolean enableLazyFieldLoading;
+  public final boolean usePackedStringIndex;
+  public final int autowarmThreads;
+  public final int segmentFilterCacheSize;
+  public final int maxFacetThreads;
+  public final int searchThreads;
   public final boolean reopenReaders;
   // DocSet
   public final float hashSetInverseLoadFactor;
@@ -408,7 +420,8 @@ public class SolrConfig extends Config {
 
   public static class UpdateHandlerInfo{
     public final String className;
-    public final int autoCommmitMaxDocs,autoCommmitMaxTime,commitIntervalLowerBound;
+    public final int autoCommmitMaxDocs,autoCommmitMaxTime,commitIntervalLowerBound,
+        autoSoftCommmitMaxDocs,autoSoftCommmitMaxTime;
 
     /**
      * @param className
@@ -417,10 +430,25 @@ public class SolrConfig extends Config {
      * @param commitIntervalLowerBound set -1 as default
      */
     public UpdateHandlerInfo(String className, int autoCommmitMaxDocs, int autoCommmitMaxTime, int commitIntervalLowerBound) {
+      this(className, autoCommmitMaxDocs, autoCommmitMaxTime, commitIntervalLowerBound, -1, -1);
+    }
+
+    /**
+     * @param className
+     * @param autoCommmitMaxDocs set -1 as default
+     * @param autoCommmitMaxTime set -1 as default
+     * @param commitIntervalLowerBound set -1 as default
+     * @param autoSoftCommmitMaxDocs set -1 as default
+     * @param autoSoftCommmitMaxTime set -1 as default
+     */
+    public UpdateHandlerInfo(String className, int autoCommmitMaxDocs, int autoCommmitMaxTime, int commitIntervalLowerBound,
+        int autoSoftCommmitMaxDocs, int autoSoftCommmitMaxTime) {
       this.className = className;
       this.autoCommmitMaxDocs = autoCommmitMaxDocs;
       this.autoCommmitMaxTime = autoCommmitMaxTime;
       this.commitIntervalLowerBound = commitIntervalLowerBound;
+      this.autoSoftCommmitMaxDocs = autoSoftCommmitMaxDocs;
+      this.autoSoftCommmitMaxTime = autoSoftCommmitMaxTime;
     } 
   }
 
@@ -45,6 +45,7 @@ import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.response.XMLResponseWriter;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.SegmentFilterCache;
 import org.apache.solr.search.SolrFieldCacheMBean;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.ValueSourceParser;
@@ -99,6 +100,9 @@ public final class SolrCore implements SolrInfoMBean {
   private final Map<String,SearchComponent> searchComponents;
   private final Map<String,UpdateRequestProcessorChain> updateProcessorChains;
   private final Map<String, SolrInfoMBean> infoRegistry;
+  private final SegmentFilterCache segmentFilterCache;
+  private final ExecutorService facetExecutor;
+  private final ExecutorService segmentSearchExecutor;
   private IndexDeletionPolicyWrapper solrDelPolicy;
   private DirectoryFactory directoryFactory;
   private IndexReaderFactory indexReaderFactory;
@@ -258,6 +262,34 @@ public final class SolrCore implements SolrInfoMBean {
     return infoRegistry;
   }
 
+  /**
+   * Returns the per segment filter cache shared by the searchers of this
+   * core, or null if <code>segmentFilterCacheSize</code> is not configured.
+   */
+  public SegmentFilterCache getSegmentFilterCache() {
+    return segmentFilterCache;
+  }
+
+  /**
+   * Returns the executor shared by the requests of this core to compute facets
+   * in parallel (<code>facet.threads</code>).  It has at most <code>maxFacetThreads</code>
+   * threads and rejects tasks while they are all busy, so callers must be
+   * prepared to do the work themselves.
+   */
+  public ExecutorService getFacetExecutor() {
+    return facetExecutor;
+  }
+
+  /**
+   * Returns the executor shared by the requests of this core to search the segments
+   * of the index in parallel, or null if <code>searchThreads</code> is 1 and they are
+   * searched one after the other.  Like the facet executor, it rejects tasks while
+   * all of its threads are busy.
+   */
+  public ExecutorService getSegmentSearchExecutor() {
+    return segmentSearchExecutor;
+  }
+
    private void initDeletionPolicy() {
      PluginInfo info = solrConfig.getPluginInfo(IndexDeletionPolicy.class.getName());
      IndexDeletionPolicy delPolicy = null;
@@ -536,6 +568,18 @@ public final class SolrCore implements SolrInfoMBean {
     }
 
     infoRegistry.put("fieldCache", new SolrFieldCacheMBean());
+    if (config.segmentFilterCacheSize > 0) {
+      segmentFilterCache = new SegmentFilterCache(config.segmentFilterCacheSize);
+      infoRegistry.put("segmentFilterCache", segmentFilterCache);
+    } else {
+      segmentFilterCache = null;
+    }
+    facetExecutor = new ThreadPoolExecutor(0, config.maxFacetThreads, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>());
+    // the calling thread searches too, so searchThreads-1 more are needed
+    segmentSearchExecutor = config.searchThreads <= 1 ? null
+        : new ThreadPoolExecutor(0, config.searchThreads - 1, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>());
 
     this.schema = schema;
     this.dataDir = dataDir;
@@ -710,6 +754,12 @@ public final class SolrCore implements SolrInfoMBean {
     } catch (Exception e) {
       SolrException.log(log,e);
     }
+    try {
+      facetExecutor.shutdown();
+      if (segmentSearchExecutor != null) segmentSearchExecutor.shutdown();
+    } catch (Exception e) {
+      SolrException.log(log,e);
+    }
     try {
       searcherExecutor.shutdown();
       if (!searcherExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
@@ -1010,6 +1060,19 @@ public final class SolrCore implements SolrInfoMBean {
    * @throws IOException
    */
   public RefCounted<SolrIndexSearcher> getSearcher(boolean forceNew, boolean returnSearcher, final Future[] waitSearcher) throws IOException {
+    return getSearcher(forceNew, returnSearcher, waitSearcher, null);
+  }
+
+  /**
+   * Same as {@link #getSearcher(boolean,boolean,Future[])}, but if a new searcher is opened
+   * and <tt>nrtWriter!=null</tt>, its reader is opened from that writer with
+   * {@link IndexReader#open(IndexWriter,boolean)}: it sees all changes made by the writer,
+   * including ones that are not committed yet.
+   *
+   * @param nrtWriter          if non-null, the writer to open the new searcher's reader from.
+   * @throws IOException
+   */
+  public RefCounted<SolrIndexSearcher> getSearcher(boolean forceNew, boolean returnSearcher, final Future[] waitSearcher, IndexWriter nrtWriter) throws IOException {
     // it may take some time to open an index.... we may need to make
     // sure that two threads aren't trying to open one at the same time
     // if it isn't necessary.
@@ -1074,7 +1137,11 @@ public final class SolrCore implements SolrInfoMBean {
       File indexDirFile = new File(getIndexDir()).getCanonicalFile();
       File newIndexDirFile = new File(newIndexDir).getCanonicalFile();
       
-      if (newestSearcher != null && solrConfig.reopenReaders
+      if (nrtWriter != null) {
+        // shares the segment readers the writer keeps pooled
+        IndexReader newReader = getIndexReaderFactory().newReader(nrtWriter, true);
+        tmp = new SolrIndexSearcher(this, schema, "main", newReader, true, true);
+      } else if (newestSearcher != null && solrConfig.reopenReaders
           && indexDirFile.equals(newIndexDirFile)) {
         IndexReader currentReader = newestSearcher.get().getReader();
         IndexReader newReader = currentReader.reopen();
@@ -213,6 +213,9 @@ class JsonLoader extends ContentStreamLoader {
           else if( XmlUpdateRequestHandler.WAIT_FLUSH.equals( key ) ) {
             cmd.waitFlush = parser.getBoolean();
           }
+          else if( UpdateParams.SOFT_COMMIT.equals( key ) ) {
+            cmd.softCommit = parser.getBoolean();
+          }
           else {
             throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Unknown key: "+key+" ["+parser.getPosition()+"]" );
           }
@@ -40,9 +40,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.Adler32;
@@ -90,6 +100,17 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
 
   private final Map<String, FileInfo> confFileInfoCache = new HashMap<String, FileInfo>();
 
+  private final Map<String, Future<FileInfo>> indexFileInfoCache = new HashMap<String, Future<FileInfo>>();
+
+  // reads one file at a time, so that the checksums do not compete with searches and downloads for the disk
+  private final ExecutorService checksumService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "replicationChecksums");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
   private Integer reserveCommitDuration = SnapPuller.readInterval("00:00:10");
 
   private volatile IndexCommit indexCommitPoint;
@@ -324,15 +345,8 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
     core.getDeletionPolicy().setReserveDuration(version, reserveCommitDuration);
     List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
     try {
-      //get all the files in the commit
-      //use a set to workaround possible Lucene bug which returns same file name multiple times
-      Collection<String> files = new HashSet<String>(commit.getFileNames());
-      for (String fileName : files) {
-        if(fileName.endsWith(".lock")) continue;
-        File file = new File(core.getIndexDir(), fileName);
-        Map<String, Object> fileMeta = getFileInfo(file);
-        result.add(fileMeta);
-      }
+      //get all the files in the commit, with their checksums
+      result = getIndexFileInfoFromCache(commit);
     } catch (IOException e) {
       rsp.add("status", "unable to get file names for given indexversion");
       rsp.add("exception", e);
@@ -378,6 +392,109 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
     return confFiles;
   }
 
+  /**
+   * Index files are never modified once written, so the checksum of each file of a commit point is computed only
+   * once, in the background, as soon as the commit point is published (see {@link #cacheIndexFileInfo}), and cached by
+   * file name. Slaves use it to verify each downloaded file as a whole, instead of verifying every packet.
+   * <p/>
+   * A file list request never reads the files: the files whose checksum is not computed yet are listed without one,
+   * and the slave falls back to checksums per packet for them.
+   */
+  List<Map<String, Object>> getIndexFileInfoFromCache(IndexCommit commit) throws IOException {
+    //use a set to workaround possible Lucene bug which returns same file name multiple times
+    Collection<String> files = new HashSet<String>(commit.getFileNames());
+    List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+    File indexDir = new File(core.getIndexDir());
+    Map<String, Future<FileInfo>> futures = new HashMap<String, Future<FileInfo>>();
+    synchronized (indexFileInfoCache) {
+      // a commit point that was not published, such as an older one, gets its checksums computed for the next time
+      submitChecksums(files, indexDir);
+      for (String fileName : files) {
+        futures.put(fileName, indexFileInfoCache.get(fileName));
+      }
+    }
+    for (String fileName : files) {
+      if (fileName.endsWith(".lock")) continue;
+      File f = new File(indexDir, fileName);
+      FileInfo info = getIfDone(futures.get(fileName));
+      if (info == null || info.lastmodified != f.lastModified() || info.size != f.length()) {
+        result.add(getFileInfo(f));
+      } else {
+        result.add(info.getAsMap());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Starts computing the checksums of the files of a commit point in the background, and removes the files which are
+   * not part of it from the cache. Called when the commit point becomes replicatable, while the update handler may
+   * hold its commit lock, so it must stay cheap.
+   */
+  private void cacheIndexFileInfo(IndexCommit commit) {
+    if (commit == null) return;
+    try {
+      Collection<String> files = commit.getFileNames();
+      synchronized (indexFileInfoCache) {
+        indexFileInfoCache.keySet().retainAll(files);
+        submitChecksums(files, new File(core.getIndexDir()));
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to get file names for indexCommit version: " + commit.getVersion(), e);
+    }
+  }
+
+  /**
+   * Submits the computation of the checksum of each file that has none yet, or whose checksum was computed for a
+   * previous file with the same name. Concurrent requests share the computation of a file. Called with the lock of
+   * the cache held.
+   */
+  private void submitChecksums(Collection<String> files, File indexDir) {
+    for (String fileName : files) {
+      if (fileName.endsWith(".lock")) continue;
+      final File f = new File(indexDir, fileName);
+      Future<FileInfo> future = indexFileInfoCache.get(fileName);
+      if (future != null) {
+        FileInfo info = getIfDone(future);
+        if (!future.isDone() || (info != null && info.lastmodified == f.lastModified() && info.size == f.length())) {
+          continue;
+        }
+      }
+      try {
+        indexFileInfoCache.put(fileName, checksumService.submit(new Callable<FileInfo>() {
+          public FileInfo call() {
+            // read the attributes first: a file that is rewritten meanwhile does not match them anymore
+            long lastModified = f.lastModified();
+            long size = f.length();
+            Long checksum = getCheckSum(new Adler32(), f);
+            return checksum == null ? null : new FileInfo(lastModified, f.getName(), size, checksum);
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        // the core is closing
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the checksum computed by <code>future</code>, or null if it is not done, or failed to read the file.
+   */
+  private static FileInfo getIfDone(Future<FileInfo> future) {
+    if (future == null || !future.isDone()) return null;
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      LOG.warn("Exception in finding checksum", e.getCause());
+      return null;
+    } catch (CancellationException e) {
+      return null;
+    }
+  }
+
   static class FileInfo {
     long lastmodified;
     String name;
@@ -534,6 +651,7 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
         addVal(list, SnapPuller.TIMES_FAILED, props, Integer.class);
         addVal(list, SnapPuller.TIMES_INDEX_REPLICATED, props, Integer.class);
         addVal(list, SnapPuller.LAST_CYCLE_BYTES_DOWNLOADED, props, Long.class);
+        addVal(list, SnapPuller.LAST_CYCLE_BYTES_AVOIDED, props, Long.class);
         addVal(list, SnapPuller.TIMES_CONFIG_REPLICATED, props, Integer.class);
         addVal(list, SnapPuller.CONF_FILES_REPLICATED, props, String.class);
       }
@@ -608,6 +726,7 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
       addVal(slave, SnapPuller.TIMES_CONFIG_REPLICATED, props, Integer.class);
       addVal(slave, SnapPuller.CONF_FILES_REPLICATED_AT, props, Integer.class);
       addVal(slave, SnapPuller.LAST_CYCLE_BYTES_DOWNLOADED, props, Long.class);
+      addVal(slave, SnapPuller.LAST_CYCLE_BYTES_AVOIDED, props, Long.class);
       addVal(slave, SnapPuller.TIMES_FAILED, props, Integer.class);
       addVal(slave, SnapPuller.REPLICATION_FAILED_AT, props, Date.class);
       addVal(slave, SnapPuller.PREVIOUS_CYCLE_TIME_TAKEN, props, Long.class);
@@ -630,9 +749,14 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
             bytesToDownload += (Long) file.get(SIZE);
           }
 
+          // the files which were already on the slave are not downloaded
+          long bytesAvoided = snapPuller.getBytesAvoided();
+          bytesToDownload -= bytesAvoided;
+
           slave.add("filesToDownload", filesToDownload);
           slave.add("numFilesToDownload", String.valueOf(filesToDownload.size()));
           slave.add("bytesToDownload", readableSize(bytesToDownload));
+          slave.add("bytesAvoided", readableSize(bytesAvoided));
 
           long bytesDownloaded = 0;
           List<String> filesDownloaded = new ArrayList<String>();
@@ -768,6 +892,7 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
     IndexCommit commitPoint = core.getDeletionPolicy().getLatestCommit();
     if(replicateOnCommit || (replicateOnOptimize && commitPoint.isOptimized())) {
       indexCommitPoint = commitPoint;
+      cacheIndexFileInfo(commitPoint);
     }
   }
 
@@ -851,6 +976,7 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
               }
               ***/
             }
+            cacheIndexFileInfo(indexCommitPoint);
           }
           if (core.getUpdateHandler() instanceof DirectUpdateHandler2) {
             ((DirectUpdateHandler2) core.getUpdateHandler()).forceOpenWriter();
@@ -894,6 +1020,7 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
         if (snapPuller != null) {
           snapPuller.destroy();
         }
+        checksumService.shutdownNow();
       }
 
       @Override
@@ -946,6 +1073,7 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
         if (getCommit) {
           // IndexCommit oldCommitPoint = indexCommitPoint;
           indexCommitPoint = currentCommitPoint;
+          cacheIndexFileInfo(currentCommitPoint);
 
           // We don't need to save commit points for replication, the SolrDeletionPolicy
           // always saves the last commit point (and the last optimized commit point, if needed)
@@ -1029,6 +1157,11 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
           //if offset is mentioned move the pointer to that point
           if (offset != -1)
             channel.position(offset);
+          if (!useChecksum && !Boolean.parseBoolean(compress)) {
+            // the bytes are sent as they are: let the channel copy them to the response
+            transferPackets(channel, out, len);
+            return;
+          }
           byte[] buf = new byte[(len == -1 || len > PACKET_SZ) ? PACKET_SZ : len];
           Checksum checksum = null;
           if (useChecksum)
@@ -1068,6 +1201,42 @@ public class ReplicationHandler extends RequestHandlerBase implements SolrCoreAw
     }
 
 
+    /**
+     * Writes the rest of the file in packets of at most <code>len</code> (or PACKET_SZ if it is -1 or larger) bytes,
+     * without checksums, copying the bytes of each packet with {@link FileChannel#transferTo} instead of reading them
+     * into a buffer first.
+     */
+    private void transferPackets(FileChannel channel, OutputStream out, int len) throws IOException {
+      WritableByteChannel outChannel = Channels.newChannel(out);
+      int maxPacketSize = (len == -1 || len > PACKET_SZ) ? PACKET_SZ : len;
+      long position = channel.position();
+      long size = channel.size();
+      int packetsWritten = 0;
+      while (position < size) {
+        int packetSize = (int) Math.min(maxPacketSize, size - position);
+        fos.writeInt(packetSize);
+        // the header must go out before the bytes which bypass fos
+        fos.flush();
+        long transferred = 0;
+        while (transferred < packetSize) {
+          long n = channel.transferTo(position + transferred, packetSize - transferred, outChannel);
+          if (n <= 0) {
+            throw new EOFException("Unexpected end of file: " + params.get(FILE));
+          }
+          transferred += n;
+        }
+        out.flush();
+        position += packetSize;
+        if (indexVersion != null && (packetsWritten % 5 == 0)) {
+          //after every 5 packets reserve the commitpoint for some time
+          delPolicy.setReserveDuration(indexVersion, reserveCommitDuration);
+        }
+        packetsWritten++;
+      }
+      writeNothing();
+      fos.close();
+    }
+
     /**
      * Used to write a marker for EOF
      */
@@ -21,6 +21,7 @@ import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.io.IOUtils;
 import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.FastInputStream;
 import org.apache.solr.common.util.JavaBinCodec;
@@ -36,6 +37,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
@@ -85,6 +88,9 @@ public class SnapPuller {
 
   private volatile Map<String, Object> currentFile;
 
+  // bytes of the index commit point not downloaded because the files were already on the slave
+  private volatile long bytesAvoided;
+
   private volatile FileFetcher fileFetcher;
 
   private volatile ExecutorService fsyncService;
@@ -95,6 +101,14 @@ public class SnapPuller {
 
   private boolean useExternal = false;
 
+  private final int downloadThreads;
+
+  // shared by all downloads, null if they are not throttled
+  private final RateLimiter rateLimiter;
+
+  // the temp index dir of the last attempt if it failed, its files are downloaded again only if they changed
+  private volatile File resumeIndexDir;
+
   /**
    * Disable the timer task for polling
    */
@@ -131,6 +145,13 @@ public class SnapPuller {
     String compress = (String) initArgs.get(COMPRESSION);
     useInternal = INTERNAL.equals(compress);
     useExternal = EXTERNAL.equals(compress);
+    String threads = (String) initArgs.get(DOWNLOAD_THREADS);
+    downloadThreads = threads == null ? 1 : Integer.parseInt(threads);
+    if (downloadThreads < 1)
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+              "'" + DOWNLOAD_THREADS + "' must be at least 1");
+    String maxMBPerSec = (String) initArgs.get(MAX_DOWNLOAD_MB_PER_SEC);
+    rateLimiter = maxMBPerSec == null ? null : new RateLimiter(Double.parseDouble(maxMBPerSec));
     String connTimeout = (String) initArgs.get(HTTP_CONN_TIMEOUT);
     String readTimeout = (String) initArgs.get(HTTP_READ_TIMEOUT);
     String httpBasicAuthUser = (String) initArgs.get(HTTP_BASIC_AUTH_USER);
@@ -266,6 +287,8 @@ public class SnapPuller {
       if (commit.getVersion() == latestVersion && commit.getGeneration() == latestGeneration) {
         //master and slave are alsready in sync just return
         LOG.info("Slave in sync with master.");
+        delTree(resumeIndexDir);
+        resumeIndexDir = null;
         return false;
       }
       LOG.info("Master's version: " + latestVersion + ", generation: " + latestGeneration);
@@ -276,6 +299,7 @@ public class SnapPuller {
       // this can happen if the commit point is deleted before we fetch the file list.
       if(filesToDownload.isEmpty()) return false;
       LOG.info("Number of files in latest index in master: " + filesToDownload.size());
+      bytesAvoided = 0;
 
       // Create the sync service
       fsyncService = Executors.newSingleThreadExecutor();
@@ -284,7 +308,14 @@ public class SnapPuller {
       // if the generateion of master is older than that of the slave , it means they are not compatible to be copied
       // then a new index direcory to be created and all the files need to be copied
       boolean isFullCopyNeeded = commit.getGeneration() >= latestGeneration;
-      File tmpIndexDir = createTempindexDir(core);
+      File tmpIndexDir = resumeIndexDir;
+      resumeIndexDir = null;
+      if (tmpIndexDir != null && tmpIndexDir.isDirectory()) {
+        LOG.info("Resuming the download of index files in: " + tmpIndexDir);
+        deleteStaleDownloads(tmpIndexDir);
+      } else {
+        tmpIndexDir = createTempindexDir(core);
+      }
       if (isIndexStale())
         isFullCopyNeeded = true;
       successfulInstall = false;
@@ -330,8 +361,15 @@ public class SnapPuller {
       } catch (Exception e) {
         throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Index fetch failed : ", e);
       } finally {
-        if (deleteTmpIdxDir) delTree(tmpIndexDir);
-        else delTree(indexDir);
+        if (deleteTmpIdxDir) {
+          // keep the partially downloaded files for the next attempt, if they can be verified
+          if (!successfulInstall && hasFileChecksums(filesToDownload) && tmpIndexDir.isDirectory())
+            resumeIndexDir = tmpIndexDir;
+          else
+            delTree(tmpIndexDir);
+        } else {
+          delTree(indexDir);
+        }
       }
       return successfulInstall;
     } finally {
@@ -399,6 +437,7 @@ public class SnapPuller {
       }
 
       props.setProperty(LAST_CYCLE_BYTES_DOWNLOADED, String.valueOf(getTotalBytesDownloaded(this)));
+      props.setProperty(LAST_CYCLE_BYTES_AVOIDED, String.valueOf(bytesAvoided));
       if (!successfulInstall) {
         int numFailures = 1;
         if (props.containsKey(TIMES_FAILED)) {
@@ -536,20 +575,156 @@ public class SnapPuller {
    * @param tmpIdxDir               the directory to which files need to be downloadeed to
    * @param latestVersion         the version number
    */
-  private void downloadIndexFiles(boolean downloadCompleteIndex, File tmpIdxDir, long latestVersion) throws Exception {
+  private void downloadIndexFiles(boolean downloadCompleteIndex, final File tmpIdxDir, final long latestVersion) throws Exception {
+    List<Map<String, Object>> files = new ArrayList<Map<String, Object>>();
     for (Map<String, Object> file : filesToDownload) {
       File localIndexFile = new File(solrCore.getIndexDir(), (String) file.get(NAME));
-      if (!localIndexFile.exists() || downloadCompleteIndex) {
-        fileFetcher = new FileFetcher(tmpIdxDir, file, (String) file.get(NAME), false, latestVersion);
-        currentFile = file;
-        fileFetcher.fetchFile();
-        filesDownloaded.add(new HashMap<String, Object>(file));
-      } else {
+      if (!localIndexFile.exists()) {
+        files.add(file);
+      } else if (!downloadCompleteIndex) {
         LOG.info("Skipping download for " + localIndexFile);
+        bytesAvoided += (Long) file.get(SIZE);
+      } else if (reuseLocalFile(localIndexFile, tmpIdxDir, file)) {
+        bytesAvoided += (Long) file.get(SIZE);
+      } else {
+        files.add(file);
+      }
+    }
+    if (downloadThreads == 1 || files.size() <= 1) {
+      for (Map<String, Object> file : files) {
+        downloadIndexFile(tmpIdxDir, file, latestVersion);
+      }
+      return;
+    }
+
+    ExecutorService downloadService = Executors.newFixedThreadPool(Math.min(downloadThreads, files.size()));
+    boolean success = false;
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (final Map<String, Object> file : files) {
+        futures.add(downloadService.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            downloadIndexFile(tmpIdxDir, file, latestVersion);
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof Error) throw (Error) cause;
+          throw (Exception) cause;
+        }
+      }
+      success = true;
+    } finally {
+      // if one download failed, the others give up after their current packet
+      if (!success) stop = true;
+      downloadService.shutdown();
+      downloadService.awaitTermination(3600, TimeUnit.SECONDS);
+    }
+  }
+
+  private void downloadIndexFile(File tmpIdxDir, Map<String, Object> file, long latestVersion) throws Exception {
+    FileFetcher fetcher = new FileFetcher(tmpIdxDir, file, (String) file.get(NAME), false, latestVersion);
+    currentFile = file;
+    fileFetcher = fetcher;
+    fetcher.fetchFile();
+    filesDownloaded.add(new HashMap<String, Object>(file));
+  }
+
+  /**
+   * When a full copy of the index is needed, a file of the current index can still be reused if it has the same size
+   * and checksum as the master's file with the same name: the new index dir gets a hard link to it (or a copy, if hard
+   * links are not supported) instead of downloading it again.
+   *
+   * @return true if the file was reused
+   */
+  private boolean reuseLocalFile(File localIndexFile, File tmpIdxDir, Map<String, Object> file) {
+    Long checksum = (Long) file.get(CHECKSUM);
+    if (checksum == null || localIndexFile.length() != (Long) file.get(SIZE))
+      return false;
+    File reusedFile = new File(tmpIdxDir, localIndexFile.getName());
+    // a file left by an earlier attempt is verified by the FileFetcher
+    if (reusedFile.exists())
+      return false;
+    if (!checksum.equals(ReplicationHandler.getCheckSum(new Adler32(), localIndexFile)))
+      return false;
+    try {
+      linkOrCopyFile(localIndexFile, reusedFile);
+    } catch (IOException e) {
+      LOG.warn("Unable to reuse local file: " + localIndexFile + ", it will be downloaded", e);
+      reusedFile.delete();
+      return false;
+    }
+    LOG.info("Reusing local file: " + localIndexFile);
+    return true;
+  }
+
+  // java.nio.file.Files.createLink(Path, Path) and File.toPath(), only available in Java 7 and later
+  private static final Method CREATE_LINK, TO_PATH;
+  static {
+    Method createLink = null, toPath = null;
+    try {
+      Class<?> path = Class.forName("java.nio.file.Path");
+      createLink = Class.forName("java.nio.file.Files").getMethod("createLink", path, path);
+      toPath = File.class.getMethod("toPath");
+    } catch (Exception e) {
+      // files are copied instead
+      createLink = toPath = null;
+    }
+    CREATE_LINK = createLink;
+    TO_PATH = toPath;
+  }
+
+  /**
+   * Creates a hard link to a file, or copies it if hard links cannot be created.
+   */
+  static void linkOrCopyFile(File src, File dest) throws IOException {
+    if (CREATE_LINK != null) {
+      try {
+        CREATE_LINK.invoke(null, TO_PATH.invoke(dest), TO_PATH.invoke(src));
+        return;
+      } catch (InvocationTargetException e) {
+        // e.g. the file system does not support hard links
+        LOG.warn("Unable to create a hard link to " + src + ", copying it: " + e.getCause());
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    FileUtils.copyFile(src, dest);
+  }
+
+  /**
+   * Deletes the files left by an earlier attempt which are not part of the index commit point to download.
+   */
+  private void deleteStaleDownloads(File tmpIdxDir) {
+    Set<String> names = new HashSet<String>();
+    for (Map<String, Object> file : filesToDownload) {
+      names.add((String) file.get(NAME));
+    }
+    File[] files = tmpIdxDir.listFiles();
+    if (files == null) return;
+    for (File file : files) {
+      if (!names.contains(file.getName()) && !file.delete()) {
+        LOG.warn("Unable to delete file : " + file);
       }
     }
   }
 
+  /**
+   * Masters which do not send the checksum of each file send a checksum with every packet.
+   */
+  private static boolean hasFileChecksums(List<Map<String, Object>> files) {
+    if (files == null || files.isEmpty()) return false;
+    for (Map<String, Object> file : files) {
+      if (file.get(CHECKSUM) == null) return false;
+    }
+    return true;
+  }
+
   /**
    * All the files which are common between master and slave must have same timestamp and size else we assume they are
    * not compatible (stale).
@@ -804,13 +979,18 @@ public class SnapPuller {
     return tmp == null ? Collections.EMPTY_LIST : new ArrayList<Map<String, Object>>(tmp);
   }
 
+  long getBytesAvoided() {
+    return bytesAvoided;
+  }
+
   Map<String, Object> getCurrentFile() {
     Map<String, Object> tmp = currentFile;
     FileFetcher tmpFileFetcher = fileFetcher;
     if (tmp == null)
       return null;
     tmp = new HashMap<String, Object>(tmp);
-    if (tmpFileFetcher != null)
+    // with several downloads running, they may have been set by different ones
+    if (tmpFileFetcher != null && tmpFileFetcher.fileName.equals(tmp.get(NAME)))
       tmp.put("bytesDownloaded", tmpFileFetcher.bytesDownloaded);
     return tmp;
   }
@@ -858,6 +1038,16 @@ public class SnapPuller {
 
     Checksum checksum;
 
+    // checksum of the whole file as sent by the master, if it sends one
+    private Long fileChecksum;
+
+    private Checksum fileDigest;
+
+    // true if the file was partially downloaded by an earlier attempt
+    private boolean resumed = false;
+
+    private boolean checksumMismatch = false;
+
     File file;
 
     int errorCount = 0;
@@ -883,8 +1073,21 @@ public class SnapPuller {
       indexVersion = latestVersion;
 
       this.file = new File(copy2Dir, saveAs);
-      
-      this.fileOutputStream = new FileOutputStream(file);
+
+      if (!isConf && fileDetails.get(CHECKSUM) != null) {
+        // the file is verified as a whole once downloaded, so packets do not need checksums
+        // and a partial file left by an earlier attempt can be completed
+        includeChecksum = false;
+        fileChecksum = (Long) fileDetails.get(CHECKSUM);
+        fileDigest = new Adler32();
+        if (file.exists() && file.length() <= size) {
+          bytesDownloaded = file.length();
+          resumed = bytesDownloaded > 0;
+          if (resumed) digestDownloadedBytes();
+        }
+      }
+
+      this.fileOutputStream = new FileOutputStream(file, resumed);
       this.fileChannel = this.fileOutputStream.getChannel();
 
       if (includeChecksum)
@@ -896,24 +1099,34 @@ public class SnapPuller {
      */
     void fetchFile() throws Exception {
       try {
+        // a file completed by an earlier attempt only needs to be verified
+        boolean complete = resumed && bytesDownloaded == size;
         while (true) {
-          final FastInputStream is = getStream();
-          int result;
-          try {
-            //fetch packets one by one in a single request
-            result = fetchPackets(is);
-            if (result == 0 || result == NO_CONTENT) {
-              // if the file is downloaded properly set the
-              //  timestamp same as that in the server
-              if (file.exists() && lastmodified > 0)
-                file.setLastModified(lastmodified);
-              return;
+          while (!complete) {
+            final FastInputStream is = getStream();
+            try {
+              //fetch packets one by one in a single request
+              int result = fetchPackets(is);
+              complete = result == 0 || result == NO_CONTENT;
+              //if there is an error continue. But continue from the point where it got broken
+            } finally {
+              IOUtils.closeQuietly(is);
             }
-            //if there is an error continue. But continue from the point where it got broken
-          } finally {
-            IOUtils.closeQuietly(is);
           }
+          if (fileDigest == null || fileDigest.getValue() == fileChecksum) break;
+          if (!resumed) {
+            checksumMismatch = true;
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                    "Checksum not matched between client and server for file: " + fileName);
+          }
+          LOG.warn("Checksum not matched for resumed download of: " + fileName + ", downloading it again");
+          restart();
+          complete = false;
         }
+        // if the file is downloaded properly set the
+        //  timestamp same as that in the server
+        if (file.exists() && lastmodified > 0)
+          file.setLastModified(lastmodified);
       } finally {
         cleanup();
         //if cleanup suceeds . The file is downloaded fully. do an fsync
@@ -934,8 +1147,8 @@ public class SnapPuller {
       byte[] longbytes = new byte[8];
       try {
         while (true) {
+          // not reset here: the other downloads running in parallel must stop too
           if (stop) {
-            stop = false;
             aborted = true;
             throw new ReplicationHandlerException("User aborted replication");
           }
@@ -969,7 +1182,11 @@ public class SnapPuller {
           }
           //if everything is fine, write down the packet to the file
           fileChannel.write(ByteBuffer.wrap(buf, 0, packetSize));
+          if (fileDigest != null)
+            fileDigest.update(buf, 0, packetSize);
           bytesDownloaded += packetSize;
+          if (rateLimiter != null)
+            rateLimiter.pause(packetSize);
           if (bytesDownloaded >= size)
             return 0;
           //errorcount is always set to zero after a successful packet
@@ -1011,6 +1228,32 @@ public class SnapPuller {
 
     }
 
+    /**
+     * Feeds the bytes downloaded by an earlier attempt to the file checksum
+     */
+    private void digestDownloadedBytes() throws IOException {
+      FileInputStream is = new FileInputStream(file);
+      try {
+        int bytesRead;
+        while ((bytesRead = is.read(buf)) >= 0)
+          fileDigest.update(buf, 0, bytesRead);
+      } finally {
+        IOUtils.closeQuietly(is);
+      }
+    }
+
+    /**
+     * Throws away the downloaded bytes and starts again from the beginning of the file
+     */
+    private void restart() throws IOException {
+      fileOutputStream.close();
+      fileOutputStream = new FileOutputStream(file);
+      fileChannel = fileOutputStream.getChannel();
+      fileDigest.reset();
+      bytesDownloaded = 0;
+      resumed = false;
+    }
+
     /**
      * cleanup everything
      */
@@ -1022,19 +1265,21 @@ public class SnapPuller {
           LOG.error("Error closing the file stream: "+ this.saveAs ,e);
       }
       try {
-        post.releaseConnection();
+        if (post != null) post.releaseConnection();
       } catch (Exception e) {
       }
-      if (bytesDownloaded != size) {
-        //if the download is not complete then
-        //delete the file being downloaded
-        try {
-          file.delete();
-        } catch (Exception e) {
-          LOG.error("Error deleting file in cleanup" + e.getMessage());
+      if (bytesDownloaded != size || checksumMismatch) {
+        //if the download is not complete then delete the file being downloaded,
+        //unless it can be resumed and verified by the next attempt
+        if (fileDigest == null || checksumMismatch) {
+          try {
+            file.delete();
+          } catch (Exception e) {
+            LOG.error("Error deleting file in cleanup" + e.getMessage());
+          }
         }
         //if the failure is due to a user abort it is returned nomally else an exception is thrown
-        if (!aborted)
+        if (!aborted && !checksumMismatch)
           throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
                   "Unable to download " + fileName + " completely. Downloaded "
                           + bytesDownloaded + "!=" + size);
@@ -1146,6 +1391,7 @@ public class SnapPuller {
 
   public void destroy() {
     if (executorService != null) executorService.shutdown();
+    delTree(resumeIndexDir);
   }
 
   String getMasterUrl() {
@@ -1178,6 +1424,10 @@ public class SnapPuller {
 
   private static final String HTTP_BASIC_AUTH_PASSWORD = "httpBasicAuthPassword";
 
+  private static final String DOWNLOAD_THREADS = "downloadThreads";
+
+  private static final String MAX_DOWNLOAD_MB_PER_SEC = "maxDownloadMBPerSec";
+
   static final String INDEX_REPLICATED_AT = "indexReplicatedAt";
 
   static final String TIMES_INDEX_REPLICATED = "timesIndexReplicated";
@@ -1190,6 +1440,8 @@ public class SnapPuller {
 
   static final String LAST_CYCLE_BYTES_DOWNLOADED = "lastCycleBytesDownloaded";
 
+  static final String LAST_CYCLE_BYTES_AVOIDED = "lastCycleBytesAvoided";
+
   static final String TIMES_FAILED = "timesFailed";
 
   static final String REPLICATION_FAILED_AT = "replicationFailedAt";
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler.component;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram of request times in milliseconds, with buckets
+ * growing in a 1-2-5 progression from 1ms to 10s.
+ */
+class LatencyHistogram {
+  // inclusive upper bounds of all buckets but the last one
+  static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+  private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalTime = new AtomicLong();
+
+  void add(long millis) {
+    int bucket = 0;
+    while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+      bucket++;
+    }
+    counts.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalTime.addAndGet(millis);
+  }
+
+  long getCount() {
+    return count.get();
+  }
+
+  long getCount(int bucket) {
+    return counts.get(bucket);
+  }
+
+  /** Returns the count, average time and the count of each non empty bucket */
+  NamedList<Object> toNamedList() {
+    NamedList<Object> lst = new SimpleOrderedMap<Object>();
+    long n = count.get();
+    lst.add("count", n);
+    lst.add("avgTime", n == 0 ? 0.0f : (float) totalTime.get() / n);
+    for (int i=0; i<=BOUNDS.length; i++) {
+      long c = counts.get(i);
+      if (c == 0) continue;
+      lst.add(i < BOUNDS.length ? "<=" + BOUNDS[i] + "ms" : ">" + BOUNDS[BOUNDS.length-1] + "ms", c);
+    }
+    return lst;
+  }
+}
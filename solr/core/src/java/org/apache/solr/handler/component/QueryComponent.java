@@ -176,6 +176,8 @@ public class QueryComponent extends SearchComponent
 
     SolrIndexSearcher.QueryCommand cmd = rb.getQueryCommand();
     cmd.setTimeAllowed(timeAllowed);
+    cmd.setSegmentTerminateEarly(params.getBool(CommonParams.SEGMENT_TERMINATE_EARLY, false));
+    cmd.setExactNumFound(params.getBool(CommonParams.EXACT_NUM_FOUND, true));
     SolrIndexSearcher.QueryResult result = new SolrIndexSearcher.QueryResult();
       
     //
@@ -290,5 +290,11 @@ public class ResponseBuilder
     if( result.isPartialResults() ) {
       rsp.getResponseHeader().add( "partialResults", Boolean.TRUE );
     }
+    if( result.isSegmentTerminatedEarly() ) {
+      rsp.getResponseHeader().add( "segmentTerminatedEarly", Boolean.TRUE );
+    }
+    if( !result.isNumFoundExact() ) {
+      rsp.getResponseHeader().add( "numFoundExact", Boolean.FALSE );
+    }
   }
 }
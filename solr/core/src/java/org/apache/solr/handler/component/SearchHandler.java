@@ -33,6 +33,7 @@ import org.apache.solr.client.solrj.SolrResponse;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.impl.CommonsHttpSolrServer;
 import org.apache.solr.util.plugin.SolrCoreAware;
+import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.SolrCore;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
@@ -42,6 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -63,8 +65,30 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware
   // cannot be established within x ms. with a
   // java.net.SocketTimeoutException: Connection timed out
   static final String INIT_CONNECTION_TIMEOUT = "shard-connection-timeout";
-  static int soTimeout = 0; //current default values
-  static int connectionTimeout = 0; //current default values
+
+  // size of the connection pool used for shard requests, in total
+  // and per shard host
+  static final String INIT_MAX_CONNECTIONS = "shard-max-connections";
+  static final String INIT_MAX_CONNECTIONS_PER_HOST = "shard-max-connections-per-host";
+
+  // maximum number of shard requests of this handler that are in flight at
+  // once; further requests are queued until one completes
+  static final String INIT_MAX_CONCURRENCY = "shard-max-concurrency";
+
+  int soTimeout = 0; //current default values
+  int connectionTimeout = 0; //current default values
+  int maxConnections = 10000;
+  int maxConnectionsPerHost = 20;
+  int maxConcurrency = Integer.MAX_VALUE;
+
+  // only keep per shard statistics for this many shards
+  static final int MAX_SHARD_STATS = 100;
+
+  private HttpClient shardClient;
+  private ExecutorService shardExecutor;
+  private final LatencyHistogram shardLatency = new LatencyHistogram();
+  private final ConcurrentMap<String,LatencyHistogram> shardLatencyByShard = new ConcurrentHashMap<String,LatencyHistogram>();
+  private final AtomicLong shardErrors = new AtomicLong();
 
   protected static Logger log = LoggerFactory.getLogger(SearchHandler.class);
 
@@ -147,6 +171,75 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware
       soTimeout = (Integer) so;
       log.info("Setting shard-socket-timeout to: " + soTimeout);
     }
+
+    Object mc = initArgs.get(INIT_MAX_CONNECTIONS);
+    if (mc != null) {
+      maxConnections = (Integer) mc;
+    }
+
+    Object mch = initArgs.get(INIT_MAX_CONNECTIONS_PER_HOST);
+    if (mch != null) {
+      maxConnectionsPerHost = (Integer) mch;
+    }
+
+    Object conc = initArgs.get(INIT_MAX_CONCURRENCY);
+    if (conc != null) {
+      maxConcurrency = (Integer) conc;
+      log.info("Setting shard-max-concurrency to: " + maxConcurrency);
+    }
+
+    MultiThreadedHttpConnectionManager mgr = new MultiThreadedHttpConnectionManager();
+    mgr.getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+    mgr.getParams().setMaxTotalConnections(maxConnections);
+    mgr.getParams().setConnectionTimeout(connectionTimeout);
+    mgr.getParams().setSoTimeout(soTimeout);
+    // mgr.getParams().setStaleCheckingEnabled(false);
+    shardClient = new HttpClient(mgr);
+
+    if (maxConcurrency == Integer.MAX_VALUE) {
+      // We want an executor that doesn't take up any resources if
+      // it's not used.
+      shardExecutor = new ThreadPoolExecutor(
+          0,
+          Integer.MAX_VALUE,
+          5, TimeUnit.SECONDS, // terminate idle threads after 5 sec
+          new SynchronousQueue<Runnable>()  // directly hand off tasks
+      );
+    } else {
+      // threads are only started when requests are submitted
+      shardExecutor = new ThreadPoolExecutor(
+          maxConcurrency,
+          maxConcurrency,
+          5, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>()  // queue requests over the limit
+      );
+    }
+
+    core.addCloseHook(new CloseHook() {
+      @Override
+      public void preClose(SolrCore core) {
+      }
+
+      @Override
+      public void postClose(SolrCore core) {
+        shardExecutor.shutdownNow();
+        ((MultiThreadedHttpConnectionManager)shardClient.getHttpConnectionManager()).shutdown();
+      }
+    });
+  }
+
+  /** Records the time of a completed (or failed) shard request */
+  void recordShardRequest(String shard, long elapsedTime, boolean error) {
+    shardLatency.add(elapsedTime);
+    if (error) shardErrors.incrementAndGet();
+
+    LatencyHistogram histogram = shardLatencyByShard.get(shard);
+    if (histogram == null && shardLatencyByShard.size() < MAX_SHARD_STATS) {
+      histogram = new LatencyHistogram();
+      LatencyHistogram existing = shardLatencyByShard.putIfAbsent(shard, histogram);
+      if (existing != null) histogram = existing;
+    }
+    if (histogram != null) histogram.add(elapsedTime);
   }
 
   public List<SearchComponent> getComponents() {
@@ -215,7 +308,7 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware
     } else {
       // a distributed request
 
-      HttpCommComponent comm = new HttpCommComponent();
+      HttpCommComponent comm = new HttpCommComponent(this, shardClient, shardExecutor);
 
       if (rb.outgoing == null) {
         rb.outgoing = new LinkedList<ShardRequest>();
@@ -302,6 +395,20 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware
 
   //////////////////////// SolrInfoMBeans methods //////////////////////
 
+  @Override
+  public NamedList getStatistics() {
+    NamedList lst = super.getStatistics();
+    lst.add("shardRequests", shardLatency.getCount());
+    lst.add("shardErrors", shardErrors.get());
+    lst.add("shardLatency", shardLatency.toNamedList());
+    NamedList<Object> byShard = new SimpleOrderedMap<Object>();
+    for (Map.Entry<String,LatencyHistogram> entry : new TreeMap<String,LatencyHistogram>(shardLatencyByShard).entrySet()) {
+      byShard.add(entry.getKey(), entry.getValue().toNamedList());
+    }
+    lst.add("shardLatencyByShard", byShard);
+    return lst;
+  }
+
   @Override
   public String getDescription() {
     StringBuilder sb = new StringBuilder();
@@ -333,40 +440,19 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware
 
 
 // TODO: generalize how a comm component can fit into search component framework
-// TODO: statics should be per-core singletons
 
 class HttpCommComponent {
 
-  // We want an executor that doesn't take up any resources if
-  // it's not used, so it could be created statically for
-  // the distributed search component if desired.
-  //
-  // Consider CallerRuns policy and a lower max threads to throttle
-  // requests at some point (or should we simply return failure?)
-  static Executor commExecutor = new ThreadPoolExecutor(
-          0,
-          Integer.MAX_VALUE,
-          5, TimeUnit.SECONDS, // terminate idle threads after 5 sec
-          new SynchronousQueue<Runnable>()  // directly hand off tasks
-  );
-
-
-  static HttpClient client;
-
-  static {
-    MultiThreadedHttpConnectionManager mgr = new MultiThreadedHttpConnectionManager();
-    mgr.getParams().setDefaultMaxConnectionsPerHost(20);
-    mgr.getParams().setMaxTotalConnections(10000);
-    mgr.getParams().setConnectionTimeout(SearchHandler.connectionTimeout);
-    mgr.getParams().setSoTimeout(SearchHandler.soTimeout);
-    // mgr.getParams().setStaleCheckingEnabled(false);
-    client = new HttpClient(mgr);    
-  }
+  private final SearchHandler handler;  // records the shard request statistics
+  private final HttpClient client;
 
-  CompletionService<ShardResponse> completionService = new ExecutorCompletionService<ShardResponse>(commExecutor);
+  final CompletionService<ShardResponse> completionService;
   Set<Future<ShardResponse>> pending = new HashSet<Future<ShardResponse>>();
 
-  HttpCommComponent() {
+  HttpCommComponent(SearchHandler handler, HttpClient client, Executor executor) {
+    this.handler = handler;
+    this.client = client;
+    this.completionService = new ExecutorCompletionService<ShardResponse>(executor);
   }
 
   private static class SimpleSolrResponse extends SolrResponse {
@@ -429,6 +515,7 @@ class HttpCommComponent {
         }
 
         ssr.elapsedTime = System.currentTimeMillis() - startTime;
+        handler.recordShardRequest(shard, ssr.elapsedTime, srsp.getException() != null);
 
         return srsp;
       }
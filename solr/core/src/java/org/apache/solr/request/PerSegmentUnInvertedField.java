@@ -0,0 +1,275 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import org.apache.lucene.index.Term;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.component.StatsValues;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.TrieField;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexReader;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.ParallelTasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link UnInvertedField} that un-inverts each segment separately, so that after
+ * a reopen only the new segments have to be un-inverted.
+ *
+ * <p>The segment level fields are shared by all searchers (they are keyed by the
+ * segment core, like the Lucene FieldCache), while each searcher builds a map from
+ * the term numbers of each segment to the term numbers of its top level reader by
+ * merging the term enumerations, which is much cheaper than un-inverting.  The counts
+ * of all segments are accumulated by top level term number, and sorted and labeled
+ * just like the counts of an {@link UnInvertedField}.
+ *
+ * <p>Used when <code>facet.method=fcs</code> is requested for a multi-valued field.
+ */
+public class PerSegmentUnInvertedField extends UnInvertedField {
+
+  /** segment core key -&gt; field name -&gt; segment level field */
+  private static final Map<Object,Map<String,UnInvertedField>> segmentFields = new WeakHashMap<Object,Map<String,UnInvertedField>>();
+
+  private final UnInvertedField[] segments;
+  private final int[] offsets;
+  private final int[][] ordMaps;  // segment term number -> top level term number
+  int numUnInverted;  // number of segments un-inverted for this searcher
+
+  private PerSegmentUnInvertedField(String field, SolrIndexSearcher searcher) throws IOException {
+    super(field, new TermIndex(field,
+            TrieField.getMainValuePrefix(searcher.getSchema().getFieldType(field))));
+    long startTime = System.currentTimeMillis();
+
+    FieldType ft = searcher.getSchema().getFieldType(field);
+    SolrIndexReader[] leaves = searcher.getReader().getLeafReaders();
+    offsets = searcher.getReader().getLeafOffsets();
+    segments = new UnInvertedField[leaves.length];
+    for (int i=0; i<leaves.length; i++) {
+      segments[i] = getSegmentField(field, leaves[i], ft);
+    }
+
+    long midPoint = System.currentTimeMillis();
+
+    // number the terms of the top level reader, and map the term numbers of each segment
+    NumberedTermEnum te = ti.getEnumerator(searcher.getReader());
+    NumberedTermEnum[] segmentEnums = new NumberedTermEnum[segments.length];
+    ordMaps = new int[segments.length][];
+    for (int i=0; i<segments.length; i++) {
+      segmentEnums[i] = segments[i].ti.getEnumerator(leaves[i]);
+      ordMaps[i] = new int[segments[i].numTermsInField];
+    }
+
+    for (;;) {
+      Term t = te.term();
+      if (t==null) break;
+      String text = t.text();
+      int termNum = te.getTermNumber();
+      // every segment term is also a top level term, so the current term of a
+      // segment is either this one or one that comes later
+      for (int i=0; i<segmentEnums.length; i++) {
+        Term segmentTerm = segmentEnums[i].term();
+        if (segmentTerm != null && segmentTerm.text().equals(text)) {
+          ordMaps[i][segmentEnums[i].getTermNumber()] = termNum;
+          segmentEnums[i].next();
+        }
+      }
+      te.next();
+    }
+
+    numTermsInField = te.getTermNumber();
+    te.close();
+    for (NumberedTermEnum segmentEnum : segmentEnums) {
+      segmentEnum.close();
+    }
+
+    long endTime = System.currentTimeMillis();
+
+    total_time = (int)(endTime-startTime);
+    phase1_time = (int)(midPoint-startTime);
+
+    SolrCore.log.info("Mapped per segment multi-valued field " + toString());
+  }
+
+  private UnInvertedField getSegmentField(String field, SolrIndexReader leaf, FieldType ft) throws IOException {
+    final Object key = leaf.getCoreCacheKey();
+    UnInvertedField uif;
+    synchronized (segmentFields) {
+      Map<String,UnInvertedField> fields = segmentFields.get(key);
+      uif = fields == null ? null : fields.get(field);
+    }
+    // a field un-inverted by a newer searcher may be missing documents
+    // that were deleted since this (older) reader was opened
+    if (uif != null && uif.numDeletedDocs <= leaf.numDeletedDocs()) {
+      return uif;
+    }
+
+    boolean cache = uif == null;
+    uif = new UnInvertedField(field, leaf, ft);
+    numUnInverted++;
+    if (cache) {
+      synchronized (segmentFields) {
+        Map<String,UnInvertedField> fields = segmentFields.get(key);
+        if (fields == null) {
+          fields = new HashMap<String,UnInvertedField>();
+          segmentFields.put(key, fields);
+        }
+        fields.put(field, uif);
+      }
+    }
+    return uif;
+  }
+
+  /** Returns the name of the field */
+  public String getField() {
+    return field;
+  }
+
+  @Override
+  void count(SolrIndexSearcher searcher, DocSet docs, int[] counts, int startTerm, int endTerm,
+             Executor executor, int threads) throws IOException {
+    // collect the documents in order, so each segment gets a contiguous range
+    final int[] arr = new int[docs.size()];
+    int n = 0;
+    boolean sorted = true;
+    int last = -1;
+    DocIterator iter = docs.iterator();
+    while (iter.hasNext()) {
+      int doc = iter.nextDoc();
+      if (doc < last) sorted = false;
+      arr[n++] = last = doc;
+    }
+    if (!sorted) Arrays.sort(arr, 0, n);
+
+    // count each segment by segment term number, possibly in parallel
+    ParallelTasks<int[]> tasks = new ParallelTasks<int[]>(executor, threads);
+    List<Integer> counted = new ArrayList<Integer>();
+    int start = 0;
+    for (int i=0; i<segments.length && start<n; i++) {
+      int offset = offsets[i];
+      int limit = i+1 < offsets.length ? offsets[i+1] : Integer.MAX_VALUE;
+      int end = start;
+      while (end < n && arr[end] < limit) {
+        arr[end++] -= offset;
+      }
+      if (end > start) {
+        final UnInvertedField segment = segments[i];
+        final int[] ordMap = ordMaps[i];
+        final int segmentStart = start, segmentEnd = end;
+        final int startTermNum = startTerm, endTermNum = endTerm;
+        counted.add(i);
+        tasks.add(new Callable<int[]>() {
+          public int[] call() {
+            int[] segmentCounts = new int[segment.numTermsInField];
+            segment.countSegment(arr, segmentStart, segmentEnd, segmentCounts, ordMap, startTermNum, endTermNum);
+            return segmentCounts;
+          }
+        });
+      }
+      start = end;
+    }
+
+    List<int[]> results = tasks.getResults();
+    for (int i=0; i<results.size(); i++) {
+      int[] segmentCounts = results.get(i);
+      int[] ordMap = ordMaps[counted.get(i)];
+      for (int tnum=0; tnum<segmentCounts.length; tnum++) {
+        counts[ordMap[tnum]] += segmentCounts[tnum];
+      }
+    }
+  }
+
+  /**
+   * Computes the statistics with the top level {@link UnInvertedField} of the field,
+   * since the statistics of facet fields (<code>stats.facet</code>) are collected
+   * per top level document.
+   */
+  @Override
+  public StatsValues getStats(SolrIndexSearcher searcher, DocSet baseDocs, String[] facet) throws IOException {
+    return getUnInvertedField(field, searcher).getStats(searcher, baseDocs, facet);
+  }
+
+  @Override
+  public long memSize() {
+    // can cache the mem size since it shouldn't change
+    if (memsz!=0) return memsz;
+    long sz = 8*8 + 32; // local fields
+    for (int[] ordMap : ordMaps) {
+      sz += ordMap.length * 4;
+    }
+    sz += ti.memSize();
+    // the segment fields may be shared with other searchers
+    for (UnInvertedField uif : segments) {
+      sz += uif.memSize();
+    }
+    memsz = sz;
+    return sz;
+  }
+
+  @Override
+  public String toString() {
+    return "{field=" + field
+            + ",memSize="+memSize()
+            + ",tindexSize="+ti.memSize()
+            + ",time="+total_time
+            + ",phase1="+phase1_time
+            + ",nTerms="+numTermsInField
+            + ",segments="+segments.length
+            + ",unInverted="+numUnInverted
+            + ",uses="+use.get()
+            + "}";
+  }
+
+
+  //////////////////////////////////////////////////////////////////
+  //////////////////////////// caching /////////////////////////////
+  //////////////////////////////////////////////////////////////////
+  private static final String CACHE_KEY_PREFIX = "fcs:";
+
+  public static PerSegmentUnInvertedField getPerSegmentUnInvertedField(String field, SolrIndexSearcher searcher) throws IOException {
+    SolrCache cache = searcher.getFieldValueCache();
+    if (cache == null) {
+      return new PerSegmentUnInvertedField(field, searcher);
+    }
+
+    String key = CACHE_KEY_PREFIX + field;
+    PerSegmentUnInvertedField uif = (PerSegmentUnInvertedField)cache.get(key);
+    if (uif == null) {
+      synchronized (cache) {
+        uif = (PerSegmentUnInvertedField)cache.get(key);
+        if (uif == null) {
+          uif = new PerSegmentUnInvertedField(field, searcher);
+          cache.put(key, uif);
+        }
+      }
+    }
+
+    return uif;
+  }
+}
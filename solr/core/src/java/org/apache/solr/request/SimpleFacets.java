@@ -23,6 +23,8 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.packed.PackedInts;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.params.FacetParams;
@@ -39,10 +41,12 @@ import org.apache.solr.schema.*;
 import org.apache.solr.search.*;
 import org.apache.solr.util.BoundedTreeSet;
 import org.apache.solr.util.DateMathParser;
+import org.apache.solr.util.ParallelTasks;
 import org.apache.solr.handler.component.ResponseBuilder;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * A class that generates simple Facet information for a request.
@@ -222,6 +226,15 @@ public class SimpleFacets {
 
 
   public NamedList getTermCounts(String field) throws IOException {
+    return getTermCounts(field, base);
+  }
+
+  /**
+   * Returns the term counts of the documents in <code>base</code> for
+   * faceting on <code>field</code>.  May be called from several threads at
+   * once (see {@link FacetParams#FACET_THREADS}).
+   */
+  protected NamedList getTermCounts(String field, DocSet base) throws IOException {
     int offset = params.getFieldInt(field, FacetParams.FACET_OFFSET, 0);
     int limit = params.getFieldInt(field, FacetParams.FACET_LIMIT, 100);
     if (limit == 0) return new NamedList();
@@ -245,6 +258,7 @@ public class SimpleFacets {
     // determine what type of faceting method to use
     String method = params.getFieldParam(field, FacetParams.FACET_METHOD);
     boolean enumMethod = FacetParams.FACET_METHOD_enum.equals(method);
+    boolean perSegment = FacetParams.FACET_METHOD_fcs.equals(method);
     if (method == null && ft instanceof BoolField) {
       // Always use filters for booleans... we know the number of values is very small.
       enumMethod = true;
@@ -263,8 +277,12 @@ public class SimpleFacets {
       counts = getFacetTermEnumCounts(searcher, base, field, offset, limit, mincount,missing,sort,prefix);
     } else {
       if (multiToken) {
-        UnInvertedField uif = UnInvertedField.getUnInvertedField(field, searcher);
-        counts = uif.getCounts(searcher, base, offset, limit, mincount,missing,sort,prefix);
+        UnInvertedField uif = perSegment
+            ? PerSegmentUnInvertedField.getPerSegmentUnInvertedField(field, searcher)
+            : UnInvertedField.getUnInvertedField(field, searcher);
+        int threads = params.getInt(FacetParams.FACET_THREADS, 1);
+        counts = uif.getCounts(searcher, base, offset, limit, mincount,missing,sort,prefix,
+            req.getCore().getFacetExecutor(), threads);
       } else {
         // TODO: future logic could use filters instead of the fieldcache if
         // the number of terms in the field is small enough.
@@ -290,21 +308,37 @@ public class SimpleFacets {
     NamedList res = new SimpleOrderedMap();
     String[] facetFs = params.getParams(FacetParams.FACET_FIELD);
     if (null != facetFs) {
+      // the fields are counted in parallel if facet.threads > 1, the
+      // local params of each are parsed up front on this thread
+      int threads = params.getInt(FacetParams.FACET_THREADS, 1);
+      ParallelTasks<NamedList> tasks = new ParallelTasks<NamedList>(req.getCore().getFacetExecutor(), threads);
+      List<String> keys = new ArrayList<String>(facetFs.length);
       for (String f : facetFs) {
         parseParams(FacetParams.FACET_FIELD, f);
-        String termList = localParams == null ? null : localParams.get(CommonParams.TERMS);
-        if (termList != null) {
-          res.add(key, getListedTermCounts(facetValue, termList));
-        } else {
-          res.add(key, getTermCounts(facetValue));
-        }
+        final String termList = localParams == null ? null : localParams.get(CommonParams.TERMS);
+        final String field = facetValue;
+        final DocSet fieldBase = base;
+        keys.add(key);
+        tasks.add(new Callable<NamedList>() {
+          public NamedList call() throws IOException {
+            if (termList != null) {
+              return getListedTermCounts(field, termList, fieldBase);
+            } else {
+              return getTermCounts(field, fieldBase);
+            }
+          }
+        });
+      }
+      List<NamedList> counts = tasks.getResults();
+      for (int i=0; i<keys.size(); i++) {
+        res.add(keys.get(i), counts.get(i));
       }
     }
     return res;
   }
 
 
-  private NamedList getListedTermCounts(String field, String termList) throws IOException {
+  private NamedList getListedTermCounts(String field, String termList, DocSet base) throws IOException {
     FieldType ft = searcher.getSchema().getFieldType(field);
     List<String> terms = StrUtils.splitSmart(termList, ",", true);
     NamedList res = new NamedList();
@@ -363,23 +397,42 @@ public class SimpleFacets {
     FieldType ft = searcher.getSchema().getFieldType(fieldName);
     NamedList res = new NamedList();
 
-    FieldCache.StringIndex si = FieldCache.DEFAULT.getStringIndex(searcher.getReader(), fieldName);
-    final String[] terms = si.lookup;
-    final int[] termNum = si.order;
+    // the packed terms index holds the same ords and terms as the
+    // StringIndex, in far less memory
+    final String[] terms;
+    final int[] termNum;
+    final FieldCache.DocTermsIndex termsIndex;
+    final BytesRef spare = new BytesRef();
+    if (searcher.usePackedStringIndex) {
+      termsIndex = FieldCache.DEFAULT.getTermsIndex(searcher.getReader(), fieldName);
+      terms = null;
+      termNum = null;
+    } else {
+      FieldCache.StringIndex si = FieldCache.DEFAULT.getStringIndex(searcher.getReader(), fieldName);
+      termsIndex = null;
+      terms = si.lookup;
+      termNum = si.order;
+    }
 
     if (prefix!=null && prefix.length()==0) prefix=null;
 
     int startTermIndex, endTermIndex;
     if (prefix!=null) {
-      startTermIndex = Arrays.binarySearch(terms,prefix,nullStrComparator);
-      if (startTermIndex<0) startTermIndex=-startTermIndex-1;
       // find the end term.  \uffff isn't a legal unicode char, but only compareTo
       // is used, so it should be fine, and is guaranteed to be bigger than legal chars.
-      endTermIndex = Arrays.binarySearch(terms,prefix+"\uffff\uffff\uffff\uffff",nullStrComparator);
+      final String endPrefix = prefix+"\uffff\uffff\uffff\uffff";
+      if (termsIndex != null) {
+        startTermIndex = termsIndex.binarySearchLookup(new BytesRef(prefix), spare);
+        endTermIndex = termsIndex.binarySearchLookup(new BytesRef(endPrefix), spare);
+      } else {
+        startTermIndex = Arrays.binarySearch(terms,prefix,nullStrComparator);
+        endTermIndex = Arrays.binarySearch(terms,endPrefix,nullStrComparator);
+      }
+      if (startTermIndex<0) startTermIndex=-startTermIndex-1;
       endTermIndex = -endTermIndex-1;
     } else {
       startTermIndex=1;
-      endTermIndex=terms.length;
+      endTermIndex=termsIndex != null ? termsIndex.numOrd() : terms.length;
     }
 
     final int nTerms=endTermIndex-startTermIndex;
@@ -391,10 +444,19 @@ public class SimpleFacets {
       final int[] counts = new int[nTerms];
 
       DocIterator iter = docs.iterator();
-      while (iter.hasNext()) {
-        int term = termNum[iter.nextDoc()];
-        int arrIdx = term-startTermIndex;
-        if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+      if (termsIndex != null) {
+        final PackedInts.Reader docToOrd = termsIndex.getDocToOrd();
+        while (iter.hasNext()) {
+          int term = (int) docToOrd.get(iter.nextDoc());
+          int arrIdx = term-startTermIndex;
+          if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+        }
+      } else {
+        while (iter.hasNext()) {
+          int term = termNum[iter.nextDoc()];
+          int arrIdx = term-startTermIndex;
+          if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+        }
       }
 
       // IDEA: we could also maintain a count of "other"... everything that fell outside
@@ -414,7 +476,8 @@ public class SimpleFacets {
             // NOTE: we use c>min rather than c>=min as an optimization because we are going in
             // index order, so we already know that the keys are ordered.  This can be very
             // important if a lot of the counts are repeated (like zero counts would be).
-            queue.add(new CountPair<String,Integer>(terms[startTermIndex+i], c));
+            String term = termsIndex != null ? termsIndex.lookup(startTermIndex+i, spare).utf8ToString() : terms[startTermIndex+i];
+            queue.add(new CountPair<String,Integer>(term, c));
             if (queue.size()>=maxsize) min=queue.last().val;
           }
         }
@@ -438,7 +501,8 @@ public class SimpleFacets {
           int c = counts[i];
           if (c<mincount || --off>=0) continue;
           if (--lim<0) break;
-          res.add(ft.indexedToReadable(terms[startTermIndex+i]), c);
+          String term = termsIndex != null ? termsIndex.lookup(startTermIndex+i, spare).utf8ToString() : terms[startTermIndex+i];
+          res.add(ft.indexedToReadable(term), c);
         }
       }
     }
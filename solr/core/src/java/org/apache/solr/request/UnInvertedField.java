@@ -45,6 +45,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -83,11 +84,13 @@ public class UnInvertedField {
   static class TopTerm {
     Term term;
     int termNum;
+    DocSet docs;  // only kept for segment level fields
 
     long memSize() {
       return 8 +   // obj header
              8 + 8 +(term.text().length()<<1) +  //term
-             4;    // int
+             4 +   // int
+             (docs == null ? 0 : docs.memSize());
     }
   }
 
@@ -99,6 +102,7 @@ public class UnInvertedField {
   long memsz;
   int total_time;  // total time to uninvert the field
   int phase1_time;  // time for phase1 of the uninvert process
+  int numDeletedDocs;  // deleted docs of the reader when it was un-inverted
   final AtomicLong use = new AtomicLong(); // number of uses
 
   int[] index;
@@ -176,15 +180,32 @@ public class UnInvertedField {
     this.field = field;
     this.ti = new TermIndex(field,
             TrieField.getMainValuePrefix(searcher.getSchema().getFieldType(field)));
-    uninvert(searcher);
+    uninvert(searcher.getReader(), searcher);
   }
 
+  /**
+   * Un-inverts the field over a single segment.  The documents of big terms are
+   * kept as segment relative DocSets, since the filterCache only holds top level sets.
+   */
+  UnInvertedField(String field, IndexReader segment, FieldType ft) throws IOException {
+    this.field = field;
+    this.ti = new TermIndex(field, TrieField.getMainValuePrefix(ft));
+    uninvert(segment, null);
+  }
+
+  /** For subclasses that count using other un-inverted structures */
+  UnInvertedField(String field, TermIndex ti) {
+    this.field = field;
+    this.ti = ti;
+  }
 
-  private void uninvert(SolrIndexSearcher searcher) throws IOException {
+
+  /** @param searcher the searcher of the reader, or null if the reader is a segment */
+  private void uninvert(IndexReader reader, SolrIndexSearcher searcher) throws IOException {
     long startTime = System.currentTimeMillis();
 
-    IndexReader reader = searcher.getReader();
     int maxDoc = reader.maxDoc();
+    numDeletedDocs = reader.numDeletedDocs();
 
     int[] index = new int[maxDoc];       // immediate term numbers, or the index into the byte[] representing the last number
     this.index = index;
@@ -248,7 +269,12 @@ public class UnInvertedField {
         topTerm.termNum = termNum;
         bigTerms.put(topTerm.termNum, topTerm);
 
-        DocSet set = searcher.getPositiveDocSet(new TermQuery(topTerm.term), tdState);
+        DocSet set;
+        if (searcher != null) {
+          set = searcher.getPositiveDocSet(new TermQuery(topTerm.term), tdState);
+        } else {
+          set = topTerm.docs = getSegmentDocSet(te, maxDoc, docs, freqs);
+        }
         maxTermCounts[termNum] = set.size();
 
         te.next();
@@ -440,10 +466,35 @@ public class UnInvertedField {
     SolrCore.log.info("UnInverted multi-valued field " + toString());
   }
 
+  private static DocSet getSegmentDocSet(NumberedTermEnum te, int maxDoc, int[] docs, int[] freqs) throws IOException {
+    OpenBitSet bits = new OpenBitSet(maxDoc);
+    int size = 0;
+    TermDocs td = te.getTermDocs();
+    for(;;) {
+      int n = td.read(docs,freqs);
+      if (n <= 0) break;
+      for (int i=0; i<n; i++) {
+        bits.fastSet(docs[i]);
+      }
+      size += n;
+    }
+    return new BitDocSet(bits, size);
+  }
+
 
 
 
   public NamedList getCounts(SolrIndexSearcher searcher, DocSet baseDocs, int offset, int limit, Integer mincount, boolean missing, String sort, String prefix) throws IOException {
+    return getCounts(searcher, baseDocs, offset, limit, mincount, missing, sort, prefix, null, 1);
+  }
+
+  /**
+   * Like {@link #getCounts(SolrIndexSearcher, DocSet, int, int, Integer, boolean, String, String)},
+   * but the segments of a {@link PerSegmentUnInvertedField} are counted using up to
+   * <code>threads</code> threads, taken from <code>executor</code>.
+   */
+  public NamedList getCounts(SolrIndexSearcher searcher, DocSet baseDocs, int offset, int limit, Integer mincount, boolean missing, String sort, String prefix,
+                             Executor executor, int threads) throws IOException {
     use.incrementAndGet();
 
     FieldType ft = searcher.getSchema().getFieldType(field);
@@ -456,7 +507,6 @@ public class UnInvertedField {
 
     if (baseSize >= mincount) {
 
-      final int[] index = this.index;
       final int[] counts = new int[numTermsInField];
 
       //
@@ -498,61 +548,7 @@ public class UnInvertedField {
         // that should be OK, as their entries in our table should be empty.
       }
 
-      // For the biggest terms, do straight set intersections
-      for (TopTerm tt : bigTerms.values()) {
-        // TODO: counts could be deferred if sorted==false
-        if (tt.termNum >= startTerm && tt.termNum < endTerm) {
-          counts[tt.termNum] = searcher.numDocs(new TermQuery(tt.term), docs);
-        }
-      }
-
-      // TODO: we could short-circuit counting altogether for sorted faceting
-      // where we already have enough terms from the bigTerms
-
-      // TODO: we could shrink the size of the collection array, and
-      // additionally break when the termNumber got above endTerm, but
-      // it would require two extra conditionals in the inner loop (although
-      // they would be predictable for the non-prefix case).
-      // Perhaps a different copy of the code would be warranted.
-
-      if (termInstances > 0) {
-        DocIterator iter = docs.iterator();
-        while (iter.hasNext()) {
-          int doc = iter.nextDoc();
-          int code = index[doc];
-
-          if ((code & 0xff)==1) {
-            int pos = code>>>8;
-            int whichArray = (doc >>> 16) & 0xff;
-            byte[] arr = tnums[whichArray];
-            int tnum = 0;
-            for(;;) {
-              int delta = 0;
-              for(;;) {
-                byte b = arr[pos++];
-                delta = (delta << 7) | (b & 0x7f);
-                if ((b & 0x80) == 0) break;
-              }
-              if (delta == 0) break;
-              tnum += delta - TNUM_OFFSET;
-              counts[tnum]++;
-            }
-          } else {
-            int tnum = 0;
-            int delta = 0;
-            for (;;) {
-              delta = (delta << 7) | (code & 0x7f);
-              if ((code & 0x80)==0) {
-                if (delta==0) break;
-                tnum += delta - TNUM_OFFSET;
-                counts[tnum]++;
-                delta = 0;
-              }
-              code >>>= 8;
-            }
-          }
-        }
-      }
+      count(searcher, docs, counts, startTerm, endTerm, executor, threads);
 
       int off=offset;
       int lim=limit>=0 ? limit : Integer.MAX_VALUE;
@@ -650,6 +646,128 @@ public class UnInvertedField {
     return res;
   }
 
+  /**
+   * Adds the number of documents of <code>docs</code> containing each term
+   * numbered from startTerm (inclusive) to endTerm (exclusive) to <code>counts</code>.
+   */
+  void count(SolrIndexSearcher searcher, DocSet docs, int[] counts, int startTerm, int endTerm,
+             Executor executor, int threads) throws IOException {
+    final int[] index = this.index;
+
+    // For the biggest terms, do straight set intersections
+    for (TopTerm tt : bigTerms.values()) {
+      // TODO: counts could be deferred if sorted==false
+      if (tt.termNum >= startTerm && tt.termNum < endTerm) {
+        counts[tt.termNum] = searcher.numDocs(new TermQuery(tt.term), docs);
+      }
+    }
+
+    // TODO: we could short-circuit counting altogether for sorted faceting
+    // where we already have enough terms from the bigTerms
+
+    // TODO: we could shrink the size of the collection array, and
+    // additionally break when the termNumber got above endTerm, but
+    // it would require two extra conditionals in the inner loop (although
+    // they would be predictable for the non-prefix case).
+    // Perhaps a different copy of the code would be warranted.
+
+    if (termInstances > 0) {
+      DocIterator iter = docs.iterator();
+      while (iter.hasNext()) {
+        int doc = iter.nextDoc();
+        int code = index[doc];
+
+        if ((code & 0xff)==1) {
+          int pos = code>>>8;
+          int whichArray = (doc >>> 16) & 0xff;
+          byte[] arr = tnums[whichArray];
+          int tnum = 0;
+          for(;;) {
+            int delta = 0;
+            for(;;) {
+              byte b = arr[pos++];
+              delta = (delta << 7) | (b & 0x7f);
+              if ((b & 0x80) == 0) break;
+            }
+            if (delta == 0) break;
+            tnum += delta - TNUM_OFFSET;
+            counts[tnum]++;
+          }
+        } else {
+          int tnum = 0;
+          int delta = 0;
+          for (;;) {
+            delta = (delta << 7) | (code & 0x7f);
+            if ((code & 0x80)==0) {
+              if (delta==0) break;
+              tnum += delta - TNUM_OFFSET;
+              counts[tnum]++;
+              delta = 0;
+            }
+            code >>>= 8;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts the terms of the (sorted, segment relative) documents docs[start] to docs[end-1] of
+   * a segment level field by segment term number.  Big terms are only counted if their top level
+   * term number (<code>ordMap[tnum]</code>) is between startTerm (inclusive) and endTerm (exclusive).
+   */
+  void countSegment(int[] docs, int start, int end, int[] counts, int[] ordMap, int startTerm, int endTerm) {
+    for (TopTerm tt : bigTerms.values()) {
+      int termNum = ordMap[tt.termNum];
+      if (termNum >= startTerm && termNum < endTerm) {
+        int c = 0;
+        for (int i=start; i<end; i++) {
+          if (tt.docs.exists(docs[i])) c++;
+        }
+        counts[tt.termNum] = c;
+      }
+    }
+
+    if (termInstances == 0) return;
+
+    final int[] index = this.index;
+    for (int i=start; i<end; i++) {
+      int doc = docs[i];
+      int code = index[doc];
+
+      if ((code & 0xff)==1) {
+        int pos = code>>>8;
+        int whichArray = (doc >>> 16) & 0xff;
+        byte[] arr = tnums[whichArray];
+        int tnum = 0;
+        for(;;) {
+          int delta = 0;
+          for(;;) {
+            byte b = arr[pos++];
+            delta = (delta << 7) | (b & 0x7f);
+            if ((b & 0x80) == 0) break;
+          }
+          if (delta == 0) break;
+          tnum += delta - TNUM_OFFSET;
+          counts[tnum]++;
+        }
+      } else {
+        int tnum = 0;
+        int delta = 0;
+        for (;;) {
+          delta = (delta << 7) | (code & 0x7f);
+          if ((code & 0x80)==0) {
+            if (delta==0) break;
+            tnum += delta - TNUM_OFFSET;
+            counts[tnum]++;
+            delta = 0;
+          }
+          code >>>= 8;
+        }
+      }
+    }
+  }
+
   /**
    * Collect statistics about the UninvertedField.  Code is very similar to {@link #getCounts(org.apache.solr.search.SolrIndexSearcher, org.apache.solr.search.DocSet, int, int, Integer, boolean, String, String)}
    * It can be used to calculate stats on multivalued fields.
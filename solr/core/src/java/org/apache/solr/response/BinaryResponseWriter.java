@@ -114,12 +114,17 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
       codec.writeTag(JavaBinCodec.ARR, sz);
       if(searcher == null) searcher = solrQueryRequest.getSearcher();
       if(schema == null) schema = solrQueryRequest.getSchema(); 
+      // each document is written as soon as it is loaded, and the same
+      // SolrDocument is reused for all of them, so the memory needed does
+      // not grow with the number of rows requested
+      SolrDocument sdoc = new SolrDocument();
       DocIterator iterator = ids.iterator();
       for (int i = 0; i < sz; i++) {
         int id = iterator.nextDoc();
         Document doc = searcher.doc(id, returnFields);
 
-        SolrDocument sdoc = getDoc(doc);
+        sdoc.clear();
+        getDoc(doc, sdoc);
 
         if (includeScore && ids.hasScores()) {
           sdoc.addField("score", iterator.score());
@@ -131,7 +136,11 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
 
 
     public SolrDocument getDoc(Document doc) {
-      SolrDocument solrDoc = new SolrDocument();
+      return getDoc(doc, new SolrDocument());
+    }
+
+    /** Adds the fields of <code>doc</code> to the (empty) <code>solrDoc</code> */
+    public SolrDocument getDoc(Document doc, SolrDocument solrDoc) {
       for (Fieldable f : doc.getFields()) {
         String fieldName = f.name();
         if (returnFields != null && !returnFields.contains(fieldName)) continue;
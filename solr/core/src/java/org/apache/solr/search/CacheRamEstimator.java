@@ -0,0 +1,91 @@
+package org.apache.solr.search;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.request.UnInvertedField;
+
+/**
+ * Estimates the heap memory used by cache entries, for caches configured
+ * with a <code>maxRamMB</code> limit.
+ * <p/>
+ * Entries of Solr's own caches are measured cheaply: {@link DocSet}s and
+ * {@link DocList}s and {@link UnInvertedField}s report their own size, and
+ * {@link Document}s are estimated from their stored values.  Anything else
+ * (e.g. the {@link org.apache.lucene.search.Query} keys of the filterCache,
+ * or the values of user defined caches) is measured with
+ * {@link RamUsageEstimator}, which walks the object graph by reflection.
+ * <p/>
+ * The estimate of an entry must not change while it is in the cache, since
+ * caches may estimate it again when it is removed.
+ */
+public final class CacheRamEstimator {
+
+  private CacheRamEstimator() {}
+
+  /** Assumed overhead of the cache itself (hash and list entries, pointers) per entry */
+  public static final long ENTRY_OVERHEAD = 64;
+
+  /** Used when an object can not be measured */
+  public static final long UNKNOWN_OBJECT_SIZE = 256;
+
+  /** Returns the estimated size in bytes of a cache entry, including {@link #ENTRY_OVERHEAD} */
+  public static long sizeOf(Object key, Object value) {
+    return ENTRY_OVERHEAD + sizeOf(key) + sizeOf(value);
+  }
+
+  /** Returns the estimated size in bytes of a single key or value */
+  public static long sizeOf(Object o) {
+    if (o == null) {
+      return 0;
+    } else if (o instanceof DocSet) {
+      return ((DocSet) o).memSize();
+    } else if (o instanceof UnInvertedField) {
+      return ((UnInvertedField) o).memSize();
+    } else if (o instanceof Document) {
+      return sizeOf((Document) o);
+    } else if (o instanceof String) {
+      return 40 + ((String) o).length() * RamUsageEstimator.NUM_BYTES_CHAR;
+    } else if (o instanceof Number) {
+      return 16;
+    }
+    try {
+      return new RamUsageEstimator().estimateRamUsage(o);
+    } catch (RuntimeException e) {
+      // reflection was not permitted on some field
+      return UNKNOWN_OBJECT_SIZE;
+    }
+  }
+
+  private static long sizeOf(Document doc) {
+    long size = 32;
+    for (Fieldable f : doc.getFields()) {
+      size += 64 + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+      // don't load lazy fields just to measure them
+      if (f.isLazy()) continue;
+      if (f.isBinary()) {
+        size += f.getBinaryLength();
+      } else {
+        final String s = f.stringValue();
+        if (s != null) size += 40 + s.length() * RamUsageEstimator.NUM_BYTES_CHAR;
+      }
+    }
+    return size;
+  }
+}
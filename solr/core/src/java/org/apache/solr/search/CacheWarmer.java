@@ -0,0 +1,99 @@
+package org.apache.solr.search;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.solr.common.SolrException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Regenerates the autowarmed items of a {@link SolrCache}, using the new
+ * searcher's warming threads if it has more than one
+ * (<code>&lt;autowarmThreads&gt;</code> in solrconfig.xml).
+ * <p/>
+ * The items are passed ordered from the least to the most valuable (e.g.
+ * least to most recently used), which is the order a single thread inserts
+ * them so that the new cache ends up in the same order as the old one.
+ * Multiple threads instead take the items from the most valuable end, so
+ * that the items most likely to be hit are ready first; the order of the
+ * warmed items in the new cache is then only approximate.
+ * <p/>
+ * In both cases the call returns only once all items are regenerated, or
+ * the regenerator asked to stop, so caches are still warmed one after another.
+ */
+public final class CacheWarmer {
+
+  private CacheWarmer() {}
+
+  public static void regenerate(final SolrIndexSearcher searcher, final SolrCache newCache, final SolrCache oldCache,
+                                final CacheRegenerator regenerator, final Object[] keys, final Object[] vals) {
+    final ExecutorService executor = searcher == null ? null : searcher.getWarmingExecutor();
+    final int numWorkers = executor == null ? 1 : Math.min(searcher.getAutowarmThreads(), keys.length);
+    if (numWorkers <= 1) {
+      for (int i=0; i<keys.length; i++) {
+        if (!regenerate(searcher, newCache, oldCache, regenerator, keys[i], vals[i])) break;
+      }
+      return;
+    }
+
+    // each worker takes the next most valuable item until none are left
+    final AtomicInteger next = new AtomicInteger(keys.length);
+    final AtomicBoolean stop = new AtomicBoolean();
+    final List<Future<?>> futures = new ArrayList<Future<?>>(numWorkers);
+    for (int w=0; w<numWorkers; w++) {
+      futures.add(executor.submit(new Runnable() {
+        public void run() {
+          int i;
+          while (!stop.get() && (i = next.decrementAndGet()) >= 0) {
+            if (!regenerate(searcher, newCache, oldCache, regenerator, keys[i], vals[i])) {
+              stop.set(true);
+            }
+          }
+        }
+      }));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      stop.set(true);
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // should not happen, regenerate() catches everything
+      stop.set(true);
+      SolrException.log(SolrCache.log, "Error during auto-warming of " + newCache.name(), e.getCause());
+    }
+  }
+
+  private static boolean regenerate(SolrIndexSearcher searcher, SolrCache newCache, SolrCache oldCache,
+                                    CacheRegenerator regenerator, Object key, Object val) {
+    try {
+      return regenerator.regenerateItem(searcher, newCache, oldCache, key, val);
+    }
+    catch (Throwable e) {
+      SolrException.log(SolrCache.log, "Error during auto-warming of key:" + key, e);
+      return true;
+    }
+  }
+}
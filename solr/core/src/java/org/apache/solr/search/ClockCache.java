@@ -0,0 +1,274 @@
+package org.apache.solr.search;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.solr.common.util.ConcurrentClockCache;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrCore;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * SolrCache based on the {@link ConcurrentClockCache} implementation.
+ * <p/>
+ * Lookups are lock free and puts only lock one of several segments.  Unlike
+ * {@link FastLRUCache}, which periodically sorts all of its entries by last
+ * access time on the thread that happens to push it over its size limit,
+ * this cache evicts at most one entry per put (using the CLOCK algorithm),
+ * so no single request pays for cleaning up the whole cache.  The price is
+ * that eviction only approximates LRU.
+ * <p/>
+ * In addition to <code>size</code>, <code>initialSize</code>,
+ * <code>autowarmCount</code> and <code>showItems</code>, it accepts
+ * <code>segments</code>, the number of independently locked segments
+ * (defaults to twice the number of processors; small caches use fewer),
+ * and <code>maxRamMB</code>, a limit on the memory used by the entries as
+ * estimated by {@link CacheRamEstimator}.  Since each segment preallocates
+ * its share of <code>size</code> slots, <code>size</code> always applies too.
+ * <p/>
+ * Also see <a href="http://wiki.apache.org/solr/SolrCaching">SolrCaching</a>
+ *
+ * @see org.apache.solr.common.util.ConcurrentClockCache
+ * @see org.apache.solr.search.SolrCache
+ */
+public class ClockCache<K,V> implements SolrCache<K,V> {
+
+  // contains the statistics objects for all open caches of the same type
+  private List<ConcurrentClockCache.Stats> statsList;
+
+  private long warmupTime = 0;
+
+  private String name;
+  private int autowarmCount;
+  private State state;
+  private CacheRegenerator regenerator;
+  private String description = "Concurrent Clock Cache";
+  private ConcurrentClockCache<K,V> cache;
+  private int showItems = 0;
+  private long maxRamBytes = Long.MAX_VALUE;
+
+  public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
+    state = State.CREATED;
+    this.regenerator = regenerator;
+    name = (String) args.get("name");
+    String str = (String) args.get("size");
+    int limit = str == null ? 1024 : Integer.parseInt(str);
+    if (limit < 1) limit = 1;
+    str = (String) args.get("initialSize");
+    final int initialSize = str == null ? limit : Integer.parseInt(str);
+    str = (String) args.get("segments");
+    final int segments = str == null ? 0 : Integer.parseInt(str);
+    str = (String) args.get("autowarmCount");
+    autowarmCount = str == null ? 0 : Integer.parseInt(str);
+    str = (String) args.get("showItems");
+    showItems = str == null ? 0 : Integer.parseInt(str);
+    str = (String) args.get("maxRamMB");
+    if (str != null) {
+      maxRamBytes = (long) (Double.parseDouble(str) * 1024L * 1024L);
+    }
+
+    cache = new ConcurrentClockCache<K,V>(limit, maxRamBytes, initialSize, segments, null);
+    cache.setAlive(false);
+
+    description = "Concurrent Clock Cache(maxSize=" + limit + ", initialSize=" + initialSize +
+            ", segments=" + cache.getNumSegments();
+    if (maxRamBytes != Long.MAX_VALUE) {
+      description += ", maxRamMB=" + (maxRamBytes / (1024.0 * 1024.0));
+    }
+    if (autowarmCount > 0) {
+      description += ", autowarmCount=" + autowarmCount + ", regenerator=" + regenerator;
+    }
+    description += ')';
+
+    statsList = (List<ConcurrentClockCache.Stats>) persistence;
+    if (statsList == null) {
+      // must be the first time a cache of this type is being created
+      // Use a CopyOnWriteArrayList since puts are very rare and iteration may be a frequent operation
+      // because it is used in getStatistics()
+      statsList = new CopyOnWriteArrayList<ConcurrentClockCache.Stats>();
+
+      // the first entry will be for cumulative stats of caches that have been closed.
+      statsList.add(new ConcurrentClockCache.Stats());
+    }
+    statsList.add(cache.getStats());
+    return statsList;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  public V put(K key, V value) {
+    if (maxRamBytes == Long.MAX_VALUE) {
+      return cache.put(key, value);
+    }
+    return cache.put(key, value, CacheRamEstimator.sizeOf(key, value));
+  }
+
+  public V get(K key) {
+    return cache.get(key);
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  public void setState(State state) {
+    this.state = state;
+    cache.setAlive(state == State.LIVE);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public void warm(SolrIndexSearcher searcher, SolrCache old) throws IOException {
+    if (regenerator == null) return;
+    long warmingStartTime = System.currentTimeMillis();
+    ClockCache other = (ClockCache) old;
+    // warm entries
+    if (autowarmCount != 0) {
+      int sz = Math.min(other.size(), cache.getLimit());
+      if (autowarmCount != -1) sz = Math.min(sz, autowarmCount);
+      // recently used entries come first: reverse them, since CacheWarmer
+      // wants the least valuable first
+      Map items = other.cache.getLatestAccessedItems(sz);
+      Object[] keys = new Object[items.size()];
+      Object[] vals = new Object[items.size()];
+      int counter = keys.length;
+      for (Object o : items.entrySet()) {
+        counter--;
+        keys[counter] = ((Map.Entry) o).getKey();
+        vals[counter] = ((Map.Entry) o).getValue();
+      }
+      CacheWarmer.regenerate(searcher, this, old, regenerator, keys, vals);
+    }
+    warmupTime = System.currentTimeMillis() - warmingStartTime;
+  }
+
+
+  public void close() {
+    // add the stats to the cumulative stats object (the first in the statsList)
+    statsList.get(0).add(cache.getStats());
+    statsList.remove(cache.getStats());
+    cache.destroy();
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+  public String getName() {
+    return ClockCache.class.getName();
+  }
+
+  public String getVersion() {
+    return SolrCore.version;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  public String getSourceId() {
+    return "$Id$";
+  }
+
+  public String getSource() {
+    return "$URL$";
+  }
+
+  public URL[] getDocs() {
+    return null;
+  }
+
+  // returns a ratio, not a percent.
+  private static String calcHitRatio(long lookups, long hits) {
+    if (lookups == 0) return "0.00";
+    if (lookups == hits) return "1.00";
+    int hundredths = (int) (hits * 100 / lookups);   // rounded down
+    if (hundredths < 10) return "0.0" + hundredths;
+    return "0." + hundredths;
+  }
+
+  public NamedList getStatistics() {
+    NamedList<Serializable> lst = new SimpleOrderedMap<Serializable>();
+    if (cache == null)  return lst;
+    ConcurrentClockCache.Stats stats = cache.getStats();
+    long lookups = stats.getCumulativeLookups();
+    long hits = stats.getCumulativeHits();
+    long inserts = stats.getCumulativePuts();
+    long evictions = stats.getCumulativeEvictions();
+    long size = cache.size();
+
+    lst.add("lookups", lookups);
+    lst.add("hits", hits);
+    lst.add("hitratio", calcHitRatio(lookups, hits));
+    lst.add("inserts", inserts);
+    lst.add("evictions", evictions);
+    lst.add("size", size);
+    if (maxRamBytes != Long.MAX_VALUE) {
+      lst.add("ramBytesUsed", cache.getRamBytesUsed());
+    }
+
+    lst.add("warmupTime", warmupTime);
+
+    long clookups = 0;
+    long chits = 0;
+    long cinserts = 0;
+    long cevictions = 0;
+
+    // NOTE: It is safe to iterate on a CopyOnWriteArrayList
+    for (ConcurrentClockCache.Stats statistics : statsList) {
+      clookups += statistics.getCumulativeLookups();
+      chits += statistics.getCumulativeHits();
+      cinserts += statistics.getCumulativePuts();
+      cevictions += statistics.getCumulativeEvictions();
+    }
+    lst.add("cumulative_lookups", clookups);
+    lst.add("cumulative_hits", chits);
+    lst.add("cumulative_hitratio", calcHitRatio(clookups, chits));
+    lst.add("cumulative_inserts", cinserts);
+    lst.add("cumulative_evictions", cevictions);
+
+    if (showItems != 0) {
+      Map items = cache.getLatestAccessedItems( showItems == -1 ? Integer.MAX_VALUE : showItems );
+      for (Object o : items.entrySet()) {
+        Map.Entry e = (Map.Entry) o;
+        lst.add("item_" + e.getKey(), e.getValue().toString());
+      }
+    }
+
+    return lst;
+  }
+
+  @Override
+  public String toString() {
+    return name + getStatistics().toString();
+  }
+}
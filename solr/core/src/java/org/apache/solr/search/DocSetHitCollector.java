@@ -18,6 +18,7 @@
 package org.apache.solr.search;
 
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.index.IndexReader;
@@ -33,6 +34,9 @@ class DocSetCollector extends Collector {
   OpenBitSet bits;
   final int maxDoc;
   final int smallSetSize;
+  // the first doc of the segment collected, if only one of the segments is
+  // collected (docs are stored relative to it)
+  final int offset;
   int base;
 
   // in case there aren't that many hits, we may not want a very sparse
@@ -41,8 +45,17 @@ class DocSetCollector extends Collector {
   final int[] scratch;
 
   DocSetCollector(int smallSetSize, int maxDoc) {
+    this(smallSetSize, maxDoc, 0);
+  }
+
+  /**
+   * Collects only the segment of <code>maxDoc</code> docs starting at <code>offset</code>,
+   * see {@link #getDocSet(DocSetCollector[], int, int)}.
+   */
+  DocSetCollector(int smallSetSize, int maxDoc, int offset) {
     this.smallSetSize = smallSetSize;
     this.maxDoc = maxDoc;
+    this.offset = offset;
     this.scratch = new int[smallSetSize];
   }
   @Override
@@ -78,13 +91,66 @@ class DocSetCollector extends Collector {
     }
   }
 
+  /**
+   * Returns the union of the docs collected by <code>collectors</code>, each of
+   * which collected one segment, in the order of the segments.
+   */
+  static DocSet getDocSet(DocSetCollector[] collectors, int smallSetSize, int maxDoc) throws IOException {
+    int size = 0;
+    for (DocSetCollector collector : collectors) size += collector.pos;
+
+    if (size <= smallSetSize) {
+      int[] docs = new int[size];
+      int upto = 0;
+      for (DocSetCollector collector : collectors) {
+        int offset = collector.offset;
+        int inScratch = Math.min(collector.pos, collector.scratch.length);
+        for (int i=0; i<inScratch; i++) docs[upto++] = collector.scratch[i] + offset;
+        if (collector.bits != null) {
+          // the docs collected after the scratch array was full, all greater
+          DocIdSetIterator iter = collector.bits.iterator();
+          for (int doc; (doc = iter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS; ) {
+            docs[upto++] = doc + offset;
+          }
+        }
+      }
+      return new SortedIntDocSet(docs, size);
+    }
+
+    OpenBitSet bits = new OpenBitSet(maxDoc);
+    long[] words = bits.getBits();
+    for (DocSetCollector collector : collectors) {
+      int offset = collector.offset;
+      if (collector.bits == null) {
+        for (int i=0; i<collector.pos; i++) bits.fastSet(collector.scratch[i] + offset);
+        continue;
+      }
+
+      for (int i=0; i<collector.scratch.length; i++) collector.bits.fastSet(collector.scratch[i]);
+      // or the words of the segment in, shifted to its offset
+      long[] segmentWords = collector.bits.getBits();
+      int numWords = collector.bits.getNumWords();
+      int word = offset >>> 6;
+      int shift = offset & 0x3f;
+      for (int i=0; i<numWords; i++) {
+        long w = segmentWords[i];
+        if (w == 0) continue;
+        words[word+i] |= w << shift;
+        if (shift != 0 && (w >>> (64-shift)) != 0) {
+          words[word+i+1] |= w >>> (64-shift);
+        }
+      }
+    }
+    return new BitDocSet(bits, size);
+  }
+
   @Override
   public void setScorer(Scorer scorer) throws IOException {
   }
 
   @Override
   public void setNextReader(IndexReader reader, int docBase) throws IOException {
-    this.base = docBase;
+    this.base = docBase - offset;
   }
 
   @Override
@@ -97,7 +163,11 @@ class DocSetDelegateCollector extends DocSetCollector {
   final Collector collector;
 
   DocSetDelegateCollector(int smallSetSize, int maxDoc, Collector collector) {
-    super(smallSetSize, maxDoc);
+    this(smallSetSize, maxDoc, 0, collector);
+  }
+
+  DocSetDelegateCollector(int smallSetSize, int maxDoc, int offset, Collector collector) {
+    super(smallSetSize, maxDoc, offset);
     this.collector = collector;
   }
 
@@ -145,6 +215,6 @@ class DocSetDelegateCollector extends DocSetCollector {
   @Override
   public void setNextReader(IndexReader reader, int docBase) throws IOException {
     collector.setNextReader(reader, docBase);
-    this.base = docBase;
+    this.base = docBase - offset;
   }
 }
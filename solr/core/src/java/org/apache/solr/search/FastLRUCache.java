@@ -16,7 +16,6 @@ package org.apache.solr.search;
  * limitations under the License.
  */
 
-import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.ConcurrentLRUCache;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
@@ -57,13 +56,20 @@ public class FastLRUCache<K,V> implements SolrCache<K,V> {
   private String description = "Concurrent LRU Cache";
   private ConcurrentLRUCache<K,V> cache;
   private int showItems = 0;
+  private long maxRamBytes = Long.MAX_VALUE;
 
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
     state = State.CREATED;
     this.regenerator = regenerator;
     name = (String) args.get("name");
-    String str = (String) args.get("size");
-    int limit = str == null ? 1024 : Integer.parseInt(str);
+    String str = (String) args.get("maxRamMB");
+    if (str != null) {
+      maxRamBytes = (long) (Double.parseDouble(str) * 1024L * 1024L);
+    }
+    str = (String) args.get("size");
+    // with a RAM limit, the number of entries is not limited by default
+    final boolean unlimitedSize = str == null && maxRamBytes != Long.MAX_VALUE;
+    int limit = str == null ? (unlimitedSize ? Integer.MAX_VALUE : 1024) : Integer.parseInt(str);
     int minLimit;
     str = (String) args.get("minSize");
     if (str == null) {
@@ -85,7 +91,7 @@ public class FastLRUCache<K,V> implements SolrCache<K,V> {
     acceptableLimit = Math.max(minLimit, acceptableLimit);
 
     str = (String) args.get("initialSize");
-    final int initialSize = str == null ? limit : Integer.parseInt(str);
+    final int initialSize = str == null ? (unlimitedSize ? 1024 : limit) : Integer.parseInt(str);
     str = (String) args.get("autowarmCount");
     autowarmCount = str == null ? 0 : Integer.parseInt(str);
     str = (String) args.get("cleanupThread");
@@ -97,12 +103,18 @@ public class FastLRUCache<K,V> implements SolrCache<K,V> {
 
     description = "Concurrent LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
             ", minSize="+minLimit + ", acceptableSize="+acceptableLimit+", cleanupThread="+newThread;
+    if (maxRamBytes != Long.MAX_VALUE) {
+      description += ", maxRamMB=" + (maxRamBytes / (1024.0 * 1024.0));
+    }
     if (autowarmCount > 0) {
       description += ", autowarmCount=" + autowarmCount + ", regenerator=" + regenerator;
     }
     description += ')';
 
-    cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null);
+    // like minSize, evict down to 90% of the RAM limit
+    final long ramLowerWaterMark = maxRamBytes == Long.MAX_VALUE ? Long.MAX_VALUE : (long) (maxRamBytes * 0.9);
+    cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, maxRamBytes, ramLowerWaterMark,
+        initialSize, newThread, false, null);
     cache.setAlive(false);
 
     statsList = (List<ConcurrentLRUCache.Stats>) persistence;
@@ -129,7 +141,10 @@ public class FastLRUCache<K,V> implements SolrCache<K,V> {
   }
 
   public V put(K key, V value) {
-    return cache.put(key, value);
+    if (maxRamBytes == Long.MAX_VALUE) {
+      return cache.put(key, value);
+    }
+    return cache.put(key, value, CacheRamEstimator.sizeOf(key, value));
   }
 
   public V get(K key) {
@@ -158,21 +173,16 @@ public class FastLRUCache<K,V> implements SolrCache<K,V> {
       int sz = other.size();
       if (autowarmCount != -1) sz = Math.min(sz, autowarmCount);
       Map items = other.cache.getLatestAccessedItems(sz);
-      Map.Entry[] itemsArr = new Map.Entry[items.size()];
-      int counter = 0;
+      // from the oldest to the newest
+      Object[] keys = new Object[items.size()];
+      Object[] vals = new Object[items.size()];
+      int counter = keys.length;
       for (Object mapEntry : items.entrySet()) {
-        itemsArr[counter++] = (Map.Entry) mapEntry;
-      }
-      for (int i = itemsArr.length - 1; i >= 0; i--) {
-        try {
-          boolean continueRegen = regenerator.regenerateItem(searcher,
-                  this, old, itemsArr[i].getKey(), itemsArr[i].getValue());
-          if (!continueRegen) break;
-        }
-        catch (Throwable e) {
-          SolrException.log(log, "Error during auto-warming of key:" + itemsArr[i].getKey(), e);
-        }
+        counter--;
+        keys[counter] = ((Map.Entry) mapEntry).getKey();
+        vals[counter] = ((Map.Entry) mapEntry).getValue();
       }
+      CacheWarmer.regenerate(searcher, this, old, regenerator, keys, vals);
     }
     warmupTime = System.currentTimeMillis() - warmingStartTime;
   }
@@ -239,6 +249,9 @@ public class FastLRUCache<K,V> implements SolrCache<K,V> {
     lst.add("inserts", inserts);
     lst.add("evictions", evictions);
     lst.add("size", size);
+    if (maxRamBytes != Long.MAX_VALUE) {
+      lst.add("ramBytesUsed", stats.getCurrentRamBytes());
+    }
 
     lst.add("warmupTime", warmupTime);
 
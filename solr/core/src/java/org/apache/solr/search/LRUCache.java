@@ -17,7 +17,6 @@
 
 package org.apache.solr.search;
 
-import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.core.SolrCore;
@@ -52,6 +51,13 @@ public class LRUCache<K,V> implements SolrCache<K,V> {
   private long inserts;
   private long evictions;
 
+  // only tracked if maxRamBytes is set
+  private long maxRamBytes = Long.MAX_VALUE;
+  private long ramBytesUsed;
+  // the estimated size of each entry when it was added, so that removing it
+  // subtracts the same amount
+  private Map<K,Long> ramBytesByKey;
+
   private long warmupTime = 0;
 
   private Map<K,V> map;
@@ -65,29 +71,44 @@ public class LRUCache<K,V> implements SolrCache<K,V> {
     state=State.CREATED;
     this.regenerator = regenerator;
     name = (String)args.get("name");
-    String str = (String)args.get("size");
-    final int limit = str==null ? 1024 : Integer.parseInt(str);
+    String str = (String)args.get("maxRamMB");
+    if (str != null) {
+      maxRamBytes = (long) (Double.parseDouble(str) * 1024L * 1024L);
+    }
+    str = (String)args.get("size");
+    // with a RAM limit, the number of entries is not limited by default
+    final int limit = str==null ? (maxRamBytes != Long.MAX_VALUE ? Integer.MAX_VALUE : 1024) : Integer.parseInt(str);
     str = (String)args.get("initialSize");
     final int initialSize = Math.min(str==null ? 1024 : Integer.parseInt(str), limit);
     str = (String)args.get("autowarmCount");
     autowarmCount = str==null ? 0 : Integer.parseInt(str);
 
     description = "LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize;
+    if (maxRamBytes != Long.MAX_VALUE) {
+      description += ", maxRamMB=" + (maxRamBytes / (1024.0 * 1024.0));
+    }
     if (autowarmCount>0) {
       description += ", autowarmCount=" + autowarmCount
               + ", regenerator=" + regenerator;
     }
     description += ')';
 
+    if (maxRamBytes != Long.MAX_VALUE) {
+      ramBytesByKey = new HashMap<K,Long>(initialSize);
+    }
+
     map = new LinkedHashMap<K,V>(initialSize, 0.75f, true) {
         @Override
-        protected boolean removeEldestEntry(Map.Entry eldest) {
+        protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
           if (size() > limit) {
             // increment evictions regardless of state.
             // this doesn't need to be synchronized because it will
             // only be called in the context of a higher level synchronized block.
             evictions++;
             stats.evictions.incrementAndGet();
+            if (ramBytesByKey != null) {
+              removeRamBytes(eldest.getKey());
+            }
             return true;
           }
           return false;
@@ -115,6 +136,8 @@ public class LRUCache<K,V> implements SolrCache<K,V> {
   }
 
   public V put(K key, V value) {
+    // estimate outside of the lock
+    final long ramBytes = maxRamBytes == Long.MAX_VALUE ? 0 : CacheRamEstimator.sizeOf(key, value);
     synchronized (map) {
       if (state == State.LIVE) {
         stats.inserts.incrementAndGet();
@@ -123,10 +146,40 @@ public class LRUCache<K,V> implements SolrCache<K,V> {
       // increment local inserts regardless of state???
       // it does make it more consistent with the current size...
       inserts++;
-      return map.put(key,value);
+      if (ramBytesByKey != null) {
+        // before map.put, which may evict the eldest entry
+        removeRamBytes(key);
+        ramBytesByKey.put(key, ramBytes);
+        ramBytesUsed += ramBytes;
+      }
+      V old = map.put(key,value);
+      if (ramBytesByKey != null) {
+        evictToRamLimit();
+      }
+      return old;
+    }
+  }
+
+  /** Evicts the least recently used entries (but never the most recent
+   *  one) until the RAM usage is within the limit. Must hold the lock. */
+  private void evictToRamLimit() {
+    if (ramBytesUsed <= maxRamBytes) return;
+    Iterator<Map.Entry<K,V>> iter = map.entrySet().iterator();
+    while (ramBytesUsed > maxRamBytes && map.size() > 1) {
+      Map.Entry<K,V> eldest = iter.next();
+      removeRamBytes(eldest.getKey());
+      iter.remove();
+      evictions++;
+      stats.evictions.incrementAndGet();
     }
   }
 
+  /** Subtracts the RAM usage recorded for an entry that is removed. Must hold the lock. */
+  private void removeRamBytes(K key) {
+    Long ramBytes = ramBytesByKey.remove(key);
+    if (ramBytes != null) ramBytesUsed -= ramBytes;
+  }
+
   public V get(K key) {
     synchronized (map) {
       V val = map.get(key);
@@ -146,6 +199,8 @@ public class LRUCache<K,V> implements SolrCache<K,V> {
   public void clear() {
     synchronized(map) {
       map.clear();
+      if (ramBytesByKey != null) ramBytesByKey.clear();
+      ramBytesUsed = 0;
     }
   }
 
@@ -190,15 +245,7 @@ public class LRUCache<K,V> implements SolrCache<K,V> {
 
       // autowarm from the oldest to the newest entries so that the ordering will be
       // correct in the new cache.
-      for (int i=0; i<keys.length; i++) {
-        try {
-          boolean continueRegen = regenerator.regenerateItem(searcher, this, old, keys[i], vals[i]);
-          if (!continueRegen) break;
-        }
-        catch (Throwable e) {
-          SolrException.log(log,"Error during auto-warming of key:" + keys[i], e);
-        }
-      }
+      CacheWarmer.regenerate(searcher, this, old, regenerator, keys, vals);
     }
 
     warmupTime = System.currentTimeMillis() - warmingStartTime;
@@ -265,6 +312,9 @@ public class LRUCache<K,V> implements SolrCache<K,V> {
       lst.add("inserts", inserts);
       lst.add("evictions", evictions);
       lst.add("size", map.size());
+      if (maxRamBytes != Long.MAX_VALUE) {
+        lst.add("ramBytesUsed", ramBytesUsed);
+      }
     }
 
     lst.add("warmupTime", warmupTime);
@@ -19,14 +19,17 @@ package org.apache.solr.search;
 
 import org.apache.lucene.search.*;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
+import java.util.Comparator;
 
 
 public class MissingStringLastComparatorSource extends FieldComparatorSource {
   public static final String bigString="\uffff\uffff\uffff\uffff\uffff\uffff\uffff\uffffNULL_VAL";
 
   private final String missingValueProxy;
+  private final boolean packed;
 
   public MissingStringLastComparatorSource() {
     this(bigString);
@@ -39,11 +42,25 @@ public class MissingStringLastComparatorSource extends FieldComparatorSource {
    * This value is *not* normally used for sorting, but used to create
    */
   public MissingStringLastComparatorSource(String missingValueProxy) {
+    this(missingValueProxy, false);
+  }
+
+  /** Creates a {@link FieldComparatorSource} like {@link #MissingStringLastComparatorSource(String)}
+   *
+   * @param missingValueProxy   The value returned when sortValue() is called for a document missing the sort field.
+   * @param packed   if true, ords and terms are read from the compact {@link FieldCache#getTermsIndex}
+   * instead of {@link FieldCache#getStringIndex}; the resulting sort is identical.
+   */
+  public MissingStringLastComparatorSource(String missingValueProxy, boolean packed) {
     this.missingValueProxy=missingValueProxy;
+    this.packed=packed;
   }
 
   @Override
   public FieldComparator newComparator(String fieldname, int numHits, int sortPos, boolean reversed) throws IOException {
+    if (packed) {
+      return new MissingLastTermOrdComparator(numHits, fieldname, missingValueProxy);
+    }
     return new MissingLastOrdComparator(numHits, fieldname, sortPos, reversed, missingValueProxy);
   }
 
@@ -203,3 +220,146 @@ public class MissingStringLastComparatorSource extends FieldComparatorSource {
       return field;
     }
   }
+
+
+// Same as MissingLastOrdComparator, but reading ords and terms from
+// the packed FieldCache.DocTermsIndex.
+class MissingLastTermOrdComparator extends FieldComparator<String> {
+    private static final int NULL_ORD = Integer.MAX_VALUE;
+    private static final Comparator<BytesRef> UTF16_ORDER = BytesRef.getUTF8SortedAsUTF16Comparator();
+    private final String nullVal;
+
+    private final int[] ords;
+    private final BytesRef[] values;
+    private final int[] readerGen;
+
+    private int currentReaderGen = -1;
+    private FieldCache.DocTermsIndex termsIndex;
+    private final String field;
+
+    private int bottomSlot = -1;
+    private int bottomOrd;
+    private BytesRef bottomValue;
+    private final BytesRef tempBR = new BytesRef();
+
+    public MissingLastTermOrdComparator(int numHits, String field, String nullVal) {
+      ords = new int[numHits];
+      values = new BytesRef[numHits];
+      readerGen = new int[numHits];
+      this.field = field;
+      this.nullVal = nullVal;
+    }
+
+    @Override
+    public int compare(int slot1, int slot2) {
+      if (readerGen[slot1] == readerGen[slot2]) {
+        int cmp = ords[slot1] - ords[slot2];
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+
+      final BytesRef val1 = values[slot1];
+      final BytesRef val2 = values[slot2];
+
+      if (val1 == null) {
+        if (val2 == null) {
+          return 0;
+        }
+        return 1;
+      } else if (val2 == null) {
+        return -1;
+      }
+      return UTF16_ORDER.compare(val1, val2);
+    }
+
+    @Override
+    public int compareBottom(int doc) {
+      assert bottomSlot != -1;
+      int order = termsIndex.getOrd(doc);
+      int ord = (order == 0) ? NULL_ORD : order;
+      final int cmp = bottomOrd - ord;
+      if (cmp != 0) {
+        return cmp;
+      }
+
+      final BytesRef val2 = termsIndex.lookup(order, tempBR);
+
+      // take care of the case where both vals are null
+      if (bottomValue == null || val2 == null) {
+        if (bottomValue == val2) return 0;
+        return bottomValue == null ? 1 : -1;
+      }
+
+      return UTF16_ORDER.compare(bottomValue, val2);
+    }
+
+    private void convert(int slot) {
+      readerGen[slot] = currentReaderGen;
+      BytesRef value = values[slot];
+      if (value == null) {
+        // should already be done
+        // ords[slot] = NULL_ORD;
+        return;
+      }
+
+      int index = termsIndex.binarySearchLookup(value, tempBR);
+      if (index < 0) {
+        index = -index - 2;
+      }
+      ords[slot] = index;
+    }
+
+    @Override
+    public void copy(int slot, int doc) {
+      final int ord = termsIndex.getOrd(doc);
+      assert ord >= 0;
+      if (ord == 0) {
+        ords[slot] = NULL_ORD;
+        values[slot] = null;
+      } else {
+        ords[slot] = ord;
+        if (values[slot] == null) {
+          values[slot] = new BytesRef();
+        }
+        values[slot].copy(termsIndex.lookup(ord, tempBR));
+      }
+      readerGen[slot] = currentReaderGen;
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+      termsIndex = FieldCache.DEFAULT.getTermsIndex(reader, field);
+      currentReaderGen++;
+      assert termsIndex.numOrd() > 0;
+      if (bottomSlot != -1) {
+        convert(bottomSlot);
+        bottomOrd = ords[bottomSlot];
+      }
+    }
+
+    @Override
+    public void setBottom(final int bottom) {
+      bottomSlot = bottom;
+      if (readerGen[bottom] != currentReaderGen) {
+        convert(bottomSlot);
+      }
+      bottomOrd = ords[bottom];
+      assert bottomOrd >= 0;
+      bottomValue = values[bottom];
+    }
+
+    @Override
+    public String value(int slot) {
+      BytesRef v = values[slot];
+      return v==null ? nullVal : v.utf8ToString();
+    }
+
+    public int getBottomSlot() {
+      return bottomSlot;
+    }
+
+    public String getField() {
+      return field;
+    }
+  }
@@ -0,0 +1,283 @@
+package org.apache.solr.search;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoMBean;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the documents matching a filter query per index segment, so that
+ * opening a new searcher only has to compute filters for the segments that
+ * are new, instead of for the whole index.
+ * <p/>
+ * One instance is shared by all the searchers of a {@link SolrCore}
+ * (configured with <code>&lt;segmentFilterCacheSize&gt;</code>).  Entries
+ * are keyed by the segment's core cache key, which is shared by all
+ * readers that open the same segment, and go away when the segment is
+ * garbage collected.  Each segment keeps up to <code>size</code> filters,
+ * least recently used evicted first.
+ * <p/>
+ * A cached segment set holds the matches at the time it was computed;
+ * documents deleted later are skipped when the per segment sets are combined
+ * into the top level {@link DocSet}, which the filterCache then caches as usual.
+ * <p/>
+ * Queries whose matches in a segment may depend on the rest of the index, such as
+ * <code>{!frange}</code> over <code>ord()</code>, are not cached per segment, see
+ * {@link #isSegmentCacheable}.
+ */
+public class SegmentFilterCache implements SolrInfoMBean {
+
+  private final int size;
+
+  // guarded by itself
+  private final Map<Object,Map<Query,DocSet>> segments = new WeakHashMap<Object,Map<Query,DocSet>>();
+
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong inserts = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public SegmentFilterCache(int size) {
+    if (size < 1) throw new IllegalArgumentException("size must be > 0");
+    this.size = size;
+  }
+
+  /**
+   * Returns the documents of <code>searcher</code> matching the (positive)
+   * query, computing and caching the matches of the segments for which they
+   * are not cached yet.
+   */
+  public DocSet getDocSet(SolrIndexSearcher searcher, Query query) throws IOException {
+    final SolrIndexReader[] leaves = searcher.getReader().getLeafReaders();
+    final int[] offsets = searcher.getReader().getLeafOffsets();
+    final DocSet[] sets = new DocSet[leaves.length];
+    Weight weight = null;
+    for (int i=0; i<leaves.length; i++) {
+      final Object coreKey = leaves[i].getCoreCacheKey();
+      DocSet set = get(coreKey, query);
+      if (set == null) {
+        if (weight == null) weight = searcher.createNormalizedWeight(query);
+        set = compute(leaves[i], weight);
+        put(coreKey, query, set);
+      }
+      sets[i] = set;
+    }
+    return combine(searcher.maxDoc(), leaves, offsets, sets);
+  }
+
+  /**
+   * Returns false if the matches of a segment may depend on the other segments of
+   * the index, so that they can not be reused by a reopened searcher.  This is the
+   * case for queries that use a {@link SolrFilter}: it is given the top level
+   * searcher, and its value sources may read the top level reader, for example
+   * <code>ord()</code>, <code>scale()</code> or external file fields.
+   */
+  public static boolean isSegmentCacheable(Query query) {
+    if (query instanceof ConstantScoreQuery) {
+      final ConstantScoreQuery csq = (ConstantScoreQuery) query;
+      final Filter filter = csq.getFilter();
+      if (filter != null) return !(filter instanceof SolrFilter);
+      return isSegmentCacheable(csq.getQuery());
+    } else if (query instanceof WrappedQuery) {
+      return isSegmentCacheable(((WrappedQuery) query).getWrappedQuery());
+    } else if (query instanceof BooleanQuery) {
+      for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+        if (!isSegmentCacheable(clause.getQuery())) return false;
+      }
+    }
+    return true;
+  }
+
+  private DocSet get(Object coreKey, Query query) {
+    lookups.incrementAndGet();
+    final DocSet set;
+    synchronized (segments) {
+      final Map<Query,DocSet> filters = segments.get(coreKey);
+      set = filters == null ? null : filters.get(query);
+    }
+    if (set != null) hits.incrementAndGet();
+    return set;
+  }
+
+  private void put(Object coreKey, Query query, DocSet set) {
+    inserts.incrementAndGet();
+    synchronized (segments) {
+      Map<Query,DocSet> filters = segments.get(coreKey);
+      if (filters == null) {
+        filters = new LinkedHashMap<Query,DocSet>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Query,DocSet> eldest) {
+            if (size() > size) {
+              evictions.incrementAndGet();
+              return true;
+            }
+            return false;
+          }
+        };
+        segments.put(coreKey, filters);
+      }
+      filters.put(query, set);
+    }
+  }
+
+  /** Collects the (segment relative) matches of one segment */
+  static DocSet compute(SolrIndexReader leaf, Weight weight) throws IOException {
+    final int maxDoc = leaf.maxDoc();
+    final DocSetCollector collector = new DocSetCollector(maxDoc>>6, maxDoc);
+    final Scorer scorer = weight.scorer(leaf, true, true);
+    if (scorer != null) {
+      collector.setNextReader(leaf, 0);
+      scorer.score(collector);
+    }
+    return collector.getDocSet();
+  }
+
+  /** Concatenates the per segment sets into a top level set, skipping deleted documents */
+  static DocSet combine(int maxDoc, SolrIndexReader[] leaves, int[] offsets, DocSet[] sets) throws IOException {
+    int size = 0;
+    for (DocSet set : sets) {
+      size += set.size();
+    }
+    // same threshold as DocSetCollector
+    final boolean small = size <= (maxDoc>>6);
+    final int[] docs = small ? new int[size] : null;
+    final OpenBitSet bits = small ? null : new OpenBitSet(maxDoc);
+    int upto = 0;
+    for (int i=0; i<sets.length; i++) {
+      final SolrIndexReader leaf = leaves[i];
+      final boolean hasDeletions = leaf.hasDeletions();
+      final int offset = offsets[i];
+      final DocIterator iter = sets[i].iterator();
+      while (iter.hasNext()) {
+        final int doc = iter.nextDoc();
+        if (hasDeletions && leaf.isDeleted(doc)) continue;
+        if (small) {
+          docs[upto] = doc + offset;
+        } else {
+          bits.fastSet(doc + offset);
+        }
+        upto++;
+      }
+    }
+    return small ? new SortedIntDocSet(docs, upto) : new BitDocSet(bits, upto);
+  }
+
+  /** Returns the number of cached segment sets */
+  public int size() {
+    int entries = 0;
+    synchronized (segments) {
+      for (Map<Query,DocSet> filters : segments.values()) {
+        entries += filters.size();
+      }
+    }
+    return entries;
+  }
+
+  public void clear() {
+    synchronized (segments) {
+      segments.clear();
+    }
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+
+  public String getName() {
+    return SegmentFilterCache.class.getName();
+  }
+
+  public String getVersion() {
+    return SolrCore.version;
+  }
+
+  public String getDescription() {
+    return "Per segment filter cache(size=" + size + ")";
+  }
+
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  public String getSourceId() {
+    return "$Id$";
+  }
+
+  public String getSource() {
+    return "$URL$";
+  }
+
+  public URL[] getDocs() {
+    return null;
+  }
+
+  // returns a ratio, not a percent.
+  private static String calcHitRatio(long lookups, long hits) {
+    if (lookups == 0) return "0.00";
+    if (lookups == hits) return "1.00";
+    int hundredths = (int) (hits * 100 / lookups);   // rounded down
+    if (hundredths < 10) return "0.0" + hundredths;
+    return "0." + hundredths;
+  }
+
+  public NamedList getStatistics() {
+    NamedList lst = new SimpleOrderedMap();
+    long lookups = this.lookups.get();
+    long hits = this.hits.get();
+    lst.add("lookups", lookups);
+    lst.add("hits", hits);
+    lst.add("hitratio", calcHitRatio(lookups, hits));
+    lst.add("inserts", inserts.get());
+    lst.add("evictions", evictions.get());
+    int numSegments;
+    int entries = 0;
+    long ramBytes = 0;
+    synchronized (segments) {
+      numSegments = segments.size();
+      for (Map<Query,DocSet> filters : segments.values()) {
+        entries += filters.size();
+        for (DocSet set : filters.values()) {
+          ramBytes += set.memSize();
+        }
+      }
+    }
+    lst.add("segments", numSegments);
+    lst.add("size", entries);
+    lst.add("ramBytesUsed", ramBytes);
+    return lst;
+  }
+
+  @Override
+  public String toString() {
+    return "segmentFilterCache" + getStatistics().toString();
+  }
+}
@@ -18,7 +18,9 @@
 package org.apache.solr.search;
 
 import org.apache.lucene.document.*;
+import org.apache.lucene.index.EarlyTerminatingSortingCollector;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
@@ -32,12 +34,17 @@ import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoMBean;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.request.PerSegmentUnInvertedField;
 import org.apache.solr.request.UnInvertedField;
 import org.apache.lucene.util.OpenBitSet;
+import org.apache.solr.util.ParallelTasks;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,12 +80,23 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
   private final int queryResultMaxDocsCached;
   private final boolean useFilterForSortedQuery;
   public final boolean enableLazyFieldLoading;
+  public final boolean usePackedStringIndex;
+  private final int autowarmThreads;
+  // only set while this searcher is being autowarmed with autowarmThreads > 1
+  private volatile ExecutorService warmingExecutor;
+  // searches the segments of a query in parallel if searchThreads > 1, else null
+  private final ExecutorService segmentSearchExecutor;
+  private final int searchThreads;
+  // parallel to cacheList
+  private final long[] cacheWarmupTimes;
   
   private final boolean cachingEnabled;
   private final SolrCache<Query,DocSet> filterCache;
   private final SolrCache<QueryResultKey,DocList> queryResultCache;
-  private final SolrCache<Integer,Document> documentCache;
+  private final SolrCache<SegmentDocKey,Document> documentCache;
   private final SolrCache<String,Object> fieldValueCache;
+  // shared by all searchers of the core, may be null
+  private final SegmentFilterCache segmentFilterCache;
 
   private final LuceneQueryOptimizer optimizer;
   
@@ -158,8 +176,13 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     queryResultMaxDocsCached = solrConfig.queryResultMaxDocsCached;
     useFilterForSortedQuery = solrConfig.useFilterForSortedQuery;
     enableLazyFieldLoading = solrConfig.enableLazyFieldLoading;
+    usePackedStringIndex = solrConfig.usePackedStringIndex;
+    autowarmThreads = solrConfig.autowarmThreads;
+    segmentSearchExecutor = core.getSegmentSearchExecutor();
+    searchThreads = solrConfig.searchThreads;
     
     cachingEnabled=enableCache;
+    segmentFilterCache = cachingEnabled ? core.getSegmentFilterCache() : null;
     if (cachingEnabled) {
       ArrayList<SolrCache> clist = new ArrayList<SolrCache>();
       fieldValueCache = solrConfig.fieldValueCacheConfig==null ? null : solrConfig.fieldValueCacheConfig.newInstance();
@@ -194,6 +217,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
       cacheMap = noGenericCaches;
       cacheList= noCaches;
     }
+    cacheWarmupTimes = new long[cacheList.length];
     optimizer = solrConfig.filtOptEnabled ? new LuceneQueryOptimizer(solrConfig.filtOptCacheSize,solrConfig.filtOptThreshold) : null;
 
     fieldNames = r.getFieldNames(IndexReader.FieldOption.ALL);
@@ -293,11 +317,29 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
   // Set default regenerators on filter and query caches if they don't have any
   //
   public static void initRegenerators(SolrConfig solrConfig) {
+    if (solrConfig.documentCacheConfig != null && solrConfig.documentCacheConfig.getRegenerator() == null) {
+      solrConfig.documentCacheConfig.setRegenerator(
+              new CacheRegenerator() {
+                public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+                  // Documents with lazy fields are not carried over, since those
+                  // fields can only be loaded through the old searcher's reader.
+                  if (newSearcher.isLive((SegmentDocKey)oldKey) && !hasLazyFields((Document)oldVal)) {
+                    newCache.put(oldKey, oldVal);
+                  }
+                  return true;
+                }
+              }
+      );
+    }
+
     if (solrConfig.fieldValueCacheConfig != null && solrConfig.fieldValueCacheConfig.getRegenerator() == null) {
       solrConfig.fieldValueCacheConfig.setRegenerator(
               new CacheRegenerator() {
                 public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
-                  if (oldVal instanceof UnInvertedField) {
+                  if (oldVal instanceof PerSegmentUnInvertedField) {
+                    // only the new segments are un-inverted
+                    PerSegmentUnInvertedField.getPerSegmentUnInvertedField(((PerSegmentUnInvertedField)oldVal).getField(), newSearcher);
+                  } else if (oldVal instanceof UnInvertedField) {
                     UnInvertedField.getUnInvertedField((String)oldKey, newSearcher);
                   }
                   return true;
@@ -437,25 +479,31 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
   public Document doc(int i, Set<String> fields) throws IOException {
     
     Document d;
+    SegmentDocKey key = null;
     if (documentCache != null) {
-      d = documentCache.get(i);
+      key = getSegmentDocKey(i);
+      d = documentCache.get(key);
       if (d!=null) return d;
     }
 
-    if(!enableLazyFieldLoading || fields == null) {
-      d = getIndexReader().document(i);
-    } else {
-      d = getIndexReader().document(i, 
-             new SetNonLazyFieldSelector(fields));
-    }
+    d = loadDoc(i, fields);
 
     if (documentCache != null) {
-      documentCache.put(i, d);
+      documentCache.put(key, d);
     }
 
     return d;
   }
 
+  private Document loadDoc(int i, Set<String> fields) throws IOException {
+    if(!enableLazyFieldLoading || fields == null) {
+      return getIndexReader().document(i);
+    } else {
+      return getIndexReader().document(i, 
+             new SetNonLazyFieldSelector(fields));
+    }
+  }
+
   /**
    * Takes a list of docs (the doc ids actually), and reads them into an array 
    * of Documents.
@@ -466,14 +514,89 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
   /**
    * Takes a list of docs (the doc ids actually) and a set of fields to load,
    * and reads them into an array of Documents.
+   * <p>
+   * The documents that are not in the documentCache are read in index order,
+   * so the stored fields are read in one forward pass over each segment
+   * instead of with a random seek per document, and are then cached.
    */
   public void readDocs(Document[] docs, DocList ids, Set<String> fields) throws IOException {
+    // doc id in the upper, position in the lower 32 bits, so they sort by doc id
+    long[] misses = new long[docs.length];
+    int numMisses = 0;
+    SegmentDocKey[] keys = documentCache == null ? null : new SegmentDocKey[docs.length];
     DocIterator iter = ids.iterator();
     for (int i=0; i<docs.length; i++) {
-      docs[i] = doc(iter.nextDoc(), fields);
+      int id = iter.nextDoc();
+      if (documentCache != null) {
+        keys[i] = getSegmentDocKey(id);
+        docs[i] = documentCache.get(keys[i]);
+        if (docs[i] != null) continue;
+      }
+      misses[numMisses++] = ((long)id << 32) | i;
+    }
+
+    Arrays.sort(misses, 0, numMisses);
+    for (int j=0; j<numMisses; j++) {
+      int id = (int)(misses[j] >>> 32);
+      int i = (int)misses[j];
+      docs[i] = loadDoc(id, fields);
+      if (documentCache != null) {
+        documentCache.put(keys[i], docs[i]);
+      }
     }
   }
 
+  /**
+   * The key of a document in the documentCache: the core of its segment and its id
+   * in that segment, which (unlike the top level id) do not change when the index is
+   * reopened, so the documents of unchanged segments can be carried over to the
+   * documentCache of the next searcher.
+   */
+  static final class SegmentDocKey {
+    final Object coreKey;
+    final int doc;
+
+    SegmentDocKey(Object coreKey, int doc) {
+      this.coreKey = coreKey;
+      this.doc = doc;
+    }
+
+    @Override
+    public int hashCode() {
+      return coreKey.hashCode() * 31 + doc;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SegmentDocKey)) return false;
+      SegmentDocKey other = (SegmentDocKey)o;
+      return doc == other.doc && coreKey == other.coreKey;
+    }
+  }
+
+  private SegmentDocKey getSegmentDocKey(int i) {
+    int[] offsets = reader.getLeafOffsets();
+    int idx = SolrIndexReader.readerIndex(i, offsets);
+    return new SegmentDocKey(reader.getLeafReaders()[idx].getCoreCacheKey(), i - offsets[idx]);
+  }
+
+  /** Returns true if the document is still in (a segment of) this searcher's index */
+  private boolean isLive(SegmentDocKey key) {
+    for (SolrIndexReader leaf : reader.getLeafReaders()) {
+      if (leaf.getCoreCacheKey() == key.coreKey) {
+        return key.doc < leaf.maxDoc() && !leaf.isDeleted(key.doc);
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasLazyFields(Document doc) {
+    for (Fieldable f : doc.getFields()) {
+      if (f.isLazy()) return true;
+    }
+    return false;
+  }
+
   /* ********************** end document retrieval *************************/
 
   ////////////////////////////////////////////////////////////////////////////////
@@ -492,7 +615,8 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
 
     boolean needsWeighting = false;
     for (SortField sf : sorts) {
-      if (sf instanceof SolrSortField) {
+      if (sf instanceof SolrSortField
+          || (usePackedStringIndex && Sorting.getPackedStringSortField(sf) != sf)) {
         needsWeighting = true;
         break;
       }
@@ -503,6 +627,8 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     for (int i=0; i<newSorts.length; i++) {
       if (newSorts[i] instanceof SolrSortField) {
         newSorts[i] = ((SolrSortField)newSorts[i]).weight(this);
+      } else if (usePackedStringIndex) {
+        newSorts[i] = Sorting.getPackedStringSortField(newSorts[i]);
       }
     }
 
@@ -519,14 +645,20 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
    * @return the first document number containing the term
    */
   public int getFirstMatch(Term t) throws IOException {
-    TermDocs tdocs = null;
-    try {
-      tdocs = reader.termDocs(t);
-      if (!tdocs.next()) return -1;
-      return tdocs.doc();
-    } finally {
-      if (tdocs!=null) tdocs.close();
+    SolrIndexReader[] leaves = reader.getLeafReaders();
+    int[] offsets = reader.getLeafOffsets();
+    for (int i=0; i<leaves.length; i++) {
+      IndexReader wrapped = leaves[i].getWrappedReader();
+      // skip the segments whose terms Bloom filter rules the term out
+      if (wrapped instanceof SegmentReader && !((SegmentReader) wrapped).mayContainTerm(t)) continue;
+      TermDocs tdocs = leaves[i].termDocs(t);
+      try {
+        if (tdocs.next()) return offsets[i] + tdocs.doc();
+      } finally {
+        tdocs.close();
+      }
     }
+    return -1;
   }
 
 
@@ -596,7 +728,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
       }
     }
 
-    DocSet absAnswer = getDocSetNC(absQ, null);
+    DocSet absAnswer = getPositiveDocSetNC(absQ);
     DocSet answer = positive ? absAnswer : getPositiveDocSet(matchAllDocsQuery).andNot(absAnswer);
 
     if (filterCache != null) {
@@ -614,12 +746,23 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
       answer = filterCache.get(q);
       if (answer!=null) return answer;
     }
-    answer = getDocSetNC(q,null);
+    answer = getPositiveDocSetNC(q);
     if (filterCache != null) filterCache.put(
         q,answer);
     return answer;
   }
 
+  /**
+   * Computes the documents matching a positive query that is going to be
+   * cached, using the per segment filter cache if there is one.
+   */
+  private DocSet getPositiveDocSetNC(Query q) throws IOException {
+    if (segmentFilterCache != null && SegmentFilterCache.isSegmentCacheable(q)) {
+      return segmentFilterCache.getDocSet(this, q);
+    }
+    return getDocSetNC(q, null);
+  }
+
     // only handle positive (non negative) queries
   /** @lucene.internal */
   public DocSet getPositiveDocSet(Query q, TermDocsState tdState) throws IOException {
@@ -640,6 +783,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     DocSet answer;  // the answer, if non-null
     Filter filter;
     DelegatingCollector postFilter;
+    List<Query> postFilters;  // sorted by cost, to create a postFilter per segment searched in parallel
   }
 
 
@@ -806,16 +950,24 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
 
     if (postFilters != null) {
       Collections.sort(postFilters, sortByCost);
-      for (int i=postFilters.size()-1; i>=0; i--) {
-        DelegatingCollector prev = pf.postFilter;
-        pf.postFilter = ((PostFilter)postFilters.get(i)).getFilterCollector(this);
-        if (prev != null) pf.postFilter.setDelegate(prev);
-      }
+      pf.postFilters = postFilters;
+      pf.postFilter = getPostFilter(postFilters);
     }
 
     return pf;
   }
 
+  /** Chains the filter collectors of <code>postFilters</code>, in order. */
+  private DelegatingCollector getPostFilter(List<Query> postFilters) {
+    DelegatingCollector postFilter = null;
+    for (int i=postFilters.size()-1; i>=0; i--) {
+      DelegatingCollector prev = postFilter;
+      postFilter = ((PostFilter)postFilters.get(i)).getFilterCollector(this);
+      if (prev != null) postFilter.setDelegate(prev);
+    }
+    return postFilter;
+  }
+
   // query must be positive
   protected DocSet getDocSetNC(Query query, DocSet filter) throws IOException {
     DocSetCollector collector = new DocSetCollector(maxDoc()>>6, maxDoc());
@@ -936,7 +1088,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     if (filterCache != null) {
       first = filterCache.get(absQ);
       if (first==null) {
-        first = getDocSetNC(absQ,null);
+        first = getPositiveDocSetNC(absQ);
         filterCache.put(absQ,first);
       }
       return positive ? first.intersection(filter) : filter.andNot(first);
@@ -1165,7 +1317,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
 
     // lastly, put the superset in the cache if the size is less than or equal
     // to queryResultMaxDocsCached
-    if (key != null && superset.size() <= queryResultMaxDocsCached && !qr.isPartialResults()) {
+    if (key != null && superset.size() <= queryResultMaxDocsCached && !qr.isPartialResults() && !qr.isSegmentTerminatedEarly() && qr.isNumFoundExact()) {
       queryResultCache.put(key, superset);
     }
   }
@@ -1191,6 +1343,11 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     ProcessedFilter pf = getProcessedFilter(cmd.getFilter(), cmd.getFilterList());
     final Filter luceneFilter = pf.filter;
 
+    if (isSegmentSearchParallel()) {
+      getDocListParallelNC(qr, cmd, query, pf, lastDocRequested, false);
+      return;
+    }
+
     // handle zero case...
     if (lastDocRequested<=0) {
       final float[] topscore = new float[] { Float.NEGATIVE_INFINITY };
@@ -1262,11 +1419,16 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     } else {
       TopDocsCollector topCollector;
       if (cmd.getSort() == null) {
-        topCollector = TopScoreDocCollector.create(len, true);
+        topCollector = TopScoreDocCollector.create(len, true, cmd.isExactNumFound());
+        if (!cmd.isExactNumFound()) qr.setNumFoundExact(false);
       } else {
         topCollector = TopFieldCollector.create(weightSort(cmd.getSort()), len, false, needScores, needScores, true);
       }
       Collector collector = topCollector;
+      EarlyTerminatingSortingCollector earlyTerminatingCollector = null;
+      if (cmd.isSegmentTerminateEarly() && cmd.getSort() != null) {
+        collector = earlyTerminatingCollector = new EarlyTerminatingSortingCollector(collector, cmd.getSort(), len);
+      }
       if( timeAllowed > 0 ) {
         collector = new TimeLimitingCollector(collector, timeAllowed);
       }
@@ -1281,6 +1443,9 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
         log.warn( "Query: " + query + "; " + x.getMessage() );
         qr.setPartialResults(true);
       }
+      if (earlyTerminatingCollector != null && earlyTerminatingCollector.terminatedEarly()) {
+        qr.setSegmentTerminatedEarly(true);
+      }
 
       totalHits = topCollector.getTotalHits();
       TopDocs topDocs = topCollector.topDocs(0, len);
@@ -1326,6 +1491,11 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     Query query = QueryUtils.makeQueryable(cmd.getQuery());
     final long timeAllowed = cmd.getTimeAllowed();
 
+    if (isSegmentSearchParallel()) {
+      getDocListParallelNC(qr, cmd, query, pf, lastDocRequested, true);
+      return pf.filter==null && pf.postFilter==null ? qr.getDocSet() : null;
+    }
+
     // handle zero case...
     if (lastDocRequested<=0) {
       final float[] topscore = new float[] { Float.NEGATIVE_INFINITY };
@@ -1439,6 +1609,291 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     return pf.filter==null && pf.postFilter==null ? qr.getDocSet() : null;
   }
 
+  private boolean isSegmentSearchParallel() {
+    return segmentSearchExecutor != null && reader.getLeafReaders().length > 1;
+  }
+
+  /**
+   * Does the work of getDocListNC, and of getDocListAndSetNC if <code>needSet</code>,
+   * by searching the segments in parallel, each with its own collectors, and merging
+   * what they collected.
+   */
+  private void getDocListParallelNC(QueryResult qr, QueryCommand cmd, Query query, ProcessedFilter pf,
+                                    int lastDocRequested, boolean needSet) throws IOException {
+    int len = cmd.getSupersetMaxDoc();
+    boolean needScores = (cmd.getFlags() & GET_SCORES) != 0;
+    SolrIndexReader[] leaves = reader.getLeafReaders();
+    int[] offsets = reader.getLeafOffsets();
+
+    HitCountCollector[] countCollectors = new HitCountCollector[leaves.length];
+    TopDocsCollector[] topCollectors = new TopDocsCollector[leaves.length];
+    EarlyTerminatingSortingCollector[] earlyTerminatingCollectors = null;
+    if (!needSet && lastDocRequested>0 && cmd.isSegmentTerminateEarly() && cmd.getSort() != null) {
+      earlyTerminatingCollectors = new EarlyTerminatingSortingCollector[leaves.length];
+    }
+    DocSetCollector[] setCollectors = new DocSetCollector[leaves.length];
+    Collector[] collectors = new Collector[leaves.length];
+    for (int i=0; i<leaves.length; i++) {
+      Collector collector;
+      if (lastDocRequested<=0) {
+        collector = countCollectors[i] = new HitCountCollector(needScores);
+      } else {
+        collector = topCollectors[i] = newTopDocsCollector(cmd.getSort(), len, needScores, needSet || cmd.isExactNumFound());
+      }
+      if (earlyTerminatingCollectors != null) {
+        collector = earlyTerminatingCollectors[i] = new EarlyTerminatingSortingCollector(collector, cmd.getSort(), len);
+      }
+      if (needSet) {
+        int segmentMaxDoc = leaves[i].maxDoc();
+        collector = setCollectors[i] = new DocSetDelegateCollector(segmentMaxDoc>>6, segmentMaxDoc, offsets[i], collector);
+      }
+      collectors[i] = collector;
+    }
+
+    searchSegments(qr, query, pf, cmd.getTimeAllowed(), collectors);
+    if (earlyTerminatingCollectors != null) {
+      for (EarlyTerminatingSortingCollector collector : earlyTerminatingCollectors) {
+        if (collector.terminatedEarly()) qr.setSegmentTerminatedEarly(true);
+      }
+    }
+    if (lastDocRequested>0 && cmd.getSort() == null && !needSet && !cmd.isExactNumFound()) {
+      qr.setNumFoundExact(false);
+    }
+
+    int nDocsReturned;
+    int totalHits = 0;
+    float maxScore;
+    int[] ids;
+    float[] scores;
+    if (lastDocRequested<=0) {
+      float topscore = Float.NEGATIVE_INFINITY;
+      for (HitCountCollector collector : countCollectors) {
+        totalHits += collector.numHits;
+        topscore = Math.max(topscore, collector.topscore);
+      }
+      nDocsReturned = 0;
+      ids = new int[nDocsReturned];
+      scores = new float[nDocsReturned];
+      maxScore = totalHits>0 ? topscore : 0.0f;
+    } else {
+      TopDocs topDocs = mergeTopDocs(topCollectors, newTopDocsCollector(cmd.getSort(), len, needScores, true), len);
+      totalHits = topDocs.totalHits;
+      maxScore = totalHits>0 ? topDocs.getMaxScore() : 0.0f;
+      nDocsReturned = topDocs.scoreDocs.length;
+
+      ids = new int[nDocsReturned];
+      scores = (cmd.getFlags()&GET_SCORES)!=0 ? new float[nDocsReturned] : null;
+      for (int i=0; i<nDocsReturned; i++) {
+        ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+        ids[i] = scoreDoc.doc;
+        if (scores != null) scores[i] = scoreDoc.score;
+      }
+    }
+
+    int sliceLen = Math.min(lastDocRequested,nDocsReturned);
+    if (sliceLen < 0) sliceLen=0;
+    qr.setDocList(new DocSlice(0,sliceLen,ids,scores,totalHits,maxScore));
+    if (needSet) {
+      int maxDoc = maxDoc();
+      qr.setDocSet(DocSetCollector.getDocSet(setCollectors, maxDoc>>6, maxDoc));
+    }
+  }
+
+  /**
+   * Searches each leaf reader with the collector for it in <code>collectors</code>,
+   * on up to searchThreads threads, the way a single collector would be given the
+   * docs of all of them: with top level doc ids, through the filter and post filters.
+   */
+  private void searchSegments(QueryResult qr, Query query, ProcessedFilter pf, long timeAllowed,
+                              Collector[] collectors) throws IOException {
+    // rewrite once, but give each segment its own weight, as the weights of function
+    // queries may keep per reader state in a context that is not thread safe
+    final Query rewritten = rewrite(query);
+    final Filter luceneFilter = pf.filter;
+    SolrIndexReader[] leaves = reader.getLeafReaders();
+    int[] offsets = reader.getLeafOffsets();
+
+    ParallelTasks<TimeLimitingCollector.TimeExceededException> tasks =
+        new ParallelTasks<TimeLimitingCollector.TimeExceededException>(segmentSearchExecutor, searchThreads);
+    for (int i=0; i<leaves.length; i++) {
+      Collector collector = collectors[i];
+      // created up front, so all segments get the same time allowed
+      if( timeAllowed > 0 ) {
+        collector = new TimeLimitingCollector(collector, timeAllowed);
+      }
+      if (pf.postFilters != null) {
+        DelegatingCollector postFilter = getPostFilter(pf.postFilters);
+        postFilter.setLastDelegate(collector);
+        collector = postFilter;
+      }
+      final IndexSearcher leafSearcher = new IndexSearcher(leaves[i]);
+      final Collector leafCollector = new LeafCollector(collector, offsets[i]);
+      tasks.add(new Callable<TimeLimitingCollector.TimeExceededException>() {
+        public TimeLimitingCollector.TimeExceededException call() throws IOException {
+          try {
+            leafSearcher.search(createNormalizedWeight(rewritten), luceneFilter, leafCollector);
+            return null;
+          } catch (TimeLimitingCollector.TimeExceededException x) {
+            return x;
+          }
+        }
+      });
+    }
+
+    for (TimeLimitingCollector.TimeExceededException x : tasks.getResults()) {
+      if (x != null) {
+        log.warn( "Query: " + query + "; " + x.getMessage() );
+        qr.setPartialResults(true);
+        break;
+      }
+    }
+  }
+
+  private TopDocsCollector newTopDocsCollector(Sort sort, int len, boolean needScores, boolean trackTotalHits) throws IOException {
+    if (sort == null) {
+      return TopScoreDocCollector.create(len, true, trackTotalHits);
+    }
+    // the top docs of the segments are merged by their scores if they are sorted by score
+    boolean sortsByScore = false;
+    for (SortField sf : sort.getSort()) {
+      if (sf.getType() == SortField.SCORE) sortsByScore = true;
+    }
+    return TopFieldCollector.create(weightSort(sort), len, false, needScores || sortsByScore, needScores, true);
+  }
+
+  private static final Comparator<ScoreDoc> byDoc = new Comparator<ScoreDoc>() {
+    public int compare(ScoreDoc sd1, ScoreDoc sd2) {
+      return sd1.doc - sd2.doc;
+    }
+  };
+
+  /**
+   * Merges the top docs of each segment by collecting them again with <code>topCollector</code>,
+   * in doc order and with their scores, so they are sorted and their ties are broken exactly
+   * as if <code>topCollector</code> had collected all segments.
+   */
+  private TopDocs mergeTopDocs(TopDocsCollector[] segmentCollectors, TopDocsCollector topCollector, int len) throws IOException {
+    SolrIndexReader[] leaves = reader.getLeafReaders();
+    int[] offsets = reader.getLeafOffsets();
+    CollectedScorer scorer = new CollectedScorer();
+    int totalHits = 0;
+    float maxScore = Float.NEGATIVE_INFINITY;
+    for (int i=0; i<leaves.length; i++) {
+      int segmentHits = segmentCollectors[i].getTotalHits();
+      if (segmentHits == 0) continue;
+      totalHits += segmentHits;
+      TopDocs segmentDocs = segmentCollectors[i].topDocs(0, len);
+      maxScore = Math.max(maxScore, segmentDocs.getMaxScore());
+
+      ScoreDoc[] scoreDocs = segmentDocs.scoreDocs;
+      Arrays.sort(scoreDocs, byDoc);
+      topCollector.setNextReader(leaves[i], offsets[i]);
+      topCollector.setScorer(scorer);
+      for (ScoreDoc scoreDoc : scoreDocs) {
+        scorer.doc = scoreDoc.doc - offsets[i];
+        scorer.score = scoreDoc.score;
+        topCollector.collect(scorer.doc);
+      }
+    }
+    return new TopDocs(totalHits, topCollector.topDocs(0, len).scoreDocs, maxScore);
+  }
+
+  /** Gives a collector the top level doc base of the leaf reader searched by itself. */
+  private static class LeafCollector extends Collector {
+    private final Collector collector;
+    private final int offset;
+
+    LeafCollector(Collector collector, int offset) {
+      this.collector = collector;
+      this.offset = offset;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+      collector.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      collector.collect(doc);
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+      collector.setNextReader(reader, offset + docBase);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+      return collector.acceptsDocsOutOfOrder();
+    }
+  }
+
+  /** Counts the hits of a segment searched in parallel, and keeps their top score if needed. */
+  private static class HitCountCollector extends Collector {
+    private final boolean needScores;
+    private Scorer scorer;
+    int numHits;
+    float topscore = Float.NEGATIVE_INFINITY;
+
+    HitCountCollector(boolean needScores) {
+      this.needScores = needScores;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+      this.scorer = scorer;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      numHits++;
+      if (needScores) {
+        float score = scorer.score();
+        if (score > topscore) topscore = score;
+      }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+      return true;
+    }
+  }
+
+  /** Gives the score a doc was collected with while it is collected again. */
+  private static class CollectedScorer extends Scorer {
+    int doc = -1;
+    float score;
+
+    CollectedScorer() {
+      super((Weight)null);
+    }
+
+    @Override
+    public float score() {
+      return score;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int advance(int target) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
 
   /**
    * Returns documents matching both <code>query</code> and <code>filter</code>
@@ -1778,15 +2233,42 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     // Make sure this is first!  filters can help queryResults execute!
     boolean logme = log.isInfoEnabled();
     long warmingStartTime = System.currentTimeMillis();
-    // warm the caches in order...
-    for (int i=0; i<cacheList.length; i++) {
-      if (logme) log.info("autowarming " + this + " from " + old + "\n\t" + old.cacheList[i]);
-      this.cacheList[i].warm(this, old.cacheList[i]);
-      if (logme) log.info("autowarming result for " + this + "\n\t" + this.cacheList[i]);
+    // the items of each cache may be regenerated in parallel (see CacheWarmer),
+    // but a cache is completely warmed before the next one starts.
+    if (autowarmThreads > 1 && cacheList.length > 0) {
+      warmingExecutor = Executors.newFixedThreadPool(autowarmThreads);
+    }
+    try {
+      // warm the caches in order...
+      for (int i=0; i<cacheList.length; i++) {
+        if (logme) log.info("autowarming " + this + " from " + old + "\n\t" + old.cacheList[i]);
+        long cacheWarmingStartTime = System.currentTimeMillis();
+        this.cacheList[i].warm(this, old.cacheList[i]);
+        cacheWarmupTimes[i] = System.currentTimeMillis() - cacheWarmingStartTime;
+        if (logme) log.info("autowarming result for " + this + "\n\t" + this.cacheList[i]);
+      }
+    } finally {
+      if (warmingExecutor != null) {
+        warmingExecutor.shutdownNow();
+        warmingExecutor = null;
+      }
     }
     warmupTime = System.currentTimeMillis() - warmingStartTime;
   }
 
+  /**
+   * Returns the number of threads the caches of this searcher may use to
+   * regenerate their items during autowarming.
+   */
+  public int getAutowarmThreads() {
+    return autowarmThreads;
+  }
+
+  /** The pool to regenerate cache items with, while autowarming with more than one thread */
+  ExecutorService getWarmingExecutor() {
+    return warmingExecutor;
+  }
+
   /**
    * return the named generic cache
    */
@@ -1863,6 +2345,20 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     lst.add("openedAt", new Date(openTime));
     if (registerTime!=0) lst.add("registeredAt", new Date(registerTime));
     lst.add("warmupTime", warmupTime);
+    for (int i=0; i<cacheList.length; i++) {
+      lst.add(cacheList[i].name() + "WarmupTime", cacheWarmupTimes[i]);
+    }
+    // the term caches are per segment, and shared with other searchers on the same segments
+    long termCacheHits = 0, termCacheMisses = 0;
+    for (SolrIndexReader leaf : reader.getLeafReaders()) {
+      IndexReader wrapped = leaf.getWrappedReader();
+      if (wrapped instanceof SegmentReader) {
+        termCacheHits += ((SegmentReader) wrapped).getTermInfosCacheHits();
+        termCacheMisses += ((SegmentReader) wrapped).getTermInfosCacheMisses();
+      }
+    }
+    lst.add("termCacheHits", termCacheHits);
+    lst.add("termCacheMisses", termCacheMisses);
     return lst;
   }
 
@@ -1880,6 +2376,8 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     private int supersetMaxDoc;
     private int flags;
     private long timeAllowed = -1;
+    private boolean segmentTerminateEarly;
+    private boolean exactNumFound = true;
 
     public Query getQuery() { return query; }
     public QueryCommand setQuery(Query query) {
@@ -1979,6 +2477,28 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     public QueryCommand setNeedDocSet(boolean needDocSet) {
       return needDocSet ? setFlags(GET_DOCSET) : clearFlags(GET_DOCSET);
     }
+
+    public boolean isSegmentTerminateEarly() { return segmentTerminateEarly; }
+    /**
+     * If true, the segments that were sorted by the sort of this command when they were
+     * merged stop being collected once they have enough hits, and the number of matches
+     * is only a lower bound.  Ignored when the DocSet is needed.
+     */
+    public QueryCommand setSegmentTerminateEarly(boolean segmentTerminateEarly) {
+      this.segmentTerminateEarly = segmentTerminateEarly;
+      return this;
+    }
+
+    public boolean isExactNumFound() { return exactNumFound; }
+    /**
+     * If false, the documents of a search by score that cannot make it into the top
+     * documents may be skipped without being counted, and the number of matches is
+     * only a lower bound.  Ignored when the DocSet is needed.
+     */
+    public QueryCommand setExactNumFound(boolean exactNumFound) {
+      this.exactNumFound = exactNumFound;
+      return this;
+    }
   }
 
   /**
@@ -1986,6 +2506,8 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
    */
   public static class QueryResult {
     private boolean partialResults;
+    private boolean segmentTerminatedEarly;
+    private boolean numFoundExact = true;
     private DocListAndSet docListAndSet;
     public Object groupedResults; // Todo: Refactor. At least getter setter and different type.
     
@@ -2008,6 +2530,12 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     public boolean isPartialResults() { return partialResults; }
     public void setPartialResults(boolean partialResults) { this.partialResults = partialResults; }
 
+    public boolean isSegmentTerminatedEarly() { return segmentTerminatedEarly; }
+    public void setSegmentTerminatedEarly(boolean segmentTerminatedEarly) { this.segmentTerminatedEarly = segmentTerminatedEarly; }
+
+    public boolean isNumFoundExact() { return numFoundExact; }
+    public void setNumFoundExact(boolean numFoundExact) { this.numFoundExact = numFoundExact; }
+
     public void setDocListAndSet( DocListAndSet listSet ) { docListAndSet = listSet; }
     public DocListAndSet getDocListAndSet() { return docListAndSet; }
   }
@@ -52,6 +52,22 @@ public class Sorting {
   }
 
 
+  /** Returns the equivalent of a string {@link SortField} created by
+   *  {@link #getStringSortField} that reads its ords and terms from the
+   *  compact {@link FieldCache#getTermsIndex} instead of {@link FieldCache#getStringIndex}.
+   *  Any other SortField is returned unchanged.
+   */
+  public static SortField getPackedStringSortField(SortField sf) {
+    if (sf.getType() == SortField.STRING && sf.getLocale() == null) {
+      return new SortField(sf.getField(), SortField.STRING_PACKED, sf.getReverse());
+    } else if (sf.getComparatorSource() == nullStringLastComparatorSource) {
+      return new SortField(sf.getField(), nullStringLastPackedComparatorSource, sf.getReverse());
+    }
+    return sf;
+  }
+
+
   static final FieldComparatorSource nullStringLastComparatorSource = new MissingStringLastComparatorSource(null);
+  static final FieldComparatorSource nullStringLastPackedComparatorSource = new MissingStringLastComparatorSource(null, true);
 }
 
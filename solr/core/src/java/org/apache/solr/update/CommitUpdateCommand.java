@@ -25,6 +25,12 @@ public class CommitUpdateCommand extends UpdateCommand {
   public boolean waitSearcher=true;
   public boolean expungeDeletes = false;
 
+  /**
+   * Open a new searcher from the IndexWriter, leaving the writer open, instead
+   * of committing: the changes become visible but are not fsync'd.
+   */
+  public boolean softCommit = false;
+
   /**
    * During optimize, optimize down to <= this many segments.  Must be >= 1
    *
@@ -42,6 +48,7 @@ public class CommitUpdateCommand extends UpdateCommand {
             +",waitFlush="+waitFlush
             +",waitSearcher="+waitSearcher
             +",expungeDeletes="+expungeDeletes
+            +",softCommit="+softCommit
             +')';
   }
 }
@@ -20,6 +20,7 @@
 
 package org.apache.solr.update;
 
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
@@ -48,6 +49,7 @@ import org.apache.solr.search.QueryParsing;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrConfig;
 import org.apache.solr.core.SolrCore;
 
 /**
@@ -133,6 +135,7 @@ public class DirectUpdateHandler2 extends UpdateHandler {
   AtomicLong expungeDeleteCommands = new AtomicLong();
   AtomicLong mergeIndexesCommands = new AtomicLong();
   AtomicLong commitCommands= new AtomicLong();
+  AtomicLong softCommitCommands= new AtomicLong();
   AtomicLong optimizeCommands= new AtomicLong();
   AtomicLong rollbackCommands= new AtomicLong();
   AtomicLong numDocsPending= new AtomicLong();
@@ -141,6 +144,8 @@ public class DirectUpdateHandler2 extends UpdateHandler {
 
   // tracks when auto-commit should occur
   protected final CommitTracker tracker;
+  // tracks when auto-soft-commit should occur
+  protected final CommitTracker softCommitTracker;
 
   // iwCommit protects internal data and open/close of the IndexWriter and
   // is a mutex. Any use of the index writer should be protected by iwAccess, 
@@ -159,7 +164,9 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     iwAccess = rwl.readLock();
     iwCommit = rwl.writeLock();
 
-    tracker = new CommitTracker();
+    SolrConfig.UpdateHandlerInfo updateHandlerInfo = core.getSolrConfig().getUpdateHandlerInfo();
+    tracker = new CommitTracker("AutoCommit", updateHandlerInfo.autoCommmitMaxDocs, updateHandlerInfo.autoCommmitMaxTime, false);
+    softCommitTracker = new CommitTracker("AutoSoftCommit", updateHandlerInfo.autoSoftCommmitMaxDocs, updateHandlerInfo.autoSoftCommmitMaxTime, true);
   }
 
   // must only be called when iwCommit lock held
@@ -222,6 +229,7 @@ public class DirectUpdateHandler2 extends UpdateHandler {
         // adding document -- prep writer
         openWriter();
         tracker.addedDocument( cmd.commitWithin );
+        softCommitTracker.addedDocument( -1 );
       } // end synchronized block
 
       // this is the only unsynchronized code in the iwAccess block, which
@@ -296,6 +304,9 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     if( tracker.timeUpperBound > 0 ) {
       tracker.scheduleCommitWithin( tracker.timeUpperBound );
     }
+    if( softCommitTracker.timeUpperBound > 0 ) {
+      softCommitTracker.scheduleCommitWithin( softCommitTracker.timeUpperBound );
+    }
   }
 
   // why not return number of docs deleted?
@@ -339,6 +350,9 @@ public class DirectUpdateHandler2 extends UpdateHandler {
      if( tracker.timeUpperBound > 0 ) {
        tracker.scheduleCommitWithin( tracker.timeUpperBound );
      }
+     if( softCommitTracker.timeUpperBound > 0 ) {
+       softCommitTracker.scheduleCommitWithin( softCommitTracker.timeUpperBound );
+     }
     } finally {
       if (!madeIt) {
         numErrors.incrementAndGet();
@@ -372,6 +386,9 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     if (rc == 1 && tracker.timeUpperBound > 0) {
       tracker.scheduleCommitWithin(tracker.timeUpperBound);
     }
+    if (rc == 1 && softCommitTracker.timeUpperBound > 0) {
+      softCommitTracker.scheduleCommitWithin(softCommitTracker.timeUpperBound);
+    }
 
     return rc;
   }
@@ -391,7 +408,11 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     if (cmd.optimize) {
       optimizeCommands.incrementAndGet();
     } else {
-      commitCommands.incrementAndGet();
+      if (cmd.softCommit) {
+        softCommitCommands.incrementAndGet();
+      } else {
+        commitCommands.incrementAndGet();
+      }
       if (cmd.expungeDeletes) expungeDeleteCommands.incrementAndGet();
     }
 
@@ -413,19 +434,31 @@ public class DirectUpdateHandler2 extends UpdateHandler {
         writer.expungeDeletes();
       }
       
-      closeWriter();
+      if (cmd.softCommit) {
+        // keep the writer open: the new searcher sees its flushed,
+        // but not yet committed, segments.  Nothing is fsync'd until
+        // the next hard commit, so there's nothing to replicate yet
+        // and the post-commit callbacks are not called.
+        openWriter();
+        core.getSearcher(true,false,waitSearcher,writer);
 
-      callPostCommitCallbacks();
-      if (cmd.optimize) {
-        callPostOptimizeCallbacks();
-      }
-      // open a new searcher in the sync block to avoid opening it
-      // after a deleteByQuery changed the index, or in between deletes
-      // and adds of another commit being done.
-      core.getSearcher(true,false,waitSearcher);
+        softCommitTracker.didCommit();
+      } else {
+        closeWriter();
 
-      // reset commit tracking
-      tracker.didCommit();
+        callPostCommitCallbacks();
+        if (cmd.optimize) {
+          callPostOptimizeCallbacks();
+        }
+        // open a new searcher in the sync block to avoid opening it
+        // after a deleteByQuery changed the index, or in between deletes
+        // and adds of another commit being done.
+        core.getSearcher(true,false,waitSearcher);
+
+        // reset commit tracking; everything is visible now, too
+        tracker.didCommit();
+        softCommitTracker.didCommit();
+      }
 
       log.info("end_commit_flush");
 
@@ -433,10 +466,14 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     }
     finally {
       iwCommit.unlock();
-      addCommands.set(0);
-      deleteByIdCommands.set(0);
-      deleteByQueryCommands.set(0);
-      numErrors.set(error ? 1 : 0);
+      if (!cmd.softCommit) {
+        addCommands.set(0);
+        deleteByIdCommands.set(0);
+        deleteByQueryCommands.set(0);
+        numErrors.set(error ? 1 : 0);
+      } else if (error) {
+        numErrors.incrementAndGet();
+      }
     }
 
     // if we are supposed to wait for the searcher to be registered, then we should do it
@@ -471,6 +508,7 @@ public class DirectUpdateHandler2 extends UpdateHandler {
 
       // reset commit tracking
       tracker.didRollback();
+      softCommitTracker.didRollback();
 
       log.info("end_rollback");
 
@@ -495,11 +533,8 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     iwCommit.lock();
     try{
       // cancel any pending operations
-      if( tracker.pending != null ) {
-        tracker.pending.cancel( true );
-        tracker.pending = null;
-      }
-      tracker.scheduler.shutdown();
+      tracker.close();
+      softCommitTracker.close();
       closeWriter();
     } finally {
       iwCommit.unlock();
@@ -524,6 +559,9 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     int docsUpperBound;
     long timeUpperBound;
 
+    private final String name;
+    private final boolean softCommit;
+
     private final ScheduledExecutorService scheduler =
        Executors.newScheduledThreadPool(1);
     private ScheduledFuture pending;
@@ -533,14 +571,16 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     int autoCommitCount = 0;
     long lastAddedTime = -1;
 
-    public CommitTracker() {
+    public CommitTracker(String name, int docsUpperBound, long timeUpperBound, boolean softCommit) {
       docsSinceCommit = 0;
       pending = null;
 
-      docsUpperBound = core.getSolrConfig().getUpdateHandlerInfo().autoCommmitMaxDocs;   //getInt("updateHandler/autoCommit/maxDocs", -1);
-      timeUpperBound = core.getSolrConfig().getUpdateHandlerInfo().autoCommmitMaxTime;    //getInt("updateHandler/autoCommit/maxTime", -1);
+      this.name = name;
+      this.docsUpperBound = docsUpperBound;
+      this.timeUpperBound = timeUpperBound;
+      this.softCommit = softCommit;
 
-      SolrCore.log.info("AutoCommit: " + this);
+      SolrCore.log.info(name + ": " + this);
     }
 
     /** schedule individual commits */
@@ -591,6 +631,15 @@ public class DirectUpdateHandler2 extends UpdateHandler {
       docsSinceCommit = 0;
     }
 
+    /** Cancel any pending commit and stop the scheduler */
+    public void close() {
+      if( pending != null ) {
+        pending.cancel( true );
+        pending = null;
+      }
+      scheduler.shutdown();
+    }
+
     /** Inform tracker that a rollback has occurred, cancel any pending commits */
     public void didRollback() {
       if( pending != null ) {
@@ -607,12 +656,13 @@ public class DirectUpdateHandler2 extends UpdateHandler {
         CommitUpdateCommand command = new CommitUpdateCommand( false );
         command.waitFlush = true;
         command.waitSearcher = true;
+        command.softCommit = softCommit;
         //no need for command.maxOptimizeSegments = 1;  since it is not optimizing
         commit( command );
         autoCommitCount++;
       }
       catch (Exception e) {
-        log.error( "auto commit error..." );
+        log.error( name + " error..." );
         e.printStackTrace();
       }
       finally {
@@ -689,6 +739,14 @@ public class DirectUpdateHandler2 extends UpdateHandler {
       lst.add("autocommit maxTime", "" + tracker.timeUpperBound + "ms");
     }
     lst.add("autocommits", tracker.autoCommitCount);
+    lst.add("soft commits", softCommitCommands.get());
+    if (softCommitTracker.docsUpperBound > 0) {
+      lst.add("soft autocommit maxDocs", softCommitTracker.docsUpperBound);
+    }
+    if (softCommitTracker.timeUpperBound > 0) {
+      lst.add("soft autocommit maxTime", "" + softCommitTracker.timeUpperBound + "ms");
+    }
+    lst.add("soft autocommits", softCommitTracker.autoCommitCount);
     lst.add("optimizes", optimizeCommands.get());
     lst.add("rollbacks", rollbackCommands.get());
     lst.add("expungeDeletes", expungeDeleteCommands.get());
@@ -703,6 +761,16 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     lst.add("cumulative_deletesById", deleteByIdCommandsCumulative.get());
     lst.add("cumulative_deletesByQuery", deleteByQueryCommandsCumulative.get());
     lst.add("cumulative_errors", numErrorsCumulative.get());
+    // not synchronized, like docsPending above
+    final IndexWriter w = writer;
+    if (w != null && w.getConfig().getMergeScheduler() instanceof ConcurrentMergeScheduler) {
+      final ConcurrentMergeScheduler cms = (ConcurrentMergeScheduler) w.getConfig().getMergeScheduler();
+      lst.add("mergeWriteMBPerSec", cms.getMergeWriteMBPerSec());
+      lst.add("mergeBacklog", cms.getMergeBacklog());
+      lst.add("mergeStallTimeMS", cms.getTotalStallTimeMS());
+      lst.add("mergeThrottleTimeMS", cms.getTotalThrottleTimeMS());
+      lst.add("mergeThrottledMB", cms.getTotalThrottledMB());
+    }
     return lst;
   }
 
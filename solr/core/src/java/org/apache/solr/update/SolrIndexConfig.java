@@ -18,7 +18,14 @@
 package org.apache.solr.update;
 
 import org.apache.lucene.index.*;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.NRTCachingDirectory;
 import org.apache.lucene.util.Version;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.core.IndexReaderFactory;
 import org.apache.solr.core.SolrConfig;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.schema.IndexSchema;
@@ -26,6 +33,7 @@ import org.apache.solr.util.SolrPluginUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -58,6 +66,8 @@ public class SolrIndexConfig {
     commitLockTimeout = -1;
     lockType = null;
     termIndexInterval = IndexWriterConfig.DEFAULT_TERM_INDEX_INTERVAL;
+    uniqueKeyBloomFilter = false;
+    segmentSort = null;
     mergePolicyInfo = null;
     mergeSchedulerInfo = null;
     defaultMergePolicyClassName = TieredMergePolicy.class.getName();
@@ -79,6 +89,8 @@ public class SolrIndexConfig {
   public final PluginInfo mergePolicyInfo;
   public final PluginInfo mergeSchedulerInfo;
   public final int termIndexInterval;
+  public final boolean uniqueKeyBloomFilter;
+  public final String segmentSort;
   
   public String infoStreamFile = null;
 
@@ -131,6 +143,9 @@ public class SolrIndexConfig {
     }
     
     termIndexInterval = solrConfig.getInt(prefix + "/termIndexInterval", def.termIndexInterval);
+    uniqueKeyBloomFilter = solrConfig.getBool(prefix + "/uniqueKeyBloomFilter", def.uniqueKeyBloomFilter);
+    str = solrConfig.get(prefix + "/segmentSort", def.segmentSort);
+    segmentSort = str == null || str.trim().length() == 0 ? null : str.trim();
     
     boolean infoStreamEnabled = solrConfig.getBool(prefix + "/infoStream", false);
     if(infoStreamEnabled) {
@@ -145,6 +160,22 @@ public class SolrIndexConfig {
   }
 
   public IndexWriterConfig toIndexWriterConfig(IndexSchema schema) {
+    return toIndexWriterConfig(schema, null, null);
+  }
+
+  public IndexWriterConfig toIndexWriterConfig(IndexSchema schema, Directory dir) {
+    return toIndexWriterConfig(schema, dir, null);
+  }
+
+  /**
+   * Builds the config of a writer on <code>dir</code>, which may be null.
+   * If it is an {@link NRTCachingDirectory}, the configured
+   * ConcurrentMergeScheduler is the one the directory watches merges with.
+   * The readers the writer pools, which near real-time searchers share, load
+   * the terms index with the divisor and cache size of <code>readerFactory</code>,
+   * if it is not null.
+   */
+  public IndexWriterConfig toIndexWriterConfig(IndexSchema schema, Directory dir, IndexReaderFactory readerFactory) {
     IndexWriterConfig iwc = new IndexWriterConfig(luceneVersion, schema.getAnalyzer());
     if (maxBufferedDocs != -1)
       iwc.setMaxBufferedDocs(maxBufferedDocs);
@@ -158,9 +189,18 @@ public class SolrIndexConfig {
     if (writeLockTimeout != -1)
       iwc.setWriteLockTimeout(writeLockTimeout);
 
+    // lets updates and deletes by id skip the segments that cannot contain the id
+    if (uniqueKeyBloomFilter && schema.getUniqueKeyField() != null)
+      iwc.setBloomFilterFields(Collections.singleton(schema.getUniqueKeyField().getName()));
+
+    if (readerFactory != null) {
+      iwc.setReaderTermsIndexDivisor(readerFactory.getTermInfosIndexDivisor());
+      iwc.setReaderTermsCacheSize(readerFactory.getTermInfosCacheSize());
+    }
+
     iwc.setSimilarity(schema.getSimilarity());
     iwc.setMergePolicy(buildMergePolicy(schema));
-    iwc.setMergeScheduler(buildMergeScheduler(schema));
+    iwc.setMergeScheduler(buildMergeScheduler(schema, dir));
 
     return iwc;
   }
@@ -201,12 +241,43 @@ public class SolrIndexConfig {
     if (mergePolicyInfo != null)
       SolrPluginUtils.invokeSetters(policy, mergePolicyInfo.initArgs);
 
+    // merged segments are sorted, so sorted searches can stop collecting them early
+    if (segmentSort != null)
+      policy = new SortingMergePolicy(policy, parseSegmentSort(schema));
+
     return policy;
   }
 
-  private MergeScheduler buildMergeScheduler(IndexSchema schema) {
+  /**
+   * Parses segmentSort, a list of fields and directions such as "price asc, id desc",
+   * into the Sort a request with the same sort parameter searches with.
+   */
+  private Sort parseSegmentSort(IndexSchema schema) {
+    List<String> clauses = StrUtils.splitSmart(segmentSort, ",", true);
+    SortField[] fields = new SortField[clauses.size()];
+    for (int i = 0; i < fields.length; i++) {
+      String[] parts = clauses.get(i).trim().split("\\s+");
+      if (parts.length != 2 || !("asc".equals(parts[1]) || "desc".equals(parts[1]))) {
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+            "segmentSort clauses must be a field name and asc or desc: " + clauses.get(i));
+      }
+      fields[i] = schema.getField(parts[0]).getSortField("desc".equals(parts[1]));
+    }
+    return new Sort(fields);
+  }
+
+  private MergeScheduler buildMergeScheduler(IndexSchema schema, Directory dir) {
     String msClassName = mergeSchedulerInfo == null ? SolrIndexConfig.DEFAULT_MERGE_SCHEDULER_CLASSNAME : mergeSchedulerInfo.className;
-    MergeScheduler scheduler = (MergeScheduler) schema.getResourceLoader().newInstance(msClassName);
+    MergeScheduler scheduler;
+    if (dir instanceof NRTCachingDirectory && ConcurrentMergeScheduler.class.getName().equals(msClassName)) {
+      // the directory decides which merged segments to cache by watching its own scheduler's merge threads
+      scheduler = ((NRTCachingDirectory) dir).getMergeScheduler();
+    } else {
+      if (dir instanceof NRTCachingDirectory) {
+        log.warn("NRTCachingDirectory needs a ConcurrentMergeScheduler, but " + msClassName + " is configured: merged segments will be cached like flushed ones.");
+      }
+      scheduler = (MergeScheduler) schema.getResourceLoader().newInstance(msClassName);
+    }
 
     if (mergeSchedulerInfo != null)
       SolrPluginUtils.invokeSetters(scheduler, mergeSchedulerInfo.initArgs);
@@ -21,6 +21,7 @@ import org.apache.lucene.index.*;
 import org.apache.lucene.store.*;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.core.DirectoryFactory;
+import org.apache.solr.core.IndexReaderFactory;
 import org.apache.solr.schema.IndexSchema;
 
 import org.slf4j.Logger;
@@ -80,9 +81,21 @@ public class SolrIndexWriter extends IndexWriter {
   }
   
   public SolrIndexWriter(String name, String path, DirectoryFactory dirFactory, boolean create, IndexSchema schema, SolrIndexConfig config, IndexDeletionPolicy delPolicy) throws IOException {
+    this(name, path, dirFactory, create, schema, config, delPolicy, null);
+  }
+
+  /**
+   * Opens a writer whose pooled readers load the terms index as <code>readerFactory</code>
+   * configures, so the near real-time searchers opened from it do too.
+   */
+  public SolrIndexWriter(String name, String path, DirectoryFactory dirFactory, boolean create, IndexSchema schema, SolrIndexConfig config, IndexDeletionPolicy delPolicy, IndexReaderFactory readerFactory) throws IOException {
+    this(name, getDirectory(path, dirFactory, config), create, schema, config, delPolicy, readerFactory);
+  }
+
+  private SolrIndexWriter(String name, Directory directory, boolean create, IndexSchema schema, SolrIndexConfig config, IndexDeletionPolicy delPolicy, IndexReaderFactory readerFactory) throws IOException {
     super(
-        getDirectory(path, dirFactory, config),
-        config.toIndexWriterConfig(schema).
+        directory,
+        config.toIndexWriterConfig(schema, directory, readerFactory).
             setOpenMode(create ? IndexWriterConfig.OpenMode.CREATE : IndexWriterConfig.OpenMode.APPEND).
             setIndexDeletionPolicy(delPolicy)
     );
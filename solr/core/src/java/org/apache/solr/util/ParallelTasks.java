@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.util;
+
+import org.apache.solr.common.SolrException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a list of tasks, such as facet computations
+ * (see {@link org.apache.solr.common.params.FacetParams#FACET_THREADS}) or the
+ * searches of the segments of an index, on up to <code>threads</code> threads,
+ * and returns their results in the order they were added, so the response
+ * does not depend on which thread finished first.
+ * <p/>
+ * The calling thread always takes part, and the other threads take the next
+ * task from the same list, so the tasks all complete even if the executor
+ * rejects some of the threads or a task runs its own ParallelTasks (which is
+ * how the segments of a field are counted in parallel).
+ */
+public class ParallelTasks<T> {
+  private final Executor executor;
+  private final int threads;
+  private final List<FutureTask<T>> tasks = new ArrayList<FutureTask<T>>();
+
+  /** @param executor the executor to take the additional threads from, may be null */
+  public ParallelTasks(Executor executor, int threads) {
+    this.executor = executor;
+    this.threads = executor == null ? 1 : threads;
+  }
+
+  public void add(Callable<T> task) {
+    tasks.add(new FutureTask<T>(task));
+  }
+
+  /** Runs all tasks, and returns their results in order. */
+  public List<T> getResults() throws IOException {
+    final AtomicInteger next = new AtomicInteger();
+    Runnable worker = new Runnable() {
+      public void run() {
+        int i;
+        while ((i = next.getAndIncrement()) < tasks.size()) {
+          tasks.get(i).run();
+        }
+      }
+    };
+
+    int numWorkers = Math.min(threads, tasks.size());
+    try {
+      for (int w=1; w<numWorkers; w++) {
+        executor.execute(worker);
+      }
+    } catch (RejectedExecutionException e) {
+      // all threads are busy, do with fewer
+    }
+    worker.run();
+
+    List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      for (FutureTask<T> task : tasks) {
+        results.add(task.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException)cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if (cause instanceof Error) throw (Error)cause;
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, cause);
+    }
+    return results;
+  }
+}
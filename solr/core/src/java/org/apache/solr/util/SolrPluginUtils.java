@@ -264,11 +264,8 @@ public class SolrPluginUtils {
           fieldFilter.add(keyField.getName());  
     }
 
-    // get documents
-    DocIterator iter = docs.iterator();
-    for (int i=0; i<docs.size(); i++) {
-      searcher.doc(iter.nextDoc(), fieldFilter);
-    }
+    // get documents, in index order
+    searcher.readDocs(new Document[docs.size()], docs, fieldFilter);
   }
 
   /**
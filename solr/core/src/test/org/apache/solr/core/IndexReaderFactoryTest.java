@@ -40,6 +40,7 @@ public class IndexReaderFactoryTest extends AbstractSolrTestCase {
     assertNotNull("Factory is null", readerFactory);
     assertTrue("readerFactory is not an instanceof " + AlternateDirectoryTest.TestIndexReaderFactory.class, readerFactory instanceof StandardIndexReaderFactory);
     assertTrue("termInfoIndexDivisor not set to 12", readerFactory.getTermInfosIndexDivisor() == 12);
+    assertEquals("termInfosCacheSize not set to 256", 256, readerFactory.getTermInfosCacheSize());
 
 
   }
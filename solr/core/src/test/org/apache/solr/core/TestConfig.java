@@ -17,11 +17,15 @@
 
 package org.apache.solr.core;
 
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.handler.admin.ShowFileRequestHandler;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.update.DirectUpdateHandler2;
 import org.apache.solr.update.SolrIndexConfig;
 import org.junit.BeforeClass;
@@ -32,6 +36,7 @@ import org.w3c.dom.NodeList;
 import javax.xml.xpath.XPathConstants;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Locale;
 
 public class TestConfig extends SolrTestCaseJ4 {
@@ -131,6 +136,12 @@ public class TestConfig extends SolrTestCaseJ4 {
     IndexWriter writer = duh.getWriter();
     int interval = writer.getConfig().getTermIndexInterval();
     assertEquals(256, interval);
+    assertEquals(Collections.singleton("id"), writer.getConfig().getBloomFilterFields());
+    ConcurrentMergeScheduler cms = (ConcurrentMergeScheduler) writer.getConfig().getMergeScheduler();
+    assertEquals(1000.0, cms.getMaxMergeWriteMBPerSec(), 0.0);
+    assertEquals(500.0, cms.getMinMergeWriteMBPerSec(), 0.0);
+    assertEquals(500.0, duh.getStatistics().get("mergeWriteMBPerSec"));
+    assertEquals(0, duh.getStatistics().get("mergeBacklog"));
     duh.close();
   }
 
@@ -144,6 +155,31 @@ public class TestConfig extends SolrTestCaseJ4 {
     req.close();
   }
 
+  @Test
+  public void testUniqueKeyBloomFilter() throws Exception {
+    // one segment per id
+    for (int i = 0; i < 5; i++) {
+      assertU(adoc("id", Integer.toString(i)));
+      assertU(commit());
+    }
+    assertU(adoc("id", "3"));
+    assertU(commit());
+    assertQ(req("id:3"), "//*[@numFound='1']");
+
+    SolrQueryRequest req = req();
+    SolrIndexSearcher searcher = req.getSearcher();
+    FieldType ft = searcher.getSchema().getUniqueKeyField().getType();
+    for (int i = 0; i < 5; i++) {
+      int doc = searcher.getFirstMatch(new Term("id", ft.toInternal(Integer.toString(i))));
+      assertTrue(doc >= 0);
+      assertEquals(Integer.toString(i), ft.toExternal(searcher.doc(doc).getFieldable("id")));
+    }
+    assertEquals(-1, searcher.getFirstMatch(new Term("id", ft.toInternal("42"))));
+    req.close();
+    assertU(delQ("*:*"));
+    assertU(commit());
+  }
+
 
 }
 
@@ -44,8 +44,10 @@ import org.junit.Test;
 
 import java.io.*;
 import java.net.URL;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.zip.Adler32;
 
 /**
  * Test for ReplicationHandler
@@ -184,6 +186,9 @@ public class TestReplicationHandler extends SolrTestCaseJ4 {
     doTestDetails();
     doTestReplicateAfterWrite2Slave();
     doTestIndexAndConfigReplication();
+    doTestIndexFileChecksums();
+    doTestFileListRightAfterCommit();
+    doTestReuseLocalFilesOnFullCopy();
     doTestStopPoll();
     doTestSnapPullWithMasterUrl();
     doTestReplicateAfterStartup();
@@ -363,6 +368,109 @@ public class TestReplicationHandler extends SolrTestCaseJ4 {
 
   }
 
+  private void doTestIndexFileChecksums() throws Exception {
+    clearIndexWithReplication();
+
+    nDocs--;
+    for (int i = 0; i < nDocs; i++)
+      index(masterClient, "id", i, "name", "name = " + i);
+
+    masterClient.commit();
+
+    // the slave downloads the files in parallel, without checksums per packet
+    NamedList slaveQueryRsp = rQuery(nDocs, "*:*", slaveClient);
+    SolrDocumentList slaveQueryResult = (SolrDocumentList) slaveQueryRsp.get("response");
+    assertEquals(nDocs, slaveQueryResult.getNumFound());
+
+    File masterIndexDir = new File(master.getDataDir(), "index");
+    for (Map<String, Object> file : getMasterFileListWithChecksums()) {
+      File f = new File(masterIndexDir, (String) file.get(ReplicationHandler.NAME));
+      assertEquals(f.toString(), ReplicationHandler.getCheckSum(new Adler32(), f), file.get(ReplicationHandler.CHECKSUM));
+    }
+  }
+
+  private void doTestFileListRightAfterCommit() throws Exception {
+    clearIndexWithReplication();
+
+    for (int i = 0; i < nDocs; i++)
+      index(masterClient, "id", i, "name", "name = " + i);
+    masterClient.commit();
+
+    // the checksums are computed in the background: the file list does not wait for them,
+    // but lists the files whose checksum is not computed yet without one
+    File masterIndexDir = new File(master.getDataDir(), "index");
+    List<Map<String, Object>> files = getMasterFileList();
+    assertFalse(files.isEmpty());
+    for (Map<String, Object> file : files) {
+      File f = new File(masterIndexDir, (String) file.get(ReplicationHandler.NAME));
+      assertEquals(f.toString(), f.length(), file.get(ReplicationHandler.SIZE));
+      if (file.get(ReplicationHandler.CHECKSUM) != null) {
+        assertEquals(f.toString(), ReplicationHandler.getCheckSum(new Adler32(), f), file.get(ReplicationHandler.CHECKSUM));
+      }
+    }
+
+    List<Map<String, Object>> filesWithChecksums = getMasterFileListWithChecksums();
+    assertEquals(files.size(), filesWithChecksums.size());
+    for (Map<String, Object> file : filesWithChecksums) {
+      File f = new File(masterIndexDir, (String) file.get(ReplicationHandler.NAME));
+      assertEquals(f.toString(), ReplicationHandler.getCheckSum(new Adler32(), f), file.get(ReplicationHandler.CHECKSUM));
+    }
+
+    rQuery(nDocs, "*:*", slaveClient);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Map<String, Object>> getMasterFileList() throws Exception {
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("command", ReplicationHandler.CMD_INDEX_VERSION);
+    params.set("qt", "/replication");
+    NamedList<Object> res = masterClient.request(new QueryRequest(params));
+    Long version = (Long) res.get(ReplicationHandler.CMD_INDEX_VERSION);
+
+    params.set("command", ReplicationHandler.CMD_GET_FILE_LIST);
+    params.set(ReplicationHandler.CMD_INDEX_VERSION, String.valueOf(version));
+    res = masterClient.request(new QueryRequest(params));
+    return (List<Map<String, Object>>) res.get(ReplicationHandler.CMD_GET_FILE_LIST);
+  }
+
+  /** Waits for the master to list the checksums of all the files of its commit point. */
+  private List<Map<String, Object>> getMasterFileListWithChecksums() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      List<Map<String, Object>> files = getMasterFileList();
+      boolean complete = !files.isEmpty();
+      for (Map<String, Object> file : files) {
+        complete &= file.get(ReplicationHandler.CHECKSUM) != null;
+      }
+      if (complete) return files;
+      Thread.sleep(100);
+    }
+    fail("the checksums of the index files were not computed");
+    return null;
+  }
+
+  private void doTestReuseLocalFilesOnFullCopy() throws Exception {
+    // the slave has the index of the master
+    rQuery(nDocs, "*:*", slaveClient);
+
+    // a commit on the slave makes its generation higher than that of the master, so it needs a full copy
+    index(slaveClient, "id", 556, "name", "name = " + 556);
+    slaveClient.commit(true, true);
+
+    NamedList slaveQueryRsp = rQuery(0, "id:556", slaveClient);
+    SolrDocumentList slaveQueryResult = (SolrDocumentList) slaveQueryRsp.get("response");
+    assertEquals(0, slaveQueryResult.getNumFound());
+    slaveQueryRsp = rQuery(nDocs, "*:*", slaveClient);
+    slaveQueryResult = (SolrDocumentList) slaveQueryRsp.get("response");
+    assertEquals(nDocs, slaveQueryResult.getNumFound());
+
+    // but the files of the segment it had already were not downloaded again
+    NamedList<Object> details = getDetails(slaveClient);
+    NamedList slaveDetails = (NamedList) details.get("slave");
+    String bytesAvoided = (String) slaveDetails.get("lastCycleBytesAvoided");
+    assertNotNull(bytesAvoided);
+    assertTrue(bytesAvoided, Long.parseLong(bytesAvoided) > 0);
+  }
+
   private void doTestStopPoll() throws Exception {
     clearIndexWithReplication();
 
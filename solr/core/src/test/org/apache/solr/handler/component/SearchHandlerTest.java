@@ -94,4 +94,37 @@ public class SearchHandlerTest extends AbstractSolrTestCase
     //Debug component is always last in this case
     assertEquals( core.getSearchComponent( DebugComponent.COMPONENT_NAME ), comps.get( comps.size()-1 ) );
   }
+
+  public void testShardStatistics()
+  {
+    SolrCore core = h.getCore();
+
+    NamedList args = new NamedList();
+    args.add( SearchHandler.INIT_MAX_CONCURRENCY, 2 );
+    args.add( SearchHandler.INIT_MAX_CONNECTIONS_PER_HOST, 4 );
+    args.add( SearchHandler.INIT_SO_TIMEOUT, 1000 );
+    SearchHandler handler = new SearchHandler();
+    handler.init( args );
+    handler.inform( core );
+    assertEquals( 2, handler.maxConcurrency );
+    assertEquals( 4, handler.maxConnectionsPerHost );
+    assertEquals( 1000, handler.soTimeout );
+
+    handler.recordShardRequest( "shard1", 3, false );
+    handler.recordShardRequest( "shard1", 700, true );
+    handler.recordShardRequest( "shard2", 12000, false );
+
+    NamedList stats = handler.getStatistics();
+    assertEquals( 3L, stats.get( "shardRequests" ) );
+    assertEquals( 1L, stats.get( "shardErrors" ) );
+    NamedList latency = (NamedList) stats.get( "shardLatency" );
+    assertEquals( 3L, latency.get( "count" ) );
+    assertEquals( 1L, latency.get( "<=5ms" ) );
+    assertEquals( 1L, latency.get( "<=1000ms" ) );
+    assertEquals( 1L, latency.get( ">10000ms" ) );
+    assertNull( latency.get( "<=1ms" ) );
+    NamedList byShard = (NamedList) stats.get( "shardLatencyByShard" );
+    assertEquals( 2L, ((NamedList) byShard.get( "shard1" )).get( "count" ) );
+    assertEquals( 1L, ((NamedList) byShard.get( "shard2" )).get( "count" ) );
+  }
 }
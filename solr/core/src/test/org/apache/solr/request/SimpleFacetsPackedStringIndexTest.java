@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs all of {@link SimpleFacetsTest} with <code>usePackedStringIndex</code>
+ * enabled, so that single valued field cache faceting and string sorting
+ * use the packed {@link org.apache.lucene.search.FieldCache.DocTermsIndex}.
+ */
+public class SimpleFacetsPackedStringIndexTest extends SimpleFacetsTest {
+  // hides SimpleFacetsTest.beforeClass
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.tests.usePackedStringIndex", "true");
+    initCore("solrconfig.xml","schema.xml");
+    pendingDocs.clear();
+    createIndex();
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    System.clearProperty("solr.tests.usePackedStringIndex");
+  }
+
+  @Test
+  public void testPackedStringIndexEnabled() {
+    assertTrue(h.getCore().getSolrConfig().usePackedStringIndex);
+  }
+
+  @Test
+  public void testStringSort() {
+    assertQ("sort by string field desc",
+            req("q", "id:[* TO *]", "fl", "id,t_s1", "sort", "t_s1 desc", "rows", "3")
+            ,"//result/doc[1]/str[@name='t_s1'][.='G']"
+            ,"//result/doc[3]/str[@name='t_s1'][.='G']"
+            );
+    // missing values sort last in both directions
+    assertQ("sort by string field asc",
+            req("q", "id:[* TO *]", "fl", "id,t_s1", "sort", "t_s1 asc", "rows", "3")
+            ,"//result/doc[1]/str[@name='t_s1'][.='A']"
+            ,"//result/doc[2]/str[@name='t_s1'][.='B']"
+            );
+  }
+}
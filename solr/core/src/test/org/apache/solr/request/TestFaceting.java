@@ -18,7 +18,10 @@
 package org.apache.solr.request;
 
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -255,4 +258,113 @@ public class TestFaceting extends SolrTestCaseJ4 {
   }
 
 
+  private String facetFields(String... params) throws Exception {
+    String response = h.query(req(params));
+    return response.substring(response.indexOf("<lst name=\"facet_fields\">"), response.indexOf("facet_dates"));
+  }
+
+  @Test
+  public void testPerSegment() throws Exception {
+    Random r = random;
+    int nTerms = 50;
+    int id = 0;
+    for (int seg=0; seg<4; seg++) {
+      for (int i=0; i<100; i++) {
+        StringBuilder sb = new StringBuilder();
+        if (r.nextInt(3) == 0) sb.append("big ");  // un-inverted as a big term
+        int n = r.nextInt(5);
+        for (int j=0; j<n; j++) {
+          sb.append(t(r.nextInt(nTerms))).append(' ');
+        }
+        assertU(adoc("id", Integer.toString(id++), "many_ws", sb.toString()));
+      }
+      assertU(commit());
+    }
+
+    for (int round=0; round<3; round++) {
+      for (int i=0; i<20; i++) {
+        assertU(delI(Integer.toString(r.nextInt(id))));
+      }
+      assertU(adoc("id", Integer.toString(id++), "many_ws", "big " + t(nTerms)));
+      assertU(commit());
+
+      for (String q : new String[] {"*:*", "id:[1 TO 5]", "many_ws:" + t(1)}) {
+        for (String sort : new String[] {"count", "index"}) {
+          String[] params = new String[] {"q", q, "rows", "0", "facet", "true", "facet.field", "many_ws",
+              "facet.sort", sort, "facet.offset", "1", "facet.limit", "20", "facet.mincount", "0"};
+          String expected = facetFields(params);
+          String[] fcs = new String[params.length + 2];
+          System.arraycopy(params, 0, fcs, 0, params.length);
+          fcs[params.length] = "facet.method";
+          fcs[params.length + 1] = "fcs";
+          assertEquals(expected, facetFields(fcs));
+          fcs[10] = "facet.prefix";
+          fcs[11] = "0000002";
+          params[10] = "facet.prefix";
+          params[11] = "0000002";
+          assertEquals(facetFields(params), facetFields(fcs));
+        }
+      }
+
+      // count the segments (and several fields) in parallel
+      String[] params = new String[] {"q", "*:*", "rows", "0", "facet", "true", "facet.sort", "count",
+          "facet.field", "many_ws", "facet.field", "{!key=k1}many_ws", "f.many_ws.facet.method", "fcs",
+          "facet.field", "{!key=k2 terms=big," + t(1) + "}many_ws", "facet.field", "id"};
+      String expected = facetFields(params);
+      String[] threaded = new String[params.length + 2];
+      System.arraycopy(params, 0, threaded, 0, params.length);
+      threaded[params.length] = "facet.threads";
+      threaded[params.length + 1] = "4";
+      assertEquals(expected, facetFields(threaded));
+
+      if (round > 0) {
+        // only the new segment was un-inverted
+        SolrQueryRequest req = req();
+        try {
+          PerSegmentUnInvertedField uif = PerSegmentUnInvertedField.getPerSegmentUnInvertedField("many_ws", req.getSearcher());
+          assertEquals(1, uif.numUnInverted);
+        } finally {
+          req.close();
+        }
+      }
+    }
+  }
+
+  private String facetsAndStats(String... params) throws Exception {
+    String response = h.query(req(params));
+    return response.substring(response.indexOf("<lst name=\"facet_counts\">"));
+  }
+
+  @Test
+  public void testPerSegmentStats() throws Exception {
+    int id = 0;
+    for (int seg=0; seg<3; seg++) {
+      for (int i=0; i<20; i++) {
+        assertU(adoc("id", Integer.toString(id++), "cat_s", "c" + (i % 3),
+            "stat_is", Integer.toString(random.nextInt(10)), "stat_is", Integer.toString(random.nextInt(10))));
+      }
+      assertU(commit());
+    }
+
+    String[] params = new String[] {"q", "*:*", "rows", "0", "facet", "true", "facet.field", "stat_is",
+        "stats", "true", "stats.field", "stat_is", "stats.facet", "cat_s"};
+    String[] fcs = new String[params.length + 2];
+    System.arraycopy(params, 0, fcs, 0, params.length);
+    fcs[params.length] = "facet.method";
+    fcs[params.length + 1] = "fcs";
+    assertEquals(facetsAndStats(params), facetsAndStats(fcs));
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      DocSet docs = searcher.getDocSet(new MatchAllDocsQuery());
+      String[] facet = new String[] {"cat_s"};
+      UnInvertedField uif = PerSegmentUnInvertedField.getPerSegmentUnInvertedField("stat_is", searcher);
+      assertEquals(UnInvertedField.getUnInvertedField("stat_is", searcher).getStats(searcher, docs, facet).getStatsValues().toString(),
+          uif.getStats(searcher, docs, facet).getStatsValues().toString());
+    } finally {
+      req.close();
+    }
+  }
+
 }
\ No newline at end of file
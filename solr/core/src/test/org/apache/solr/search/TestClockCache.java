@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.solr.common.util.ConcurrentClockCache;
+import org.apache.solr.common.util.ConcurrentLRUCache;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Test for ClockCache
+ *
+ * @see org.apache.solr.search.ClockCache
+ */
+public class TestClockCache extends LuceneTestCase {
+  public void testSimple() throws IOException {
+    ClockCache sc = new ClockCache();
+    Map l = new HashMap();
+    l.put("size", "100");
+    l.put("initialSize", "10");
+    l.put("autowarmCount", "25");
+    l.put("segments", "1");
+    CacheRegenerator cr = new CacheRegenerator() {
+      public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                    SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+        newCache.put(oldKey, oldVal);
+        return true;
+      }
+    };
+    Object o = sc.init(l, null, cr);
+    sc.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 101; i++) {
+      sc.put(i + 1, "" + (i + 1));
+    }
+    assertEquals("25", sc.get(25));
+    assertEquals(null, sc.get(110));
+    NamedList nl = sc.getStatistics();
+    assertEquals(2L, nl.get("lookups"));
+    assertEquals(1L, nl.get("hits"));
+    assertEquals(101L, nl.get("inserts"));
+    assertEquals(1L, nl.get("evictions"));
+    assertEquals(100L, nl.get("size"));
+
+    assertEquals(null, sc.get(1));  // first item put in should be the first out
+
+    ClockCache scNew = new ClockCache();
+    scNew.init(l, o, cr);
+    scNew.warm(null, sc);
+    scNew.setState(SolrCache.State.LIVE);
+    sc.close();
+    // the only entry that was used is warmed first
+    assertEquals(25, scNew.size());
+    scNew.put(103, "103");
+    assertEquals("25", scNew.get(25));
+    assertEquals(null, scNew.get(1));
+    nl = scNew.getStatistics();
+    assertEquals(2L, nl.get("lookups"));
+    assertEquals(1L, nl.get("hits"));
+    assertEquals(1L, nl.get("inserts"));
+    assertEquals(0L, nl.get("evictions"));
+
+    assertEquals(5L, nl.get("cumulative_lookups"));
+    assertEquals(2L, nl.get("cumulative_hits"));
+    assertEquals(102L, nl.get("cumulative_inserts"));
+    assertEquals(1L, nl.get("cumulative_evictions"));
+    scNew.close();
+  }
+
+  public void testMaxRamMB() throws IOException {
+    ClockCache sc = new ClockCache();
+    Map l = new HashMap();
+    l.put("maxRamMB", "1");
+    l.put("segments", "1");
+    sc.init(l, null, null);
+    sc.setState(SolrCache.State.LIVE);
+    final long maxRamBytes = 1024 * 1024;
+    // small entries: nothing is evicted
+    for (int i = 0; i < 100; i++) {
+      sc.put("small" + i, new SortedIntDocSet(new int[] {i}));
+    }
+    NamedList nl = sc.getStatistics();
+    assertEquals(100L, ((Number) nl.get("size")).longValue());
+    assertEquals(0L, nl.get("evictions"));
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    assertTrue(ramBytesUsed > 0 && ramBytesUsed < maxRamBytes);
+    sc.clear();
+
+    // each of these takes 128KB, so at most 7 of them fit
+    for (int i = 0; i < 20; i++) {
+      sc.put("big" + i, new BitDocSet(new OpenBitSet(1 << 20)));
+      nl = sc.getStatistics();
+      assertTrue((Long) nl.get("ramBytesUsed") <= maxRamBytes);
+    }
+    assertTrue(sc.size() > 0 && sc.size() <= 7);
+    assertTrue((Long) nl.get("evictions") >= 13L);
+    // the last one is never evicted
+    assertNotNull(sc.get("big19"));
+    sc.close();
+  }
+
+  public void testSecondChance() {
+    ConcurrentClockCache<Integer,String> cache = new ConcurrentClockCache<Integer,String>(10, 10, 1, null);
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, "" + i);
+    }
+    cache.get(0);
+    cache.get(1);
+    cache.get(3);
+    // 0 and 1 get a second chance, 2 is evicted
+    cache.put(10, "10");
+    assertEquals(10, cache.size());
+    assertEquals("0", cache.get(0));
+    assertEquals("1", cache.get(1));
+    assertNull(cache.get(2));
+    // the hand continues after 2, and 3 was referenced
+    cache.put(11, "11");
+    assertEquals("3", cache.get(3));
+    assertNull(cache.get(4));
+
+    // replacing a value does not evict
+    assertEquals("5", cache.put(5, "five"));
+    assertEquals(10, cache.size());
+    assertEquals("five", cache.get(5));
+
+    // removed slots are reused before anything is evicted
+    assertEquals("6", cache.remove(6));
+    assertEquals(9, cache.size());
+    cache.put(12, "12");
+    assertEquals(10, cache.size());
+    assertEquals("7", cache.get(7));
+    assertEquals(2, cache.getStats().getCumulativeEvictions());
+
+    Map<Integer,String> latest = cache.getLatestAccessedItems(3);
+    assertEquals(3, latest.size());
+    assertTrue(latest.containsKey(0) || latest.containsKey(1) || latest.containsKey(3));
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get(0));
+    cache.put(0, "0");
+    assertEquals("0", cache.get(0));
+    cache.destroy();
+  }
+
+  public void testEvictionListener() {
+    final AtomicInteger evicted = new AtomicInteger();
+    ConcurrentClockCache<Integer,Integer> cache = new ConcurrentClockCache<Integer,Integer>(100, 100, 4,
+        new ConcurrentLRUCache.EvictionListener<Integer,Integer>() {
+          public void evictedEntry(Integer key, Integer value) {
+            assertEquals(key, value);
+            evicted.incrementAndGet();
+          }
+        });
+    assertEquals(4, cache.getNumSegments());
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, i);
+    }
+    assertEquals(100, cache.size());
+    assertEquals(900, evicted.get());
+    assertEquals(900, cache.getStats().getCumulativeEvictions());
+    cache.destroy();
+  }
+
+  public void testSegments() {
+    // small caches are not split too finely
+    assertEquals(1, new ConcurrentClockCache<Integer,Integer>(10, 10, 64, null).getNumSegments());
+    assertEquals(4, new ConcurrentClockCache<Integer,Integer>(100, 10, 64, null).getNumSegments());
+    assertEquals(4, new ConcurrentClockCache<Integer,Integer>(10000, 10, 5, null).getNumSegments());
+  }
+
+  public void testConcurrent() throws Exception {
+    final int limit = 200;
+    final ConcurrentClockCache<Integer,Integer> cache = new ConcurrentClockCache<Integer,Integer>(limit, limit, 8, null);
+    final int numThreads = 4;
+    final int iters = atLeast(2000);
+    final Thread[] threads = new Thread[numThreads];
+    final AtomicInteger failures = new AtomicInteger();
+    for (int t = 0; t < numThreads; t++) {
+      final long seed = random.nextLong();
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          java.util.Random r = new java.util.Random(seed);
+          for (int i = 0; i < iters; i++) {
+            int key = r.nextInt(limit * 2);
+            Integer val = cache.get(key);
+            if (val == null) {
+              cache.put(key, key);
+            } else if (val.intValue() != key) {
+              failures.incrementAndGet();
+            }
+            if (r.nextInt(50) == 0) cache.remove(key);
+            if (cache.size() > limit) failures.incrementAndGet();
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(0, failures.get());
+    assertTrue(cache.size() <= limit);
+    ConcurrentClockCache.Stats stats = cache.getStats();
+    assertEquals(numThreads * iters, stats.getCumulativeLookups());
+  }
+}
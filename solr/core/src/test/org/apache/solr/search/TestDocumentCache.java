@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.util.RefCounted;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Tests batched document loading, and that the documentCache entries of
+ * unchanged segments are carried over to the next searcher
+ */
+public class TestDocumentCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.tests.documentCacheAutowarmCount", "512");
+    initCore("solrconfig.xml","schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    System.clearProperty("solr.tests.documentCacheAutowarmCount");
+  }
+
+  private int cacheSize() {
+    return (Integer) h.getCore().getInfoRegistry().get("documentCache").getStatistics().get("size");
+  }
+
+  /** reads the first <code>n</code> documents, and checks them against the uncached ones */
+  private void readDocs(int n, boolean lazy) throws Exception {
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      SolrIndexSearcher searcher = holder.get();
+      // reversed, so the ids are not in index order
+      DocList ids = searcher.getDocList(new MatchAllDocsQuery(), (Query) null,
+          new Sort(new SortField("id", SortField.STRING, true)), 0, n);
+      Document[] docs = new Document[ids.size()];
+      searcher.readDocs(docs, ids, lazy ? Collections.singleton("id") : null);
+      DocIterator iter = ids.iterator();
+      for (Document doc : docs) {
+        int id = iter.nextDoc();
+        assertEquals(searcher.getReader().document(id).get("id"), doc.get("id"));
+        assertEquals(searcher.getReader().document(id).get("name"), doc.get("name"));
+      }
+    } finally {
+      holder.decref();
+    }
+  }
+
+  @Test
+  public void testCarriedOver() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+
+    // two segments
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", Integer.toString(i), "name", "doc " + i));
+    }
+    assertU(commit());
+    for (int i = 10; i < 20; i++) {
+      assertU(adoc("id", Integer.toString(i), "name", "doc " + i));
+    }
+    assertU(commit());
+
+    assertEquals(0, cacheSize());
+    readDocs(20, false);
+    assertEquals(20, cacheSize());
+    // cached now
+    readDocs(20, false);
+    assertEquals(20, cacheSize());
+
+    // the documents of the old segments are still cached, except the deleted one
+    assertU(adoc("id", "20", "name", "doc 20"));
+    assertU(delI("3"));
+    assertU(commit());
+    assertEquals(19, cacheSize());
+    readDocs(20, false);
+    assertEquals(20, cacheSize());
+  }
+
+  @Test
+  public void testLazyNotCarriedOver() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+    for (int i = 0; i < 10; i++) {
+      assertU(adoc("id", Integer.toString(i), "name", "doc " + i));
+    }
+    assertU(commit());
+
+    readDocs(10, true);
+    assertEquals(10, cacheSize());
+    assertU(adoc("id", "10", "name", "doc 10"));
+    assertU(commit());
+    assertEquals(0, cacheSize());
+  }
+}
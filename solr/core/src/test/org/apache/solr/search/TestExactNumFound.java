@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks requests by score with exactNumFound=false return the same documents,
+ * but may skip counting the ones that cannot compete.
+ */
+public class TestExactNumFound extends SolrTestCaseJ4 {
+
+  private static final String[] WORDS = {"apple", "banana", "cherry", "date"};
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml","schema12.xml");
+  }
+
+  @Test
+  public void testExactNumFound() throws Exception {
+    int numDocs = 300 + random.nextInt(100);
+    for (int id = 0; id < numDocs; id++) {
+      StringBuilder text = new StringBuilder();
+      int numWords = 1 + random.nextInt(10);
+      for (int i = 0; i < numWords; i++) {
+        // the last words are rare, so their documents score the best
+        text.append(WORDS[Math.min(random.nextInt(10), WORDS.length - 1)]).append(' ');
+      }
+      assertU(adoc("id", Integer.toString(id), "text", text.toString()));
+      if (random.nextInt(100) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    boolean skipped = false;
+    for (String q : new String[] {"text:apple", "text:apple text:date", "text:banana text:cherry text:date"}) {
+      String rows = Integer.toString(1 + random.nextInt(5));
+      String exact = h.query(req("q", "{!cache=false}" + q, "rows", rows, "fl", "id"));
+      String approximate = h.query(req("q", "{!cache=false}" + q, "rows", rows, "fl", "id",
+          "exactNumFound", "false"));
+      assertEquals(docs(exact), docs(approximate));
+      assertTrue(approximate.contains("<bool name=\"numFoundExact\">false</bool>"));
+      assertFalse(exact.contains("numFoundExact"));
+      assertTrue(numFound(approximate) <= numFound(exact));
+      skipped |= numFound(approximate) < numFound(exact);
+
+      // the DocSet needs every match
+      String faceted = h.query(req("q", "{!cache=false}" + q, "rows", rows, "fl", "id",
+          "exactNumFound", "false", "facet", "true", "facet.field", "id"));
+      assertEquals(numFound(exact), numFound(faceted));
+      assertFalse(faceted.contains("numFoundExact"));
+    }
+    // the rare words let disjunctions skip the documents that only have common words
+    assertTrue(skipped);
+  }
+
+  private static String docs(String response) {
+    return response.substring(response.indexOf("<doc>"), response.lastIndexOf("</result>"));
+  }
+
+  private static int numFound(String response) {
+    int start = response.indexOf("numFound=\"") + "numFound=\"".length();
+    return Integer.parseInt(response.substring(start, response.indexOf('"', start)));
+  }
+}
@@ -17,6 +17,7 @@
 package org.apache.solr.search;
 
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.ConcurrentLRUCache;
 
@@ -83,6 +84,37 @@ public class TestFastLRUCache extends LuceneTestCase {
     scNew.close();
   }
 
+  public void testMaxRamMB() throws IOException {
+    FastLRUCache sc = new FastLRUCache();
+    Map l = new HashMap();
+    l.put("maxRamMB", "1");
+    sc.init(l, null, null);
+    sc.setState(SolrCache.State.LIVE);
+    final long maxRamBytes = 1024 * 1024;
+    // small entries: nothing is evicted
+    for (int i = 0; i < 100; i++) {
+      sc.put("small" + i, new SortedIntDocSet(new int[] {i}));
+    }
+    NamedList nl = sc.getStatistics();
+    assertEquals(100L, ((Number) nl.get("size")).longValue());
+    assertEquals(0L, nl.get("evictions"));
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    assertTrue(ramBytesUsed > 0 && ramBytesUsed < maxRamBytes);
+    sc.clear();
+
+    // each of these takes 128KB, so at most 7 of them fit
+    for (int i = 0; i < 20; i++) {
+      sc.put("big" + i, new BitDocSet(new OpenBitSet(1 << 20)));
+      nl = sc.getStatistics();
+      assertTrue((Long) nl.get("ramBytesUsed") <= maxRamBytes);
+    }
+    assertTrue(sc.size() > 0 && sc.size() <= 7);
+    assertTrue((Long) nl.get("evictions") >= 13L);
+    // the last one is never evicted
+    assertNotNull(sc.get("big19"));
+    sc.close();
+  }
+
   public void testOldestItems() {
     ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<Integer, String>(100, 90);
     for (int i = 0; i < 50; i++) {
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Test for LRUCache
+ *
+ * @see org.apache.solr.search.LRUCache
+ */
+public class TestLRUCache extends LuceneTestCase {
+  public void testSimple() throws IOException {
+    LRUCache sc = new LRUCache();
+    Map l = new HashMap();
+    l.put("size", "100");
+    sc.init(l, null, null);
+    sc.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 101; i++) {
+      sc.put(i + 1, "" + (i + 1));
+    }
+    assertEquals("25", sc.get(25));
+    assertEquals(null, sc.get(1));  // first item put in should be the first out
+    NamedList nl = sc.getStatistics();
+    assertEquals(100, nl.get("size"));
+    assertEquals(1L, nl.get("evictions"));
+    // no RAM accounting unless a limit is configured
+    assertNull(nl.get("ramBytesUsed"));
+    sc.close();
+  }
+
+  public void testMaxRamMB() throws IOException {
+    LRUCache sc = new LRUCache();
+    Map l = new HashMap();
+    l.put("maxRamMB", "1");
+    sc.init(l, null, null);
+    sc.setState(SolrCache.State.LIVE);
+    final long maxRamBytes = 1024 * 1024;
+    // small entries: nothing is evicted
+    for (int i = 0; i < 100; i++) {
+      sc.put("small" + i, new SortedIntDocSet(new int[] {i}));
+    }
+    NamedList nl = sc.getStatistics();
+    assertEquals(100L, ((Number) nl.get("size")).longValue());
+    assertEquals(0L, nl.get("evictions"));
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    assertTrue(ramBytesUsed > 0 && ramBytesUsed < maxRamBytes);
+    sc.clear();
+
+    // each of these takes 128KB, so at most 7 of them fit
+    for (int i = 0; i < 20; i++) {
+      sc.put("big" + i, new BitDocSet(new OpenBitSet(1 << 20)));
+      nl = sc.getStatistics();
+      assertTrue((Long) nl.get("ramBytesUsed") <= maxRamBytes);
+    }
+    assertTrue(sc.size() > 0 && sc.size() <= 7);
+    assertTrue((Long) nl.get("evictions") >= 13L);
+    // the last one is never evicted
+    assertNotNull(sc.get("big19"));
+    sc.close();
+  }
+
+  public void testRamBytesOfChangedEntry() throws IOException {
+    LRUCache sc = new LRUCache();
+    Map l = new HashMap();
+    l.put("maxRamMB", "1");
+    sc.init(l, null, null);
+    sc.setState(SolrCache.State.LIVE);
+    BitDocSet grown = new BitDocSet(new OpenBitSet(64));
+    sc.put("grown", grown);
+    final long initialRamBytes = (Long) sc.getStatistics().get("ramBytesUsed");
+    // the value is larger than when it was added, but replacing and evicting
+    // it subtracts the size it was added with
+    grown.getBits().set(1 << 20);
+    SortedIntDocSet small = new SortedIntDocSet(new int[] {1});
+    sc.put("grown", small);
+    assertEquals(CacheRamEstimator.sizeOf("grown", small), sc.getStatistics().get("ramBytesUsed"));
+    sc.clear();
+    grown = new BitDocSet(new OpenBitSet(64));
+    sc.put("grown", grown);
+    grown.getBits().set(1 << 20);
+    assertEquals(initialRamBytes, sc.getStatistics().get("ramBytesUsed"));
+    for (int i = 0; i < 20; i++) {
+      sc.put("big" + i, new BitDocSet(new OpenBitSet(1 << 20)));
+    }
+    assertNull(sc.get("grown"));
+    long ramBytesUsed = 0;
+    for (int i = 0; i < 20; i++) {
+      Object value = sc.get("big" + i);
+      if (value != null) ramBytesUsed += CacheRamEstimator.sizeOf("big" + i, value);
+    }
+    assertEquals(ramBytesUsed, sc.getStatistics().get("ramBytesUsed"));
+    sc.close();
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Autowarms the filterCache with several threads
+ *
+ * @see CacheWarmer
+ */
+public class TestParallelAutowarm extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.tests.autowarmThreads", "4");
+    System.setProperty("solr.tests.filterCacheAutowarmCount", "64");
+    initCore("solrconfig.xml","schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    System.clearProperty("solr.tests.autowarmThreads");
+    System.clearProperty("solr.tests.filterCacheAutowarmCount");
+  }
+
+  private NamedList filterCacheStats() {
+    return h.getCore().getInfoRegistry().get("filterCache").getStatistics();
+  }
+
+  @Test
+  public void testParallelAutowarm() throws Exception {
+    assertEquals(4, h.getCore().getSolrConfig().autowarmThreads);
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_i", Integer.toString(i % 5)));
+    }
+    assertU(commit());
+
+    // 50 distinct filters, more than the 4 threads
+    for (int i = 0; i < 50; i++) {
+      assertQ(req("q", "*:*", "fq", "id:[0 TO " + i + "] OR val_i:" + (i % 5)), "//result");
+    }
+    assertEquals(50, ((Number) filterCacheStats().get("size")).intValue());
+
+    assertU(adoc("id", "100", "val_i", "0"));
+    assertU(commit());
+
+    NamedList stats = filterCacheStats();
+    assertEquals(50, ((Number) stats.get("size")).intValue());
+    assertEquals(0L, stats.get("lookups"));
+
+    // warmed entries were computed against the new searcher
+    assertQ(req("q", "*:*", "fq", "id:[0 TO 0] OR val_i:0", "rows", "0"),
+        "//result[@numFound='5']");
+    stats = filterCacheStats();
+    assertEquals(1L, stats.get("lookups"));
+    assertEquals(1L, stats.get("hits"));
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      assertEquals(4, searcher.getAutowarmThreads());
+      NamedList searcherStats = searcher.getStatistics();
+      assertNotNull(searcherStats.get("filterCacheWarmupTime"));
+      assertNotNull(searcherStats.get("queryResultCacheWarmupTime"));
+    } finally {
+      req.close();
+    }
+  }
+}
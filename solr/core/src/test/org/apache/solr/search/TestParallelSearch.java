@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.util.RefCounted;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches the segments of the index on several threads, and checks the
+ * results are the same as when a single collector collects all of them.
+ */
+public class TestParallelSearch extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.tests.searchThreads", "4");
+    initCore("solrconfig.xml","schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    System.clearProperty("solr.tests.searchThreads");
+  }
+
+  private static final String[] QUERIES = {
+      "*:*", "text:a", "text:a text:b", "+text:c -text:d", "val_i:[2 TO 5]", "id:7 id:150"
+  };
+  private static final String[] FILTERS = {
+      "val_i:[0 TO 6]", "text:e", "{!cache=false}text:c", "{!frange l=2 u=7 cache=false cost=200}val_i"
+  };
+  private static final String[] SORTS = {
+      null, "val_i asc, id desc", "score desc, val_i asc", "id asc"
+  };
+  private static final String[] WORDS = {"a", "b", "c", "d", "e"};
+
+  @Test
+  public void testParallelSearch() throws Exception {
+    assertEquals(4, h.getCore().getSolrConfig().searchThreads);
+    assertNotNull(h.getCore().getSegmentSearchExecutor());
+
+    int numDocs = 200 + random.nextInt(300);
+    for (int id = 0; id < numDocs; id++) {
+      StringBuilder text = new StringBuilder();
+      int numWords = random.nextInt(5) + 1;
+      for (int w = 0; w < numWords; w++) {
+        text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      assertU(adoc("id", Integer.toString(id), "val_i", Integer.toString(random.nextInt(10)),
+          "text", text.toString()));
+      if (random.nextInt(20) == 0) {
+        assertU(delI(Integer.toString(random.nextInt(id + 1))));
+      }
+      if (random.nextInt(50) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+    // the merges may have left a single segment, the next one is not merged
+    if (numSegments() == 1) {
+      assertU(adoc("id", Integer.toString(numDocs), "val_i", "1", "text", "a"));
+      assertU(commit());
+    }
+    assertTrue(numSegments() > 1);
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+
+      for (int iter = 0; iter < 200; iter++) {
+        // not cached, so each search is done again
+        Query query = QParser.getParser("{!cache=false}" + QUERIES[random.nextInt(QUERIES.length)], null, req).getQuery();
+        List<Query> filters = new ArrayList<Query>();
+        for (String fq : FILTERS) {
+          if (random.nextInt(3) == 0) filters.add(QParser.getParser(fq, null, req).getQuery());
+        }
+        String sortSpec = SORTS[random.nextInt(SORTS.length)];
+        Sort sort = sortSpec == null ? null : QueryParsing.parseSort(sortSpec, req);
+        int len = random.nextInt(40);
+        int flags = random.nextBoolean() ? SolrIndexSearcher.GET_SCORES : 0;
+
+        // the serial search
+        List<Query> all = new ArrayList<Query>(filters);
+        all.add(query);
+        DocSet expectedSet = searcher.getDocSet(all);
+        TopDocs expected = sort == null
+            ? searcher.search(query, expectedSet.getTopFilter(), Math.max(len, 1))
+            : searcher.search(query, expectedSet.getTopFilter(), Math.max(len, 1), sort);
+        String msg = "q=" + query + " fq=" + filters + " sort=" + sortSpec + " len=" + len;
+
+        DocListAndSet both = searcher.getDocListAndSet(query, filters, sort, 0, len, flags);
+        assertSameDocs(msg, expected, len, sort == null && flags != 0, both.docList);
+        assertEquals(msg, expectedSet.size(), both.docSet.size());
+        assertEquals(msg, expectedSet.size(), expectedSet.intersectionSize(both.docSet));
+
+        DocList list = searcher.getDocList(query, filters, sort, 0, len, flags);
+        assertSameDocs(msg, expected, len, sort == null && flags != 0, list);
+      }
+    } finally {
+      req.close();
+    }
+  }
+
+  private int numSegments() {
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      return holder.get().getReader().getLeafReaders().length;
+    } finally {
+      holder.decref();
+    }
+  }
+
+  private void assertSameDocs(String msg, TopDocs expected, int len, boolean checkScores, DocList docs) {
+    assertEquals(msg, expected.totalHits, docs.matches());
+    assertEquals(msg, Math.min(len, expected.scoreDocs.length), docs.size());
+    if (checkScores && expected.totalHits > 0) {
+      assertEquals(msg, expected.getMaxScore(), docs.maxScore(), 0f);
+    }
+    DocIterator iter = docs.iterator();
+    for (int i = 0; i < docs.size(); i++) {
+      ScoreDoc scoreDoc = expected.scoreDocs[i];
+      assertEquals(msg, scoreDoc.doc, iter.nextDoc());
+      if (checkScores) assertEquals(msg, scoreDoc.score, iter.score(), 0f);
+    }
+  }
+}
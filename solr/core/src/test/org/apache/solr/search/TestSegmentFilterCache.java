@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.util.RefCounted;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that filters are cached per segment and only computed for new segments
+ *
+ * @see SegmentFilterCache
+ */
+public class TestSegmentFilterCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.tests.segmentFilterCacheSize", "64");
+    initCore("solrconfig.xml","schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    System.clearProperty("solr.tests.segmentFilterCacheSize");
+  }
+
+  private NamedList stats() {
+    return h.getCore().getInfoRegistry().get("segmentFilterCache").getStatistics();
+  }
+
+  private long inserts() {
+    return (Long) stats().get("inserts");
+  }
+
+  private int numSegments() {
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      return holder.get().getReader().getLeafReaders().length;
+    } finally {
+      holder.decref();
+    }
+  }
+
+  private void assertSameAsUncached(String fq) throws Exception {
+    String numFound = h.query(req("q", "*:*", "fq", "{!cache=false}" + fq, "rows", "0"))
+        .replaceAll("(?s).*numFound=\"(\\d+)\".*", "$1");
+    assertQ(req("q", "*:*", "fq", fq, "rows", "0"), "//result[@numFound='" + numFound + "']");
+  }
+
+  @Test
+  public void testPerSegment() throws Exception {
+    assertNotNull(h.getCore().getSegmentFilterCache());
+    assertU(delQ("*:*"));
+    assertU(commit());
+    h.getCore().getSegmentFilterCache().clear();
+
+    // two segments
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_i", Integer.toString(i % 3)));
+    }
+    assertU(commit());
+    for (int i = 20; i < 40; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_i", Integer.toString(i % 3)));
+    }
+    assertU(commit());
+
+    long inserts = inserts();
+    assertQ(req("q", "*:*", "fq", "val_i:1", "rows", "0"), "//result[@numFound='13']");
+    assertEquals("one insert per segment", inserts + numSegments(), inserts());
+    assertSameAsUncached("val_i:1");
+    assertSameAsUncached("val_i:[0 TO 1]");
+    assertSameAsUncached("-val_i:2");
+
+    // a new segment: the filterCache is autowarmed, but only the new
+    // segment has to be computed
+    inserts = inserts();
+    assertU(adoc("id", "40", "val_i", "1"));
+    assertU(commit());
+    // the test filterCache autowarms 2 entries
+    assertEquals(inserts + 2, inserts());
+    assertQ(req("q", "*:*", "fq", "val_i:1", "rows", "0"), "//result[@numFound='14']");
+
+    // deleting from an old segment is visible through the cached sets
+    assertU(delI("1"));
+    assertU(delI("4"));
+    assertU(commit());
+    assertQ(req("q", "*:*", "fq", "val_i:1", "rows", "0"), "//result[@numFound='12']");
+    assertSameAsUncached("val_i:1");
+    assertSameAsUncached("val_i:[0 TO 1]");
+    assertSameAsUncached("-val_i:2");
+    assertSameAsUncached("id:[1 TO 3]");
+  }
+
+  @Test
+  public void testTopLevelValues() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+    for (int i = 10; i < 30; i++) {
+      assertU(adoc("id", Integer.toString(i), "key_s", Integer.toString(i)));
+    }
+    assertU(commit());
+
+    // ord() numbers the terms of the whole index
+    String fq = "{!frange l=1 u=5}ord(key_s)";
+    long inserts = inserts();
+    assertQ(req("q", "*:*", "fq", fq, "fl", "id"),
+        "//result[@numFound='5']", "//result/doc/str[@name='id'][.='14']");
+    assertEquals(inserts, inserts());
+
+    // a new first term changes the ords of the older segment
+    assertU(adoc("id", "05", "key_s", "05"));
+    assertU(commit());
+    assertQ(req("q", "*:*", "fq", fq, "fl", "id"),
+        "//result[@numFound='5']", "//result/doc/str[@name='id'][.='05']",
+        "not(//result/doc/str[@name='id'][.='14'])");
+    String nested = "+id:[* TO *] +_query_:\"" + fq + "\"";
+    assertSameAsUncached(nested);
+    SolrQueryRequest req = req();
+    try {
+      assertFalse(SegmentFilterCache.isSegmentCacheable(QParser.getParser(fq, null, req).getQuery()));
+      assertFalse(SegmentFilterCache.isSegmentCacheable(QParser.getParser(nested, null, req).getQuery()));
+      assertTrue(SegmentFilterCache.isSegmentCacheable(QParser.getParser("+id:[* TO *] +key_s:[10 TO 20]", null, req).getQuery()));
+    } finally {
+      req.close();
+    }
+  }
+}
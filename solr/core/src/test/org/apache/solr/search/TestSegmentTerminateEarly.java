@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.SortingMergePolicy;
+import org.apache.lucene.search.Sort;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.util.RefCounted;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Sorts the merged segments by val_i and then by key_s1, a sortMissingLast field,
+ * and checks requests sorted the same way stop collecting them early but return
+ * the same documents.
+ */
+public class TestSegmentTerminateEarly extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.tests.segmentSort", "val_i asc, key_s1 asc");
+    initCore("solrconfig.xml","schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    System.clearProperty("solr.tests.segmentSort");
+  }
+
+  @Test
+  public void testSegmentTerminateEarly() throws Exception {
+    int numDocs = 200 + random.nextInt(100);
+    for (int id = 0; id < numDocs; id++) {
+      if (random.nextInt(4) == 0) {
+        // sorts last by key_s1
+        assertU(adoc("id", Integer.toString(id), "val_i", Integer.toString(random.nextInt(50)),
+            "text", random.nextBoolean() ? "apple" : "banana"));
+      } else {
+        assertU(adoc("id", Integer.toString(id), "val_i", Integer.toString(random.nextInt(50)),
+            "key_s1", Integer.toString(random.nextInt(20)), "text", random.nextBoolean() ? "apple" : "banana"));
+      }
+      if (random.nextInt(50) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(optimize());
+    // a flushed segment, that is not sorted
+    for (int id = numDocs; id < numDocs + 5; id++) {
+      assertU(adoc("id", Integer.toString(id), "val_i", Integer.toString(random.nextInt(50)), "text", "apple"));
+    }
+    assertU(commit());
+
+    SolrQueryRequest req = req();
+    try {
+      for (String sortSpec : new String[] {"val_i asc", "val_i asc, key_s1 asc"}) {
+        Sort sort = QueryParsing.parseSort(sortSpec, req);
+        int sorted = 0;
+        for (SolrIndexReader leaf : req.getSearcher().getReader().getLeafReaders()) {
+          if (SortingMergePolicy.isSorted(leaf, sort)) sorted++;
+        }
+        assertEquals(sortSpec, 1, sorted);
+      }
+    } finally {
+      req.close();
+    }
+
+    for (String q : new String[] {"*:*", "text:apple"}) {
+      for (String sort : new String[] {"val_i asc", "val_i asc, key_s1 asc", "val_i asc, key_s1 desc", "val_i desc"}) {
+        String rows = Integer.toString(1 + random.nextInt(20));
+        String exact = h.query(req("q", "{!cache=false}" + q, "sort", sort, "rows", rows, "fl", "id"));
+        String early = h.query(req("q", "{!cache=false}" + q, "sort", sort, "rows", rows, "fl", "id",
+            "segmentTerminateEarly", "true"));
+        assertEquals(docs(exact), docs(early));
+        boolean terminated = early.contains("<bool name=\"segmentTerminatedEarly\">true</bool>");
+        // the segments are not sorted in the other directions
+        assertEquals(sort, sort.endsWith("asc"), terminated);
+        assertEquals(sort, terminated, numFound(early) < numFound(exact));
+        assertFalse(exact.contains("segmentTerminatedEarly"));
+      }
+    }
+  }
+
+  private static String docs(String response) {
+    return response.substring(response.indexOf("<doc>"), response.lastIndexOf("</result>"));
+  }
+
+  private static int numFound(String response) {
+    int start = response.indexOf("numFound=\"") + "numFound=\"".length();
+    return Integer.parseInt(response.substring(start, response.indexOf('"', start)));
+  }
+}
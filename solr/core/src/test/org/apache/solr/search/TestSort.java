@@ -190,6 +190,8 @@ public class TestSort extends SolrTestCaseJ4 {
 
 
       IndexSearcher searcher = new IndexSearcher(dir, true);
+      // don't mix StringIndex and DocTermsIndex on the same reader
+      final boolean packed = r.nextBoolean();
 
       // build our model
       int maxDoc = searcher.maxDoc();
@@ -228,9 +230,11 @@ public class TestSort extends SolrTestCaseJ4 {
 
         if (r.nextBoolean()) sfields.add( new SortField(null, SortField.SCORE));
         // hit both use-cases of sort-missing-last
-        sfields.add( Sorting.getStringSortField("f", reverse, sortMissingLast, sortMissingFirst) );
+        SortField sf = Sorting.getStringSortField("f", reverse, sortMissingLast, sortMissingFirst);
+        sfields.add( packed ? Sorting.getPackedStringSortField(sf) : sf );
         if (secondary) {
-          sfields.add( Sorting.getStringSortField("f2", reverse2, sortMissingLast2, sortMissingFirst2) );
+          SortField sf2 = Sorting.getStringSortField("f2", reverse2, sortMissingLast2, sortMissingFirst2);
+          sfields.add( packed ? Sorting.getPackedStringSortField(sf2) : sf2 );
         }
         if (r.nextBoolean()) sfields.add( new SortField(null, SortField.SCORE));
 
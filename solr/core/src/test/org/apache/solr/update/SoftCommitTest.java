@@ -0,0 +1,160 @@
+package org.apache.solr.update;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SoftCommitTest extends SolrTestCaseJ4 {
+
+  private static String saveProp;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    saveProp = System.getProperty("solr.directoryFactory");
+    System.setProperty("solr.directoryFactory", "solr.NRTCachingDirectoryFactory");
+    // configures a terms index divisor of 12 on the IndexReaderFactory
+    initCore("solrconfig-termindex.xml", "schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    if (saveProp == null)
+      System.clearProperty("solr.directoryFactory");
+    else
+      System.setProperty("solr.directoryFactory", saveProp);
+  }
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    clearIndex();
+    assertU(commit());
+  }
+
+  private static long latestCommitGeneration() {
+    return h.getCore().getDeletionPolicy().getLatestCommit().getGeneration();
+  }
+
+  private static Directory searcherDirectory() {
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      return holder.get().getReader().directory();
+    } finally {
+      holder.decref();
+    }
+  }
+
+  @Test
+  public void testSoftCommit() throws Exception {
+    final long gen = latestCommitGeneration();
+
+    assertU(adoc("id", "1"));
+    assertU(commit("softCommit", "true"));
+    assertQ(req("id:1"), "//*[@numFound='1']");
+
+    // visible, but not committed: the flushed segment is only in RAM
+    assertEquals(gen, latestCommitGeneration());
+    assertTrue(searcherDirectory() instanceof NRTCachingDirectory);
+    assertTrue(((NRTCachingDirectory) searcherDirectory()).listCachedFiles().length > 0);
+
+    assertU(delI("1"));
+    assertU(adoc("id", "2"));
+    assertU(commit("softCommit", "true"));
+    assertQ(req("id:1"), "//*[@numFound='0']");
+    assertQ(req("id:2"), "//*[@numFound='1']");
+    assertEquals(gen, latestCommitGeneration());
+
+    // a hard commit writes everything to disk
+    assertU(commit());
+    assertQ(req("id:2"), "//*[@numFound='1']");
+    assertTrue(latestCommitGeneration() > gen);
+
+    SolrCore core = h.getCore();
+    IndexCommit commit = core.getDeletionPolicy().getLatestCommit();
+    Directory fsDir = FSDirectory.open(new File(core.getIndexDir()));
+    try {
+      for (String fileName : commit.getFileNames()) {
+        assertTrue(fileName, fsDir.fileExists(fileName));
+      }
+    } finally {
+      fsDir.close();
+    }
+
+    // searchers opened after the hard commit see later commits too
+    assertU(adoc("id", "3"));
+    assertU(commit());
+    assertQ(req("id:3"), "//*[@numFound='1']");
+  }
+
+  @Test
+  public void testSoftCommitReaderUsesReaderFactoryConfig() throws Exception {
+    assertEquals(12, h.getCore().getIndexReaderFactory().getTermInfosIndexDivisor());
+
+    assertU(adoc("id", "1"));
+    assertU(commit());
+    assertU(adoc("id", "2"));
+    assertU(commit("softCommit", "true"));
+
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      IndexReader[] segments = holder.get().getReader().getSequentialSubReaders();
+      assertTrue(segments.length > 0);
+      for (IndexReader segment : segments) {
+        assertEquals(12, segment.getTermInfosIndexDivisor());
+      }
+    } finally {
+      holder.decref();
+    }
+  }
+
+  @Test
+  public void testAutoSoftCommit() throws Exception {
+    DirectUpdateHandler2 updater = (DirectUpdateHandler2) h.getCore().getUpdateHandler();
+    DirectUpdateHandler2.CommitTracker tracker = updater.softCommitTracker;
+    final long gen = latestCommitGeneration();
+    final int count = tracker.getCommitCount();
+
+    tracker.timeUpperBound = 100;
+    try {
+      assertU(adoc("id", "529"));
+      for (int i = 0; i < 200 && tracker.getCommitCount() == count; i++) {
+        Thread.sleep(50);
+      }
+      assertTrue(tracker.getCommitCount() > count);
+      assertQ(req("id:529"), "//*[@numFound='1']");
+      assertEquals(gen, latestCommitGeneration());
+    } finally {
+      tracker.timeUpperBound = -1;
+    }
+  }
+}
@@ -31,6 +31,7 @@ import org.apache.solr.client.solrj.response.SolrPingResponse;
 import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.client.solrj.impl.StreamingBinaryResponseParser;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
@@ -121,6 +122,23 @@ public abstract class SolrServer implements Serializable
   public QueryResponse query(SolrParams params, METHOD method) throws SolrServerException {
     return new QueryRequest( params, method ).process( this );
   }
+
+  /**
+   * Query solr, and stream the documents of the response to the callback as they
+   * are read, instead of collecting them in the QueryResponse, so that large
+   * result sets can be read in constant memory.
+   *
+   * The document lists of the returned QueryResponse are empty, but still have
+   * their numFound, start and maxScore.
+   *
+   * @since solr 3.4
+   */
+  public QueryResponse queryAndStreamResponse( SolrParams params, StreamingResponseCallback callback ) throws SolrServerException
+  {
+    QueryRequest req = new QueryRequest( params );
+    req.setResponseParser( new StreamingBinaryResponseParser( callback ) );
+    return req.process( this );
+  }
   
   /**
    * SolrServer implementations need to implement how a request is actually processed
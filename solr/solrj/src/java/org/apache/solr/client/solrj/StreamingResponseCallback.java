@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj;
+
+import org.apache.solr.common.SolrDocument;
+
+/**
+ * Receives the documents of a response one at a time, as they are read,
+ * instead of collecting them in a {@link org.apache.solr.common.SolrDocumentList},
+ * so that large result sets can be processed in constant memory.
+ *
+ * @see SolrServer#queryAndStreamResponse
+ * @see org.apache.solr.client.solrj.impl.StreamingBinaryResponseParser
+ * @since solr 3.4
+ */
+public abstract class StreamingResponseCallback {
+  /**
+   * Called for each document of a document list, in the order they are returned.
+   * The document is not referenced by the response afterwards.
+   */
+  public abstract void streamSolrDocument(SolrDocument doc);
+
+  /**
+   * Called once for each document list, before its documents are streamed.
+   *
+   * @param maxScore the maximum score, or null if scores were not requested
+   */
+  public abstract void streamDocListInfo(long numFound, long start, Float maxScore);
+}
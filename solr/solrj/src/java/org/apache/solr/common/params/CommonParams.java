@@ -91,6 +91,20 @@ public interface CommonParams {
    * Timeout value in milliseconds.  If not set, or the value is <= 0, there is no timeout.
    */
   public static final String TIME_ALLOWED = "timeAllowed";
+
+  /**
+   * 'true' if the segments that were sorted by the requested sort when they were merged
+   * may stop being collected once they have enough hits.  The number of matches is then
+   * only a lower bound, and the header includes segmentTerminatedEarly.
+   */
+  public static final String SEGMENT_TERMINATE_EARLY = "segmentTerminateEarly";
+
+  /**
+   * 'false' if the documents that cannot make it into the top documents by score may be
+   * skipped without being counted.  The number of matches is then only a lower bound,
+   * and the header includes numFoundExact=false.  Defaults to 'true'.
+   */
+  public static final String EXACT_NUM_FOUND = "exactNumFound";
   
   /** 'true' if the header should include the handler name */
   public static final String HEADER_ECHO_HANDLER = "echoHandler";
@@ -44,6 +44,20 @@ public interface FacetParams {
    * (such as the FieldCache used for sorting).
    */
   public static final String FACET_METHOD_fc = "fc";
+
+  /** Value for FACET_METHOD param to indicate that Solr should count multi-valued
+   * fields like {@link #FACET_METHOD_fc}, but with the values un-inverted per segment,
+   * so that segments that did not change are reused after a commit.  Single valued
+   * fields are counted as with {@link #FACET_METHOD_fc}.
+   */
+  public static final String FACET_METHOD_fcs = "fcs";
+
+  /**
+   * The maximum number of threads used to compute the counts of the facet.fields
+   * of a request (and the counts of the segments of a field with
+   * {@link #FACET_METHOD_fcs}), including the request thread.  Defaults to 1.
+   */
+  public static final String FACET_THREADS = FACET + ".threads";
   
   /**
    * Any lucene formated queries the user would like to use for
@@ -36,6 +36,9 @@ public interface UpdateParams
   
   /** Commit everything after the command completes */
   public static String COMMIT = "commit";
+
+  /** Make the changes visible to searches without durably committing them */
+  public static String SOFT_COMMIT = "softCommit";
   
   /** Commit within a certain time period (in ms) */
   public static String COMMIT_WITHIN = "commitWithin";
@@ -0,0 +1,478 @@
+package org.apache.solr.common.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache split into independently locked segments, each of which
+ * evicts using the CLOCK (second chance) algorithm.
+ * <p/>
+ * Lookups never take a lock: each segment keeps its entries in a
+ * ConcurrentHashMap, and a hit only sets the entry's reference bit.  Puts
+ * lock just the segment the key hashes to.  When that segment is full, its
+ * clock hand advances over the segment's slot array, clearing reference bits
+ * until it finds an entry that was not used since the hand last passed it,
+ * and that entry is replaced.  Every put therefore evicts at most one entry
+ * and the cost of the sweep is amortized over the hits that set the bits, so
+ * there is never a pass over the whole cache like
+ * {@link ConcurrentLRUCache}'s markAndSweep.
+ * <p/>
+ * Each segment holds an equal share of the total size, so the eviction order
+ * only approximates LRU, per segment.
+ * <p/>
+ * Optionally the cache is also bounded by the estimated RAM used by its
+ * entries, as passed to {@link #put(Object, Object, long)}.  The limit is
+ * split evenly among the segments too; a segment over its share evicts
+ * entries (in clock order, but never the one just added) until it fits.
+ *
+ * @see ConcurrentLRUCache
+ */
+public class ConcurrentClockCache<K,V> {
+
+  private final Segment<K,V>[] segments;
+  private final int segmentShift;
+  private final int segmentMask;
+  private final int limit;
+  private final long maxRamBytes;
+  private final Stats stats;
+  private final ConcurrentLRUCache.EvictionListener<K,V> evictionListener;
+  private volatile boolean islive = true;
+
+  /**
+   * @param limit the maximum number of entries held by the cache
+   * @param initialSize a hint for the number of entries the cache will hold
+   * @param numSegments the number of independently locked segments; rounded
+   *        down to a power of two and reduced so that each segment holds at
+   *        least a few entries.  Use <= 0 for a default based on the number
+   *        of available processors.
+   * @param evictionListener notified (outside of any lock) of each evicted
+   *        entry, may be null
+   */
+  public ConcurrentClockCache(int limit, int initialSize, int numSegments,
+                              ConcurrentLRUCache.EvictionListener<K,V> evictionListener) {
+    this(limit, Long.MAX_VALUE, initialSize, numSegments, evictionListener);
+  }
+
+  /**
+   * @param limit the maximum number of entries held by the cache
+   * @param maxRamBytes the maximum sum of the sizes of the entries, as passed
+   *        to {@link #put(Object, Object, long)}
+   * @param initialSize a hint for the number of entries the cache will hold
+   * @param numSegments the number of independently locked segments, see
+   *        {@link #ConcurrentClockCache(int, int, int, ConcurrentLRUCache.EvictionListener)}
+   * @param evictionListener notified (outside of any lock) of each evicted
+   *        entry, may be null
+   */
+  public ConcurrentClockCache(int limit, long maxRamBytes, int initialSize, int numSegments,
+                              ConcurrentLRUCache.EvictionListener<K,V> evictionListener) {
+    if (limit < 1) throw new IllegalArgumentException("limit must be > 0");
+    if (maxRamBytes < 1) throw new IllegalArgumentException("maxRamBytes must be > 0");
+    if (numSegments <= 0) {
+      numSegments = 2 * Runtime.getRuntime().availableProcessors();
+    }
+    // small caches get fewer segments, otherwise eviction becomes too
+    // approximate (each segment evicts on its own)
+    numSegments = Math.min(numSegments, Math.max(1, limit / MIN_SEGMENT_SIZE));
+    int shift = 0;
+    while ((2 << shift) <= numSegments) shift++;
+    numSegments = 1 << shift;
+    // the highest bits of the spread hash choose the segment
+    segmentShift = 32 - shift;
+    segmentMask = numSegments - 1;
+
+    this.limit = limit;
+    this.maxRamBytes = maxRamBytes;
+    this.evictionListener = evictionListener;
+    this.stats = new Stats(numSegments);
+    segments = new Segment[numSegments];
+    final int base = limit / numSegments, remainder = limit % numSegments;
+    final int initialSegmentSize = Math.max(1, Math.min(initialSize, limit) / numSegments);
+    final long segmentRamBytes = maxRamBytes == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1, maxRamBytes / numSegments);
+    for (int i = 0; i < numSegments; i++) {
+      final int capacity = base + (i < remainder ? 1 : 0);
+      segments[i] = new Segment<K,V>(i, capacity, segmentRamBytes, Math.min(capacity, initialSegmentSize));
+    }
+  }
+
+  public ConcurrentClockCache(int limit) {
+    this(limit, limit, 0, null);
+  }
+
+  /** Each segment holds at least this many entries, unless the whole cache is smaller */
+  private static final int MIN_SEGMENT_SIZE = 16;
+
+  public void setAlive(boolean live) {
+    islive = live;
+  }
+
+  public V get(K key) {
+    final int hash = hash(key);
+    final Segment<K,V> segment = segmentFor(hash);
+    final CacheEntry<K,V> e = segment.map.get(key);
+    if (e == null) {
+      if (islive) stats.increment(segment.index, Stats.MISSES);
+      return null;
+    }
+    // avoid the volatile write (and the cache line invalidation on
+    // other cores) when the entry is already marked
+    if (!e.referenced) e.referenced = true;
+    if (islive) stats.increment(segment.index, Stats.HITS);
+    return e.value;
+  }
+
+  public V put(K key, V val) {
+    return put(key, val, 0);
+  }
+
+  /**
+   * Adds an entry whose estimated size is <code>ramBytes</code>; only
+   * meaningful if the cache was created with a RAM limit.
+   */
+  public V put(K key, V val, long ramBytes) {
+    if (val == null) return null;
+    final Segment<K,V> segment = segmentFor(hash(key));
+    if (islive) {
+      stats.increment(segment.index, Stats.PUTS);
+    } else {
+      stats.increment(segment.index, Stats.NON_LIVE_PUTS);
+    }
+    final List<CacheEntry<K,V>> evicted;
+    V oldValue = null;
+    segment.lock.lock();
+    try {
+      final CacheEntry<K,V> old = segment.map.get(key);
+      if (old != null) {
+        oldValue = old.value;
+        evicted = segment.replace(old, val, ramBytes);
+      } else {
+        evicted = segment.insert(key, val, ramBytes);
+      }
+    } finally {
+      segment.lock.unlock();
+    }
+    if (evicted != null) {
+      for (CacheEntry<K,V> e : evicted) {
+        stats.increment(segment.index, Stats.EVICTIONS);
+        if (evictionListener != null) evictionListener.evictedEntry(e.key, e.value);
+      }
+    }
+    return oldValue;
+  }
+
+  public V remove(K key) {
+    final Segment<K,V> segment = segmentFor(hash(key));
+    segment.lock.lock();
+    try {
+      final CacheEntry<K,V> e = segment.map.remove(key);
+      if (e == null) return null;
+      segment.free(e);
+      return e.value;
+    } finally {
+      segment.lock.unlock();
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment<K,V> segment : segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  /** Returns the maximum number of entries the cache holds */
+  public int getLimit() {
+    return limit;
+  }
+
+  /** Returns the maximum sum of the entry sizes, or Long.MAX_VALUE if unlimited */
+  public long getMaxRamBytes() {
+    return maxRamBytes;
+  }
+
+  /** Returns the sum of the sizes of the current entries */
+  public long getRamBytesUsed() {
+    long ramBytes = 0;
+    for (Segment<K,V> segment : segments) {
+      ramBytes += segment.ramBytes;
+    }
+    return ramBytes;
+  }
+
+  public int getNumSegments() {
+    return segments.length;
+  }
+
+  public void clear() {
+    for (Segment<K,V> segment : segments) {
+      segment.lock.lock();
+      try {
+        segment.clear();
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Returns up to <code>n</code> entries, those that were accessed since the
+   * clock hand of their segment last passed them first, then the others.
+   * This is the closest CLOCK gets to "most recently used" and is meant for
+   * autowarming.  Reference bits are left untouched.
+   */
+  public Map<K,V> getLatestAccessedItems(int n) {
+    final Map<K,V> result = new LinkedHashMap<K,V>();
+    if (n <= 0) return result;
+    final List<CacheEntry<K,V>> unreferenced = new ArrayList<CacheEntry<K,V>>();
+    for (Segment<K,V> segment : segments) {
+      for (CacheEntry<K,V> e : segment.map.values()) {
+        if (e.referenced) {
+          result.put(e.key, e.value);
+          if (result.size() >= n) return result;
+        } else if (unreferenced.size() < n) {
+          unreferenced.add(e);
+        }
+      }
+    }
+    for (CacheEntry<K,V> e : unreferenced) {
+      if (result.size() >= n) break;
+      result.put(e.key, e.value);
+    }
+    return result;
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  /** No background resources are held; only clears the entries. */
+  public void destroy() {
+    clear();
+  }
+
+  private Segment<K,V> segmentFor(int hash) {
+    return segments[(hash >>> segmentShift) & segmentMask];
+  }
+
+  /** Spreads the bits of the key's hashCode so the segment selection
+   *  (which uses the upper bits) does not suffer from weak hash codes. */
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    h += (h << 15) ^ 0xffffcd7d;
+    h ^= (h >>> 10);
+    h += (h << 3);
+    h ^= (h >>> 6);
+    h += (h << 2) + (h << 14);
+    return h ^ (h >>> 16);
+  }
+
+  private static final class Segment<K,V> {
+    final int index;
+    final ReentrantLock lock = new ReentrantLock();
+    final ConcurrentHashMap<Object,CacheEntry<K,V>> map;
+    final CacheEntry<K,V>[] slots;
+    final long maxRamBytes;
+    // slots freed by remove() or by evictions, reused before the clock runs
+    final int[] freeSlots;
+    int numFree;
+    // slots [0, filled) have been used at least once
+    int filled;
+    int hand;
+    volatile int size;
+    volatile long ramBytes;
+
+    Segment(int index, int capacity, long maxRamBytes, int initialSize) {
+      this.index = index;
+      this.maxRamBytes = maxRamBytes;
+      map = new ConcurrentHashMap<Object,CacheEntry<K,V>>(initialSize, 0.75f, 1);
+      slots = new CacheEntry[capacity];
+      freeSlots = new int[capacity];
+    }
+
+    /** Adds a new entry, evicting if the segment is full or over its RAM
+     *  limit.  Must hold the lock.
+     *  @return the evicted entries, or null */
+    List<CacheEntry<K,V>> insert(K key, V val, long entryRamBytes) {
+      List<CacheEntry<K,V>> evicted = null;
+      if (numFree == 0 && filled == slots.length) {
+        evicted = new ArrayList<CacheEntry<K,V>>(1);
+        evicted.add(evict(-1));
+      }
+      final int slot = numFree > 0 ? freeSlots[--numFree] : filled++;
+      final CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, slot, entryRamBytes);
+      slots[slot] = e;
+      map.put(key, e);
+      size++;
+      ramBytes += entryRamBytes;
+      return evictToRamLimit(slot, evicted);
+    }
+
+    /** Replaces the value of an entry in place, keeping its slot and
+     *  reference bit.  Must hold the lock.
+     *  @return the evicted entries, or null */
+    List<CacheEntry<K,V>> replace(CacheEntry<K,V> old, V val, long entryRamBytes) {
+      final CacheEntry<K,V> e = new CacheEntry<K,V>(old.key, val, old.slot, entryRamBytes);
+      e.referenced = old.referenced;
+      slots[old.slot] = e;
+      map.put(old.key, e);
+      ramBytes += entryRamBytes - old.ramBytes;
+      return evictToRamLimit(old.slot, null);
+    }
+
+    private List<CacheEntry<K,V>> evictToRamLimit(int keepSlot, List<CacheEntry<K,V>> evicted) {
+      while (ramBytes > maxRamBytes && size > 1) {
+        if (evicted == null) evicted = new ArrayList<CacheEntry<K,V>>();
+        evicted.add(evict(keepSlot));
+      }
+      return evicted;
+    }
+
+    /** Advances the clock hand to the first entry (other than the one in
+     *  <code>keepSlot</code>) that was not referenced since the hand last
+     *  passed it, clearing the reference bits on the way, and removes it.
+     *  Each step either evicts or clears a bit, so this ends within two
+     *  turns.  Must hold the lock, and the segment must hold an entry
+     *  outside of <code>keepSlot</code>. */
+    private CacheEntry<K,V> evict(int keepSlot) {
+      while (true) {
+        final int slot = hand;
+        hand = hand + 1 >= filled ? 0 : hand + 1;
+        final CacheEntry<K,V> e = slots[slot];
+        if (e == null || slot == keepSlot) continue;
+        if (e.referenced) {
+          e.referenced = false;
+        } else {
+          map.remove(e.key);
+          free(e);
+          return e;
+        }
+      }
+    }
+
+    /** Must hold the lock */
+    void free(CacheEntry<K,V> e) {
+      slots[e.slot] = null;
+      freeSlots[numFree++] = e.slot;
+      size--;
+      ramBytes -= e.ramBytes;
+    }
+
+    /** Must hold the lock */
+    void clear() {
+      map.clear();
+      for (int i = 0; i < filled; i++) {
+        slots[i] = null;
+      }
+      numFree = filled = hand = size = 0;
+      ramBytes = 0;
+    }
+  }
+
+  private static final class CacheEntry<K,V> {
+    final K key;
+    final V value;
+    final int slot;
+    final long ramBytes;
+    volatile boolean referenced;
+
+    CacheEntry(K key, V value, int slot, long ramBytes) {
+      this.key = key;
+      this.value = value;
+      this.slot = slot;
+      this.ramBytes = ramBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "key: " + key + " value: " + value + " referenced:" + referenced;
+    }
+  }
+
+  /**
+   * Counters for a {@link ConcurrentClockCache}.  The counters are striped by
+   * segment (each stripe on its own cache line) so that concurrent lookups on
+   * different segments do not contend on a shared counter.
+   */
+  public static class Stats {
+    static final int HITS = 0, MISSES = 1, PUTS = 2, NON_LIVE_PUTS = 3, EVICTIONS = 4;
+    // 8 longs = 64 bytes, a common cache line size
+    private static final int STRIDE = 8;
+
+    private final AtomicLongArray counters;
+    private final int numStripes;
+
+    public Stats() {
+      this(1);
+    }
+
+    Stats(int numStripes) {
+      this.numStripes = numStripes;
+      // one extra stripe of padding in front of the first
+      counters = new AtomicLongArray((numStripes + 1) * STRIDE);
+    }
+
+    void increment(int stripe, int counter) {
+      counters.incrementAndGet((stripe + 1) * STRIDE + counter);
+    }
+
+    private long sum(int counter) {
+      long sum = 0;
+      for (int i = 1; i <= numStripes; i++) {
+        sum += counters.get(i * STRIDE + counter);
+      }
+      return sum;
+    }
+
+    public long getCumulativeLookups() {
+      return sum(HITS) + sum(MISSES);
+    }
+
+    public long getCumulativeHits() {
+      return sum(HITS);
+    }
+
+    public long getCumulativeMisses() {
+      return sum(MISSES);
+    }
+
+    public long getCumulativePuts() {
+      return sum(PUTS);
+    }
+
+    public long getCumulativeNonLivePuts() {
+      return sum(NON_LIVE_PUTS);
+    }
+
+    public long getCumulativeEvictions() {
+      return sum(EVICTIONS);
+    }
+
+    public void add(Stats other) {
+      for (int counter = HITS; counter <= EVICTIONS; counter++) {
+        counters.addAndGet(STRIDE + counter, other.sum(counter));
+      }
+    }
+  }
+}
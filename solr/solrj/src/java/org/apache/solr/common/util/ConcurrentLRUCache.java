@@ -46,6 +46,7 @@ public class ConcurrentLRUCache<K,V> {
 
   private final ConcurrentHashMap<Object, CacheEntry<K,V>> map;
   private final int upperWaterMark, lowerWaterMark;
+  private final long ramUpperWaterMark, ramLowerWaterMark;
   private final ReentrantLock markAndSweepLock = new ReentrantLock(true);
   private boolean isCleaning = false;  // not volatile... piggybacked on other volatile vars
   private final boolean newThreadForCleanup;
@@ -59,13 +60,32 @@ public class ConcurrentLRUCache<K,V> {
   public ConcurrentLRUCache(int upperWaterMark, final int lowerWaterMark, int acceptableWatermark,
                             int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
                             EvictionListener<K,V> evictionListener) {
+    this(upperWaterMark, lowerWaterMark, acceptableWatermark, Long.MAX_VALUE, Long.MAX_VALUE,
+        initialSize, runCleanupThread, runNewThreadForCleanup, evictionListener);
+  }
+
+  /**
+   * Creates a cache that is also bounded by the (estimated) RAM used by its
+   * entries, as passed to {@link #put(Object, Object, long)}.  When the sum
+   * exceeds <code>ramUpperWaterMark</code>, the least recently used entries
+   * are evicted until it is back to <code>ramLowerWaterMark</code>.
+   */
+  public ConcurrentLRUCache(int upperWaterMark, final int lowerWaterMark, int acceptableWatermark,
+                            long ramUpperWaterMark, long ramLowerWaterMark,
+                            int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
+                            EvictionListener<K,V> evictionListener) {
     if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
     if (lowerWaterMark >= upperWaterMark)
       throw new IllegalArgumentException("lowerWaterMark must be  < upperWaterMark");
+    if (ramUpperWaterMark < 1) throw new IllegalArgumentException("ramUpperWaterMark must be > 0");
+    if (ramLowerWaterMark > ramUpperWaterMark)
+      throw new IllegalArgumentException("ramLowerWaterMark must be <= ramUpperWaterMark");
     map = new ConcurrentHashMap<Object, CacheEntry<K,V>>(initialSize);
     newThreadForCleanup = runNewThreadForCleanup;
     this.upperWaterMark = upperWaterMark;
     this.lowerWaterMark = lowerWaterMark;
+    this.ramUpperWaterMark = ramUpperWaterMark;
+    this.ramLowerWaterMark = ramLowerWaterMark;
     this.acceptableWaterMark = acceptableWatermark;
     this.evictionListener = evictionListener;
     if (runCleanupThread) {
@@ -97,20 +117,32 @@ public class ConcurrentLRUCache<K,V> {
     CacheEntry<K,V> cacheEntry = map.remove(key);
     if (cacheEntry != null) {
       stats.size.decrementAndGet();
+      stats.ramBytes.addAndGet(-cacheEntry.ramBytes);
       return cacheEntry.value;
     }
     return null;
   }
 
   public V put(K key, V val) {
+    return put(key, val, 0);
+  }
+
+  /**
+   * Adds an entry whose estimated size is <code>ramBytes</code>; only
+   * meaningful if the cache was created with a RAM limit.
+   */
+  public V put(K key, V val, long ramBytes) {
     if (val == null) return null;
-    CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, stats.accessCounter.incrementAndGet());
+    CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, stats.accessCounter.incrementAndGet(), ramBytes);
     CacheEntry<K,V> oldCacheEntry = map.put(key, e);
     int currentSize;
+    long currentRamBytes;
     if (oldCacheEntry == null) {
       currentSize = stats.size.incrementAndGet();
+      currentRamBytes = stats.ramBytes.addAndGet(ramBytes);
     } else {
       currentSize = stats.size.get();
+      currentRamBytes = stats.ramBytes.addAndGet(ramBytes - oldCacheEntry.ramBytes);
     }
     if (islive) {
       stats.putCounter.incrementAndGet();
@@ -128,7 +160,7 @@ public class ConcurrentLRUCache<K,V> {
     //
     // Thread safety note: isCleaning read is piggybacked (comes after) other volatile reads
     // in this method.
-    if (currentSize > upperWaterMark && !isCleaning) {
+    if ((currentSize > upperWaterMark || currentRamBytes > ramUpperWaterMark) && !isCleaning) {
       if (newThreadForCleanup) {
         new Thread() {
           @Override
@@ -155,6 +187,9 @@ public class ConcurrentLRUCache<K,V> {
    * <p/>
    * The second stage is more intensive and tries to bring down the cache size
    * to the 'lowerWaterMark' config parameter.
+   * <p/>
+   * If the cache has a RAM limit and its entries use more than 'ramUpperWaterMark',
+   * the least recently used entries are evicted first, see {@link #markAndSweepByRam}.
    */
   private void markAndSweep() {
     // if we want to keep at least 1000 entries, then timestamps of
@@ -171,6 +206,11 @@ public class ConcurrentLRUCache<K,V> {
       isCleaning = true;
       this.oldestEntry = oldestEntry;     // volatile write to make isCleaning visible
 
+      if (stats.ramBytes.get() > ramUpperWaterMark) {
+        markAndSweepByRam();
+        if (stats.size.get() <= upperWaterMark) return;
+      }
+
       long timeCurrent = stats.accessCounter.get();
       int sz = stats.size.get();
 
@@ -350,6 +390,36 @@ public class ConcurrentLRUCache<K,V> {
     }
   }
 
+  /**
+   * Removes the least recently used items until the estimated RAM usage of
+   * the entries is down to 'ramLowerWaterMark'.  Entries can be of very
+   * different sizes, so the number of entries to remove is not known up front:
+   * a queue keeps the least recently used entries that together use enough
+   * RAM, and drops its most recently used one whenever the others suffice.
+   * Must hold markAndSweepLock.
+   */
+  @SuppressWarnings("unchecked")
+  private void markAndSweepByRam() {
+    long ramBytesToRemove = stats.ramBytes.get() - ramLowerWaterMark;
+    PQueue queue = new PQueue(stats.size.get());
+    long queuedRamBytes = 0;
+    for (CacheEntry<K,V> ce : map.values()) {
+      ce.lastAccessedCopy = ce.lastAccessed;
+      queuedRamBytes += ce.ramBytes;
+      CacheEntry overflow = (CacheEntry) queue.myInsertWithOverflow(ce);
+      if (overflow != null) queuedRamBytes -= overflow.ramBytes;
+      // the top is the most recently used entry of the queue
+      while (queue.size() > 0 && queuedRamBytes - ((CacheEntry) queue.top()).ramBytes >= ramBytesToRemove) {
+        queuedRamBytes -= ((CacheEntry) queue.pop()).ramBytes;
+      }
+    }
+    for (Object o : queue.getValues()) {
+      if (o==null) continue;
+      CacheEntry<K,V> ce = (CacheEntry)o;
+      evictEntry(ce.key);
+    }
+  }
+
   private static class PQueue extends PriorityQueue {
     int myMaxSize;
     final Object[] heap;
@@ -389,6 +459,7 @@ public class ConcurrentLRUCache<K,V> {
     CacheEntry<K,V> o = map.remove(key);
     if (o == null) return;
     stats.size.decrementAndGet();
+    stats.ramBytes.addAndGet(-o.ramBytes);
     stats.evictionCounter.incrementAndGet();
     if(evictionListener != null) evictionListener.evictedEntry(o.key,o.value);
   }
@@ -463,7 +534,9 @@ public class ConcurrentLRUCache<K,V> {
   }
 
   public void clear() {
-    map.clear();
+    for (Object key : map.keySet()) {
+      remove((K) key);
+    }
   }
 
   public Map<Object, CacheEntry<K,V>> getMap() {
@@ -475,12 +548,18 @@ public class ConcurrentLRUCache<K,V> {
     V value;
     volatile long lastAccessed = 0;
     long lastAccessedCopy = 0;
+    final long ramBytes;
 
 
     public CacheEntry(K key, V value, long lastAccessed) {
+      this(key, value, lastAccessed, 0);
+    }
+
+    public CacheEntry(K key, V value, long lastAccessed, long ramBytes) {
       this.key = key;
       this.value = value;
       this.lastAccessed = lastAccessed;
+      this.ramBytes = ramBytes;
     }
 
     public void setLastAccessed(long lastAccessed) {
@@ -530,6 +609,7 @@ public class ConcurrentLRUCache<K,V> {
             nonLivePutCounter = new AtomicLong(0),
             missCounter = new AtomicLong();
     private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong ramBytes = new AtomicLong();
     private AtomicLong evictionCounter = new AtomicLong();
 
     public long getCumulativeLookups() {
@@ -552,6 +632,11 @@ public class ConcurrentLRUCache<K,V> {
       return size.get();
     }
 
+    /** Returns the sum of the estimated RAM usage of the current entries */
+    public long getCurrentRamBytes() {
+      return ramBytes.get();
+    }
+
     public long getCumulativeNonLivePuts() {
       return nonLivePutCounter.get();
     }
@@ -43,6 +43,8 @@ import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.util.XML;
 import org.apache.solr.common.util.NamedList;
@@ -681,4 +683,60 @@ abstract public class SolrExampleTests extends SolrJettyTestBase
     QueryResponse rsp = server.query( query );
     assertEquals(1, rsp.getResults().getNumFound());
   }
+
+  @Test
+  public void testStreamingRequest() throws Exception {
+    SolrServer server = getSolrServer();
+    // Empty the database...
+    server.deleteByQuery( "*:*" );// delete everything!
+    server.commit();
+    assertNumFound( "*:*", 0 ); // make sure it got in
+
+    ArrayList<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(10);
+    for( int i=0; i<10; i++ ) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField( "id", "stream"+i );
+      doc.addField( "name", "doc "+i );
+      docs.add( doc );
+    }
+    server.add( docs );
+    server.commit();
+
+    SolrQuery query = new SolrQuery( "*:*" );
+    query.addSortField( "id", SolrQuery.ORDER.asc );
+    query.setRows( 7 );
+    query.setFields( "id", "name", "score" );
+
+    final List<SolrDocument> streamed = new ArrayList<SolrDocument>();
+    final long[] info = new long[2];
+    final Float[] maxScore = new Float[1];
+    QueryResponse rsp = server.queryAndStreamResponse( query, new StreamingResponseCallback() {
+      @Override
+      public void streamSolrDocument( SolrDocument doc ) {
+        streamed.add( doc );
+      }
+
+      @Override
+      public void streamDocListInfo( long numFound, long start, Float max ) {
+        info[0] = numFound;
+        info[1] = start;
+        maxScore[0] = max;
+      }
+    });
+
+    // the documents go to the callback only
+    assertEquals( 10, rsp.getResults().getNumFound() );
+    assertEquals( 0, rsp.getResults().size() );
+    assertEquals( 10, info[0] );
+    assertEquals( 0, info[1] );
+    assertNotNull( maxScore[0] );
+
+    SolrDocumentList expected = server.query( query ).getResults();
+    assertEquals( 7, streamed.size() );
+    for( int i=0; i<streamed.size(); i++ ) {
+      assertEquals( expected.get(i).getFieldValue( "id" ), streamed.get(i).getFieldValue( "id" ) );
+      assertEquals( expected.get(i).getFieldValue( "name" ), streamed.get(i).getFieldValue( "name" ) );
+      assertNotNull( streamed.get(i).getFieldValue( "score" ) );
+    }
+  }
 }